@@ -1,5 +1,6 @@
 package simpledb.buffer;
 
+import java.util.*;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
@@ -9,7 +10,10 @@ import simpledb.log.LogMgr;
  * such as the associated disk block,
  * the number of times the buffer has been pinned,
  * whether its contents have been modified,
- * and if so, the id and lsn of the modifying transaction.
+ * and if so, the ids of the modifying transactions and the latest lsn.
+ * Since transactions may lock individual records, several transactions
+ * can modify the same buffer; they synchronize on the buffer
+ * itself (its latch) while they access its contents.
  * @author Edward Sciore
  */
 public class Buffer {
@@ -18,7 +22,7 @@ public class Buffer {
    private Page contents;
    private BlockId blk = null;
    private int pins = 0;
-   private int txnum = -1;
+   private Set<Integer> modifiers = new HashSet<>();
    private int lsn = -1;
 
    public Buffer(FileMgr fm, LogMgr lm) {
@@ -40,8 +44,8 @@ public class Buffer {
       return blk;
    }
 
-   public void setModified(int txnum, int lsn) {
-      this.txnum = txnum;
+   public synchronized void setModified(int txnum, int lsn) {
+      modifiers.add(txnum);
       if (lsn >= 0)
          this.lsn = lsn;
    }
@@ -55,8 +59,13 @@ public class Buffer {
       return pins > 0;
    }
    
-   public int modifyingTx() {
-      return txnum;
+   /**
+    * Return true if the specified transaction has modified
+    * the buffer since it was last written to disk.
+    * @param txnum the id of the transaction
+    */
+   public synchronized boolean isModifiedBy(int txnum) {
+      return modifiers.contains(txnum);
    }
 
    /**
@@ -76,11 +85,11 @@ public class Buffer {
    /**
     * Write the buffer to its disk block if it is dirty.
     */
-   void flush() {
-      if (txnum >= 0) {
+   synchronized void flush() {
+      if (!modifiers.isEmpty()) {
          lm.flush(lsn);
          fm.write(blk, contents);
-         txnum = -1;
+         modifiers.clear();
       }
    }
 
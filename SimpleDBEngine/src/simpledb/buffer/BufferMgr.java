@@ -41,7 +41,7 @@ public class BufferMgr {
     */
    public synchronized void flushAll(int txnum) {
       for (Buffer buff : bufferpool)
-         if (buff.modifyingTx() == txnum)
+         if (buff.isModifiedBy(txnum))
          buff.flush();
    }
    
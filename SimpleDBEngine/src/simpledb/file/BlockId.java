@@ -3,10 +3,13 @@ package simpledb.file;
 public class BlockId {
    private String filename;
    private int blknum;
+   private int hashcode;
 
    public BlockId(String filename, int blknum) {
       this.filename = filename;
       this.blknum   = blknum;
+      // block ids are hashed on every lock and buffer lookup
+      hashcode = 31 * filename.hashCode() + blknum;
    }
 
    public String fileName() {
@@ -18,6 +21,8 @@ public class BlockId {
    }
    
    public boolean equals(Object obj) {
+      if (!(obj instanceof BlockId))
+         return false;
       BlockId blk = (BlockId) obj;
       return filename.equals(blk.filename) && blknum == blk.blknum;
    }
@@ -27,6 +32,6 @@ public class BlockId {
    }
    
    public int hashCode() {
-      return toString().hashCode();
+      return hashcode;
    }
 }
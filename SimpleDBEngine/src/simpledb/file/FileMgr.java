@@ -8,6 +8,9 @@ public class FileMgr {
    private int blocksize;
    private boolean isNew;
    private Map<String,RandomAccessFile> openFiles = new HashMap<>();
+   private Map<String,FreeSpaceMap> freeSpace = new HashMap<>();
+   private Map<String,ZoneMap> zones = new HashMap<>();
+   private Map<String,StringDictionary> dictionaries = new HashMap<>();
 
    public FileMgr(File dbDirectory, int blocksize) {
       this.dbDirectory = dbDirectory;
@@ -61,7 +64,31 @@ public class FileMgr {
       return blk;
    }
 
-   public int length(String filename) {
+   /**
+    * Cut the specified file down to the specified number of blocks.
+    * @param filename the name of the file
+    * @param numblocks the new length of the file, in blocks
+    */
+   public synchronized void truncate(String filename, int numblocks) {
+      try {
+         RandomAccessFile f = getFile(filename);
+         f.setLength((long) numblocks * blocksize);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot truncate " + filename);
+      }
+   }
+
+   /**
+    * Return true if the specified file exists,
+    * without creating it if it does not.
+    * @param filename the name of the file
+    */
+   public synchronized boolean exists(String filename) {
+      return openFiles.containsKey(filename) || new File(dbDirectory, filename).exists();
+   }
+
+   public synchronized int length(String filename) {
       try {
          RandomAccessFile f = getFile(filename);
          return (int)(f.length() / blocksize);
@@ -71,6 +98,95 @@ public class FileMgr {
       }
    }
 
+   /**
+    * Return the free-space map of the specified file,
+    * loading it from its side file the first time.
+    * @param filename the name of the data file
+    * @return the file's free-space map
+    */
+   public synchronized FreeSpaceMap freeSpaceMap(String filename) {
+      FreeSpaceMap fsm = freeSpace.get(filename);
+      if (fsm == null) {
+         fsm = new FreeSpaceMap(this, filename);
+         freeSpace.put(filename, fsm);
+      }
+      return fsm;
+   }
+
+   /**
+    * Return the zone map of the specified file,
+    * loading it from its side file the first time.
+    * @param filename the name of the data file
+    * @return the file's zone map
+    */
+   public synchronized ZoneMap zoneMap(String filename) {
+      ZoneMap zm = zones.get(filename);
+      if (zm == null) {
+         zm = new ZoneMap(this, filename);
+         zones.put(filename, zm);
+      }
+      return zm;
+   }
+
+   /**
+    * Return the dictionary of the specified file,
+    * loading it from its side file the first time.
+    * @param filename the name of the data file
+    * @return the file's dictionary
+    */
+   public synchronized StringDictionary dictionary(String filename) {
+      StringDictionary dict = dictionaries.get(filename);
+      if (dict == null) {
+         dict = new StringDictionary(this, filename);
+         dictionaries.put(filename, dict);
+      }
+      return dict;
+   }
+
+   /**
+    * Delete the files of the specified table: its data file,
+    * its overflow file and their side files.
+    * The free-space maps, zone maps and dictionaries of those files
+    * are dropped without being written back.
+    * The table must no longer be in use, and none of its
+    * blocks may be in a modified buffer.
+    * @param tblname the name of the table
+    */
+   public synchronized void deleteTable(String tblname) {
+      String prefix = tblname + ".";
+      freeSpace.keySet().removeIf(f -> f.startsWith(prefix));
+      zones.keySet().removeIf(f -> f.startsWith(prefix));
+      dictionaries.keySet().removeIf(f -> f.startsWith(prefix));
+      Iterator<Map.Entry<String,RandomAccessFile>> iter = openFiles.entrySet().iterator();
+      while (iter.hasNext()) {
+         Map.Entry<String,RandomAccessFile> e = iter.next();
+         if (e.getKey().startsWith(prefix)) {
+            try {
+               e.getValue().close();
+            }
+            catch (IOException ex) {
+               throw new RuntimeException("cannot close " + e.getKey());
+            }
+            iter.remove();
+         }
+      }
+      for (String filename : dbDirectory.list())
+         if (filename.startsWith(prefix))
+            new File(dbDirectory, filename).delete();
+   }
+
+   /**
+    * Write the changed zones of every zone map to their side files.
+    */
+   public void flushZoneMaps() {
+      List<ZoneMap> maps;
+      synchronized (this) {
+         maps = new ArrayList<>(zones.values());
+      }
+      for (ZoneMap zm : maps)
+         zm.flush();
+   }
+
    public boolean isNew() {
       return isNew;
    }
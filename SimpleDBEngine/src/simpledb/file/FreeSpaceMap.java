@@ -0,0 +1,79 @@
+package simpledb.file;
+
+import java.util.BitSet;
+
+/**
+ * A persistent map of which blocks of a file have no room left.
+ * The map holds one bit per block, set when the block is known to be full,
+ * and is stored in a side file (the data file's name with
+ * the extension ".fsm" in place of ".tbl", or added to
+ * any other extension).
+ * The map lives in memory once loaded; a change of a bit is
+ * written through to the side file immediately.
+ * <p>
+ * The map is only a hint, and is neither locked nor logged.
+ * A block marked as having room may turn out to be full, and a
+ * block freed by a later rollback stays marked as full until
+ * a record in it is deleted. A missing side file means that
+ * every block may have room.
+ */
+public class FreeSpaceMap {
+   private FileMgr fm;
+   private String mapfile;
+   private int bitsPerBlock;
+   private BitSet full;
+
+   FreeSpaceMap(FileMgr fm, String filename) {
+      this.fm = fm;
+      String base = filename.endsWith(".tbl") ? filename.substring(0, filename.length() - 4) : filename;
+      mapfile = base + ".fsm";
+      bitsPerBlock = fm.blockSize() * 8;
+      full = new BitSet();
+      byte[] b = new byte[fm.blockSize()];
+      Page p = new Page(b);
+      int n = fm.exists(mapfile) ? fm.length(mapfile) : 0;
+      for (int i=0; i<n; i++) {
+         fm.read(new BlockId(mapfile, i), p);
+         BitSet bits = BitSet.valueOf(b);
+         for (int k = bits.nextSetBit(0); k >= 0; k = bits.nextSetBit(k+1))
+            full.set(i*bitsPerBlock + k);
+      }
+   }
+
+   /**
+    * Return the number of the first block at or after the specified one
+    * that is not known to be full.
+    * The returned number may be past the end of the file.
+    * @param start the block number to start from
+    * @return the number of a block that may have room
+    */
+   public synchronized int nextFree(int start) {
+      return full.nextClearBit(start);
+   }
+
+   /**
+    * Return true if the specified block is known to be full.
+    * @param blknum the block number
+    */
+   public synchronized boolean isFull(int blknum) {
+      return full.get(blknum);
+   }
+
+   /**
+    * Record whether the specified block is full.
+    * @param blknum the block number
+    * @param isFull true if the block has no room left
+    */
+   public synchronized void setFull(int blknum, boolean isFull) {
+      if (full.get(blknum) == isFull)
+         return;
+      full.set(blknum, isFull);
+      int mapblk = blknum / bitsPerBlock;
+      byte[] bits = full.get(mapblk*bitsPerBlock, (mapblk+1)*bitsPerBlock).toByteArray();
+      byte[] b = new byte[fm.blockSize()];
+      System.arraycopy(bits, 0, b, 0, bits.length);
+      while (fm.length(mapfile) < mapblk)
+         fm.append(mapfile);
+      fm.write(new BlockId(mapfile, mapblk), new Page(b));
+   }
+}
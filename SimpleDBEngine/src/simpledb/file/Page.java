@@ -44,11 +44,61 @@ public class Page {
       return new String(b, CHARSET);
    }
 
+   /**
+    * Return true if the string stored at the specified offset
+    * has the specified bytes, comparing them in place.
+    * @param offset the offset of the string
+    * @param b the bytes of a string
+    */
+   public boolean hasString(int offset, byte[] b) {
+      if (bb.getInt(offset) != b.length)
+         return false;
+      for (int i=0; i<b.length; i++)
+         if (bb.get(offset + Integer.BYTES + i) != b[i])
+            return false;
+      return true;
+   }
+
    public void setString(int offset, String s) {
       byte[] b = s.getBytes(CHARSET);
       setBytes(offset, b);
    }
 
+   /**
+    * Return the raw bytes stored in the specified region.
+    * @param offset the start of the region
+    * @param length the number of bytes
+    */
+   public byte[] getRange(int offset, int length) {
+      byte[] b = new byte[length];
+      bb.position(offset);
+      bb.get(b);
+      return b;
+   }
+
+   /**
+    * Overwrite a region of the page with the specified raw bytes.
+    * @param offset the start of the region
+    * @param b the bytes to store
+    */
+   public void setRange(int offset, byte[] b) {
+      bb.position(offset);
+      bb.put(b);
+   }
+
+   /**
+    * Return a private copy of the page.
+    * The copy is taken through a duplicate of the byte buffer,
+    * so it does not disturb the position of this page.
+    */
+   public Page copy() {
+      ByteBuffer src = bb.duplicate();
+      src.clear();
+      byte[] b = new byte[src.capacity()];
+      src.get(b);
+      return new Page(b);
+   }
+
    public static int maxLength(int strlen) {
       float bytesPerChar = CHARSET.newEncoder().maxBytesPerChar();
       return Integer.BYTES + (strlen * (int)bytesPerChar);
@@ -0,0 +1,142 @@
+package simpledb.file;
+
+import java.util.*;
+
+/**
+ * The dictionary of the encoded string fields of a file.
+ * Each distinct value of an encoded field is given an integer
+ * code, and the records hold the codes in place of the strings,
+ * so that comparing two values for equality compares two integers.
+ * Codes are per field, identified by its position in the
+ * table's schema; code 0 always stands for the empty string,
+ * so that a zero-filled slot decodes to the default value.
+ * <p>
+ * The dictionary is stored in a side file (the data file's name
+ * with the extension ".dict"), as a list of entries that only
+ * ever grows: a code, once given, keeps its value for good.
+ * It lives in memory once loaded, and a new entry is written
+ * through to the side file immediately, before any record can
+ * hold its code. Like the free-space map, the dictionary is
+ * neither locked nor logged: an entry added by a transaction
+ * that rolls back is simply never used.
+ */
+public class StringDictionary {
+   private FileMgr fm;
+   private String dictfile;
+   private List<List<String>> values = new ArrayList<>();
+   private List<Map<String,Integer>> codes = new ArrayList<>();
+   private Page tail;
+   private int tailblk, tailpos;
+
+   StringDictionary(FileMgr fm, String filename) {
+      this.fm = fm;
+      int pos = filename.lastIndexOf('.');
+      dictfile = (pos < 0 ? filename : filename.substring(0, pos)) + ".dict";
+      tail = new Page(fm.blockSize());
+      int n = fm.exists(dictfile) ? fm.length(dictfile) : 0;
+      tailblk = Math.max(n-1, 0);
+      for (int b=0; b<n; b++) {
+         Page p = (b == tailblk) ? tail : new Page(fm.blockSize());
+         fm.read(new BlockId(dictfile, b), p);
+         int offset = 0;
+         while (offset + 2*Integer.BYTES <= fm.blockSize() && p.getInt(offset) != 0) {
+            int col = p.getInt(offset) - 1;
+            int code = p.getInt(offset + Integer.BYTES);
+            String val = p.getString(offset + 2*Integer.BYTES);
+            column(col);
+            List<String> vals = values.get(col);
+            while (vals.size() <= code)
+               vals.add(null);
+            vals.set(code, val);
+            codes.get(col).put(val, code);
+            offset += entrySize(val);
+         }
+         tailpos = offset;
+      }
+   }
+
+   /**
+    * Return the code of the specified value of the specified field,
+    * giving the value a new code if it has none.
+    * @param col the schema position of the field
+    * @param val the string value
+    * @return the value's code
+    */
+   public synchronized int encode(int col, String val) {
+      Integer code = column(col).get(val);
+      if (code != null)
+         return code;
+      int newcode = values.get(col).size();
+      append(col, newcode, val);
+      values.get(col).add(val);
+      codes.get(col).put(val, newcode);
+      return newcode;
+   }
+
+   /**
+    * Return the code of the specified value of the specified field,
+    * or -1 if no record has ever held the value.
+    * @param col the schema position of the field
+    * @param val the string value
+    * @return the value's code, or -1
+    */
+   public synchronized int lookup(int col, String val) {
+      Integer code = column(col).get(val);
+      return (code == null) ? -1 : code;
+   }
+
+   /**
+    * Return the value having the specified code.
+    * Equal values are returned as the same string object.
+    * @param col the schema position of the field
+    * @param code the code
+    * @return the string value
+    */
+   public synchronized String decode(int col, int code) {
+      column(col);
+      List<String> vals = values.get(col);
+      if (code < 0 || code >= vals.size() || vals.get(code) == null)
+         throw new RuntimeException("no value for code " + code + " in " + dictfile);
+      return vals.get(code);
+   }
+
+   /**
+    * Return the codes of the specified field, creating its
+    * entries the first time; code 0 is the empty string.
+    */
+   private Map<String,Integer> column(int col) {
+      while (values.size() <= col) {
+         List<String> vals = new ArrayList<>();
+         vals.add("");
+         values.add(vals);
+         Map<String,Integer> map = new HashMap<>();
+         map.put("", 0);
+         codes.add(map);
+      }
+      return codes.get(col);
+   }
+
+   /**
+    * Write a new entry at the end of the side file;
+    * an entry that does not fit in the last block starts a new one.
+    */
+   private void append(int col, int code, String val) {
+      int size = entrySize(val);
+      if (fm.length(dictfile) == 0)
+         fm.append(dictfile);
+      else if (tailpos + size > fm.blockSize()) {
+         tail = new Page(fm.blockSize());
+         tailblk = fm.append(dictfile).number();
+         tailpos = 0;
+      }
+      tail.setInt(tailpos, col + 1);
+      tail.setInt(tailpos + Integer.BYTES, code);
+      tail.setString(tailpos + 2*Integer.BYTES, val);
+      tailpos += size;
+      fm.write(new BlockId(dictfile, tailblk), tail);
+   }
+
+   private static int entrySize(String val) {
+      return 2*Integer.BYTES + Page.maxLength(val.length());
+   }
+}
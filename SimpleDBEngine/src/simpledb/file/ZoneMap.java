@@ -0,0 +1,223 @@
+package simpledb.file;
+
+import java.util.*;
+
+/**
+ * A persistent summary of the integer values held in each block
+ * of a file, for some chosen fields of its records.
+ * For each block, the map holds the smallest and largest value
+ * of each chosen field (the block's "zone"), so that a scan
+ * looking for values in some range can skip the blocks whose
+ * zones lie outside it.
+ * The map is stored in a side file (the data file's name with
+ * the extension ".zm"); its first block lists the chosen fields,
+ * by their positions in the table's schema, and the other blocks
+ * hold the zones. A file without a side file has no chosen fields,
+ * and the side file is not created until zones are chosen.
+ * <p>
+ * A zone only ever widens, so it covers every value written to
+ * the block since the zone was computed, whether committed,
+ * rolled back or still pending; it is therefore neither locked nor logged.
+ * A block is in one of three states: empty, holding the values
+ * within its zones, or unknown, which must always be read.
+ * A block with no entry in the map is empty, since every value
+ * written to it widens its zones.
+ * A change to a zone is kept in memory until {@link #flush()},
+ * which a transaction calls before it commits, so that
+ * the zones of committed values survive a crash.
+ */
+public class ZoneMap {
+   private static final int EMPTY = 0, ZONED = 1, UNKNOWN = 2;
+   private FileMgr fm;
+   private String mapfile;
+   private int[] cols;
+   private int[] slotOf;   // schema position -> index in cols, or -1
+   private int[] states;
+   private int[][] mins, maxs;
+   private int entrysize, entriesPerBlock;
+   private BitSet dirty = new BitSet();
+
+   ZoneMap(FileMgr fm, String filename) {
+      this.fm = fm;
+      int pos = filename.lastIndexOf('.');
+      mapfile = (pos < 0 ? filename : filename.substring(0, pos)) + ".zm";
+      setColumns(new int[0], 0);
+      int n = fm.exists(mapfile) ? fm.length(mapfile) : 0;
+      if (n == 0)
+         return;
+      Page p = new Page(fm.blockSize());
+      fm.read(new BlockId(mapfile, 0), p);
+      int[] columns = new int[p.getInt(0)];
+      for (int i=0; i<columns.length; i++)
+         columns[i] = p.getInt((i+1) * Integer.BYTES);
+      setColumns(columns, (n-1) * entriesPerBlock(columns.length));
+      for (int mapblk=1; mapblk<n; mapblk++) {
+         fm.read(new BlockId(mapfile, mapblk), p);
+         for (int e=0; e<entriesPerBlock; e++) {
+            int blknum = (mapblk-1) * entriesPerBlock + e;
+            int offset = e * entrysize;
+            states[blknum] = p.getInt(offset);
+            for (int i=0; i<cols.length; i++) {
+               mins[i][blknum] = p.getInt(offset + (2*i+1) * Integer.BYTES);
+               maxs[i][blknum] = p.getInt(offset + (2*i+2) * Integer.BYTES);
+            }
+         }
+      }
+   }
+
+   /**
+    * Return the positions of the fields that have zones.
+    * @return the schema positions of the chosen fields
+    */
+   public synchronized int[] columns() {
+      return cols.clone();
+   }
+
+   /**
+    * Choose the fields to be summarized, and mark the first
+    * blocks of the file as unknown until their zones are set.
+    * The side file is rewritten at once.
+    * @param columns the schema positions of the chosen fields
+    * @param size the number of blocks in the file
+    */
+   public synchronized void reset(int[] columns, int size) {
+      setColumns(columns, size);
+      Arrays.fill(states, 0, size, UNKNOWN);
+      fm.truncate(mapfile, 0);
+      Page p = new Page(fm.blockSize());
+      p.setInt(0, cols.length);
+      for (int i=0; i<cols.length; i++)
+         p.setInt((i+1) * Integer.BYTES, cols[i]);
+      fm.append(mapfile);
+      fm.write(new BlockId(mapfile, 0), p);
+      dirty.set(0, (size + entriesPerBlock - 1) / entriesPerBlock);
+      flush();
+   }
+
+   /**
+    * Set the zones of the specified block, replacing the old ones.
+    * The arrays are in the order of {@link #columns()};
+    * a block holding no records has no values.
+    * @param blknum the block number
+    * @param lo the smallest value of each field
+    * @param hi the largest value of each field
+    * @param hasValues false if the block holds no records
+    */
+   public synchronized void setZone(int blknum, int[] lo, int[] hi, boolean hasValues) {
+      grow(blknum);
+      states[blknum] = hasValues ? ZONED : EMPTY;
+      for (int i=0; i<cols.length; i++) {
+         mins[i][blknum] = lo[i];
+         maxs[i][blknum] = hi[i];
+      }
+      dirty.set(blknum / entriesPerBlock);
+   }
+
+   /**
+    * Widen the zone of the specified field in the specified block
+    * to include the specified value.
+    * Nothing happens if the field has no zone.
+    * @param blknum the block number
+    * @param col the schema position of the field
+    * @param val a value written to the block
+    */
+   public synchronized void widen(int blknum, int col, int val) {
+      if (col >= slotOf.length || slotOf[col] < 0)
+         return;
+      grow(blknum);
+      int i = slotOf[col];
+      if (states[blknum] == EMPTY) {
+         // the other fields' zones stay empty until their values are written
+         states[blknum] = ZONED;
+         for (int k=0; k<cols.length; k++) {
+            mins[k][blknum] = Integer.MAX_VALUE;
+            maxs[k][blknum] = Integer.MIN_VALUE;
+         }
+      }
+      else if (states[blknum] == UNKNOWN
+               || (mins[i][blknum] <= val && val <= maxs[i][blknum]))
+         return;
+      mins[i][blknum] = Math.min(mins[i][blknum], val);
+      maxs[i][blknum] = Math.max(maxs[i][blknum], val);
+      dirty.set(blknum / entriesPerBlock);
+   }
+
+   /**
+    * Return true if the specified block may hold a value
+    * of the specified field within the specified range.
+    * A field without a zone may hold any value.
+    * @param blknum the block number
+    * @param col the schema position of the field
+    * @param lo the smallest value sought
+    * @param hi the largest value sought
+    */
+   public synchronized boolean mayHold(int blknum, int col, int lo, int hi) {
+      if (col >= slotOf.length || slotOf[col] < 0)
+         return true;
+      if (blknum >= states.length || states[blknum] == EMPTY)
+         return false;
+      if (states[blknum] == UNKNOWN)
+         return true;
+      int i = slotOf[col];
+      return mins[i][blknum] <= hi && lo <= maxs[i][blknum];
+   }
+
+   /**
+    * Write the changed zones to the side file.
+    */
+   public synchronized void flush() {
+      Page p = new Page(fm.blockSize());
+      for (int k = dirty.nextSetBit(0); k >= 0; k = dirty.nextSetBit(k+1)) {
+         for (int e=0; e<entriesPerBlock; e++) {
+            int blknum = k * entriesPerBlock + e;
+            int offset = e * entrysize;
+            boolean present = blknum < states.length;
+            p.setInt(offset, present ? states[blknum] : EMPTY);
+            for (int i=0; i<cols.length; i++) {
+               p.setInt(offset + (2*i+1) * Integer.BYTES, present ? mins[i][blknum] : 0);
+               p.setInt(offset + (2*i+2) * Integer.BYTES, present ? maxs[i][blknum] : 0);
+            }
+         }
+         while (fm.length(mapfile) <= k+1)
+            fm.append(mapfile);
+         fm.write(new BlockId(mapfile, k+1), p);
+      }
+      dirty.clear();
+   }
+
+   private int entriesPerBlock(int ncols) {
+      return fm.blockSize() / ((2*ncols + 1) * Integer.BYTES);
+   }
+
+   private void setColumns(int[] columns, int size) {
+      cols = columns.clone();
+      int maxcol = -1;
+      for (int col : cols)
+         maxcol = Math.max(maxcol, col);
+      slotOf = new int[maxcol + 1];
+      Arrays.fill(slotOf, -1);
+      for (int i=0; i<cols.length; i++)
+         slotOf[cols[i]] = i;
+      entrysize = (2*cols.length + 1) * Integer.BYTES;
+      entriesPerBlock = entriesPerBlock(cols.length);
+      states = new int[size];
+      mins = new int[cols.length][size];
+      maxs = new int[cols.length][size];
+      dirty.clear();
+   }
+
+   /**
+    * Make room in memory for the entry of the specified block;
+    * new entries are empty.
+    */
+   private void grow(int blknum) {
+      if (blknum < states.length)
+         return;
+      int size = Math.max(blknum + 1, 2 * states.length);
+      states = Arrays.copyOf(states, size);
+      for (int i=0; i<cols.length; i++) {
+         mins[i] = Arrays.copyOf(mins[i], size);
+         maxs[i] = Arrays.copyOf(maxs[i], size);
+      }
+   }
+}
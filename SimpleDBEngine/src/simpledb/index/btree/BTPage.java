@@ -114,6 +114,7 @@ public class BTPage {
       BlockId blk = tx.append(currentblk.fileName());
       tx.pin(blk);
       format(blk, flag);
+      tx.unpin(blk);
       return blk;
    }
  
@@ -216,7 +217,7 @@ public class BTPage {
    private Constant getVal(int slot, String fldname) {
       int type = layout.schema().type(fldname);
       if (type == INTEGER)
-         return new Constant(getInt(slot, fldname));
+         return Constant.of(getInt(slot, fldname));
       else
          return new Constant(getString(slot, fldname));
    }
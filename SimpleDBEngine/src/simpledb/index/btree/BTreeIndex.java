@@ -33,10 +33,14 @@ public class BTreeIndex implements Index {
       // deal with the leaves
       leaftbl = idxname + "leaf";
       this.leafLayout = leafLayout;
-      if (tx.size(leaftbl) == 0) {
-         BlockId blk = tx.append(leaftbl);
-         BTPage node = new BTPage(tx, blk, leafLayout);
-         node.format(blk, -1);
+      // file creation is serialized, since appends take no locks
+      synchronized (BTreeIndex.class) {
+         if (tx.size(leaftbl) == 0) {
+            BlockId blk = tx.append(leaftbl);
+            BTPage node = new BTPage(tx, blk, leafLayout);
+            node.format(blk, -1);
+            node.close();
+         }
       }
 
       // deal with the directory
@@ -46,18 +50,20 @@ public class BTreeIndex implements Index {
       String dirtbl = idxname + "dir";
       dirLayout = new Layout(dirsch);
       rootblk = new BlockId(dirtbl, 0);
-      if (tx.size(dirtbl) == 0) {
-         // create new root block
-         tx.append(dirtbl);
-         BTPage node = new BTPage(tx, rootblk, dirLayout);
-         node.format(rootblk, 0);
-         // insert initial directory entry
-         int fldtype = dirsch.type("dataval");
-         Constant minval = (fldtype == INTEGER) ?
-               new Constant(Integer.MIN_VALUE) :
-               new Constant("");
-         node.insertDir(0, minval, 0);
-         node.close();
+      synchronized (BTreeIndex.class) {
+         if (tx.size(dirtbl) == 0) {
+            // create new root block
+            tx.append(dirtbl);
+            BTPage node = new BTPage(tx, rootblk, dirLayout);
+            node.format(rootblk, 0);
+            // insert initial directory entry
+            int fldtype = dirsch.type("dataval");
+            Constant minval = (fldtype == INTEGER) ?
+                  new Constant(Integer.MIN_VALUE) :
+                  new Constant("");
+            node.insertDir(0, minval, 0);
+            node.close();
+         }
       }
    }
 
@@ -54,11 +54,14 @@ public class IndexJoinPlan implements Plan {
     * The formula is:
     * <pre> B(indexjoin(p1,p2,idx)) = B(p1) + R(p1)*B(idx)
     *       + R(indexjoin(p1,p2,idx) </pre>
+    * where the last term is smaller if the table of p2
+    * is clustered on the index.
     * @see simpledb.plan.Plan#blocksAccessed()
     */
    public int blocksAccessed() {
 	// pages of R + pages of R * tuples per page * cost of finding S tuples
-      return p1.blocksAccessed() + (p1.recordsOutput() * ii.blocksAccessed()) + recordsOutput(); 
+      return p1.blocksAccessed() + (p1.recordsOutput() * ii.blocksAccessed())
+            + (p1.recordsOutput() * ii.recordBlocksAccessed(ii.recordsOutput()));
    }
    
    /**
@@ -47,11 +47,12 @@ public class IndexSelectPlan implements Plan {
    /**
     * Estimates the number of block accesses to compute the 
     * index selection, which is the same as the 
-    * index traversal cost plus the number of matching data records.
+    * index traversal cost plus the number of matching data records,
+    * or of the blocks they fill if the table is clustered on the index.
     * @see simpledb.plan.Plan#blocksAccessed()
     */
    public int blocksAccessed() {
-      return ii.blocksAccessed() + recordsOutput();
+      return ii.blocksAccessed() + ii.recordBlocksAccessed(recordsOutput());
    }
    
    /**
@@ -1,5 +1,6 @@
 package simpledb.index.planner;
 
+import static java.sql.Types.INTEGER;
 import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
@@ -8,6 +9,7 @@ import simpledb.query.*;
 import simpledb.parse.*;
 import simpledb.plan.*;
 import simpledb.index.Index;
+import simpledb.materialize.SortPlan;
 
 /**
  * A modification of the basic update planner.
@@ -29,15 +31,18 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       // first, insert the record
       UpdateScan s = (UpdateScan) p.open();
       s.insert();
-      RID rid = s.getRid();
+      Iterator<Constant> valIter = data.vals().iterator();
+      for (String fldname : data.fields())
+         s.setVal(fldname, valIter.next());
       
-      // then modify each field, inserting an index record if appropriate
+      // then insert an index record for each indexed field;
+      // the RID is asked for only now, since a variable-length
+      // record is placed once all of its values are known
+      RID rid = s.getRid();
       Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
-      Iterator<Constant> valIter = data.vals().iterator();
+      valIter = data.vals().iterator();
       for (String fldname : data.fields()) {
          Constant val = valIter.next();
-         s.setVal(fldname, val);
-         
          IndexInfo ii = indexes.get(fldname);
          if (ii != null) {
             Index idx = ii.open();
@@ -51,8 +56,9 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    
    public int executeDelete(DeleteData data, Transaction tx) {
       String tblname = data.tableName();
-      Plan p = new TablePlan(tx, tblname, mdm);
-      p = new SelectPlan(p, data.pred());
+      TablePlan tp = new TablePlan(tx, tblname, mdm);
+      tp.lockForUpdate();
+      Plan p = new SelectPlan(tp, data.pred());
       Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
       
       UpdateScan s = (UpdateScan) p.open();
@@ -77,8 +83,9 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    public int executeModify(ModifyData data, Transaction tx) {
       String tblname = data.tableName();
       String fldname = data.targetField();
-      Plan p = new TablePlan(tx, tblname, mdm);
-      p = new SelectPlan(p, data.pred());
+      TablePlan tp = new TablePlan(tx, tblname, mdm);
+      tp.lockForUpdate();
+      Plan p = new SelectPlan(tp, data.pred());
       
       IndexInfo ii = mdm.getIndexInfo(tblname, tx).get(fldname);
       Index idx = (ii == null) ? null : ii.open();
@@ -105,7 +112,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateTable(CreateTableData data, Transaction tx) {
-      mdm.createTable(data.tableName(), data.newSchema(), tx);
+      mdm.createTable(data.tableName(), data.newSchema(), data.format(), data.partitioning(), tx);
       return 0;
    }
    
@@ -118,4 +125,128 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(), data.indexType(), tx);
       return 0;
    }
+   
+   /**
+    * Load the records of the data file a page at a time,
+    * and then build the table's indexes.
+    * The index records are collected during the load,
+    * and inserted into each index in key order,
+    * so that successive insertions go to the same index blocks.
+    */
+   public int executeCopy(CopyData data, Transaction tx) {
+      String tblname = data.tableName();
+      Layout layout = mdm.getLayout(tblname, tx);
+      Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
+      Map<String,List<Map.Entry<Constant,RID>>> entries = new HashMap<>();
+      for (String fldname : indexes.keySet())
+         entries.put(fldname, new ArrayList<>());
+      
+      // first, load the records
+      Scan src = new CopyScan(data.fileName(), layout.schema(), data.fields());
+      BulkLoader loader = new BulkLoader(tx, tblname, layout, mdm.getPartitioning(tblname, tx));
+      int count = 0;
+      while (src.next()) {
+         Map<String,Constant> vals = new HashMap<>();
+         for (String fldname : layout.schema().fields())
+            if (src.hasField(fldname))
+               vals.put(fldname, src.getVal(fldname));
+         RID rid = loader.insert(vals);
+         for (String fldname : indexes.keySet()) {
+            Constant val = vals.get(fldname);
+            if (val == null)
+               val = layout.schema().type(fldname) == INTEGER ? new Constant(0) : new Constant("");
+            entries.get(fldname).add(new AbstractMap.SimpleEntry<>(val, rid));
+         }
+         count++;
+      }
+      loader.close();
+      src.close();
+      
+      // then build each index from its sorted records
+      buildIndexes(indexes, entries);
+      return count;
+   }
+   
+   public int executeVacuum(VacuumData data, Transaction tx) {
+      return mdm.vacuumTable(data.tableName(), VacuumMgr.MOVES_PER_STEP, tx);
+   }
+   
+   /**
+    * Rewrite the table in the order of the index's key.
+    * The records are first sorted into temporary tables.
+    * Every record of the table is then deleted, along with its
+    * index records, and the sorted records are inserted from
+    * the start of the table, so that they fill its blocks in order.
+    * The index records are inserted in key order, as for a copy.
+    * Every change is logged, so a rollback restores the old order.
+    */
+   public int executeCluster(ClusterData data, Transaction tx) {
+      String tblname = data.tableName();
+      Layout layout = mdm.getLayout(tblname, tx);
+      Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
+      String keyfld = null;
+      for (String fldname : indexes.keySet())
+         if (indexes.get(fldname).indexName().equals(data.indexName()))
+            keyfld = fldname;
+      if (keyfld == null)
+         throw new RuntimeException("no index " + data.indexName() + " on " + tblname);
+      tx.xLockTable(tblname + ".tbl");
+      
+      // first, sort the records
+      Plan p = new SortPlan(tx, new TablePlan(tx, tblname, mdm), Arrays.asList(keyfld));
+      Scan src = p.open();
+      
+      // then empty the table and its indexes
+      Map<String,Index> open = new HashMap<>();
+      for (String fldname : indexes.keySet())
+         open.put(fldname, indexes.get(fldname).open());
+      TableScan ts = new TableScan(tx, tblname, layout);
+      while (ts.next()) {
+         RID rid = ts.getRid();
+         for (String fldname : open.keySet())
+            open.get(fldname).delete(ts.getVal(fldname), rid);
+         ts.delete();
+      }
+      ts.close();
+      for (Index idx : open.values())
+         idx.close();
+      
+      // and insert the sorted records
+      Map<String,List<Map.Entry<Constant,RID>>> entries = new HashMap<>();
+      for (String fldname : indexes.keySet())
+         entries.put(fldname, new ArrayList<>());
+      ts = new TableScan(tx, tblname, layout);
+      int count = 0;
+      while (src.next()) {
+         ts.insert();
+         for (String fldname : layout.schema().fields())
+            ts.setVal(fldname, src.getVal(fldname));
+         RID rid = ts.getRid();
+         for (String fldname : indexes.keySet())
+            entries.get(fldname).add(new AbstractMap.SimpleEntry<>(src.getVal(fldname), rid));
+         count++;
+      }
+      ts.close();
+      src.close();
+      buildIndexes(indexes, entries);
+      mdm.setClusteredIndex(tblname, data.indexName(), count, tx);
+      return count;
+   }
+   
+   /**
+    * Insert the specified index records into each index,
+    * in key order, so that successive insertions
+    * go to the same index blocks.
+    */
+   private void buildIndexes(Map<String,IndexInfo> indexes,
+                             Map<String,List<Map.Entry<Constant,RID>>> entries) {
+      for (String fldname : indexes.keySet()) {
+         List<Map.Entry<Constant,RID>> list = entries.get(fldname);
+         list.sort(Map.Entry.comparingByKey());
+         Index idx = indexes.get(fldname).open();
+         for (Map.Entry<Constant,RID> e : list)
+            idx.insert(e.getKey(), e.getValue());
+         idx.close();
+      }
+   }
 }
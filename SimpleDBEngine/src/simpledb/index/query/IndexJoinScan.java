@@ -15,8 +15,9 @@ import simpledb.query.*;
 public class IndexJoinScan implements Scan {
    private Scan lhs;
    private Index idx;
-   private String joinfield;
+   private int joincol;
    private TableScan rhs;  
+   private FieldRouter router;
    
    /**
     * Creates an index join scan for the specified LHS scan and 
@@ -30,8 +31,9 @@ public class IndexJoinScan implements Scan {
    public IndexJoinScan(Scan lhs, Index idx, String joinfield, TableScan rhs, String opr) {
       this.lhs = lhs;
       this.idx  = idx;
-      this.joinfield = joinfield;
+      this.joincol = lhs.indexOf(joinfield);
       this.rhs = rhs;
+      router = new FieldRouter(rhs, lhs);
       
       // store the operator in index if it is B+ Tree
       if (idx.getClass().getSimpleName().equals("BTreeIndex")) {
@@ -78,10 +80,7 @@ public class IndexJoinScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public int getInt(String fldname) {
-      if (rhs.hasField(fldname))
-         return rhs.getInt(fldname);
-      else  
-         return lhs.getInt(fldname);
+      return getInt(indexOf(fldname));
    }
    
    /**
@@ -89,10 +88,7 @@ public class IndexJoinScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
-      if (rhs.hasField(fldname))
-         return rhs.getVal(fldname);
-      else
-         return lhs.getVal(fldname);
+      return getVal(indexOf(fldname));
    }
    
    /**
@@ -100,17 +96,35 @@ public class IndexJoinScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public String getString(String fldname) {
-      if (rhs.hasField(fldname))
-         return rhs.getString(fldname);
-      else
-         return lhs.getString(fldname);
+      return getString(indexOf(fldname));
    }
    
    /** Returns true if the field is in the schema.
      * @see simpledb.query.Scan#hasField(java.lang.String)
      */
    public boolean hasField(String fldname) {
-      return rhs.hasField(fldname) || lhs.hasField(fldname);
+      return indexOf(fldname) >= 0;
+   }
+   
+   /**
+    * Returns the position of the specified field,
+    * which also says which scan contains it.
+    * @see simpledb.query.Scan#indexOf(java.lang.String)
+    */
+   public int indexOf(String fldname) {
+      return router.indexOf(fldname);
+   }
+   
+   public int getInt(int col) {
+      return router.scan(col).getInt(router.column(col));
+   }
+   
+   public String getString(int col) {
+      return router.scan(col).getString(router.column(col));
+   }
+   
+   public Constant getVal(int col) {
+      return router.scan(col).getVal(router.column(col));
    }
    
    /**
@@ -124,7 +138,7 @@ public class IndexJoinScan implements Scan {
    }
 
    private void resetIndex() {
-      Constant searchkey = lhs.getVal(joinfield);
+      Constant searchkey = lhs.getVal(joincol);
       idx.beforeFirst(searchkey);
    }
 }
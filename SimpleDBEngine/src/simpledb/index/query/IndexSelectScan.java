@@ -86,6 +86,38 @@ public class IndexSelectScan implements Scan {
       return ts.getVal(fldname);
    }
    
+   /**
+    * Returns the position of the field in the data record.
+    * @see simpledb.query.Scan#indexOf(java.lang.String)
+    */
+   public int indexOf(String fldname) {
+      return ts.indexOf(fldname);
+   }
+   
+   /**
+    * Returns the value of the field of the current data record.
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int col) {
+      return ts.getInt(col);
+   }
+   
+   /**
+    * Returns the value of the field of the current data record.
+    * @see simpledb.query.Scan#getString(int)
+    */
+   public String getString(int col) {
+      return ts.getString(col);
+   }
+   
+   /**
+    * Returns the value of the field of the current data record.
+    * @see simpledb.query.Scan#getVal(int)
+    */
+   public Constant getVal(int col) {
+      return ts.getVal(col);
+   }
+   
    /**
     * Returns whether the data record has the specified field.
     * @see simpledb.query.Scan#hasField(java.lang.String)
@@ -15,6 +15,7 @@ class EmbeddedConnection extends ConnectionAdapter {
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
 
    /**
     * Creates a connection
@@ -46,7 +47,7 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void commit() throws SQLException {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 
    /**
@@ -54,7 +55,22 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void rollback() throws SQLException {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   /**
+    * Puts the connection in read-only mode, or takes it out.
+    * The current transaction is committed, and the next one
+    * is created in the new mode. Read-only transactions
+    * read a snapshot of the database without locking.
+    */
+   public void setReadOnly(boolean readOnly) throws SQLException {
+      this.readOnly = readOnly;
+      commit();
+   }
+
+   public boolean isReadOnly() throws SQLException {
+      return readOnly;
    }
 
    /**
@@ -65,5 +81,9 @@ class EmbeddedConnection extends ConnectionAdapter {
    Transaction getTransaction() {  
       return currentTx;
    }
+
+   private Transaction newTx() {
+      return readOnly ? db.newReadOnlyTx() : db.newTx();
+   }
 }
 
@@ -42,6 +42,8 @@ class EmbeddedStatement extends StatementAdapter {
     * Rolls back and throws an SQLException on an error.
     */
    public int executeUpdate(String cmd) throws SQLException {
+      if (conn.isReadOnly())
+         throw new SQLException("connection is read-only");
       try {
          Transaction tx = conn.getTransaction();
          int result = planner.executeUpdate(cmd, tx);
@@ -43,14 +43,16 @@ public class LogMgr {
     * Ensures that the log record corresponding to the
     * specified LSN has been written to disk.
     * All earlier log records will also be written to disk.
+    * Writers of different records flush the log concurrently,
+    * so the page is written while no record is being appended.
     * @param lsn the LSN of a log record
     */
-   public void flush(int lsn) {
+   public synchronized void flush(int lsn) {
       if (lsn >= lastSavedLSN)
          flush();
    }
 
-   public Iterator<byte[]> iterator() {
+   public synchronized Iterator<byte[]> iterator() {
       flush();
       return new LogIterator(fm, currentblk);
    }
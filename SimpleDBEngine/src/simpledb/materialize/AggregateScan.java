@@ -3,9 +3,15 @@ package simpledb.materialize;
 import java.util.*;
 
 import simpledb.query.*;
+import simpledb.record.ParallelScan;
 
 /**
  * The Scan class for the <i>aggregate</i> operator.
+ * If the underlying scan can produce batches, the functions
+ * aggregate a batch at a time, over its vectors.
+ * If it is a parallel scan, each of its workers aggregates its
+ * share of the records with copies of the functions,
+ * whose values are then merged.
  * 
  * @author Edward Sciore
  */
@@ -13,6 +19,9 @@ public class AggregateScan implements Scan {
 	private Scan s;
 	private List<AggregationFn> aggfns;
 	private boolean aggnext;
+	private BatchScan batches;
+	private Batch batch;
+	private ParallelScan parallel;
 
 	/**
 	 * Create an aggregate scan, given a aggregate table scan.
@@ -23,19 +32,38 @@ public class AggregateScan implements Scan {
 	public AggregateScan(Scan s, List<AggregationFn> aggfns) {
 		this.s = s;
 		this.aggfns = aggfns;
+		if (s instanceof ParallelScan)
+			parallel = (ParallelScan) s;
+		else if (s instanceof BatchScan && ((BatchScan) s).producesBatches()) {
+			batches = (BatchScan) s;
+			Set<String> fields = new HashSet<>();
+			for (AggregationFn fn : aggfns)
+				fields.add(fn.aggregatedField());
+			batches.useFields(fields);
+		}
 		beforeFirst();
 	}
 
 	/**
 	 * Position the scan before the first group. Internally, the underlying scan is
 	 * always positioned at the first record of a group, which means that this
-	 * method moves to the first underlying record.
+	 * method moves to the first underlying record,
+	 * or reads the first batch.
+	 * The workers of a parallel scan are not started until
+	 * the aggregates are needed.
 	 * 
 	 * @see simpledb.query.Scan#beforeFirst()
 	 */
 	public void beforeFirst() {
 		s.beforeFirst();
-		aggnext = s.next();
+		if (parallel != null)
+			aggnext = true;
+		else if (batches != null) {
+			batch = batches.nextBatch();
+			aggnext = (batch != null);
+		}
+		else
+			aggnext = s.next();
 	}
 
 	/**
@@ -43,12 +71,29 @@ public class AggregateScan implements Scan {
 	 * For each aggregation function, process the first tuple, and process each of the next aggregation functions
 	 * while there are tuples remaining in the scan.
 	 * Returns false when there are no more tuples.
+	 * Batches are given to each function in turn.
+	 * The partial aggregates of parallel workers are merged.
 	 * 
 	 * @see simpledb.query.Scan#next()
 	 */
 	public boolean next() {
 		if (!aggnext)
 			return false;
+		if (parallel != null) {
+			aggnext = false;
+			return mergePartials();
+		}
+		if (batches != null) {
+			boolean first = true;
+			while (batch != null) {
+				for (AggregationFn fn : aggfns)
+					fn.processBatch(batch, first);
+				first = false;
+				batch = batches.nextBatch();
+			}
+			aggnext = false;
+			return true;
+		}
 		for (AggregationFn fn : aggfns) {
 			fn.processFirst(s);
 		}
@@ -61,6 +106,41 @@ public class AggregateScan implements Scan {
 
 	}
 
+	/**
+	 * Have each worker of the parallel scan aggregate its share
+	 * of the records with copies of the functions, and merge the
+	 * copies of the workers that found records into the functions.
+	 * Return false if no worker did.
+	 */
+	private boolean mergePartials() {
+		List<List<AggregationFn>> parts = parallel.eachWorker(w -> {
+			List<AggregationFn> copies = null;
+			while (w.next()) {
+				if (copies == null) {
+					copies = new ArrayList<>();
+					for (AggregationFn fn : aggfns) {
+						AggregationFn copy = fn.copy();
+						copy.processFirst(w);
+						copies.add(copy);
+					}
+				}
+				else
+					for (AggregationFn copy : copies)
+						copy.processNext(w);
+			}
+			return copies;
+		});
+		boolean first = true;
+		for (List<AggregationFn> copies : parts) {
+			if (copies == null)
+				continue;
+			for (int i = 0; i < aggfns.size(); i++)
+				aggfns.get(i).merge(copies.get(i), first);
+			first = false;
+		}
+		return !first;
+	}
+
 	/**
 	 * Close the scan by closing the underlying scan.
 	 * 
@@ -79,10 +159,10 @@ public class AggregateScan implements Scan {
 	 * @see simpledb.query.Scan#getVal(java.lang.String)
 	 */
 	public Constant getVal(String fldname) {
-		for (AggregationFn fn : aggfns)
-			if (fn.fieldName().equals(fldname))
-				return fn.value();
-		throw new RuntimeException("field " + fldname + " not found.");
+		int col = indexOf(fldname);
+		if (col < 0)
+			throw new RuntimeException("field " + fldname + " not found.");
+		return getVal(col);
 	}
 
 	/**
@@ -114,9 +194,44 @@ public class AggregateScan implements Scan {
 	 * @see simpledb.query.Scan#hasField(java.lang.String)
 	 */
 	public boolean hasField(String fldname) {
-		for (AggregationFn fn : aggfns)
-			if (fn.fieldName().equals(fldname))
-				return true;
-		return false;
+		return indexOf(fldname) >= 0;
+	}
+
+	/**
+	 * Return the position of the specified field,
+	 * which is the position of its aggregation function in the list.
+	 * 
+	 * @param fldname the field name to look up
+	 * @see simpledb.query.Scan#indexOf(java.lang.String)
+	 */
+	public int indexOf(String fldname) {
+		for (int i = 0; i < aggfns.size(); i++)
+			if (aggfns.get(i).fieldName().equals(fldname))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Get the Constant value of the aggregation function at the specified position.
+	 * 
+	 * @param col the position of the field
+	 * @see simpledb.query.Scan#getVal(int)
+	 */
+	public Constant getVal(int col) {
+		return aggfns.get(col).value();
+	}
+
+	/**
+	 * @see simpledb.query.Scan#getInt(int)
+	 */
+	public int getInt(int col) {
+		return getVal(col).asInt();
+	}
+
+	/**
+	 * @see simpledb.query.Scan#getString(int)
+	 */
+	public String getString(int col) {
+		return getVal(col).asString();
 	}
 }
@@ -23,6 +23,37 @@ public interface AggregationFn {
     */
    void processNext(Scan s);
    
+   /**
+    * Use the records of the specified batch
+    * to be the next records in the group,
+    * or the first records if the batch starts the group.
+    * @param b the batch, which holds at least one record
+    * @param first true if the batch starts the group
+    */
+   void processBatch(Batch b, boolean first);
+   
+   /**
+    * Return a new function of the same kind over the same field,
+    * with which part of the records can be aggregated separately.
+    * @return the new function
+    */
+   AggregationFn copy();
+   
+   /**
+    * Combine the value computed by a copy of this function
+    * over other records of the group with this function's value,
+    * or take it as the value if the records start the group.
+    * @param part the copy, which has aggregated at least one record
+    * @param first true if the records of the copy start the group
+    */
+   void merge(AggregationFn part, boolean first);
+   
+   /**
+    * Return the name of the field that the function aggregates.
+    * @return the name of the aggregated field
+    */
+   String aggregatedField();
+   
    /**
     * Return the name of the new aggregation field.
     * @return the name of the new aggregation field
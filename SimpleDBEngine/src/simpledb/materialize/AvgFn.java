@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.query.Batch;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
 
@@ -40,6 +41,55 @@ public class AvgFn implements AggregationFn {
 	      sum += s.getInt(fldname);
 	   }
 	   
+	   /**
+	    * Add the field values of the batch's records to the sum
+	    * and count them, starting anew if the batch starts the group.
+	    * @see simpledb.materialize.AggregationFn#processBatch(simpledb.query.Batch, boolean)
+	    */
+	   public void processBatch(Batch b, boolean first) {
+	      int[] vals = b.ints(b.indexOf(fldname));
+	      int[] sel = b.selection();
+	      if (first) {
+	         count = 0;
+	         sum = 0;
+	      }
+	      for (int i=0; i<b.size(); i++)
+	         sum += vals[sel[i]];
+	      count += b.size();
+	   }
+	   
+	   /**
+	    * Return a new avg function over the same field.
+	    * @see simpledb.materialize.AggregationFn#copy()
+	    */
+	   public AggregationFn copy() {
+	      return new AvgFn(fldname);
+	   }
+	   
+	   /**
+	    * Add the sum and count of a copy of the function to this
+	    * sum and count, or take them if its records start the group,
+	    * so that the average is that of all the records.
+	    * @see simpledb.materialize.AggregationFn#merge(simpledb.materialize.AggregationFn, boolean)
+	    */
+	   public void merge(AggregationFn part, boolean first) {
+	      AvgFn other = (AvgFn) part;
+	      if (first) {
+	         count = 0;
+	         sum = 0;
+	      }
+	      count += other.count;
+	      sum += other.sum;
+	   }
+	   
+	   /**
+	    * Return the name of the aggregated field.
+	    * @see simpledb.materialize.AggregationFn#aggregatedField()
+	    */
+	   public String aggregatedField() {
+	      return fldname;
+	   }
+	   
 	   /**
 	    * Return the field's name, prepended by "avg".
 	    * @see simpledb.materialize.AggregationFn#fieldName()
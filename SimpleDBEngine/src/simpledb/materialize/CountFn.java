@@ -40,6 +40,40 @@ public class CountFn implements AggregationFn {
       count++;
    }
    
+   /**
+    * Count the records of the batch, which are the
+    * first records of the group if it starts the group.
+    * @see simpledb.materialize.AggregationFn#processBatch(simpledb.query.Batch, boolean)
+    */
+   public void processBatch(Batch b, boolean first) {
+      count = (first ? 0 : count) + b.size();
+   }
+   
+   /**
+    * Return a new count function over the same field.
+    * @see simpledb.materialize.AggregationFn#copy()
+    */
+   public AggregationFn copy() {
+      return new CountFn(fldname);
+   }
+   
+   /**
+    * Add the count of a copy of the function to this count,
+    * or take it as the count if its records start the group.
+    * @see simpledb.materialize.AggregationFn#merge(simpledb.materialize.AggregationFn, boolean)
+    */
+   public void merge(AggregationFn part, boolean first) {
+      count = (first ? 0 : count) + ((CountFn) part).count;
+   }
+   
+   /**
+    * Return the name of the aggregated field.
+    * @see simpledb.materialize.AggregationFn#aggregatedField()
+    */
+   public String aggregatedField() {
+      return fldname;
+   }
+   
    /**
     * Return the field's name, prepended by "countof".
     * @see simpledb.materialize.AggregationFn#fieldName()
@@ -143,6 +143,50 @@ public class DistinctScan implements Scan {
 		return s1.getVal(fldname);
 	}
 
+	/**
+	 * Return the position of the specified field in the underlying scan.
+	 * 
+	 * @param fldname the field name
+	 * @see simpledb.query.Scan#indexOf(java.lang.String)
+	 * @return returns the position of the field, or -1 if there is none
+	 */
+	public int indexOf(String fldname) {
+		return s1.indexOf(fldname);
+	}
+
+	/**
+	 * Return the integer value of the field at the specified position. 
+	 * 
+	 * @param col the field position
+	 * @see simpledb.query.Scan#getInt(int)
+	 * @return returns the integer value of the field
+	 */
+	public int getInt(int col) {
+		return s1.getInt(col);
+	}
+
+	/**
+	 * Return the string value of the field at the specified position. 
+	 * 
+	 * @param col the field position
+	 * @see simpledb.query.Scan#getString(int)
+	 * @return returns the string value of the field
+	 */
+	public String getString(int col) {
+		return s1.getString(col);
+	}
+
+	/**
+	 * Return the value of the field at the specified position. 
+	 * 
+	 * @param col the field position
+	 * @see simpledb.query.Scan#getVal(int)
+	 * @return returns the value of the field
+	 */
+	public Constant getVal(int col) {
+		return s1.getVal(col);
+	}
+
 	/**
 	 * Return true if the specified field is in the underlying scans.
 	 * 
@@ -23,13 +23,29 @@ public class GroupByPlan implements Plan {
     * collection of group fields,
     * and the aggregation is computed by the
     * specified collection of aggregation functions.
+    * The records are sorted on the group fields.
     * @param p a plan for the underlying query
     * @param groupfields the group fields
     * @param aggfns the aggregation functions
     * @param tx the calling transaction
     */
-   public GroupByPlan(Transaction tx, Plan p, List<String> fields, List<String> groupfields, List<AggregationFn> aggfns, List<String> aggOrder) { // [sname, majorid, gradyear]
-      this.p = new SortPlan(tx, p, groupfields);
+   public GroupByPlan(Transaction tx, Plan p, List<String> fields, List<String> groupfields, List<AggregationFn> aggfns, List<String> aggOrder) {
+      this(tx, p, fields, groupfields, aggfns, aggOrder, true);
+   }
+
+   /**
+    * Create a groupby plan for the underlying query,
+    * whose records are sorted on the group fields only if specified.
+    * The planner leaves unsorted the records read by a
+    * parallel plan, whose workers group them by hashing.
+    * @param p a plan for the underlying query
+    * @param groupfields the group fields
+    * @param aggfns the aggregation functions
+    * @param tx the calling transaction
+    * @param sort true if the records are to be sorted on the group fields
+    */
+   public GroupByPlan(Transaction tx, Plan p, List<String> fields, List<String> groupfields, List<AggregationFn> aggfns, List<String> aggOrder, boolean sort) { // [sname, majorid, gradyear]
+      this.p = sort ? new SortPlan(tx, p, groupfields) : p;
       this.groupfields = groupfields;
       this.aggfns = aggfns;
 
@@ -3,9 +3,14 @@ package simpledb.materialize;
 import java.util.*;
 
 import simpledb.query.*;
+import simpledb.record.ParallelScan;
 
 /**
  * The Scan class for the <i>groupby</i> operator.
+ * If the underlying scan is a parallel scan, each of its workers
+ * groups its share of the records by hashing, aggregating each
+ * group with copies of the functions; the groups of the workers
+ * are then merged, and returned in the order of their values.
  * @author Edward Sciore
  */
 public class GroupByScan implements Scan {
@@ -14,6 +19,11 @@ public class GroupByScan implements Scan {
    private List<AggregationFn> aggfns;
    private GroupValue groupval;
    private boolean moregroups;
+   private List<AggregationFn> fns;  // the functions holding the values of the current group
+   private ParallelScan parallel;
+   private List<GroupValue> groupvals;
+   private List<List<AggregationFn>> groupfns;
+   private int groupnum;
    
    /**
     * Create a groupby scan, given a grouped table scan.
@@ -25,6 +35,9 @@ public class GroupByScan implements Scan {
       this.s = s;
       this.groupfields = groupfields;
       this.aggfns = aggfns;
+      fns = aggfns;
+      if (s instanceof ParallelScan)
+         parallel = (ParallelScan) s;
       beforeFirst();
    }
    
@@ -34,11 +47,18 @@ public class GroupByScan implements Scan {
     * positioned at the first record of a group, which 
     * means that this method moves to the
     * first underlying record.
+    * The workers of a parallel scan are not started
+    * until the groups are needed.
     * @see simpledb.query.Scan#beforeFirst()
     */
    public void beforeFirst() {
       s.beforeFirst();
-      moregroups = s.next();
+      if (parallel != null) {
+         groupvals = null;
+         moregroups = true;
+      }
+      else
+         moregroups = s.next();
    }
    
    /**
@@ -50,11 +70,15 @@ public class GroupByScan implements Scan {
     * The aggregation functions are called for each record
     * in the group. 
     * The values of the grouping fields for the group are saved.
+    * Over a parallel scan, the method moves to the next
+    * of the groups merged from the workers.
     * @see simpledb.query.Scan#next()
     */
    public boolean next() {
       if (!moregroups)
          return false;
+      if (parallel != null)
+         return nextMergedGroup();
       if (aggfns != null) {
     	  for (AggregationFn fn : aggfns) {
     		  fn.processFirst(s);
@@ -63,8 +87,7 @@ public class GroupByScan implements Scan {
       
       groupval = new GroupValue(s, groupfields);
       while(moregroups = s.next()) {
-         GroupValue gv = new GroupValue(s, groupfields);
-         if (!groupval.equals(gv))
+         if (!groupval.matches(s))
             break;
          if (aggfns != null) {
         	 for (AggregationFn fn : aggfns)
@@ -91,12 +114,10 @@ public class GroupByScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
-      if (groupfields.contains(fldname))
-         return groupval.getVal(fldname);
-      for (AggregationFn fn : aggfns)
-         if (fn.fieldName().equals(fldname))
-         return fn.value();
-      throw new RuntimeException("field " + fldname + " not found.");
+      int col = indexOf(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return getVal(col);
    }
    
    /**
@@ -123,17 +144,129 @@ public class GroupByScan implements Scan {
       return getVal(fldname).asString();
    }
    
+   /**
+    * Return the position of the specified field.
+    * The grouping fields come first, in order,
+    * followed by the fields of the aggregation functions.
+    * @see simpledb.query.Scan#indexOf(java.lang.String)
+    */
+   public int indexOf(String fldname) {
+      int col = groupfields.indexOf(fldname);
+      if (col >= 0)
+         return col;
+      if (aggfns != null)
+         for (int i=0; i<aggfns.size(); i++)
+            if (aggfns.get(i).fieldName().equals(fldname))
+               return groupfields.size() + i;
+      return -1;
+   }
+   
+   /**
+    * Get the Constant value of the field at the specified position,
+    * either from the saved group value or from
+    * the appropriate aggregation function.
+    * @see simpledb.query.Scan#getVal(int)
+    */
+   public Constant getVal(int col) {
+      if (col < groupfields.size())
+         return groupval.getVal(groupfields.get(col));
+      return fns.get(col - groupfields.size()).value();
+   }
+   
+   /**
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int col) {
+      return getVal(col).asInt();
+   }
+   
+   /**
+    * @see simpledb.query.Scan#getString(int)
+    */
+   public String getString(int col) {
+      return getVal(col).asString();
+   }
+   
    /** Return true if the specified field is either a 
     * grouping field or created by an aggregation function.
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
    public boolean hasField(String fldname) {
-      if (groupfields.contains(fldname))
-         return true;
-      for (AggregationFn fn : aggfns)
-         if (fn.fieldName().equals(fldname))
-         return true;
-      return false;
+      return indexOf(fldname) >= 0;
+   }
+
+   /**
+    * Move to the next group merged from the workers
+    * of the parallel scan, merging them first if necessary.
+    */
+   private boolean nextMergedGroup() {
+      if (groupvals == null)
+         mergePartials();
+      groupnum++;
+      if (groupnum >= groupvals.size()) {
+         moregroups = false;
+         return false;
+      }
+      groupval = groupvals.get(groupnum);
+      fns = groupfns.get(groupnum);
+      return true;
    }
-}
 
+   /**
+    * Have each worker of the parallel scan group its share of
+    * the records in a hash table, aggregating each group with
+    * copies of the functions, and merge the groups of the workers.
+    * The merged groups are sorted by their values,
+    * as they would be by the sort beneath a serial grouping.
+    */
+   private void mergePartials() {
+      List<AggregationFn> prototypes = (aggfns == null) ? Collections.emptyList() : aggfns;
+      List<Map<GroupValue,List<AggregationFn>>> parts = parallel.eachWorker(w -> {
+         Map<GroupValue,List<AggregationFn>> groups = new HashMap<>();
+         GroupValue gv = null;
+         List<AggregationFn> copies = null;
+         while (w.next()) {
+            // consecutive records often share a group
+            if (gv == null || !gv.matches(w)) {
+               gv = new GroupValue(w, groupfields);
+               copies = groups.get(gv);
+               if (copies == null) {
+                  copies = new ArrayList<>();
+                  for (AggregationFn fn : prototypes) {
+                     AggregationFn copy = fn.copy();
+                     copy.processFirst(w);
+                     copies.add(copy);
+                  }
+                  groups.put(gv, copies);
+                  continue;
+               }
+            }
+            for (AggregationFn copy : copies)
+               copy.processNext(w);
+         }
+         return groups;
+      });
+      Map<GroupValue,List<AggregationFn>> merged = new HashMap<>();
+      for (Map<GroupValue,List<AggregationFn>> part : parts) {
+         for (Map.Entry<GroupValue,List<AggregationFn>> e : part.entrySet()) {
+            List<AggregationFn> copies = merged.putIfAbsent(e.getKey(), e.getValue());
+            if (copies != null)
+               for (int i=0; i<copies.size(); i++)
+                  copies.get(i).merge(e.getValue().get(i), false);
+         }
+      }
+      groupvals = new ArrayList<>(merged.keySet());
+      groupvals.sort((gv1, gv2) -> {
+         for (String fldname : groupfields) {
+            int result = gv1.getVal(fldname).compareTo(gv2.getVal(fldname));
+            if (result != 0)
+               return result;
+         }
+         return 0;
+      });
+      groupfns = new ArrayList<>();
+      for (GroupValue gv : groupvals)
+         groupfns.add(merged.get(gv));
+      groupnum = -1;
+   }
+}
@@ -10,6 +10,7 @@ import simpledb.query.*;
  * @author Edward Sciore
  */
 public class GroupValue {
+   private List<String> fields;
    private Map<String,Constant> vals = new HashMap<>();
    
    /**
@@ -21,6 +22,7 @@ public class GroupValue {
     * @param fields the list of fields
     */
    public GroupValue(Scan s, List<String> fields) {
+      this.fields = fields;
       vals = new HashMap<String,Constant>();
       for (String fldname : fields)
          vals.put(fldname, s.getVal(fldname));
@@ -35,6 +37,25 @@ public class GroupValue {
       return vals.get(fldname);
    }
    
+   /**
+    * Return true if the current record of the specified scan
+    * has the values of this group.
+    * The values are read from the scan as ints or strings,
+    * so that testing each record of a group
+    * does not create a group value of its own.
+    * @param s a scan
+    * @return true if the scan's current record is in the group
+    */
+   public boolean matches(Scan s) {
+      for (int i=0; i<fields.size(); i++) {
+         String fldname = fields.get(i);
+         Constant v = vals.get(fldname);
+         if (v.isInt() ? s.getInt(fldname) != v.asInt() : !s.getString(fldname).equals(v.asString()))
+            return false;
+      }
+      return true;
+   }
+   
    /** 
     * Two GroupValue objects are equal if they have the same values
     * for their grouping fields. 
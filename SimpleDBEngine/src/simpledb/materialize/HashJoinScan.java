@@ -21,7 +21,8 @@ import simpledb.tx.Transaction;
 public class HashJoinScan implements Scan {
 	private UpdateScan s1;
 	private UpdateScan s2;
-	private String fldname1, fldname2;
+	private String fldname1;
+	private int col1, col2;
 	private Transaction tx;
 	private List<RID> savedposition = null;
 	private int hashval = 0;
@@ -44,13 +45,14 @@ public class HashJoinScan implements Scan {
 	public HashJoinScan(Transaction tx, HashMap<Integer, TempTable> p1, HashMap<Integer, TempTable> p2, String fldname1,
 			String fldname2, Schema sch) {
 		this.fldname1 = fldname1;
-		this.fldname2 = fldname2;
 		this.tx = tx;
 		this.hashval = tx.availableBuffs() - 2; // new hash value is B - 2
 		this.keyIndex = 0;
 		this.sch = sch;
 		this.p1 = p1;
 		this.p2 = p2;
+		this.col1 = sch.indexOf(fldname1);
+		this.col2 = p2.get(0).getLayout().schema().indexOf(fldname2);
 		h1 = new HashMap<>();
 		
 		// create empty TempTables for each hash value and initialize into h1
@@ -176,17 +178,17 @@ public class HashJoinScan implements Scan {
 	            restorePosition();
 				int hash2 = 0;
 				try {
-					int joinval2 = this.s2.getInt(fldname2);
+					int joinval2 = this.s2.getInt(col2);
 					hash2 = joinval2 % hashval;
 
 				} catch (NumberFormatException e) { // not an int
-					String joinval2 = this.s2.getString(fldname2);
+					String joinval2 = this.s2.getString(col2);
 					hash2 = ((joinval2 == null) ? 0 : joinval2.hashCode()) % hashval;
 
 				}
 				
 				while (this.s1.next()) {
-                    if (this.s1.getVal(fldname1).compareTo(this.s2.getVal(fldname2)) == 0) { // match on joinval
+                    if (this.s1.getVal(col1).compareTo(this.s2.getVal(col2)) == 0) { // match on joinval
                         // need to copy in the values
                     	for (String field : this.p2.get(this.keyIndex).getLayout().schema().fields()) {
                     		this.s1.setVal(field, this.s2.getVal(field));
@@ -203,11 +205,11 @@ public class HashJoinScan implements Scan {
 			while (hasmore2 = this.s2.next()) { // while there are more tuples in s2
 				int hash2 = 0;
 				try {
-					int joinval2 = this.s2.getInt(fldname2);
+					int joinval2 = this.s2.getInt(col2);
 					hash2 = joinval2 % hashval;
 
 				} catch (NumberFormatException e) { // not an int
-					String joinval2 = this.s2.getString(fldname2);
+					String joinval2 = this.s2.getString(col2);
 					hash2 = ((joinval2 == null) ? 0 : joinval2.hashCode()) % hashval;
 
 				}
@@ -216,7 +218,7 @@ public class HashJoinScan implements Scan {
 				this.s1.beforeFirst();
 				boolean hasmore1;
 				while (hasmore1 = this.s1.next()) {
-                    if (this.s1.getVal(fldname1).compareTo(this.s2.getVal(fldname2)) == 0) { // match on joinval
+                    if (this.s1.getVal(col1).compareTo(this.s2.getVal(col2)) == 0) { // match on joinval
                         // need to copy in the values
                     	for (String field : this.p2.get(this.keyIndex).getLayout().schema().fields()) {
                     		this.s1.setVal(field, this.s2.getVal(field));
@@ -253,47 +255,83 @@ public class HashJoinScan implements Scan {
 
 	/**
 	 * Return the integer value of the specified field. The value is obtained from
-	 * whichever scan contains the field.
+	 * the joined record, which holds the fields of both scans.
 	 * 
 	 * @param fldname the field name
 	 * @see simpledb.query.Scan#getInt(java.lang.String)
 	 * @return returns the integer value of the specified field in either underlying scan
 	 */
 	public int getInt(String fldname) {
-		if (s1.hasField(fldname))
-			return s1.getInt(fldname);
-		else
-			return s2.getInt(fldname);
+		return getInt(indexOf(fldname));
 	}
 
 	/**
 	 * Return the string value of the specified field. The value is obtained from
-	 * whichever scan contains the field.
+	 * the joined record, which holds the fields of both scans.
 	 * 
 	 * @param fldname the field name
 	 * @see simpledb.query.Scan#getString(java.lang.String)
 	 * @return returns the String value of the specified field in either underlying scan
 	 */
 	public String getString(String fldname) {
-		if (s1.hasField(fldname))
-			return s1.getString(fldname);
-		else
-			return s2.getString(fldname);
+		return getString(indexOf(fldname));
 	}
 
 	/**
-	 * Return the value of the specified field. The value is obtained from whichever
-	 * scan contains the field.
+	 * Return the value of the specified field. The value is obtained from the
+	 * joined record, which holds the fields of both scans.
 	 * 
 	 * @param fldname the field name
 	 * @see simpledb.query.Scan#getVal(java.lang.String)
 	 * @return returns the value of the specified field in either underlying scan
 	 */
 	public Constant getVal(String fldname) {
-		if (s1.hasField(fldname))
-			return s1.getVal(fldname);
-		else
-			return s2.getVal(fldname);
+		return getVal(indexOf(fldname));
+	}
+
+	/**
+	 * Return the position of the specified field in the schema of the join,
+	 * which is also its position in the joined record.
+	 * 
+	 * @param fldname the field name
+	 * @see simpledb.query.Scan#indexOf(java.lang.String)
+	 * @return returns the position of the field, or -1 if there is none
+	 */
+	public int indexOf(String fldname) {
+		return sch.indexOf(fldname);
+	}
+
+	/**
+	 * Return the integer value of the field at the specified position.
+	 * 
+	 * @param col the field position
+	 * @see simpledb.query.Scan#getInt(int)
+	 * @return returns the integer value of the field
+	 */
+	public int getInt(int col) {
+		return s1.getInt(col);
+	}
+
+	/**
+	 * Return the string value of the field at the specified position.
+	 * 
+	 * @param col the field position
+	 * @see simpledb.query.Scan#getString(int)
+	 * @return returns the String value of the field
+	 */
+	public String getString(int col) {
+		return s1.getString(col);
+	}
+
+	/**
+	 * Return the value of the field at the specified position.
+	 * 
+	 * @param col the field position
+	 * @see simpledb.query.Scan#getVal(int)
+	 * @return returns the value of the field
+	 */
+	public Constant getVal(int col) {
+		return s1.getVal(col);
 	}
 
 	/**
@@ -304,6 +342,6 @@ public class HashJoinScan implements Scan {
 	 * @return returns if either field contains the fieldname
 	 */
 	public boolean hasField(String fldname) {
-		return s1.hasField(fldname) || s2.hasField(fldname);
+		return indexOf(fldname) >= 0;
 	}
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import static java.sql.Types.INTEGER;
 import simpledb.query.*;
 
 /**
@@ -38,6 +39,59 @@ public class MaxFn implements AggregationFn {
          val = newval;
    }
    
+   /**
+    * Replace the current maximum by the highest field value
+    * of the batch's records, if it is higher, or by that value
+    * if the batch starts the group.
+    * @see simpledb.materialize.AggregationFn#processBatch(simpledb.query.Batch, boolean)
+    */
+   public void processBatch(Batch b, boolean first) {
+      int col = b.indexOf(fldname);
+      int[] sel = b.selection();
+      if (b.type(col) == INTEGER) {
+         int[] vals = b.ints(col);
+         int max = first ? vals[sel[0]] : val.asInt();
+         for (int i=0; i<b.size(); i++)
+            max = Math.max(max, vals[sel[i]]);
+         val = new Constant(max);
+      }
+      else {
+         String[] vals = b.strings(col);
+         String max = first ? vals[sel[0]] : val.asString();
+         for (int i=0; i<b.size(); i++)
+            if (vals[sel[i]].compareTo(max) > 0)
+               max = vals[sel[i]];
+         val = new Constant(max);
+      }
+   }
+   
+   /**
+    * Return a new max function over the same field.
+    * @see simpledb.materialize.AggregationFn#copy()
+    */
+   public AggregationFn copy() {
+      return new MaxFn(fldname);
+   }
+   
+   /**
+    * Replace the current maximum by that of a copy of the
+    * function, if it is higher or its records start the group.
+    * @see simpledb.materialize.AggregationFn#merge(simpledb.materialize.AggregationFn, boolean)
+    */
+   public void merge(AggregationFn part, boolean first) {
+      Constant newval = part.value();
+      if (first || newval.compareTo(val) > 0)
+         val = newval;
+   }
+   
+   /**
+    * Return the name of the aggregated field.
+    * @see simpledb.materialize.AggregationFn#aggregatedField()
+    */
+   public String aggregatedField() {
+      return fldname;
+   }
+   
    /**
     * Return the field's name, prepended by "maxof".
     * @see simpledb.materialize.AggregationFn#fieldName()
@@ -9,8 +9,10 @@ import simpledb.query.*;
 public class MergeJoinScan implements Scan {
    private Scan s1;
    private SortScan s2;
-   private String fldname1, fldname2;
+   private int col1, col2;
+   private FieldRouter router;
    private Constant joinval = null;
+   private Boolean intjoin = null;
    
    /**
     * Create a mergejoin scan for the two underlying sorted scans.
@@ -22,8 +24,9 @@ public class MergeJoinScan implements Scan {
    public MergeJoinScan(Scan s1, SortScan s2, String fldname1, String fldname2) {
       this.s1 = s1;
       this.s2 = s2;
-      this.fldname1 = fldname1;
-      this.fldname2 = fldname2;
+      col1 = s1.indexOf(fldname1);
+      col2 = s2.indexOf(fldname2);
+      router = new FieldRouter(s1, s2);
       beforeFirst();
    }
    
@@ -62,31 +65,51 @@ public class MergeJoinScan implements Scan {
     */
    public boolean next() {
       boolean hasmore2 = s2.next();
-      if (hasmore2 && joinval != null && s2.getVal(fldname2).equals(joinval))
+      if (hasmore2 && joinval != null && compare(s2, col2, joinval) == 0)
          return true;
       
       boolean hasmore1 = s1.next();
-      if (hasmore1 && joinval != null && s1.getVal(fldname1).equals(joinval)) {
+      if (hasmore1 && joinval != null && compare(s1, col1, joinval) == 0) {
          s2.restorePosition();
          return true;
       }
       
       while (hasmore1 && hasmore2) {
-         Constant v1 = s1.getVal(fldname1);
-         Constant v2 = s2.getVal(fldname2);
-         if (v1.compareTo(v2) < 0)
+         int cmp = compareJoinVals();
+         if (cmp < 0)
             hasmore1 = s1.next();
-         else if (v1.compareTo(v2) > 0)
+         else if (cmp > 0)
             hasmore2 = s2.next();
          else {
             s2.savePosition();
-            joinval = s2.getVal(fldname2);
+            joinval = s2.getVal(col2);
             return true;
          }
       }
       return false;
    }
    
+   /**
+    * Compare the join values of the current records of the two scans,
+    * reading them as ints or strings rather than as constants.
+    * The type of the join fields is learned from the first records compared.
+    */
+   private int compareJoinVals() {
+      if (intjoin == null)
+         intjoin = s1.getVal(col1).isInt();
+      return intjoin ? Integer.compare(s1.getInt(col1), s2.getInt(col2))
+                     : s1.getString(col1).compareTo(s2.getString(col2));
+   }
+   
+   /**
+    * Compare the join value of the current record of a scan
+    * with the saved join value.
+    */
+   private int compare(Scan s, int col, Constant val) {
+      return val.isInt() ? Integer.compare(s.getInt(col), val.asInt())
+                         : s.getString(col).compareTo(val.asString());
+   }
+   
    /** 
     * Return the integer value of the specified field.
     * The value is obtained from whichever scan
@@ -94,10 +117,7 @@ public class MergeJoinScan implements Scan {
     * @see simpledb.query.Scan#getInt(java.lang.String)
     */
    public int getInt(String fldname) {
-      if (s1.hasField(fldname))
-         return s1.getInt(fldname);
-      else
-         return s2.getInt(fldname);
+      return getInt(indexOf(fldname));
    }
    
    /** 
@@ -107,10 +127,7 @@ public class MergeJoinScan implements Scan {
     * @see simpledb.query.Scan#getString(java.lang.String)
     */
    public String getString(String fldname) {
-      if (s1.hasField(fldname))
-         return s1.getString(fldname);
-      else
-         return s2.getString(fldname);
+      return getString(indexOf(fldname));
    }
    
    /** 
@@ -120,10 +137,7 @@ public class MergeJoinScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
-      if (s1.hasField(fldname))
-         return s1.getVal(fldname);
-      else
-         return s2.getVal(fldname);
+      return getVal(indexOf(fldname));
    }
    
    /**
@@ -132,7 +146,28 @@ public class MergeJoinScan implements Scan {
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
    public boolean hasField(String fldname) {
-      return s1.hasField(fldname) || s2.hasField(fldname);
+      return indexOf(fldname) >= 0;
+   }
+   
+   /**
+    * Return the position of the specified field,
+    * which also says which scan contains it.
+    * @see simpledb.query.Scan#indexOf(java.lang.String)
+    */
+   public int indexOf(String fldname) {
+      return router.indexOf(fldname);
+   }
+   
+   public int getInt(int col) {
+      return router.scan(col).getInt(router.column(col));
+   }
+   
+   public String getString(int col) {
+      return router.scan(col).getString(router.column(col));
+   }
+   
+   public Constant getVal(int col) {
+      return router.scan(col).getVal(router.column(col));
    }
 }
 
@@ -1,5 +1,7 @@
 package simpledb.materialize;
 
+import static java.sql.Types.INTEGER;
+import simpledb.query.Batch;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
 
@@ -35,6 +37,59 @@ public class MinFn implements AggregationFn {
 	         val = newval;
 	   }
 	   
+	   /**
+	    * Replace the current minimum by the lowest field value
+	    * of the batch's records, if it is lower, or by that value
+	    * if the batch starts the group.
+	    * @see simpledb.materialize.AggregationFn#processBatch(simpledb.query.Batch, boolean)
+	    */
+	   public void processBatch(Batch b, boolean first) {
+	      int col = b.indexOf(fldname);
+	      int[] sel = b.selection();
+	      if (b.type(col) == INTEGER) {
+	         int[] vals = b.ints(col);
+	         int min = first ? vals[sel[0]] : val.asInt();
+	         for (int i=0; i<b.size(); i++)
+	            min = Math.min(min, vals[sel[i]]);
+	         val = new Constant(min);
+	      }
+	      else {
+	         String[] vals = b.strings(col);
+	         String min = first ? vals[sel[0]] : val.asString();
+	         for (int i=0; i<b.size(); i++)
+	            if (vals[sel[i]].compareTo(min) < 0)
+	               min = vals[sel[i]];
+	         val = new Constant(min);
+	      }
+	   }
+	   
+	   /**
+	    * Return a new min function over the same field.
+	    * @see simpledb.materialize.AggregationFn#copy()
+	    */
+	   public AggregationFn copy() {
+	      return new MinFn(fldname);
+	   }
+	   
+	   /**
+	    * Replace the current minimum by that of a copy of the
+	    * function, if it is lower or its records start the group.
+	    * @see simpledb.materialize.AggregationFn#merge(simpledb.materialize.AggregationFn, boolean)
+	    */
+	   public void merge(AggregationFn part, boolean first) {
+	      Constant newval = part.value();
+	      if (first || newval.compareTo(val) < 0)
+	         val = newval;
+	   }
+	   
+	   /**
+	    * Return the name of the aggregated field.
+	    * @see simpledb.materialize.AggregationFn#aggregatedField()
+	    */
+	   public String aggregatedField() {
+	      return fldname;
+	   }
+	   
 	   /**
 	    * Return the field's name, prepended by "minof".
 	    * @see simpledb.materialize.AggregationFn#fieldName()
@@ -14,7 +14,9 @@ import simpledb.record.RID;
 public class NestedLoopScan implements Scan {
 	private Scan s1;
 	private Scan s2;
-	private String fldname1, fldname2, opr;
+	private int col1, col2;
+	private String opr;
+	private FieldRouter router;
 	boolean hasmore1, hasmore2;
 	private List<RID> savedposition = null;
 
@@ -30,9 +32,10 @@ public class NestedLoopScan implements Scan {
 	public NestedLoopScan(Scan s1, Scan s2, String fldname1, String fldname2, String opr) {
 		this.s1 = s1;
 		this.s2 = s2;
-		this.fldname1 = fldname1;
-		this.fldname2 = fldname2;
+		col1 = s1.indexOf(fldname1);
+		col2 = s2.indexOf(fldname2);
 		this.opr = opr;
+		router = new FieldRouter(s1, s2);
 		beforeFirst();
 	}
 
@@ -97,8 +100,8 @@ public class NestedLoopScan implements Scan {
 
 		while (hasmore1) {
 			while (hasmore2 = s2.next()) {
-				Constant v1 = s1.getVal(fldname1);
-				Constant v2 = s2.getVal(fldname2);
+				Constant v1 = s1.getVal(col1);
+				Constant v2 = s2.getVal(col2);
 				if (joinCondition(v1, v2, this.opr)) {
 					return true;
 				}
@@ -116,10 +119,7 @@ public class NestedLoopScan implements Scan {
 	 * @see simpledb.query.Scan#getInt(java.lang.String)
 	 */
 	public int getInt(String fldname) {
-		if (s1.hasField(fldname))
-			return s1.getInt(fldname);
-		else
-			return s2.getInt(fldname);
+		return getInt(indexOf(fldname));
 	}
 
 	/**
@@ -129,10 +129,7 @@ public class NestedLoopScan implements Scan {
 	 * @see simpledb.query.Scan#getString(java.lang.String)
 	 */
 	public String getString(String fldname) {
-		if (s1.hasField(fldname))
-			return s1.getString(fldname);
-		else
-			return s2.getString(fldname);
+		return getString(indexOf(fldname));
 	}
 
 	/**
@@ -142,10 +139,7 @@ public class NestedLoopScan implements Scan {
 	 * @see simpledb.query.Scan#getVal(java.lang.String)
 	 */
 	public Constant getVal(String fldname) {
-		if (s1.hasField(fldname))
-			return s1.getVal(fldname);
-		else
-			return s2.getVal(fldname);
+		return getVal(indexOf(fldname));
 	}
 
 	/**
@@ -154,6 +148,28 @@ public class NestedLoopScan implements Scan {
 	 * @see simpledb.query.Scan#hasField(java.lang.String)
 	 */
 	public boolean hasField(String fldname) {
-		return s1.hasField(fldname) || s2.hasField(fldname);
+		return indexOf(fldname) >= 0;
+	}
+
+	/**
+	 * Return the position of the specified field, which also says which scan
+	 * contains it.
+	 * 
+	 * @see simpledb.query.Scan#indexOf(java.lang.String)
+	 */
+	public int indexOf(String fldname) {
+		return router.indexOf(fldname);
+	}
+
+	public int getInt(int col) {
+		return router.scan(col).getInt(router.column(col));
+	}
+
+	public String getString(int col) {
+		return router.scan(col).getString(router.column(col));
+	}
+
+	public Constant getVal(int col) {
+		return router.scan(col).getVal(router.column(col));
 	}
 }
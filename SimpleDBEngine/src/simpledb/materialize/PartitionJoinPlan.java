@@ -0,0 +1,192 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.tx.Transaction;
+import simpledb.plan.Plan;
+import simpledb.plan.PartitionedPlan;
+import simpledb.query.*;
+import simpledb.record.*;
+
+/**
+ * The Plan class for the partition-wise join of two queries
+ * over tables partitioned in the same way, on their
+ * partitioning fields.
+ * The records that join are in partitions of the same number,
+ * so each pair of partitions is joined on its own, by a hash join
+ * that holds the smaller partition of the pair in memory.
+ * Unlike a grace hash join, the join needs no partitioning phase:
+ * each input is read once.
+ * A pair whose smaller partition would take more space
+ * than the buffers available to the transaction
+ * is joined by a grace hash join instead.
+ * The output of the join is partitioned like its inputs.
+ */
+public class PartitionJoinPlan implements PartitionedPlan {
+   private Transaction tx;
+   private PartitionedPlan p1, p2;
+   private String fldname1, fldname2;
+   private Schema sch = new Schema();
+
+   /**
+    * Creates a partition-wise join plan for the two specified queries.
+    * @param tx the calling transaction
+    * @param p1 the LHS query plan
+    * @param p2 the RHS query plan
+    * @param fldname1 the LHS join field, which partitions p1
+    * @param fldname2 the RHS join field, which partitions p2
+    */
+   public PartitionJoinPlan(Transaction tx, PartitionedPlan p1, PartitionedPlan p2,
+                            String fldname1, String fldname2) {
+      this.tx = tx;
+      this.p1 = p1;
+      this.p2 = p2;
+      this.fldname1 = fldname1;
+      this.fldname2 = fldname2;
+      sch.addAll(p1.schema());
+      sch.addAll(p2.schema());
+   }
+
+   /**
+    * Returns a scan that joins each pair of partitions in turn.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      return new PartitionScan(partitioning(), sch, partitions(), p -> openPartition(p));
+   }
+
+   /**
+    * Return the number of block accesses required to join
+    * the two queries, which read each of them once,
+    * except for the pairs of partitions that are joined
+    * by a grace hash join, which reads them three times.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      int blocks = p1.blocksAccessed() + p2.blocksAccessed();
+      for (int p : partitions())
+         if (!fits(p))
+            blocks += 2 * partitionBlocksAccessed(p);
+      return blocks;
+   }
+
+   /**
+    * Return the number of records in the join.
+    * Assuming uniform distribution, the formula is:
+    * <pre> R(join(p1,p2)) = R(p1)*R(p2)/max{V(p1,F1),V(p2,F2)}</pre>
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      int maxvals = Math.max(p1.distinctValues(fldname1), p2.distinctValues(fldname2));
+      return (p1.recordsOutput() * p2.recordsOutput()) / Math.max(maxvals, 1);
+   }
+
+   /**
+    * Estimate the distinct number of field values in the join.
+    * Since the join does not increase or decrease field values,
+    * the estimate is the same as in the appropriate underlying query.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      if (p1.schema().hasField(fldname))
+         return p1.distinctValues(fldname);
+      else
+         return p2.distinctValues(fldname);
+   }
+
+   /**
+    * Return the schema of the join, which is the union
+    * of the schemas of the underlying queries.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return sch;
+   }
+
+   /**
+    * Return the partitioning of the LHS query,
+    * which the join's output follows.
+    * @see simpledb.plan.PartitionedPlan#partitioning()
+    */
+   public Partitioning partitioning() {
+      return p1.partitioning();
+   }
+
+   /**
+    * Return the partitions that both queries may have records in.
+    * @see simpledb.plan.PartitionedPlan#partitions()
+    */
+   public List<Integer> partitions() {
+      List<Integer> result = new ArrayList<>(p1.partitions());
+      result.retainAll(p2.partitions());
+      return result;
+   }
+
+   /**
+    * Return a hash join of the specified partitions of the
+    * two queries, which holds the smaller one in memory,
+    * or a grace hash join of them if it does not fit.
+    * @see simpledb.plan.PartitionedPlan#openPartition(int)
+    */
+   public Scan openPartition(int p) {
+      if (!fits(p))
+         return new HashJoinPlan(tx, new HashPartitionPlan(tx, new PartitionPlan(p1, p), fldname1),
+                                 new HashPartitionPlan(tx, new PartitionPlan(p2, p), fldname2),
+                                 fldname1, fldname2).open();
+      if (p1.partitionBlocksAccessed(p) <= p2.partitionBlocksAccessed(p))
+         return new PartitionJoinScan(p1.openPartition(p), p1.schema(), p2.openPartition(p), p2.schema(),
+                                      fldname1, fldname2, sch);
+      else
+         return new PartitionJoinScan(p2.openPartition(p), p2.schema(), p1.openPartition(p), p1.schema(),
+                                      fldname2, fldname1, sch);
+   }
+
+   /**
+    * @see simpledb.plan.PartitionedPlan#partitionBlocksAccessed(int)
+    */
+   public int partitionBlocksAccessed(int p) {
+      return p1.partitionBlocksAccessed(p) + p2.partitionBlocksAccessed(p);
+   }
+
+   /**
+    * Return true if the smaller of the specified partitions
+    * takes no more space than the buffers available to the transaction.
+    */
+   private boolean fits(int p) {
+      return Math.min(p1.partitionBlocksAccessed(p), p2.partitionBlocksAccessed(p)) <= tx.availableBuffs();
+   }
+
+   /**
+    * The plan of one partition of a query, which is given
+    * to a grace hash join.
+    * The estimates other than its size are those of the whole query.
+    */
+   private static class PartitionPlan implements Plan {
+      private PartitionedPlan p;
+      private int part;
+
+      PartitionPlan(PartitionedPlan p, int part) {
+         this.p = p;
+         this.part = part;
+      }
+
+      public Scan open() {
+         return p.openPartition(part);
+      }
+
+      public int blocksAccessed() {
+         return p.partitionBlocksAccessed(part);
+      }
+
+      public int recordsOutput() {
+         return p.recordsOutput();
+      }
+
+      public int distinctValues(String fldname) {
+         return p.distinctValues(fldname);
+      }
+
+      public Schema schema() {
+         return p.schema();
+      }
+   }
+}
@@ -0,0 +1,209 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.query.*;
+import simpledb.record.Schema;
+
+/**
+ * The Scan class for the join of a pair of partitions in
+ * a partition-wise join.
+ * The records of the build partition are read into a hash table
+ * keyed by their join value when the scan is opened;
+ * the probe partition is then read once, each of its records
+ * joining with the build records of the same value.
+ * Both partitions are read a batch at a time, and the joined
+ * records can be produced in batches as well.
+ */
+public class PartitionJoinScan implements BatchScan {
+   private Scan probe;
+   private BatchScan probebatches;
+   private Schema sch;
+   private int probecol;
+   private Map<Constant,List<Constant[]>> table = new HashMap<>();
+   private int[] buildcols, probecols;  // where each output field is read
+   private List<Constant[]> matches;
+   private int pos;
+   private Constant[] current;
+   private Batch out, in, mapped;  // the output batch, and the probe batch being read
+   private String probefld;
+   private int[] incols;
+   private int inkey, inpos, inrow;
+
+   /**
+    * Create a join scan of the specified partitions,
+    * reading the build partition at once.
+    * @param build the scan of the build partition
+    * @param buildsch the schema of the build partition
+    * @param probe the scan of the probe partition
+    * @param probesch the schema of the probe partition
+    * @param buildfld the join field of the build partition
+    * @param probefld the join field of the probe partition
+    * @param sch the schema of the join
+    */
+   public PartitionJoinScan(Scan build, Schema buildsch, Scan probe, Schema probesch,
+                            String buildfld, String probefld, Schema sch) {
+      this.probe = probe;
+      this.sch = sch;
+      this.probefld = probefld;
+      probebatches = RowBatchScan.of(probe, probesch);
+      probecol = probe.indexOf(probefld);
+      List<String> fields = sch.fields();
+      buildcols = new int[fields.size()];
+      probecols = new int[fields.size()];
+      for (int i=0; i<buildcols.length; i++) {
+         buildcols[i] = buildsch.indexOf(fields.get(i));
+         probecols[i] = (buildcols[i] < 0) ? probe.indexOf(fields.get(i)) : -1;
+      }
+      List<String> buildfields = buildsch.fields();
+      int keycol = buildsch.indexOf(buildfld);
+      BatchScan bs = RowBatchScan.of(build, buildsch);
+      bs.useFields(buildfields);
+      for (Batch b = bs.nextBatch(); b != null; b = bs.nextBatch()) {
+         int[] readcols = new int[buildfields.size()];
+         for (int i=0; i<readcols.length; i++)
+            readcols[i] = b.indexOf(buildfields.get(i));
+         int[] sel = b.selection();
+         for (int j=0; j<b.size(); j++) {
+            Constant[] rec = new Constant[readcols.length];
+            for (int i=0; i<rec.length; i++)
+               rec[i] = b.getVal(readcols[i], sel[j]);
+            table.computeIfAbsent(rec[keycol], k -> new ArrayList<>()).add(rec);
+         }
+      }
+      build.close();
+   }
+
+   public void beforeFirst() {
+      probe.beforeFirst();
+      matches = null;
+      in = null;
+   }
+
+   /**
+    * Move to the next pair of joining records: the next build
+    * record matching the current probe record, or else the first
+    * build record matching a later probe record.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      while (matches == null || pos >= matches.size()) {
+         if (!probe.next())
+            return false;
+         matches = table.get(probe.getVal(probecol));
+         pos = 0;
+      }
+      current = matches.get(pos++);
+      return true;
+   }
+
+   public boolean producesBatches() {
+      return true;
+   }
+
+   /**
+    * The probe partition is read whole, since each
+    * of its fields may be in the join's output.
+    * @see simpledb.query.BatchScan#useFields(java.util.Collection)
+    */
+   public void useFields(Collection<String> fldnames) {
+   }
+
+   /**
+    * Fill a batch with the next joined records.
+    * Each probe record is looked up in the hash table, and
+    * its values and those of each matching build record
+    * are copied into the next row of the batch; a probe record
+    * whose matches do not fit goes on into the next batch.
+    * @see simpledb.query.BatchScan#nextBatch()
+    */
+   public Batch nextBatch() {
+      if (out == null) {
+         int[] types = new int[buildcols.length];
+         for (int col=0; col<types.length; col++)
+            types[col] = sch.type(sch.fields().get(col));
+         out = new Batch(sch.fields(), types);
+      }
+      int n = 0;
+      while (n < Batch.SIZE) {
+         if (matches != null && pos < matches.size()) {
+            Constant[] rec = matches.get(pos++);
+            for (int col=0; col<buildcols.length; col++) {
+               if (buildcols[col] >= 0)
+                  out.setVal(col, n, rec[buildcols[col]]);
+               else
+                  out.copy(col, n, in, incols[col], inrow);
+            }
+            n++;
+         }
+         else if (!nextProbeRecord())
+            break;
+      }
+      if (n == 0)
+         return null;
+      out.fill(n);
+      return out;
+   }
+
+   public int getInt(String fldname) {
+      return getInt(indexOf(fldname));
+   }
+
+   public String getString(String fldname) {
+      return getString(indexOf(fldname));
+   }
+
+   public Constant getVal(String fldname) {
+      return getVal(indexOf(fldname));
+   }
+
+   public int indexOf(String fldname) {
+      return sch.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return (buildcols[col] >= 0) ? current[buildcols[col]].asInt() : probe.getInt(probecols[col]);
+   }
+
+   public String getString(int col) {
+      return (buildcols[col] >= 0) ? current[buildcols[col]].asString() : probe.getString(probecols[col]);
+   }
+
+   public Constant getVal(int col) {
+      return (buildcols[col] >= 0) ? current[buildcols[col]] : probe.getVal(probecols[col]);
+   }
+
+   public boolean hasField(String fldname) {
+      return sch.hasField(fldname);
+   }
+
+   public void close() {
+      probe.close();
+   }
+
+   /**
+    * Move to the next record of the probe batches,
+    * and find the build records that it matches.
+    * @return false if the probe partition is used up
+    */
+   private boolean nextProbeRecord() {
+      while (in == null || inpos >= in.size()) {
+         in = probebatches.nextBatch();
+         if (in == null) {
+            matches = null;
+            return false;
+         }
+         if (in != mapped) {
+            incols = new int[probecols.length];
+            for (int col=0; col<probecols.length; col++)
+               incols[col] = (probecols[col] < 0) ? -1 : in.indexOf(sch.fields().get(col));
+            inkey = in.indexOf(probefld);
+            mapped = in;
+         }
+         inpos = 0;
+      }
+      inrow = in.selection()[inpos++];
+      matches = table.get(in.getVal(inkey, inrow));
+      pos = 0;
+      return true;
+   }
+}
@@ -12,6 +12,7 @@ public class RecordComparator implements Comparator<Scan> {
    private List<String> fields;
    private List<String> sortFields;
    private List<String> sortOrder;
+   private boolean[] isint, desc;
    /**
     * Create a comparator using the specified fields,
     * using the ordering implied by its iterator.
@@ -41,34 +42,32 @@ public class RecordComparator implements Comparator<Scan> {
     * of the comparison.
     * If the two records have the same values for all
     * sort fields, then the method returns 0.
+    * <p>
+    * The values are compared as ints or strings read from the scans,
+    * rather than as constants, so that a sort does not allocate
+    * two constants for each comparison.
+    * The type of each field is learned from the first records compared.
     * @param s1 the first scan
     * @param s2 the second scan
     * @return the result of comparing each scan's current record according to the field list
     */
    public int compare(Scan s1, Scan s2) {
-	   if (this.sortOrder != null) { // if sorting order is specified
-		   for (int i = 0; i < sortFields.size(); i++) {
-			   Constant val1 = s1.getVal(sortFields.get(i));
-			   Constant val2 = s2.getVal(sortFields.get(i));
-			   int result = val1.compareTo(val2);
-			   if (result != 0) {
-				   if (sortOrder.get(i) == "desc") { // flip sorting result if desc is specified
-				   result *= -1;
-				   }
-			   return result;
-			   }
-		   }
-	   return 0;
-	  } else { // if sorting order is not specified
-
-	      for (String fldname : fields) { 
-	         Constant val1 = s1.getVal(fldname); 
-	         Constant val2 = s2.getVal(fldname);
-	         int result = val1.compareTo(val2);
-	         if (result != 0)
-	            return result;
-	      }
+      List<String> flds = (sortOrder != null) ? sortFields : fields;
+      if (isint == null) {
+         isint = new boolean[flds.size()];
+         desc = new boolean[flds.size()];
+         for (int i=0; i<flds.size(); i++) {
+            isint[i] = s1.getVal(flds.get(i)).isInt();
+            desc[i] = sortOrder != null && sortOrder.get(i).equals("desc");
+         }
+      }
+      for (int i=0; i<flds.size(); i++) {
+         String fldname = flds.get(i);
+         int result = isint[i] ? Integer.compare(s1.getInt(fldname), s2.getInt(fldname))
+                               : s1.getString(fldname).compareTo(s2.getString(fldname));
+         if (result != 0)
+            return desc[i] ? -result : result;
+      }
       return 0;
-	  }
    }
 }
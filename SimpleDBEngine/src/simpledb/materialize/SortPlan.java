@@ -114,7 +114,8 @@ public class SortPlan implements Plan {
       TempTable currenttemp = new TempTable(tx, sch);
       temps.add(currenttemp);
       UpdateScan currentscan = currenttemp.open();
-      while (copy(src, currentscan))
+      int[] cols = positions(src);
+      while (copy(src, cols, currentscan))
          if (comp.compare(src, currentscan) < 0) {
          // start a new run
          currentscan.close();
@@ -155,20 +156,21 @@ public class SortPlan implements Plan {
       TempTable result = new TempTable(tx, sch);
       UpdateScan dest = result.open();
       
+      int[] cols = positions(src1);  // the same in both runs
       boolean hasmore1 = src1.next();
       boolean hasmore2 = src2.next();
       while (hasmore1 && hasmore2)
          if (comp.compare(src1, src2) < 0)
-         hasmore1 = copy(src1, dest);
+         hasmore1 = copy(src1, cols, dest);
       else
-         hasmore2 = copy(src2, dest);
+         hasmore2 = copy(src2, cols, dest);
       
       if (hasmore1)
          while (hasmore1)
-         hasmore1 = copy(src1, dest);
+         hasmore1 = copy(src1, cols, dest);
       else
          while (hasmore2)
-         hasmore2 = copy(src2, dest);
+         hasmore2 = copy(src2, cols, dest);
       src1.close();
       src2.close();
       dest.close();
@@ -178,13 +180,26 @@ public class SortPlan implements Plan {
    /**
     * Copy the tuple from source to destination.
     * @param src the source scan to copy from
+    * @param cols the positions of the schema's fields in the source scan
     * @param dest the destination scan to copy to
     */
-   private boolean copy(Scan src, UpdateScan dest) {
+   private boolean copy(Scan src, int[] cols, UpdateScan dest) {
       dest.insert();
-      for (String fldname : sch.fields())
-         dest.setVal(fldname, src.getVal(fldname));
+      List<String> fields = sch.fields();
+      for (int i=0; i<cols.length; i++)
+         dest.setVal(fields.get(i), src.getVal(cols[i]));
       return src.next();
    }
    
+   /**
+    * Return the positions of the schema's fields in the specified scan.
+    */
+   private int[] positions(Scan s) {
+      List<String> fields = sch.fields();
+      int[] cols = new int[fields.size()];
+      for (int i=0; i<cols.length; i++)
+         cols[i] = s.indexOf(fields.get(i));
+      return cols;
+   }
+   
 }
@@ -120,6 +120,43 @@ public class SortScan implements Scan {
       return currentscan.getString(fldname);
    }
    
+   /**
+    * Return the position of the specified field.
+    * The runs have the same fields at the same positions,
+    * so the position holds whichever is the current scan.
+    * @see simpledb.query.Scan#indexOf(java.lang.String)
+    */
+   public int indexOf(String fldname) {
+      return s1.indexOf(fldname);
+   }
+   
+   /**
+    * Get the Constant value of the field at the
+    * specified position of the current scan.
+    * @see simpledb.query.Scan#getVal(int)
+    */
+   public Constant getVal(int col) {
+      return currentscan.getVal(col);
+   }
+   
+   /**
+    * Get the integer value of the field at the
+    * specified position of the current scan.
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int col) {
+      return currentscan.getInt(col);
+   }
+   
+   /**
+    * Get the string value of the field at the
+    * specified position of the current scan.
+    * @see simpledb.query.Scan#getString(int)
+    */
+   public String getString(int col) {
+      return currentscan.getString(col);
+   }
+   
    /**
     * Return true if the specified field is in the current scan.
     * @see simpledb.query.Scan#hasField(java.lang.String)
@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.query.Batch;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
 
@@ -32,6 +33,45 @@ public class SumFn implements AggregationFn {
 	      sum += s.getInt(fldname);
 	   }
 	   
+	   /**
+	    * Add the field values of the batch's records to the sum,
+	    * which starts at zero if the batch starts the group.
+	    * @see simpledb.materialize.AggregationFn#processBatch(simpledb.query.Batch, boolean)
+	    */
+	   public void processBatch(Batch b, boolean first) {
+	      int[] vals = b.ints(b.indexOf(fldname));
+	      int[] sel = b.selection();
+	      if (first)
+	         sum = 0;
+	      for (int i=0; i<b.size(); i++)
+	         sum += vals[sel[i]];
+	   }
+	   
+	   /**
+	    * Return a new sum function over the same field.
+	    * @see simpledb.materialize.AggregationFn#copy()
+	    */
+	   public AggregationFn copy() {
+	      return new SumFn(fldname);
+	   }
+	   
+	   /**
+	    * Add the sum of a copy of the function to this sum,
+	    * or take it as the sum if its records start the group.
+	    * @see simpledb.materialize.AggregationFn#merge(simpledb.materialize.AggregationFn, boolean)
+	    */
+	   public void merge(AggregationFn part, boolean first) {
+	      sum = (first ? 0 : sum) + ((SumFn) part).sum;
+	   }
+	   
+	   /**
+	    * Return the name of the aggregated field.
+	    * @see simpledb.materialize.AggregationFn#aggregatedField()
+	    */
+	   public String aggregatedField() {
+	      return fldname;
+	   }
+	   
 	   /**
 	    * Return the field's name, prepended by "sumof".
 	    * @see simpledb.materialize.AggregationFn#fieldName()
@@ -9,6 +9,8 @@ import simpledb.record.*;
  * A temporary table is not registered in the catalog.
  * The class therefore has a method getTableInfo to return the 
  * table's metadata. 
+ * A temporary table holds the strings of encoded fields
+ * decoded, so that it needs no dictionary of its own.
  * @author Edward Sciore
  */
 public class TempTable {
@@ -26,7 +28,10 @@ public class TempTable {
    public TempTable(Transaction tx, Schema sch) {
       this.tx = tx;
       tblname = nextTableName();
-      layout = new Layout(sch);
+      Schema decoded = new Schema();
+      for (String fldname : sch.fields())
+         decoded.addField(fldname, sch.type(fldname), sch.length(fldname));
+      layout = new Layout(decoded, Layout.BITMAP);
    }
    
    /**
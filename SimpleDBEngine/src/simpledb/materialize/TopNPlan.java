@@ -0,0 +1,143 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.plan.Plan;
+import simpledb.query.*;
+
+/**
+ * The Plan class for the <i>top-n</i> operator,
+ * which outputs the first n records of its input
+ * in a given order.
+ * If n records fit in the buffers available to the
+ * transaction, the plan reads its input once, keeping
+ * the best n records seen so far in a heap in memory,
+ * whose worst record is replaced by any better one.
+ * Otherwise the input is sorted as by a {@link SortPlan},
+ * and the records after the first n are never read.
+ */
+public class TopNPlan implements Plan {
+   private Transaction tx;
+   private Plan p;
+   private Schema sch;
+   private List<String> sortfields;
+   private List<String> order;
+   private int n;
+
+   /**
+    * Create a top-n plan for the specified query.
+    * @param tx the calling transaction
+    * @param p the plan for the underlying query
+    * @param sortfields the fields to sort by
+    * @param order the order, "asc" or "desc", of each sort field
+    * @param n the number of records output
+    */
+   public TopNPlan(Transaction tx, Plan p, List<String> sortfields, List<String> order, int n) {
+      this.tx = tx;
+      this.p = p;
+      this.sortfields = sortfields;
+      this.order = order;
+      this.n = n;
+      sch = p.schema();
+   }
+
+   /**
+    * Read the underlying query into a heap of its best n records,
+    * and return a scan of them in order; if they do not fit
+    * in memory, sort the query instead.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      if (!fits())
+         return new SortPlan(tx, p, sortfields, order).open();
+      List<String> fields = sch.fields();
+      int[] cols = new int[sortfields.size()];
+      boolean[] desc = new boolean[cols.length];
+      for (int i=0; i<cols.length; i++) {
+         cols[i] = fields.indexOf(sortfields.get(i));
+         desc[i] = order.get(i).equals("desc");
+      }
+      Comparator<Constant[]> comp = (r1, r2) -> {
+         for (int i=0; i<cols.length; i++) {
+            int result = r1[cols[i]].compareTo(r2[cols[i]]);
+            if (result != 0)
+               return desc[i] ? -result : result;
+         }
+         return 0;
+      };
+      // the worst record kept is at the top of the heap
+      PriorityQueue<Constant[]> heap = new PriorityQueue<>(n + 1, comp.reversed());
+      Scan src = p.open();
+      int[] srccols = new int[fields.size()];
+      for (int i=0; i<srccols.length; i++)
+         srccols[i] = src.indexOf(fields.get(i));
+      Constant[] rec = new Constant[fields.size()];
+      while (n > 0 && src.next()) {
+         boolean full = heap.size() == n;
+         for (int i : cols)
+            rec[i] = src.getVal(srccols[i]);
+         if (full && comp.compare(rec, heap.peek()) >= 0)
+            continue;
+         for (int i=0; i<rec.length; i++)
+            rec[i] = src.getVal(srccols[i]);
+         heap.add(rec);
+         // the array of the record pushed out holds the next one
+         rec = full ? heap.poll() : new Constant[fields.size()];
+      }
+      src.close();
+      List<Constant[]> records = new ArrayList<>(heap);
+      records.sort(comp);
+      return new TopNScan(records, fields);
+   }
+
+   /**
+    * Return the number of block accesses required to
+    * find the top records, which is that of reading
+    * the query once if they fit in memory, and that
+    * of sorting it otherwise.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      if (fits())
+         return p.blocksAccessed();
+      return new SortPlan(tx, p, sortfields, order).blocksAccessed();
+   }
+
+   /**
+    * Return the number of records output,
+    * which is at most n.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return Math.min(n, p.recordsOutput());
+   }
+
+   /**
+    * Return the number of distinct field values,
+    * which is the same as in the underlying query
+    * but no more than the number of records.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return Math.min(p.distinctValues(fldname), Math.max(1, recordsOutput()));
+   }
+
+   /**
+    * Return the schema of the output, which
+    * is the same as in the underlying query.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return sch;
+   }
+
+   /**
+    * Return true if n records of the query take no more
+    * space than the buffers available to the transaction.
+    */
+   private boolean fits() {
+      long space = (long) tx.availableBuffs() * tx.blockSize();
+      return (long) n * new Layout(sch).slotSize() <= space;
+   }
+}
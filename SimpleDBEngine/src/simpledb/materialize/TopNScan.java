@@ -0,0 +1,73 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.query.*;
+
+/**
+ * The Scan class for the <i>top-n</i> operator,
+ * which returns the records that its plan kept in memory,
+ * in their order.
+ */
+public class TopNScan implements Scan {
+   private List<Constant[]> records;
+   private List<String> fields;
+   private int pos = -1;
+
+   /**
+    * Create a scan of the specified records.
+    * @param records the values of each record, in schema order
+    * @param fields the names of the fields
+    */
+   public TopNScan(List<Constant[]> records, List<String> fields) {
+      this.records = records;
+      this.fields = fields;
+   }
+
+   public void beforeFirst() {
+      pos = -1;
+   }
+
+   public boolean next() {
+      if (pos < records.size())
+         pos++;
+      return pos < records.size();
+   }
+
+   public int getInt(String fldname) {
+      return getVal(fldname).asInt();
+   }
+
+   public String getString(String fldname) {
+      return getVal(fldname).asString();
+   }
+
+   public Constant getVal(String fldname) {
+      int col = indexOf(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return getVal(col);
+   }
+
+   public int indexOf(String fldname) {
+      return fields.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return getVal(col).asInt();
+   }
+
+   public String getString(int col) {
+      return getVal(col).asString();
+   }
+
+   public Constant getVal(int col) {
+      return records.get(pos)[col];
+   }
+
+   public boolean hasField(String fldname) {
+      return fields.contains(fldname);
+   }
+
+   public void close() {
+   }
+}
@@ -0,0 +1,113 @@
+package simpledb.metadata;
+
+import java.io.File;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import static simpledb.test.Check.check;
+
+public class CatalogUpgradeTest {
+   private static final String DIR = "catalogupgradetest";
+
+   public static void main(String[] args) throws Exception {
+      // build a database the way the baseline did:
+      // only tblcat and fldcat, and one FLAGGED table
+      deleteDir(new File(DIR));
+      SimpleDB db = new SimpleDB(DIR, 400, 8);
+      Transaction tx = db.newTx();
+      Schema tcatSchema = new Schema();
+      tcatSchema.addStringField("tblname", TableMgr.MAX_NAME);
+      tcatSchema.addIntField("slotsize");
+      Schema fcatSchema = new Schema();
+      fcatSchema.addStringField("tblname", TableMgr.MAX_NAME);
+      fcatSchema.addStringField("fldname", TableMgr.MAX_NAME);
+      fcatSchema.addIntField("type");
+      fcatSchema.addIntField("length");
+      fcatSchema.addIntField("offset");
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      baselineCreate("tblcat", tcatSchema, tcatSchema, fcatSchema, tx);
+      baselineCreate("fldcat", fcatSchema, tcatSchema, fcatSchema, tx);
+      baselineCreate("old", sch, tcatSchema, fcatSchema, tx);
+      TableScan ts = new TableScan(tx, "old", new Layout(sch));
+      ts.insert();
+      ts.setInt("A", 1);
+      ts.setString("B", "one");
+      ts.close();
+      tx.commit();
+
+      // open it as an existing database
+      db = new SimpleDB(DIR, 400, 8);
+      tx = db.newTx();
+      TableMgr tm = new TableMgr(false, tx);
+      tx.commit();
+      tx = db.newTx();
+      for (String cat : new String[] {"fmtcat", "enccat", "partcat"})
+         check(count(tx, tcatSchema, cat) == 1, cat + " is catalogued once");
+      check(tm.getLayout("enccat", tx).schema().hasField("fldname"), "enccat has its fields");
+      ts = new TableScan(tx, "enccat", tm.getLayout("enccat", tx));
+      while (ts.next())
+         ts.getString("fldname");
+      ts.close();
+      check(tm.getLayout("old", tx).format() == Layout.FLAGGED, "old table keeps the FLAGGED format");
+
+      // the new catalogs work on the upgraded database
+      Schema encsch = new Schema();
+      encsch.addIntField("A");
+      encsch.addEncodedField("C", 9);
+      tm.createTable("enc", encsch, tx);
+      check(tm.getLayout("enc", tx).schema().isEncoded("C"), "encoded field is catalogued");
+      tm.createTable("parts", sch, Layout.BITMAP, new Partitioning("A", 3), tx);
+      check(tm.getPartitioning("parts", tx) != null, "partitioning is catalogued");
+      tx.commit();
+
+      // opening it again adds nothing
+      db = new SimpleDB(DIR, 400, 8);
+      tx = db.newTx();
+      new TableMgr(false, tx);
+      for (String cat : new String[] {"fmtcat", "enccat", "partcat"})
+         check(count(tx, tcatSchema, cat) == 1, cat + " is still catalogued once");
+      tx.commit();
+      System.out.println("done");
+   }
+
+   // the baseline's createTable, which wrote only tblcat and fldcat
+   private static void baselineCreate(String tblname, Schema sch, Schema tcatSchema,
+                                      Schema fcatSchema, Transaction tx) {
+      Layout layout = new Layout(sch);
+      TableScan tcat = new TableScan(tx, "tblcat", new Layout(tcatSchema));
+      tcat.insert();
+      tcat.setString("tblname", tblname);
+      tcat.setInt("slotsize", layout.slotSize());
+      tcat.close();
+      TableScan fcat = new TableScan(tx, "fldcat", new Layout(fcatSchema));
+      for (String fldname : sch.fields()) {
+         fcat.insert();
+         fcat.setString("tblname", tblname);
+         fcat.setString("fldname", fldname);
+         fcat.setInt   ("type",   sch.type(fldname));
+         fcat.setInt   ("length", sch.length(fldname));
+         fcat.setInt   ("offset", layout.offset(fldname));
+      }
+      fcat.close();
+   }
+
+   private static int count(Transaction tx, Schema tcatSchema, String tblname) {
+      int count = 0;
+      TableScan tcat = new TableScan(tx, "tblcat", new Layout(tcatSchema));
+      while (tcat.next())
+         if (tcat.getString("tblname").equals(tblname))
+            count++;
+      tcat.close();
+      return count;
+   }
+
+   private static void deleteDir(File dir) {
+      File[] files = dir.listFiles();
+      if (files != null)
+         for (File f : files)
+            f.delete();
+      dir.delete();
+   }
+}
@@ -23,6 +23,7 @@ public class IndexInfo {
    private Layout idxLayout;
    private StatInfo si;
    private String indexType = "hash";
+   private int clusteredrecs = 0;
    
    
    /**
@@ -58,6 +59,31 @@ public class IndexInfo {
    }
    
    
+   /**
+    * Return the name of the index.
+    * @return the index name
+    */
+   public String indexName() {
+      return idxname;
+   }
+   
+   /**
+    * Record that the table has been put in the
+    * order of this index's key.
+    * @param numrecs the number of records the table then held
+    */
+   public void setClustered(int numrecs) {
+      this.clusteredrecs = numrecs;
+   }
+   
+   /**
+    * Return true if the table has been put in the
+    * order of this index's key.
+    */
+   public boolean isClustered() {
+      return clusteredrecs > 0;
+   }
+   
    /**
     * Return the type of index
     * 
@@ -88,6 +114,28 @@ public class IndexInfo {
       }
    }
    
+   /**
+    * Estimate the number of data blocks read to fetch
+    * the specified number of records found through the index.
+    * Each record is assumed to be in a different block,
+    * unless the table is clustered on this index:
+    * records with neighbouring keys are then neighbours in the table,
+    * and are read a block at a time.
+    * The records inserted since the clustering are not in order,
+    * so the found records are taken to be in order only in the
+    * proportion of the table's records that were clustered.
+    * @param numrecs the number of records found
+    * @return the number of data blocks accessed
+    */
+   public int recordBlocksAccessed(int numrecs) {
+      if (clusteredrecs == 0 || numrecs == 0)
+         return numrecs;
+      int tblrecs = Math.max(si.recordsOutput(), 1);
+      int inorder = (int) ((long) numrecs * Math.min(clusteredrecs, tblrecs) / tblrecs);
+      int rpb = Math.max(tblrecs / Math.max(si.blocksAccessed(), 1), 1);
+      return (inorder + rpb - 1) / rpb + (numrecs - inorder);
+   }
+   
    /**
     * Return the estimated number of records having a
     * search key.  This value is the same as doing a select
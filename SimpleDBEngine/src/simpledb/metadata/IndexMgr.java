@@ -1,7 +1,9 @@
 package simpledb.metadata;
 
+import static java.sql.Types.INTEGER;
 import java.util.*;
 import static simpledb.metadata.TableMgr.MAX_NAME;
+import simpledb.file.*;
 import simpledb.tx.Transaction;
 import simpledb.record.TableScan;
 import simpledb.record.*;
@@ -9,10 +11,16 @@ import simpledb.record.*;
 /**
  * The index manager.
  * The index manager has similar functionality to the table manager.
+ * The catalog table clustercat records, for each clustered table,
+ * the index whose key gave the table its order and the number
+ * of records the table then held.
+ * The clustering is a hint for the planner's estimates:
+ * records inserted later go wherever there is room,
+ * and the hint is forgotten once vacuuming moves records.
  * @author Edward Sciore
  */
 class IndexMgr {
-   private Layout layout;
+   private Layout layout, clusterLayout;
    private TableMgr tblmgr;
    private StatMgr statmgr;
    
@@ -20,6 +28,8 @@ class IndexMgr {
     * Create the index manager.
     * This constructor is called during system startup.
     * If the database is new, then the <i>idxcat</i> table is created.
+    * The <i>clustercat</i> table is also created in an existing
+    * database that does not yet have one.
     * @param isnew indicates whether this is a new database
     * @param tx the system startup transaction
     */
@@ -32,21 +42,45 @@ class IndexMgr {
          sch.addStringField("indextype", MAX_NAME);
          tblmgr.createTable("idxcat", sch, tx);
       }
+      Schema clusterSchema = new Schema();
+      clusterSchema.addStringField("tablename", MAX_NAME);
+      clusterSchema.addStringField("indexname", MAX_NAME);
+      clusterSchema.addIntField("records");
+      if (isnew || tx.size("clustercat.tbl") == 0)
+         tblmgr.createTable("clustercat", clusterSchema, Layout.FLAGGED, tx);
       this.tblmgr = tblmgr;
       this.statmgr = statmgr;
       layout = tblmgr.getLayout("idxcat", tx);
+      clusterLayout = tblmgr.getLayout("clustercat", tx);
    }
    
    /**
     * Create an index of the specified type for the specified field.
     * A unique ID is assigned to this index, and its information
     * is stored in the idxcat table.
+    * An index of type "zonemap" is not searched like the others,
+    * but adds the field to those summarized by the table's zone map.
+    * A long string field cannot be indexed, and nor can a
+    * partitioned table, except by zone maps, which are kept
+    * for each partition.
     * @param idxname the name of the index
     * @param tblname the name of the indexed table
     * @param fldname the name of the indexed field
     * @param tx the calling transaction
     */
    public void createIndex(String idxname, String tblname, String fldname, String indextype, Transaction tx) {
+      Partitioning part = tblmgr.getPartitioning(tblname, tx);
+      if (indextype.equals("zonemap")) {
+         if (part == null)
+            createZoneMap(tblname, tblname, fldname, tx);
+         else
+            for (int p=0; p<part.count(); p++)
+               createZoneMap(tblname, Partitioning.partitionName(tblname, p), fldname, tx);
+      }
+      else if (isLongField(tblname, fldname, tx))
+         throw new RuntimeException("cannot index a long string field: " + fldname);
+      else if (part != null)
+         throw new RuntimeException("cannot index a partitioned table: " + tblname);
       TableScan ts = new TableScan(tx, "idxcat", layout);
       ts.insert();
       ts.setString("indexname", idxname);
@@ -62,23 +96,122 @@ class IndexMgr {
     * on the specified table.
     * @param tblname the name of the table
     * @param tx the calling transaction
+    * Zone maps are not included, since they cannot be searched.
     * @return a map of IndexInfo objects, keyed by their field names
     */
    public Map<String,IndexInfo> getIndexInfo(String tblname, Transaction tx) {
       Map<String,IndexInfo> result = new HashMap<String,IndexInfo>();
+      String clustered = null;
+      int clusteredrecs = 0;
+      TableScan cs = new TableScan(tx, "clustercat", clusterLayout);
+      while (cs.next())
+         if (cs.getString("tablename").equals(tblname)) {
+            clustered = cs.getString("indexname");
+            clusteredrecs = cs.getInt("records");
+         }
+      cs.close();
       TableScan ts = new TableScan(tx, "idxcat", layout);
       while (ts.next())
          if (ts.getString("tablename").equals(tblname)) {
          String idxname = ts.getString("indexname");
          String fldname = ts.getString("fieldname");
          String indextype = ts.getString("indextype");
+         if (indextype.equals("zonemap"))
+            continue;
          
          Layout tblLayout = tblmgr.getLayout(tblname, tx);
          StatInfo tblsi = statmgr.getStatInfo(tblname, tblLayout, tx);
          IndexInfo ii = new IndexInfo(idxname, fldname, indextype, tblLayout.schema(), tx, tblsi);
+         if (idxname.equals(clustered))
+            ii.setClustered(clusteredrecs);
          result.put(fldname, ii);
       }
       ts.close();
       return result;
    }
+
+   /**
+    * Record that the specified table has been put in the order
+    * of the specified index's key.
+    * @param tblname the name of the table
+    * @param idxname the name of the index
+    * @param numrecs the number of records in the table
+    * @param tx the calling transaction
+    */
+   public void setClusteredIndex(String tblname, String idxname, int numrecs, Transaction tx) {
+      clearClusteredIndex(tblname, tx);
+      TableScan ts = new TableScan(tx, "clustercat", clusterLayout);
+      ts.insert();
+      ts.setString("tablename", tblname);
+      ts.setString("indexname", idxname);
+      ts.setInt("records", numrecs);
+      ts.close();
+   }
+
+   /**
+    * Forget the order given to the specified table by clustering,
+    * once its records have been moved out of that order.
+    * @param tblname the name of the table
+    * @param tx the calling transaction
+    */
+   public void clearClusteredIndex(String tblname, Transaction tx) {
+      TableScan ts = new TableScan(tx, "clustercat", clusterLayout);
+      while (ts.next())
+         if (ts.getString("tablename").equals(tblname))
+            ts.delete();
+      ts.close();
+   }
+
+   /**
+    * Add the specified field to the fields summarized by the zone map
+    * of the specified file of the table, which is the table's own file
+    * or that of one of its partitions, and compute the zones of
+    * every block of the file.
+    * The file is locked exclusively while the zones are computed.
+    * A block whose earlier contents a snapshot may still read
+    * is left unknown, since its zones would not cover them.
+    */
+   private void createZoneMap(String tblname, String filebase, String fldname, Transaction tx) {
+      Layout tbllayout = tblmgr.getLayout(tblname, tx);
+      Schema sch = tbllayout.schema();
+      if (!sch.hasField(fldname) || sch.type(fldname) != INTEGER)
+         throw new RuntimeException("zone maps need an integer field: " + fldname);
+      String filename = filebase + ".tbl";
+      tx.xLockTable(filename);
+      ZoneMap zones = tx.zoneMap(filename);
+      int[] cols = zones.columns();
+      int col = sch.indexOf(fldname);
+      if (Arrays.stream(cols).noneMatch(c -> c == col)) {
+         cols = Arrays.copyOf(cols, cols.length + 1);
+         cols[cols.length - 1] = col;
+      }
+      int size = tx.size(filename);
+      zones.reset(cols, size);
+      int[] lo = new int[cols.length];
+      int[] hi = new int[cols.length];
+      for (int b=0; b<size; b++) {
+         BlockId blk = new BlockId(filename, b);
+         if (tx.hasVersions(blk))
+            continue;
+         Arrays.fill(lo, Integer.MAX_VALUE);
+         Arrays.fill(hi, Integer.MIN_VALUE);
+         boolean hasValues = false;
+         RecordBlock rb = RecordBlock.open(tx, blk, tbllayout);
+         for (int slot=rb.nextAfter(-1); slot>=0; slot=rb.nextAfter(slot)) {
+            hasValues = true;
+            for (int i=0; i<cols.length; i++) {
+               int val = rb.getInt(slot, cols[i]);
+               lo[i] = Math.min(lo[i], val);
+               hi[i] = Math.max(hi[i], val);
+            }
+         }
+         rb.close();
+         zones.setZone(b, lo, hi, hasValues);
+      }
+   }
+
+   private boolean isLongField(String tblname, String fldname, Transaction tx) {
+      Layout tbllayout = tblmgr.getLayout(tblname, tx);
+      return tbllayout.schema().hasField(fldname) && tbllayout.overflows(fldname);
+   }
 }
@@ -9,22 +9,44 @@ public class MetadataMgr {
    private static ViewMgr   viewmgr;
    private static StatMgr   statmgr;
    private static IndexMgr  idxmgr;
+   private static VacuumMgr vacuummgr;
    
    public MetadataMgr(boolean isnew, Transaction tx) {
       tblmgr  = new TableMgr(isnew, tx);
       viewmgr = new ViewMgr(isnew, tblmgr, tx);
       statmgr = new StatMgr(tblmgr, tx);
       idxmgr  = new IndexMgr(isnew, tblmgr, statmgr, tx);
+      vacuummgr = new VacuumMgr(tblmgr, idxmgr);
    }
    
    public void createTable(String tblname, Schema sch, Transaction tx) {
       tblmgr.createTable(tblname, sch, tx);
    }
    
+   public void createTable(String tblname, Schema sch, int format, Transaction tx) {
+      tblmgr.createTable(tblname, sch, format, tx);
+   }
+   
+   public void createTable(String tblname, Schema sch, int format, Partitioning part, Transaction tx) {
+      tblmgr.createTable(tblname, sch, format, part, tx);
+   }
+   
    public Layout getLayout(String tblname, Transaction tx) {
       return tblmgr.getLayout(tblname, tx);
    }
    
+   public Partitioning getPartitioning(String tblname, Transaction tx) {
+      return tblmgr.getPartitioning(tblname, tx);
+   }
+   
+   public void upgradeTable(String tblname, Transaction tx) {
+      tblmgr.upgradeTable(tblname, tx);
+   }
+   
+   public int vacuumTable(String tblname, int maxmoves, Transaction tx) {
+      return vacuummgr.vacuum(tblname, maxmoves, tx);
+   }
+   
    public void createView(String viewname, String viewdef, Transaction tx) {
       viewmgr.createView(viewname, viewdef, tx);
    }
@@ -41,6 +63,10 @@ public class MetadataMgr {
       return idxmgr.getIndexInfo(tblname, tx);
    }
    
+   public void setClusteredIndex(String tblname, String idxname, int numrecs, Transaction tx) {
+      idxmgr.setClusteredIndex(tblname, idxname, numrecs, tx);
+   }
+   
    public StatInfo getStatInfo(String tblname, Layout layout, Transaction tx) {
       return statmgr.getStatInfo(tblname, layout, tx);
    }
@@ -10,11 +10,16 @@ import simpledb.record.*;
  * The manager does not store this information in the database.
  * Instead, it calculates this information on system startup,
  * and periodically refreshes it.
+ * Its scans take intention locks on the tables and lock no records,
+ * but they may still wait for a writer that locks a whole table.
+ * They therefore run outside the manager's monitor, so that the
+ * waits-for graph sees every wait: the statistics are computed into
+ * a new map, which then replaces the old one.
  * @author Edward Sciore
  */
 class StatMgr {
    private TableMgr tblMgr;
-   private Map<String,StatInfo> tablestats;
+   private volatile Map<String,StatInfo> tablestats;
    private int numcalls;
    
    /**
@@ -35,38 +40,76 @@ class StatMgr {
     * @param tx the calling transaction
     * @return the statistical information about the table
     */
-   public synchronized StatInfo getStatInfo(String tblname, 
+   public StatInfo getStatInfo(String tblname, 
                               Layout layout, Transaction tx) {
-      numcalls++;
-      if (numcalls > 100)
+      if (countCall())
          refreshStatistics(tx);
       StatInfo si = tablestats.get(tblname);
       if (si == null) {
          si = calcTableStats(tblname, layout, tx);
-         tablestats.put(tblname, si);
+         publish(tblname, si);
       }
       return si;
    }
-   
-   private synchronized void refreshStatistics(Transaction tx) {
-      tablestats = new HashMap<String,StatInfo>();
+
+   /**
+    * Count a call, and return true if the statistics are due for a refresh.
+    */
+   private synchronized boolean countCall() {
+      numcalls++;
+      if (numcalls <= 100)
+         return false;
       numcalls = 0;
+      return true;
+   }
+
+   /**
+    * Add the statistics of a table to a copy of the current map.
+    */
+   private synchronized void publish(String tblname, StatInfo si) {
+      Map<String,StatInfo> stats = new HashMap<String,StatInfo>(tablestats);
+      stats.put(tblname, si);
+      tablestats = stats;
+   }
+   
+   private void refreshStatistics(Transaction tx) {
+      Map<String,StatInfo> stats = new HashMap<String,StatInfo>();
       Layout tcatlayout = tblMgr.getLayout("tblcat", tx);
       TableScan tcat = new TableScan(tx, "tblcat", tcatlayout);
       while(tcat.next()) {
          String tblname = tcat.getString("tblname");
          Layout layout = tblMgr.getLayout(tblname, tx);
          StatInfo si = calcTableStats(tblname, layout, tx);
-         tablestats.put(tblname, si);
+         stats.put(tblname, si);
       }
       tcat.close();
+      tablestats = stats;
    }
    
-   private synchronized StatInfo calcTableStats(String tblname, 
+   /**
+    * Calculate the statistics of the table by scanning it;
+    * those of a partitioned table are summed over its partitions.
+    */
+   private StatInfo calcTableStats(String tblname, 
                               Layout layout, Transaction tx) {
+      Partitioning part = tblMgr.getPartitioning(tblname, tx);
+      if (part == null)
+         return calcFileStats(tblname, layout, tx);
+      int numRecs = 0;
+      int numblocks = 0;
+      for (int p=0; p<part.count(); p++) {
+         StatInfo si = calcFileStats(Partitioning.partitionName(tblname, p), layout, tx);
+         numRecs += si.recordsOutput();
+         numblocks += si.blocksAccessed();
+      }
+      return new StatInfo(numblocks, numRecs);
+   }
+
+   private StatInfo calcFileStats(String tblname, Layout layout, Transaction tx) {
       int numRecs = 0;
       int numblocks = 0;
       TableScan ts = new TableScan(tx, tblname, layout);
+      ts.lockForEstimate();
       while (ts.next()) {
          numRecs++;
          numblocks = ts.getRid().blockNumber() + 1;
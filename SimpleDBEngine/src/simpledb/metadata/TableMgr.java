@@ -1,6 +1,7 @@
 package simpledb.metadata;
 
 import java.util.*;
+import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 
@@ -9,17 +10,29 @@ import simpledb.record.*;
  * There are methods to create a table, save the metadata
  * in the catalog, and obtain the metadata of a
  * previously-created table.
+ * The page format of each table is recorded in the catalog
+ * table fmtcat; a table missing from it predates the
+ * BITMAP format, and is in the FLAGGED format.
+ * The dictionary-encoded fields of each table are
+ * listed in the catalog table enccat; the dictionaries
+ * themselves are kept in side files of the tables.
+ * The catalog table partcat has a record for each partition
+ * of a partitioned table, giving its partitioning field
+ * and method, and the lowest value of a range partition.
  * @author Edward Sciore
  */
 class TableMgr {
    // The max characters a tablename or fieldname can have.
    public static final int MAX_NAME = 16;
-   private Layout tcatLayout, fcatLayout;
+   private Layout tcatLayout, fcatLayout, fmtLayout, encLayout, partLayout;
 
    /**
     * Create a new catalog manager for the database system.
-    * If the database is new, the two catalog tables
+    * If the database is new, the catalog tables
     * are created.
+    * The format, encoding and partition catalogs are also created in an
+    * existing database that does not yet have them.
+    * The catalog tables themselves are always in the FLAGGED format.
     * @param isNew has the value true if the database is new
     * @param tx the startup transaction
     */
@@ -37,20 +50,72 @@ class TableMgr {
       fcatSchema.addIntField("offset");
       fcatLayout = new Layout(fcatSchema);
 
+      Schema fmtSchema = new Schema();
+      fmtSchema.addStringField("tblname", MAX_NAME);
+      fmtSchema.addIntField("format");
+      fmtLayout = new Layout(fmtSchema);
+
+      Schema encSchema = new Schema();
+      encSchema.addStringField("tblname", MAX_NAME);
+      encSchema.addStringField("fldname", MAX_NAME);
+      encLayout = new Layout(encSchema);
+
+      Schema partSchema = new Schema();
+      partSchema.addStringField("tblname", MAX_NAME);
+      partSchema.addStringField("fldname", MAX_NAME);
+      partSchema.addIntField("method");
+      partSchema.addIntField("partnum");
+      partSchema.addIntField("bound");
+      partLayout = new Layout(partSchema);
+
       if (isNew) {
-         createTable("tblcat", tcatSchema, tx);
-         createTable("fldcat", fcatSchema, tx);
+         createTable("tblcat", tcatSchema, Layout.FLAGGED, tx);
+         createTable("fldcat", fcatSchema, Layout.FLAGGED, tx);
       }
+      // creating one catalog table can create the files of the others,
+      // so each is looked up in tblcat rather than by the size of its file
+      if (isNew || !isCataloged("fmtcat", tx))
+         createTable("fmtcat", fmtSchema, Layout.FLAGGED, tx);
+      if (isNew || !isCataloged("enccat", tx))
+         createTable("enccat", encSchema, Layout.FLAGGED, tx);
+      if (isNew || !isCataloged("partcat", tx))
+         createTable("partcat", partSchema, Layout.FLAGGED, tx);
    }
 
    /**
-    * Create a new table having the specified name and schema.
+    * Create a new table having the specified name and schema,
+    * in the BITMAP format.
     * @param tblname the name of the new table
     * @param sch the table's schema
     * @param tx the transaction creating the table
     */
    public void createTable(String tblname, Schema sch, Transaction tx) {
-      Layout layout = new Layout(sch);
+      createTable(tblname, sch, Layout.BITMAP, tx);
+   }
+
+   /**
+    * Create a new table having the specified name, schema
+    * and page format.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param format the format of the table's pages
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, int format, Transaction tx) {
+      createTable(tblname, sch, format, null, tx);
+   }
+
+   /**
+    * Create a new table having the specified name, schema,
+    * page format and partitioning.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param format the format of the table's pages
+    * @param part the table's partitioning, or null if the table is not partitioned
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, int format, Partitioning part, Transaction tx) {
+      Layout layout = new Layout(sch, format);
       // insert one record into tblcat
       TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
       tcat.insert();
@@ -69,6 +134,37 @@ class TableMgr {
          fcat.setInt   ("offset", layout.offset(fldname));
       }
       fcat.close();
+
+      // insert a record into fmtcat
+      TableScan fmtcat = new TableScan(tx, "fmtcat", fmtLayout);
+      fmtcat.insert();
+      fmtcat.setString("tblname", tblname);
+      fmtcat.setInt("format", format);
+      fmtcat.close();
+
+      // insert a record into enccat for each encoded field
+      TableScan enccat = new TableScan(tx, "enccat", encLayout);
+      for (String fldname : sch.fields())
+         if (sch.isEncoded(fldname)) {
+            enccat.insert();
+            enccat.setString("tblname", tblname);
+            enccat.setString("fldname", fldname);
+         }
+      enccat.close();
+
+      // insert a record into partcat for each partition
+      if (part != null) {
+         TableScan partcat = new TableScan(tx, "partcat", partLayout);
+         for (int p=0; p<part.count(); p++) {
+            partcat.insert();
+            partcat.setString("tblname", tblname);
+            partcat.setString("fldname", part.fieldName());
+            partcat.setInt("method", part.method());
+            partcat.setInt("partnum", p);
+            partcat.setInt("bound", part.lowerBound(p));
+         }
+         partcat.close();
+      }
    }
 
    /**
@@ -88,6 +184,7 @@ class TableMgr {
          }
       tcat.close();
 
+      Set<String> encoded = getEncodedFields(tblname, tx);
       Schema sch = new Schema();
       Map<String,Integer> offsets = new HashMap<String,Integer>();
       TableScan fcat = new TableScan(tx, "fldcat", fcatLayout);
@@ -98,9 +195,133 @@ class TableMgr {
             int fldlen     = fcat.getInt("length");
             int offset     = fcat.getInt("offset");
             offsets.put(fldname, offset);
-            sch.addField(fldname, fldtype, fldlen);
+            if (encoded.contains(fldname))
+               sch.addEncodedField(fldname, fldlen);
+            else
+               sch.addField(fldname, fldtype, fldlen);
          }
       fcat.close();
-      return new Layout(sch, offsets, size);
+      return new Layout(sch, offsets, size, getFormat(tblname, tx));
+   }
+
+   /**
+    * Convert the pages of the specified table to the BITMAP format,
+    * and update its catalog entries to match.
+    * Records keep their RIDs, so the table's indexes remain valid.
+    * The table is locked exclusively, and every change is logged,
+    * so the conversion is undone if the transaction rolls back.
+    * The catalog tables, and tables in any other format,
+    * are left alone.
+    * @param tblname the name of the table
+    * @param tx the transaction
+    */
+   public void upgradeTable(String tblname, Transaction tx) {
+      if (tblname.equals("tblcat") || tblname.equals("fldcat") || tblname.equals("fmtcat")
+            || tblname.equals("enccat") || tblname.equals("partcat"))
+         return;
+      Layout oldlayout = getLayout(tblname, tx);
+      if (oldlayout.format() != Layout.FLAGGED)
+         return;
+      Layout newlayout = new Layout(oldlayout.schema(), Layout.BITMAP);
+      String filename = tblname + ".tbl";
+      tx.xLockTable(filename);
+      int size = tx.size(filename);
+      for (int b=0; b<size; b++) {
+         BlockId blk = new BlockId(filename, b);
+         RecordPage rp = new RecordPage(tx, blk, oldlayout);
+         rp.reformat(newlayout);
+         tx.unpin(blk);
+         // the pages now have room for more records
+         tx.freeSpaceMap(filename).setFull(b, false);
+      }
+
+      TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
+      while (tcat.next())
+         if (tcat.getString("tblname").equals(tblname))
+            tcat.setInt("slotsize", newlayout.slotSize());
+      tcat.close();
+
+      TableScan fcat = new TableScan(tx, "fldcat", fcatLayout);
+      while (fcat.next())
+         if (fcat.getString("tblname").equals(tblname))
+            fcat.setInt("offset", newlayout.offset(fcat.getString("fldname")));
+      fcat.close();
+
+      TableScan fmtcat = new TableScan(tx, "fmtcat", fmtLayout);
+      boolean found = false;
+      while (fmtcat.next())
+         if (fmtcat.getString("tblname").equals(tblname)) {
+            fmtcat.setInt("format", Layout.BITMAP);
+            found = true;
+         }
+      if (!found) {
+         fmtcat.insert();
+         fmtcat.setString("tblname", tblname);
+         fmtcat.setInt("format", Layout.BITMAP);
+      }
+      fmtcat.close();
+   }
+
+   /**
+    * Retrieve the partitioning of the specified table
+    * from the catalog.
+    * @param tblname the name of the table
+    * @param tx the transaction
+    * @return the table's partitioning, or null if the table is not partitioned
+    */
+   public Partitioning getPartitioning(String tblname, Transaction tx) {
+      String fldname = null;
+      int method = Partitioning.HASH;
+      Map<Integer,Integer> bounds = new TreeMap<>();
+      TableScan partcat = new TableScan(tx, "partcat", partLayout);
+      while (partcat.next())
+         if (partcat.getString("tblname").equals(tblname)) {
+            fldname = partcat.getString("fldname");
+            method = partcat.getInt("method");
+            bounds.put(partcat.getInt("partnum"), partcat.getInt("bound"));
+         }
+      partcat.close();
+      if (fldname == null)
+         return null;
+      if (method == Partitioning.HASH)
+         return new Partitioning(fldname, bounds.size());
+      int[] lows = new int[bounds.size() - 1];
+      for (int p=1; p<bounds.size(); p++)
+         lows[p-1] = bounds.get(p);
+      return new Partitioning(fldname, lows);
+   }
+
+   private boolean isCataloged(String tblname, Transaction tx) {
+      boolean found = false;
+      TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
+      while (tcat.next())
+         if (tcat.getString("tblname").equals(tblname)) {
+            found = true;
+            break;
+         }
+      tcat.close();
+      return found;
+   }
+
+   private int getFormat(String tblname, Transaction tx) {
+      int format = Layout.FLAGGED;
+      TableScan fmtcat = new TableScan(tx, "fmtcat", fmtLayout);
+      while (fmtcat.next())
+         if (fmtcat.getString("tblname").equals(tblname)) {
+            format = fmtcat.getInt("format");
+            break;
+         }
+      fmtcat.close();
+      return format;
+   }
+
+   private Set<String> getEncodedFields(String tblname, Transaction tx) {
+      Set<String> encoded = new HashSet<>();
+      TableScan enccat = new TableScan(tx, "enccat", encLayout);
+      while (enccat.next())
+         if (enccat.getString("tblname").equals(tblname))
+            encoded.add(enccat.getString("fldname"));
+      enccat.close();
+      return encoded;
    }
 }
\ No newline at end of file
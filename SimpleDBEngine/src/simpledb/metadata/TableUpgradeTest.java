@@ -0,0 +1,96 @@
+package simpledb.metadata;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import static simpledb.test.Check.check;
+
+public class TableUpgradeTest {
+   private static SimpleDB db;
+   private static TableMgr tm;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("tableupgradetest", 400, 8);
+      Transaction tx = db.newTx();
+      tm = new TableMgr(true, tx);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      tm.createTable("Old", sch, Layout.FLAGGED, tx);
+      tm.createTable("New", sch, tx);
+      check(tm.getLayout("Old", tx).format() == Layout.FLAGGED, "explicit FLAGGED table");
+      check(tm.getLayout("New", tx).format() == Layout.BITMAP, "new tables use BITMAP pages");
+
+      // fill the old-format table, leaving some holes
+      Layout layout = tm.getLayout("Old", tx);
+      TableScan ts = new TableScan(tx, "Old", layout);
+      for (int i=0; i<50; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec"+i);
+      }
+      ts.beforeFirst();
+      while (ts.next())
+         if (ts.getInt("A") % 3 == 0)
+            ts.delete();
+      ts.close();
+      tx.commit();
+      Map<RID,Integer> before = contents("Old");
+
+      // an upgrade that rolls back leaves the table as it was
+      tx = db.newTx();
+      tm.upgradeTable("Old", tx);
+      tx.rollback();
+      tx = db.newTx();
+      check(tm.getLayout("Old", tx).format() == Layout.FLAGGED, "rolled-back upgrade keeps the format");
+      tx.commit();
+      check(contents("Old").equals(before), "rolled-back upgrade keeps the records");
+
+      // a committed upgrade keeps every record in its slot
+      tx = db.newTx();
+      tm.upgradeTable("Old", tx);
+      tx.commit();
+      tx = db.newTx();
+      layout = tm.getLayout("Old", tx);
+      check(layout.format() == Layout.BITMAP, "upgraded table uses BITMAP pages");
+      ts = new TableScan(tx, "Old", layout);
+      boolean same = true;
+      for (Map.Entry<RID,Integer> e : before.entrySet()) {
+         ts.moveToRid(e.getKey());
+         same = same && ts.getInt("A") == e.getValue()
+                     && ts.getString("B").equals("rec"+e.getValue());
+      }
+      ts.close();
+      tx.commit();
+      check(same, "records keep their RIDs");
+      check(contents("Old").equals(before), "no records gained or lost");
+
+      // the upgraded pages hold more records
+      tx = db.newTx();
+      int size = tx.size("Old.tbl");
+      ts = new TableScan(tx, "Old", layout);
+      for (int i=50; i<60; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec"+i);
+      }
+      ts.close();
+      System.out.println("slots per block: FLAGGED " + RecordPage.slotCount(new Layout(sch), 400)
+                         + ", BITMAP " + RecordPage.slotCount(layout, 400));
+      check(tx.size("Old.tbl") == size, "inserts fill the freed and added slots");
+      tx.commit();
+      System.out.println("done");
+   }
+
+   private static Map<RID,Integer> contents(String tblname) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, tm.getLayout(tblname, tx));
+      Map<RID,Integer> result = new HashMap<>();
+      while (ts.next())
+         result.put(ts.getRid(), ts.getInt("A"));
+      ts.close();
+      tx.commit();
+      return result;
+   }
+}
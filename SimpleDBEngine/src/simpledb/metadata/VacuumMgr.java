@@ -0,0 +1,160 @@
+package simpledb.metadata;
+
+import java.util.*;
+import simpledb.file.*;
+import simpledb.index.Index;
+import simpledb.query.Constant;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+/**
+ * The vacuum manager, which gives back the space of deleted records.
+ * Vacuuming a table moves its last records into free slots nearer
+ * the start of the table, updating the table's indexes for the
+ * moved RIDs, and removes the empty blocks left at the end of the file.
+ * <p>
+ * The work is done a step at a time, each step moving a limited
+ * number of records, so that a table can be vacuumed in a series
+ * of short transactions while other transactions use it.
+ * A step locks the table exclusively.
+ * Moving records out of the order given by clustering the table
+ * makes the catalog forget that clustering.
+ * A step first clears the table's free-space map, whose bits
+ * may wrongly mark as full the blocks emptied by a rollback,
+ * and rebuilds that of the table's overflow file, if any, likewise.
+ * Blocks are removed only once they are empty as of the last commit,
+ * so the blocks emptied by a step are removed by a later one.
+ */
+public class VacuumMgr {
+   /**
+    * The number of records moved by a step of the
+    * SQL <i>vacuum</i> statement.
+    */
+   public static final int MOVES_PER_STEP = 100;
+   private TableMgr tblMgr;
+   private IndexMgr idxMgr;
+
+   public VacuumMgr(TableMgr tblMgr, IndexMgr idxMgr) {
+      this.tblMgr = tblMgr;
+      this.idxMgr = idxMgr;
+   }
+
+   /**
+    * Perform a step of vacuuming the specified table:
+    * remove the empty blocks at the end of the table,
+    * then move up to the specified number of records
+    * from the end of the table into earlier blocks.
+    * A record moved out of its page by a SLOTTED table
+    * stays where it is, so its page cannot be removed.
+    * Each partition of a partitioned table is vacuumed in turn,
+    * the step moving up to the specified number of records in all.
+    * @param tblname the name of the table
+    * @param maxmoves the largest number of records to move
+    * @param tx the transaction
+    * @return the number of records moved; 0 once the table is compact
+    */
+   public int vacuum(String tblname, int maxmoves, Transaction tx) {
+      Layout layout = tblMgr.getLayout(tblname, tx);
+      Partitioning part = tblMgr.getPartitioning(tblname, tx);
+      if (part == null) {
+         int moved = vacuum(tblname, layout, idxMgr.getIndexInfo(tblname, tx), maxmoves, tx);
+         if (moved > 0)
+            idxMgr.clearClusteredIndex(tblname, tx);
+         return moved;
+      }
+      int moved = 0;
+      for (int p=0; p<part.count() && moved<maxmoves; p++)
+         moved += vacuum(Partitioning.partitionName(tblname, p), layout,
+                         Collections.emptyMap(), maxmoves - moved, tx);
+      return moved;
+   }
+
+   /**
+    * Perform a step of vacuuming the table or partition
+    * stored under the specified name.
+    */
+   private int vacuum(String tblname, Layout layout, Map<String,IndexInfo> indexes,
+                      int maxmoves, Transaction tx) {
+      String filename = tblname + ".tbl";
+      tx.xLockTable(filename);
+      int size = tx.size(filename);
+      if (size == 0)
+         return 0;
+
+      // first, remove the empty blocks at the end of the file
+      int end = size;
+      while (end > 1 && isEmpty(new BlockId(filename, end-1), layout, tx))
+         end--;
+      if (end < size)
+         size = tx.truncate(filename, end);
+
+      // then move the last records into the first free slots,
+      // first clearing the free-space hints left by rollbacks
+      FreeSpaceMap freespace = tx.freeSpaceMap(filename);
+      for (int b=0; b<size-1; b++)
+         freespace.setFull(b, false);
+      if (layout.hasLongFields())
+         new OverflowFile(tx, tblname).resetFreeSpace();
+      TableScan src = new TableScan(tx, tblname, layout);
+      TableScan dest = new TableScan(tx, tblname, layout);
+      int moved = 0;
+      int blknum = size - 1;
+      while (moved < maxmoves) {
+         RID rid = lastRecord(filename, blknum, layout, tx);
+         if (rid == null || rid.blockNumber() == 0)
+            break;
+         blknum = rid.blockNumber();
+         src.moveToRid(rid);
+         Map<String,Constant> vals = new HashMap<>();
+         for (String fldname : layout.schema().fields())
+            vals.put(fldname, src.getVal(fldname));
+         for (String fldname : indexes.keySet()) {
+            Index idx = indexes.get(fldname).open();
+            idx.delete(vals.get(fldname), rid);
+            idx.close();
+         }
+         src.delete();
+
+         dest.insert();
+         for (String fldname : layout.schema().fields())
+            dest.setVal(fldname, vals.get(fldname));
+         RID newrid = dest.getRid();
+         for (String fldname : indexes.keySet()) {
+            Index idx = indexes.get(fldname).open();
+            idx.insert(vals.get(fldname), newrid);
+            idx.close();
+         }
+         // stop if there was no room in an earlier block
+         if (newrid.blockNumber() >= rid.blockNumber())
+            break;
+         moved++;
+      }
+      src.close();
+      dest.close();
+      return moved;
+   }
+
+   private boolean isEmpty(BlockId blk, Layout layout, Transaction tx) {
+      RecordBlock rb = RecordBlock.open(tx, blk, layout);
+      boolean empty = rb.isEmpty();
+      rb.close();
+      return empty;
+   }
+
+   /**
+    * Return the RID of the last record of the table,
+    * looking no further than the specified block.
+    */
+   private RID lastRecord(String filename, int blknum, Layout layout, Transaction tx) {
+      for (int b=blknum; b>=0; b--) {
+         RecordBlock rb = RecordBlock.open(tx, new BlockId(filename, b), layout);
+         int last = -1;
+         for (int slot=rb.nextAfter(-1); slot>=0; slot=rb.nextAfter(slot))
+            last = slot;
+         rb.close();
+         if (last >= 0)
+            return new RID(b, last);
+      }
+      return null;
+   }
+}
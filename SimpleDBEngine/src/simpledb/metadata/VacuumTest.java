@@ -0,0 +1,144 @@
+package simpledb.metadata;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import simpledb.parse.*;
+import static simpledb.test.Check.check;
+
+public class VacuumTest {
+   private static SimpleDB db;
+
+   public static void main(String[] args) throws Exception {
+      // "vacuum" is not reserved, so it remains usable as a name
+      check(((VacuumData) new Parser("vacuum vacuum").updateCmd()).tableName().equals("vacuum"),
+            "vacuum a table named vacuum");
+      check(new Parser("select vacuum from vacuum where vacuum = 1").query().tables().contains("vacuum"),
+            "field and table named vacuum");
+
+      db = new SimpleDB("vacuumtest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table churn(id int, name varchar(30))", tx);
+      planner.executeUpdate("create index churnid on churn(id) using btree", tx);
+      planner.executeUpdate("create table sloppy(id int, name varchar(30)) using slotted", tx);
+      for (int i=0; i<1000; i++) {
+         planner.executeUpdate("insert into churn(id, name) values(" + i + ", 'name" + i + "')", tx);
+         planner.executeUpdate("insert into sloppy(id, name) values(" + i + ", 'name" + i + "')", tx);
+      }
+      tx.commit();
+
+      // delete most of the records, leaving survivors all over the table
+      tx = db.newTx();
+      for (int i=0; i<1000; i++)
+         if (i % 10 != 0) {
+            planner.executeUpdate("delete from churn where id = " + i, tx);
+            planner.executeUpdate("delete from sloppy where id = " + i, tx);
+         }
+      tx.commit();
+      Set<Integer> expected = ids("churn");
+      int before = size("churn");
+
+      // a rolled-back step changes nothing
+      tx = db.newTx();
+      check(planner.executeUpdate("vacuum churn", tx) > 0, "step moves records");
+      tx.rollback();
+      check(ids("churn").equals(expected) && size("churn") == before, "rollback undoes the step");
+
+      // a snapshot taken before vacuuming keeps the blocks it needs
+      Transaction reader = db.newReadOnlyTx();
+      int steps = vacuum("churn");
+      int after = size("churn");
+      System.out.println("churn: " + before + " blocks before, " + after + " after " + steps + " steps");
+      check(count(reader, "churn") == expected.size(), "snapshot sees every record");
+      check(after == before, "truncation waits for the snapshot");
+      reader.commit();
+      vacuum("churn");
+      after = size("churn");
+      System.out.println("churn: " + after + " blocks once the snapshot ends");
+      check(after * 4 < before, "file truncated");
+      check(ids("churn").equals(expected), "no record lost or duplicated");
+
+      // the index follows the moved records
+      boolean found = true;
+      for (int id : expected)
+         found = found && query("select name from churn where id = " + id).equals("name" + id);
+      check(found, "index finds moved records");
+
+      // the table is usable afterwards
+      tx = db.newTx();
+      for (int i=2000; i<2100; i++)
+         planner.executeUpdate("insert into churn(id, name) values(" + i + ", 'name" + i + "')", tx);
+      tx.commit();
+      check(query("select name from churn where id = 2050").equals("name2050"), "inserts after vacuum");
+
+      // slotted tables shrink too
+      Set<Integer> sloppy = ids("sloppy");
+      before = size("sloppy");
+      vacuum("sloppy");
+      after = size("sloppy");
+      System.out.println("sloppy: " + before + " blocks before, " + after + " after");
+      check(after < before && ids("sloppy").equals(sloppy), "slotted table compacted");
+      System.out.println("done");
+   }
+
+   /**
+    * Vacuum the table in a series of transactions,
+    * and return the number of steps taken.
+    */
+   private static int vacuum(String tblname) {
+      int steps = 0, moved;
+      do {
+         Transaction tx = db.newTx();
+         moved = db.planner().executeUpdate("vacuum " + tblname, tx);
+         tx.commit();
+         steps++;
+      } while (moved > 0);
+      return steps;
+   }
+
+   private static int size(String tblname) {
+      Transaction tx = db.newTx();
+      int size = tx.size(tblname + ".tbl");
+      tx.commit();
+      return size;
+   }
+
+   private static Set<Integer> ids(String tblname) {
+      Transaction tx = db.newTx();
+      Plan p = new TablePlan(tx, tblname, db.mdMgr());
+      Scan s = p.open();
+      Set<Integer> result = new HashSet<>();
+      int count = 0;
+      while (s.next()) {
+         result.add(s.getInt("id"));
+         count++;
+      }
+      s.close();
+      tx.commit();
+      check(count == result.size(), "no duplicates in " + tblname);
+      return result;
+   }
+
+   private static int count(Transaction tx, String tblname) {
+      Plan p = new TablePlan(tx, tblname, db.mdMgr());
+      Scan s = p.open();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      return count;
+   }
+
+   private static String query(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      Scan s = p.open();
+      String result = s.next() ? s.getString("name") : null;
+      s.close();
+      tx.commit();
+      return result;
+   }
+}
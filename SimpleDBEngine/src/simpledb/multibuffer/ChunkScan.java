@@ -19,6 +19,9 @@ public class ChunkScan implements Scan {
    private int startbnum, endbnum, currentbnum;
    private RecordPage rp;
    private int currentslot;
+   private int[] types;
+   private boolean[] overflows;
+   private OverflowFile overflow;
 
    /**
     * Create a chunk consisting of the specified pages. 
@@ -33,6 +36,15 @@ public class ChunkScan implements Scan {
       this.layout = layout;
       this.startbnum = startbnum;
       this.endbnum   = endbnum;
+      List<String> fields = layout.schema().fields();
+      types = new int[fields.size()];
+      overflows = new boolean[fields.size()];
+      for (int i=0; i<types.length; i++) {
+         types[i] = layout.schema().type(fields.get(i));
+         overflows[i] = layout.overflows(fields.get(i));
+      }
+      if (layout.hasLongFields())
+         overflow = new OverflowFile(tx, filename.substring(0, filename.lastIndexOf('.')));
       for (int i=startbnum; i<=endbnum; i++) {
          BlockId blk = new BlockId(filename, i);
          buffs.add(new RecordPage(tx, blk, layout));
@@ -79,31 +91,61 @@ public class ChunkScan implements Scan {
     * @see simpledb.query.Scan#getInt(java.lang.String)
     */
    public int getInt(String fldname) {
-      return rp.getInt(currentslot, fldname);
+      return getInt(indexOf(fldname));
    }
 
    /**
     * @see simpledb.query.Scan#getString(java.lang.String)
     */
    public String getString(String fldname) {
-      return rp.getString(currentslot, fldname);
+      return getString(indexOf(fldname));
    }
 
    /**
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
-      if (layout.schema().type(fldname) == INTEGER)
-         return new Constant(getInt(fldname));
+      return getVal(indexOf(fldname));
+   }
+
+   /**
+    * The position of a field is its position in the schema.
+    * @see simpledb.query.Scan#indexOf(java.lang.String)
+    */
+   public int indexOf(String fldname) {
+      return layout.schema().indexOf(fldname);
+   }
+
+   /**
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int col) {
+      return rp.getInt(currentslot, col);
+   }
+
+   /**
+    * @see simpledb.query.Scan#getString(int)
+    */
+   public String getString(int col) {
+      String s = rp.getString(currentslot, col);
+      return overflows[col] ? overflow.read(s) : s;
+   }
+
+   /**
+    * @see simpledb.query.Scan#getVal(int)
+    */
+   public Constant getVal(int col) {
+      if (types[col] == INTEGER)
+         return Constant.of(getInt(col));
       else
-         return new Constant(getString(fldname));
+         return new Constant(getString(col));
    }
 
   /**
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
    public boolean hasField(String fldname) {
-      return layout.schema().hasField(fldname);
+      return indexOf(fldname) >= 0;
    }
 
    private void moveToBlock(int blknum) {
@@ -1,5 +1,6 @@
 package simpledb.multibuffer;
 
+import java.util.List;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.query.*;
@@ -103,10 +104,14 @@ public class MultibufferProductPlan implements Plan {
       Schema sch = p.schema();
       TempTable t = new TempTable(tx, sch);
       UpdateScan dest = (UpdateScan) t.open();
+      List<String> fields = sch.fields();
+      int[] cols = new int[fields.size()];
+      for (int i=0; i<cols.length; i++)
+         cols[i] = src.indexOf(fields.get(i));
       while (src.next()) {
          dest.insert();
-         for (String fldname : sch.fields())
-            dest.setVal(fldname, src.getVal(fldname));
+         for (int i=0; i<cols.length; i++)
+            dest.setVal(fields.get(i), src.getVal(cols[i]));
       }
       src.close();
       dest.close();
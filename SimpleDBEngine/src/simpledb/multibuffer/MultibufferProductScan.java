@@ -12,6 +12,7 @@ import simpledb.record.*;
 public class MultibufferProductScan implements Scan {
    private Transaction tx;
    private Scan lhsscan, rhsscan=null, prodscan;
+   private FieldRouter router;
    private String filename;
    private Layout layout;
    private int chunksize, nextblknum, filesize;
@@ -75,7 +76,7 @@ public class MultibufferProductScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
-      return prodscan.getVal(fldname);
+      return getVal(indexOf(fldname));
    }
    
    /** 
@@ -85,7 +86,7 @@ public class MultibufferProductScan implements Scan {
     * @see simpledb.query.Scan#getInt(java.lang.String)
     */
    public int getInt(String fldname) {
-      return prodscan.getInt(fldname);
+      return getInt(indexOf(fldname));
    }
    
    /** 
@@ -95,7 +96,7 @@ public class MultibufferProductScan implements Scan {
     * @see simpledb.query.Scan#getString(java.lang.String)
     */
    public String getString(String fldname) {
-      return prodscan.getString(fldname);
+      return getString(indexOf(fldname));
    }
    
    /**
@@ -104,7 +105,29 @@ public class MultibufferProductScan implements Scan {
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
    public boolean hasField(String fldname) {
-      return prodscan.hasField(fldname);
+      return indexOf(fldname) >= 0;
+   }
+   
+   /**
+    * Returns the position of the specified field.
+    * The chunks have the same fields at the same positions,
+    * so the position holds from one chunk to the next.
+    * @see simpledb.query.Scan#indexOf(java.lang.String)
+    */
+   public int indexOf(String fldname) {
+      return router.indexOf(fldname);
+   }
+   
+   public int getInt(int col) {
+      return router.scan(col).getInt(router.column(col));
+   }
+   
+   public String getString(int col) {
+      return router.scan(col).getString(router.column(col));
+   }
+   
+   public Constant getVal(int col) {
+      return router.scan(col).getVal(router.column(col));
    }
    
    private boolean useNextChunk() {
@@ -118,6 +141,10 @@ public class MultibufferProductScan implements Scan {
       rhsscan = new ChunkScan(tx, filename, layout, nextblknum, end);
       lhsscan.beforeFirst();
       prodscan = new ProductScan(lhsscan, rhsscan);
+      if (router == null)
+         router = new FieldRouter(lhsscan, rhsscan);
+      else
+         router.setScan(1, rhsscan);
       nextblknum = end + 1;
       return true;
    }
@@ -60,22 +60,29 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 			tableplanners.add(tp);
 		}
 
-		// Step 2: Choose the lowest-size plan to begin the join order
-		Plan currentplan = getLowestSelectPlan();		
+		// Step 2: Have parallel workers read the query's only table, if they
+		// aggregate its records; the serial plan is then not needed
+		Plan currentplan = parallelPlan(data);
+		boolean parallel = (currentplan != null);
 		
-		// Step 3: Repeatedly add a plan to the join order
-		while (!tableplanners.isEmpty()) {
-			Plan p = getLowestJoinPlan(currentplan);
-			if (p != null)
-				currentplan = p;
-			else // no applicable join
-				currentplan = getLowestProductPlan(currentplan);
+		if (!parallel) {
+			// Step 3: Choose the lowest-size plan to begin the join order
+			currentplan = getLowestSelectPlan();
+			
+			// Step 4: Repeatedly add a plan to the join order
+			while (!tableplanners.isEmpty()) {
+				Plan p = getLowestJoinPlan(currentplan);
+				if (p != null)
+					currentplan = p;
+				else // no applicable join
+					currentplan = getLowestProductPlan(currentplan);
+			}
+			
+			// Step 5. Project on the field names
+			currentplan = new ProjectPlan(currentplan, data.fields());
 		}
-		
-		// Step 4. Project on the field names and return
-		currentplan = new ProjectPlan(currentplan, data.fields());
 
-		// Step 5
+		// Step 6
 		
 		//Aggregate functions are being used and no group by clause
 		if (data.aggFields() != null && data.groupList() == null && data.aggFields().size() > 0) {
@@ -83,16 +90,17 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 		}
 
 
-		// group by clause present or aggregate functions used
+		// group by clause present or aggregate functions used;
+		// the records of parallel workers are grouped by hashing instead of sorting
 		else if (data.groupList() != null || data.aggFields() != null) {
-			currentplan = new GroupByPlan(tx, currentplan, data.fields(), data.groupList(), data.aggFields(), data.aggOrder());
+			currentplan = new GroupByPlan(tx, currentplan, data.fields(), data.groupList(), data.aggFields(), data.aggOrder(), !parallel);
 		}
 		
 		//System.out.println(queryPlan);
 		getQueryPlan(); // Output query plan
 		
 		
-		// Step 6
+		// Step 7
 		
 		/**
 		 * If ordering is not required and if distinct is required, sort by 
@@ -112,7 +120,7 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 				currentplan = new SortPlan(tx, currentplan, data.fields());	//sort plan
 				currentplan = new DistinctPlan(tx, currentplan, data.fields());	//eliminate duplicates
 			}
-			return currentplan;
+			return limit(currentplan, data); //stop reading once the limit is reached
 		} 
 		else {  //If ordering is required.
 			//If require distinct records
@@ -126,7 +134,12 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 					}
 				}
 				currentplan = new SortPlan(tx, currentplan, data.sortFields(), data.sortOrder()); //sort plan
-				return new DistinctPlan(tx, currentplan, data.fields()); //eliminate duplicates
+				return limit(new DistinctPlan(tx, currentplan, data.fields()), data); //eliminate duplicates
+			} else if (data.limit() >= 0) {
+				//only the first offset + limit records of the order are needed
+				int n = (int) Math.min(Integer.MAX_VALUE, (long) data.limit() + data.offset());
+				currentplan = new TopNPlan(tx, currentplan, data.sortFields(), data.sortOrder(), n);
+				return limit(currentplan, data);
 			} else {
 				//just return, no duplicate elimination
 				currentplan = new SortPlan(tx, currentplan, data.sortFields(), data.sortOrder()); //sortplan
@@ -136,6 +149,38 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 
 	}
 
+	/**
+	 * Return a plan reading the query's only table with parallel workers,
+	 * if parallel scans are enabled, the query aggregates its records,
+	 * the table is large enough and its selection uses no index;
+	 * and null otherwise.
+	 * Other queries are read serially, since the workers
+	 * return the records in no particular order.
+	 * The table is recorded in the query plan once chosen.
+	 */
+	private Plan parallelPlan(QueryData data) {
+		boolean aggregated = data.groupList() != null || (data.aggFields() != null && !data.aggFields().isEmpty());
+		if (tableplanners.size() != 1 || !aggregated)
+			return null;
+		TablePlanner tp = tableplanners.iterator().next();
+		Plan p = tp.makeParallelPlan();
+		if (p != null) {
+			queryPlan.computeIfAbsent("table", k -> new ArrayList<>()).add(tp.myplan.tblname);
+			tableplanners.remove(tp);
+		}
+		return p;
+	}
+
+	/**
+	 * Keep only the records of the plan within the query's limit
+	 * and offset, if it has a limit.
+	 */
+	private Plan limit(Plan p, QueryData data) {
+		if (data.limit() < 0)
+			return p;
+		return new LimitPlan(p, data.limit(), data.offset());
+	}
+
 	
 	/**
 	 * Construct the query plan and prints out the query plan.
@@ -307,8 +352,8 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 
 	/**
 	 * This method keeps track of 2 plans, currentplan and bestplan.
-	 * For each table planner, 5 plans are initialise, IndexJoinplan, SortMergePlan, 
-	 * NestedLoopPlan, HashJoinPlan and ProductPlan. If it has a join predicate and
+	 * For each table planner, 6 plans are initialise, IndexJoinplan, SortMergePlan, 
+	 * NestedLoopPlan, HashJoinPlan, PartitionJoinPlan and ProductPlan. If it has a join predicate and
 	 * the operator is "=", we compare all the plans using the compare method to get 
 	 * the best current plan. Else if the an non equi join, we will default current plan
 	 * to be nestedLoopPlan. Else there is no joinPred, we will default to ProductPlan.
@@ -332,12 +377,13 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 			Plan sortMergePlan = tp.makeSortMergePlan(current);
 			Plan nestedLoopPlan = tp.makeNestedLoopPlan(current);
 			Plan hashJoinPlan = tp.makeHashJoinPlan(current);
+			Plan partitionJoinPlan = tp.makePartitionJoinPlan(current);
 			Plan productPlan = tp.makeDefaultProductPlan(current);
 			
 			Predicate joinPred = tp.returnJoinPredicate(current); // Get join pred.
 			// If current joinPred is an equi join.
 			if (joinPred != null && joinPred.terms.get(0).operator().equals("=")) {
-				currentplan = compare(indexPlan, sortMergePlan, nestedLoopPlan, hashJoinPlan, tp);
+				currentplan = compare(indexPlan, sortMergePlan, nestedLoopPlan, hashJoinPlan, partitionJoinPlan, tp);
 			}	
 			// If current joinPred is an non-equi join, we default the join to be nestedLoopPlan.
 			else if (joinPred != null){
@@ -399,12 +445,14 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 	 * @param sortmerge - Sort-Merge Plan
 	 * @param nested - Nested- Loop Plan
 	 * @param hash - Grace Hash join
+	 * @param partition - Partition-wise Hash join, possible only between tables partitioned alike
 	 * @param tp - Table Planner
 	 * @return the plan that yields the lowest blockAccessed + recordsOutput.
 	 */
-	private Plan compare(Plan index, Plan sortmerge, Plan nested, Plan hash, TablePlanner tp) {
+	private Plan compare(Plan index, Plan sortmerge, Plan nested, Plan hash, Plan partition, TablePlanner tp) {
 		int indexblocks = Integer.MAX_VALUE, sortblocks = Integer.MAX_VALUE, 
-				nestedblocks = Integer.MAX_VALUE, hashblocks = Integer.MAX_VALUE;
+				nestedblocks = Integer.MAX_VALUE, hashblocks = Integer.MAX_VALUE,
+				partitionblocks = Integer.MAX_VALUE;
 		if (index != null)
 			indexblocks = index.blocksAccessed() + index.recordsOutput();
 		
@@ -417,8 +465,11 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 		if (hash != null)
 			hashblocks = hash.blocksAccessed() + hash.recordsOutput();
 		
-		List<Integer> lowestJoinBlocks = new ArrayList<>(Arrays.asList(indexblocks, sortblocks, nestedblocks, hashblocks));
-		List<Plan> lowestJoinPlan = new ArrayList<>(Arrays.asList(index, sortmerge, nested, hash));
+		if (partition != null)
+			partitionblocks = partition.blocksAccessed() + partition.recordsOutput();
+		
+		List<Integer> lowestJoinBlocks = new ArrayList<>(Arrays.asList(indexblocks, sortblocks, nestedblocks, hashblocks, partitionblocks));
+		List<Plan> lowestJoinPlan = new ArrayList<>(Arrays.asList(index, sortmerge, nested, hash, partition));
 		int lowestIndex = lowestJoinBlocks.indexOf(Collections.min(lowestJoinBlocks)); // Get the minimum results from all plans
 		
 		// Add the lowest plan algorithm to the queryPlan
@@ -429,8 +480,10 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 			queryPlan.computeIfAbsent("join", k -> new ArrayList<>()).add("SortMergeJoin with " + tp.myplan.tblname);
 		} else if(lowestIndex == 2) {
 			queryPlan.computeIfAbsent("join", k -> new ArrayList<>()).add("NestedLoopsJoin with " + tp.myplan.tblname);
-		} else {
+		} else if(lowestIndex == 3) {
 			queryPlan.computeIfAbsent("join", k -> new ArrayList<>()).add("HashJoin with " + tp.myplan.tblname);
+		} else {
+			queryPlan.computeIfAbsent("join", k -> new ArrayList<>()).add("PartitionWiseHashJoin with " + tp.myplan.tblname);
 		} 
 		queryPlan.computeIfAbsent("table", k -> new ArrayList<>()).add(tp.myplan.tblname); // Add the table name
 		return lowestJoinPlan.get(lowestIndex);
@@ -14,6 +14,7 @@ import simpledb.materialize.HashJoinPlan;
 import simpledb.materialize.HashPartitionPlan;
 import simpledb.materialize.MergeJoinPlan;
 import simpledb.materialize.NestedLoopPlan;
+import simpledb.materialize.PartitionJoinPlan;
 import simpledb.multibuffer.MultibufferProductPlan;
 import simpledb.plan.*;
 
@@ -24,6 +25,7 @@ import simpledb.plan.*;
  */
 class TablePlanner {
 	public TablePlan myplan;
+	private Plan myscanplan; // reads the table without modifying it
 	public Predicate mypred;
 	private Schema myschema;
 	private Map<String, IndexInfo> indexes;
@@ -35,6 +37,7 @@ class TablePlanner {
 	 * Creates a new table planner. The specified predicate applies to the entire
 	 * query. The table planner is responsible for determining which portion of the
 	 * predicate is useful to the table, choose which join algorithm is called, and when indexes are useful.
+	 * The partitions of a partitioned table that the predicate rules out are not read.
 	 * 
 	 * @param tblname the name of the table
 	 * @param mypred  the query predicate
@@ -44,7 +47,8 @@ class TablePlanner {
 	public TablePlanner(String tblname, Predicate mypred, Transaction tx, MetadataMgr mdm) {
 		this.mypred = mypred;
 		this.tx = tx;
-		myplan = new TablePlan(tx, tblname, mdm);
+		myplan = new TablePlan(tx, tblname, mdm, mypred);
+		myscanplan = new ColumnPlan(tx, myplan);
 		myschema = myplan.schema();
 		indexes = mdm.getIndexInfo(tblname, tx);
 	}
@@ -58,10 +62,27 @@ class TablePlanner {
 	public Plan makeSelectPlan() {
 		Plan p = makeIndexSelect();
 		if (p == null)
-			p = myplan;
+			p = myscanplan;
 		return addSelectPred(p);
 	}
 
+	/**
+	 * Constructs a plan that reads the table with parallel workers, which apply
+	 * the selection predicate themselves. The method returns null unless
+	 * parallel scans are enabled by ParallelPlan.MAX_WORKERS, the
+	 * table is unpartitioned, stored in rows, and large enough to be worth
+	 * splitting among workers, and its selection cannot use an index.
+	 * 
+	 * @return a parallel plan for the table, or null
+	 */
+	public Plan makeParallelPlan() {
+		if (ParallelPlan.MAX_WORKERS < 2 || myplan.partitioning() != null || myplan.layout().format() == Layout.PAX
+				|| myplan.blocksAccessed() < ParallelPlan.MIN_BLOCKS || indexSelectField() != null)
+			return null;
+		Predicate selectpred = mypred.selectSubPred(myschema);
+		return new ParallelPlan(tx, myplan, (selectpred == null) ? new Predicate() : selectpred);
+	}
+
 	/**
 	 * Constructs an index join plan of the specified plan and the table, if possible. 
 	 * (Which means that if an indexselect is also
@@ -135,6 +156,24 @@ class TablePlanner {
 		return p;
 	}
 	
+	/**
+	 * Constructs a partition-wise join plan of the specified plan and the table, if possible.
+	 * The method returns null unless both are partitioned in the same way,
+	 * and the predicate equates their partitioning fields.
+	 * 
+	 * @param current the specified plan
+	 * @return a partition-wise join plan of the current plan and this table
+	 */
+	public Plan makePartitionJoinPlan(Plan current) {
+		Schema currsch = current.schema();
+		Predicate joinpred = mypred.joinSubPred(myschema, currsch);
+		if (joinpred == null || !(current instanceof PartitionedPlan))
+			return null;
+		Plan p = makePartitionJoin((PartitionedPlan) current, currsch);
+
+		return p;
+	}
+
 	/**
 	 * Constructs a cross product join plan of the specified plan and the table.
 	 * 
@@ -154,7 +193,7 @@ class TablePlanner {
 	 * @return a product plan of the specified plan and this table
 	 */
 	public Plan makeProductPlan(Plan current) {
-		Plan p = addSelectPred(myplan);
+		Plan p = addSelectPred(myscanplan);
 		return new MultibufferProductPlan(tx, current, p);
 	}
 
@@ -169,6 +208,24 @@ class TablePlanner {
 	 */
 	private Plan makeIndexSelect() {
 		storeIndexSelectPlan = new HashMap<String, String>();
+		String fldname = indexSelectField();
+		if (fldname == null)
+			return null;
+		IndexInfo ii = indexes.get(fldname);
+		storeIndexSelectPlan.put(myplan.tblname, fldname + "(" + ii.getIndexType() + ")");
+		System.out.println("index on " + fldname + " used");
+		String operator = mypred.getSelectOperator(fldname);
+		return new IndexSelectPlan(myplan, ii, mypred.equatesWithConstant(fldname), operator);
+	}
+
+	/**
+	 * Returns the field whose index an index selection would use, or null if
+	 * there is none. A hash index is not used for a range query, and then
+	 * no index is.
+	 * 
+	 * @return the field of the index used for selection, or null
+	 */
+	private String indexSelectField() {
 		for (String fldname : indexes.keySet()) {
 			Constant val = mypred.equatesWithConstant(fldname);
 			if (val != null) {
@@ -185,10 +242,7 @@ class TablePlanner {
 				if (!isEqualOpr && isHashIndex) {
 					return null;
 				}
-				storeIndexSelectPlan.put(myplan.tblname, fldname + "(" + ii.getIndexType() + ")");
-				System.out.println("index on " + fldname + " used");
-				String operator = mypred.getSelectOperator(fldname);
-				return new IndexSelectPlan(myplan, ii, val, operator);
+				return fldname;
 			}
 		}
 		return null;
@@ -256,12 +310,12 @@ class TablePlanner {
 			String fldname2 = t.RHS();
 			// selecting inner and outer tables
 			if (currsch.hasField(fldname1) && myplan.schema().hasField(fldname2)) {
-				Plan p = new MergeJoinPlan(tx, current, myplan, fldname1, fldname2);
+				Plan p = new MergeJoinPlan(tx, current, myscanplan, fldname1, fldname2);
 	
 				p = addSelectPred(p);
 				return addJoinPred(p, currsch);
 			} else if (currsch.hasField(fldname2) && myplan.schema().hasField(fldname1)) {
-				Plan p = new MergeJoinPlan(tx, myplan, current, fldname1, fldname2);
+				Plan p = new MergeJoinPlan(tx, myscanplan, current, fldname1, fldname2);
 				p = addSelectPred(p);
 				return addJoinPred(p, currsch);
 			}
@@ -288,12 +342,12 @@ class TablePlanner {
 			// selecting inner and outer tables
 			if (currsch.hasField(fldname1) && myplan.schema().hasField(fldname2) ) {
 
-				Plan p = new NestedLoopPlan(tx, current, myplan, fldname1, fldname2, opr);
+				Plan p = new NestedLoopPlan(tx, current, myscanplan, fldname1, fldname2, opr);
 				p = addSelectPred(p);
 				return addJoinPred(p, currsch);
 			} else if (currsch.hasField(fldname2) && myplan.schema().hasField(fldname1)) {
 
-				Plan p = new NestedLoopPlan(tx, myplan, current, fldname1, fldname2, opr);
+				Plan p = new NestedLoopPlan(tx, myscanplan, current, fldname1, fldname2, opr);
 				
 				p = addSelectPred(p);
 				return addJoinPred(p, currsch);
@@ -319,14 +373,14 @@ class TablePlanner {
 			// selecting inner and outer tables
 			if (currsch.hasField(fldname1) && myplan.schema().hasField(fldname2)) {
 				HashPartitionPlan currpartition = new HashPartitionPlan(tx, current, fldname1);
-				HashPartitionPlan mypartition = new HashPartitionPlan(tx, myplan, fldname2);
+				HashPartitionPlan mypartition = new HashPartitionPlan(tx, myscanplan, fldname2);
 				Plan p = new HashJoinPlan(tx, currpartition, mypartition, fldname1, fldname2);
 				p = addSelectPred(p);
 				return addJoinPred(p, currsch);
 
 			} else if (currsch.hasField(fldname2) && myplan.schema().hasField(fldname1)) {
 				HashPartitionPlan currpartition = new HashPartitionPlan(tx, current, fldname2);
-				HashPartitionPlan mypartition = new HashPartitionPlan(tx, myplan, fldname1);
+				HashPartitionPlan mypartition = new HashPartitionPlan(tx, myscanplan, fldname1);
 				Plan p = new HashJoinPlan(tx, currpartition, mypartition, fldname2, fldname1);
 				p = addSelectPred(p);
 				return addJoinPred(p, currsch);
@@ -336,6 +390,34 @@ class TablePlanner {
 		return null;
 	}
 
+	/**
+	 * Attempts to return a partition-wise join plan on the current plan and myplan.
+	 * The function will check if the current plan is partitioned like myplan, and
+	 * if there is an equality term between their partitioning fields.
+	 * If so, each pair of partitions is joined on its own.
+	 * Otherwise, return null.
+	 * 
+	 * @param current the specified plan
+	 * @param currsch the schema of the specified plan
+	 * @return a partition-wise join plan of the current plan and myplan
+	 */
+	private Plan makePartitionJoin(PartitionedPlan current, Schema currsch) {
+		PartitionedPlan mine = (PartitionedPlan) addSelectPred(myscanplan);
+		Partitioning currpart = current.partitioning();
+		Partitioning mypart = mine.partitioning();
+		if (currpart == null || !currpart.matches(mypart))
+			return null;
+		String fldname1 = currpart.fieldName();
+		String fldname2 = mypart.fieldName();
+		for (Term t : mypred.terms) {
+			if (t.operator().equals("=") && fldname2.equals(t.equatesWithField(fldname1))) {
+				Plan p = new PartitionJoinPlan(tx, current, mine, fldname1, fldname2);
+				return addJoinPred(p, currsch);
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Returns a product join plan on the current plan and myplan
 	 * 
@@ -0,0 +1,33 @@
+package simpledb.parse;
+
+/**
+ * Data for the SQL <i>cluster</i> statement.
+ */
+public class ClusterData {
+   private String tblname, idxname;
+   
+   /**
+    * Saves the name of the table to be clustered,
+    * and of the index giving its order.
+    */
+   public ClusterData(String tblname, String idxname) {
+      this.tblname = tblname;
+      this.idxname = idxname;
+   }
+   
+   /**
+    * Returns the name of the table to be clustered.
+    * @return the name of the table
+    */
+   public String tableName() {
+      return tblname;
+   }
+   
+   /**
+    * Returns the name of the index whose key orders the table.
+    * @return the name of the index
+    */
+   public String indexName() {
+      return idxname;
+   }
+}
@@ -0,0 +1,49 @@
+package simpledb.parse;
+
+import java.util.*;
+
+/**
+ * Data for the SQL <i>copy</i> statement,
+ * which bulk-loads a table from a data file.
+ */
+public class CopyData {
+   private String tblname;
+   private List<String> flds;
+   private String filename;
+   
+   /**
+    * Saves the table name, the field list and the name of the data file.
+    */
+   public CopyData(String tblname, List<String> flds, String filename) {
+      this.tblname = tblname;
+      this.flds = flds;
+      this.filename = filename;
+   }
+   
+   /**
+    * Returns the name of the table being loaded.
+    * @return the name of the table
+    */
+   public String tableName() {
+      return tblname;
+   }
+   
+   /**
+    * Returns the fields whose values appear on each line
+    * of the data file, in order,
+    * or null if the statement names no fields
+    * (in which case each line has a value for every field of the table).
+    * @return a list of field names, or null
+    */
+   public List<String> fields() {
+      return flds;
+   }
+   
+   /**
+    * Returns the name of the data file.
+    * @return the name of the data file
+    */
+   public String fileName() {
+      return filename;
+   }
+}
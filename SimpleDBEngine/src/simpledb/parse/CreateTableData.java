@@ -1,6 +1,6 @@
 package simpledb.parse;
 
-import simpledb.record.Schema;
+import simpledb.record.*;
 
 /**
  * Data for the SQL <i>create table</i> statement.
@@ -9,13 +9,31 @@ import simpledb.record.Schema;
 public class CreateTableData {
    private String tblname;
    private Schema sch;
+   private int format;
+   private Partitioning part;
    
    /**
     * Saves the table name and schema.
     */
    public CreateTableData(String tblname, Schema sch) {
+      this(tblname, sch, Layout.BITMAP);
+   }
+   
+   /**
+    * Saves the table name, schema and page format.
+    */
+   public CreateTableData(String tblname, Schema sch, int format) {
+      this(tblname, sch, format, null);
+   }
+   
+   /**
+    * Saves the table name, schema, page format and partitioning.
+    */
+   public CreateTableData(String tblname, Schema sch, int format, Partitioning part) {
       this.tblname = tblname;
       this.sch = sch;
+      this.format = format;
+      this.part = part;
    }
    
    /**
@@ -33,5 +51,21 @@ public class CreateTableData {
    public Schema newSchema() {
       return sch;
    }
+   
+   /**
+    * Returns the page format of the new table.
+    * @return the format, as a Layout constant
+    */
+   public int format() {
+      return format;
+   }
+   
+   /**
+    * Returns the partitioning of the new table.
+    * @return the partitioning, or null if the table is not partitioned
+    */
+   public Partitioning partitioning() {
+      return part;
+   }
 }
 
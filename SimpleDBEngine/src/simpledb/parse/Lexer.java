@@ -12,6 +12,7 @@ public class Lexer {
 	private Collection<String> keywords;
 	private Collection<String> comparators;
 	private Collection<String> indexes;
+	private Collection<String> formats;
 	private Collection<String> aggregates;
 	private StreamTokenizer tok;
 
@@ -24,6 +25,7 @@ public class Lexer {
 		initKeywords();
 		initComparators();
 		initIndex();
+		initFormats();
 		initAggregates();
 		tok = new StreamTokenizer(new StringReader(s));
 		tok.ordinaryChar('.'); // disallow "." in identifiers
@@ -107,6 +109,15 @@ public class Lexer {
 		return tok.ttype == StreamTokenizer.TT_WORD && indexes.contains(tok.sval);
 	}
 
+	/**
+	 * Returns true if the current token is in the list of table page formats.
+	 * 
+	 * @return true if that format is the current token
+	 */
+	public boolean matchFormat() {
+		return tok.ttype == StreamTokenizer.TT_WORD && formats.contains(tok.sval);
+	}
+
 	/**
 	 * Returns true if the current token is in the specified aggregate list.
 	 * 
@@ -213,6 +224,20 @@ public class Lexer {
 		return s;
 	}
 
+	/**
+	 * Throws an exception if the current token is not in the list of table page formats.
+	 * Otherwise, moves to the next token.
+	 * 
+	 * @return s the format string
+	 */
+	public String eatFormat() {
+		if (!matchFormat())
+			throw new BadSyntaxException();
+		String s = tok.sval;
+		nextToken();
+		return s;
+	}
+
 	/**
 	 * Throws an exception if the current token is not in the specified aggregate list.
 	 * Otherwise, moves to the next token.
@@ -240,7 +265,11 @@ public class Lexer {
 	}
 
 	/**
-	 * Store the specified list of keywords
+	 * Store the specified list of keywords.
+	 * Words such as "copy", "vacuum", "cluster", "dictionary", "longvarchar",
+	 * "partition", "partitions", "limit" and "offset" are not reserved: the parser
+	 * matches them only where a statement starts or a clause is expected,
+	 * so that they remain usable as table and field names.
 	 */
 	private void initKeywords() {
 		keywords = Arrays.asList("select", "from", "where", "and", "insert", "into", "values", "delete", "update",
@@ -259,7 +288,14 @@ public class Lexer {
 	 * Store the specified list of indexes type
 	 */
 	private void initIndex() {
-		indexes = Arrays.asList("hash", "btree");
+		indexes = Arrays.asList("hash", "btree", "zonemap");
+	}
+
+	/**
+	 * Store the specified list of table page formats
+	 */
+	private void initFormats() {
+		formats = Arrays.asList("flagged", "bitmap", "slotted", "pax");
 	}
 
 	/**
@@ -1,5 +1,6 @@
 package simpledb.parse;
 
+import static java.sql.Types.INTEGER;
 import java.util.*;
 
 import simpledb.materialize.*;
@@ -128,7 +129,21 @@ public class Parser {
 			sortFields = sortList(); //Store list of fields (index 0) and list of order by type (index 1). Eg. [[majorid, sname], [asc, desc]]
 		}
 
-		return new QueryData(fields, tables, pred, sortFields, aggFields, aggOrder, groupList, isDistinct);
+		//Check for limit, and an offset after it
+		//"limit" and "offset" are not reserved, so that fields may have those names
+		int limit = -1, offset = 0;
+		if (lex.matchKeyword("limit")) {
+			lex.eatKeyword("limit");
+			limit = lex.eatIntConstant();
+			if (lex.matchKeyword("offset")) {
+				lex.eatKeyword("offset");
+				offset = lex.eatIntConstant();
+			}
+			if (limit < 0 || offset < 0)
+				throw new BadSyntaxException();
+		}
+
+		return new QueryData(fields, tables, pred, sortFields, aggFields, aggOrder, groupList, isDistinct, limit, offset);
 	}
 
 	
@@ -329,6 +344,12 @@ public class Parser {
 			return delete();
 		else if (lex.matchKeyword("update"))
 			return modify();
+		else if (lex.matchKeyword("copy"))
+			return copy();
+		else if (lex.matchKeyword("vacuum"))
+			return vacuum();
+		else if (lex.matchKeyword("cluster"))
+			return cluster();
 		else
 			return create();
 	}
@@ -393,6 +414,53 @@ public class Parser {
 		return L;
 	}
 
+// Method for parsing copy commands
+
+	/**
+	 * SQL Query format Copy "table name" [("field list")] from "file name"
+	 * 
+	 * @return CopyData class
+	 */
+	public CopyData copy() {
+		lex.eatKeyword("copy");
+		String tblname = lex.eatId();
+		List<String> flds = null;
+		if (lex.matchDelim('(')) {
+			lex.eatDelim('(');
+			flds = fieldList();
+			lex.eatDelim(')');
+		}
+		lex.eatKeyword("from");
+		String filename = lex.eatStringConstant();
+		return new CopyData(tblname, flds, filename);
+	}
+
+// Method for parsing vacuum commands
+
+	/**
+	 * SQL Query format Vacuum "table name"
+	 * 
+	 * @return VacuumData class
+	 */
+	public VacuumData vacuum() {
+		lex.eatKeyword("vacuum");
+		return new VacuumData(lex.eatId());
+	}
+
+// Method for parsing cluster commands
+
+	/**
+	 * SQL Query format Cluster "table name" Using "index name"
+	 * 
+	 * @return ClusterData class
+	 */
+	public ClusterData cluster() {
+		lex.eatKeyword("cluster");
+		String tblname = lex.eatId();
+		lex.eatKeyword("using");
+		return new ClusterData(tblname, lex.eatId());
+	}
+
 // Method for parsing modify commands
 
 	public ModifyData modify() {
@@ -400,7 +468,7 @@ public class Parser {
 		String tblname = lex.eatId();
 		lex.eatKeyword("set");
 		String fldname = field();
-		lex.eatDelim('=');
+		lex.eatKeyword("="); // the lexer reads "=" as a word, like the comparators
 		Expression newval = expression();
 		Predicate pred = new Predicate();
 		if (lex.matchKeyword("where")) {
@@ -412,13 +480,65 @@ public class Parser {
 
 // Method for parsing create table commands
 
+	/**
+	 * SQL Query format Create table "table name" ("field definitions") [using "page format"]
+	 * [partition by hash ("field") partitions "count" | partition by range ("field") ("bounds")]
+	 * 
+	 * @return CreateTableData class
+	 */
 	public CreateTableData createTable() {
 		lex.eatKeyword("table");
 		String tblname = lex.eatId();
 		lex.eatDelim('(');
 		Schema sch = fieldDefs();
 		lex.eatDelim(')');
-		return new CreateTableData(tblname, sch);
+		int format = Layout.BITMAP;
+		if (lex.matchKeyword("using")) {
+			lex.eatKeyword("using");
+			format = Layout.formatNamed(lex.eatFormat());
+		}
+		Partitioning part = null;
+		if (lex.matchKeyword("partition"))
+			part = partitioning(sch);
+		return new CreateTableData(tblname, sch, format, part);
+	}
+
+	/**
+	 * Partitioning clause: partition by hash ("field") partitions "count",
+	 * or partition by range ("integer field") ("bound" {, "bound"}),
+	 * the bounds being increasing.
+	 */
+	private Partitioning partitioning(Schema sch) {
+		lex.eatKeyword("partition");
+		lex.eatKeyword("by");
+		boolean byHash = lex.matchKeyword("hash");
+		lex.eatKeyword(byHash ? "hash" : "range");
+		lex.eatDelim('(');
+		String fldname = field();
+		lex.eatDelim(')');
+		if (!sch.hasField(fldname))
+			throw new BadSyntaxException();
+		if (byHash) {
+			lex.eatKeyword("partitions");
+			int count = lex.eatIntConstant();
+			if (count < 1)
+				throw new BadSyntaxException();
+			return new Partitioning(fldname, count);
+		}
+		if (sch.type(fldname) != INTEGER)
+			throw new BadSyntaxException();
+		lex.eatDelim('(');
+		List<Integer> bounds = new ArrayList<>();
+		bounds.add(lex.eatIntConstant());
+		while (lex.matchDelim(',')) {
+			lex.eatDelim(',');
+			int bound = lex.eatIntConstant();
+			if (bound <= bounds.get(bounds.size() - 1))
+				throw new BadSyntaxException();
+			bounds.add(bound);
+		}
+		lex.eatDelim(')');
+		return new Partitioning(fldname, bounds.stream().mapToInt(Integer::intValue).toArray());
 	}
 
 	private Schema fieldDefs() {
@@ -441,12 +561,22 @@ public class Parser {
 		if (lex.matchKeyword("int")) {
 			lex.eatKeyword("int");
 			schema.addIntField(fldname);
+		} else if (lex.matchKeyword("longvarchar")) {
+			lex.eatKeyword("longvarchar");
+			lex.eatDelim('(');
+			int strLen = lex.eatIntConstant();
+			lex.eatDelim(')');
+			schema.addLongStringField(fldname, strLen);
 		} else {
 			lex.eatKeyword("varchar");
 			lex.eatDelim('(');
 			int strLen = lex.eatIntConstant();
 			lex.eatDelim(')');
-			schema.addStringField(fldname, strLen);
+			if (lex.matchKeyword("dictionary")) {
+				lex.eatKeyword("dictionary");
+				schema.addEncodedField(fldname, strLen);
+			} else
+				schema.addStringField(fldname, strLen);
 		}
 		return schema;
 	}
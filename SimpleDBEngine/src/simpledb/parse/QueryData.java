@@ -19,6 +19,8 @@ public class QueryData {
    private List<String> groupList;
    private boolean isDistinct;
    private List<String> aggOrder;
+   private int limit = -1;
+   private int offset = 0;
    
    /**
     * Saves the field and table list and predicate.
@@ -54,6 +56,18 @@ public class QueryData {
       this.isDistinct = isDistinct;
    }
    
+   /**
+    * Saves the field and table list and predicate with sorting,
+    * and the number of records to be output and skipped.
+    */
+   public QueryData(List<String> fields, Collection<String> tables, Predicate pred, 
+		   List<List<String>> sortFields, List<AggregationFn> aggFields, List<String> aggOrder, List<String> groupList, boolean isDistinct,
+		   int limit, int offset) {
+      this(fields, tables, pred, sortFields, aggFields, aggOrder, groupList, isDistinct);
+      this.limit = limit;
+      this.offset = offset;
+   }
+   
    /**
     * Returns the list of aggregates order.
     * @return the list of aggregates order.
@@ -130,6 +144,24 @@ public class QueryData {
 	   return isDistinct;
    }
    
+   /**
+    * Returns the largest number of records to be output,
+    * or -1 if there is no limit.
+    * @return the limit, or -1
+    */
+   public int limit() {
+	   return limit;
+   }
+   
+   /**
+    * Returns the number of records to be skipped
+    * before the records output.
+    * @return the offset
+    */
+   public int offset() {
+	   return offset;
+   }
+   
    /**
     * Returns SQL Query (not use at the moment)
     * @return SQL Query
@@ -154,6 +186,8 @@ public class QueryData {
     	  }
     	  result = result.substring(0, result.length()-2); //remove final comma
       }
+      if (limit >= 0)
+    	  result += " limit " + limit + " offset " + offset;
     	  
       return result;
    }
@@ -0,0 +1,23 @@
+package simpledb.parse;
+
+/**
+ * Data for the SQL <i>vacuum</i> statement.
+ */
+public class VacuumData {
+   private String tblname;
+   
+   /**
+    * Saves the name of the table to be vacuumed.
+    */
+   public VacuumData(String tblname) {
+      this.tblname = tblname;
+   }
+   
+   /**
+    * Returns the name of the table to be vacuumed.
+    * @return the name of the table
+    */
+   public String tableName() {
+      return tblname;
+   }
+}
@@ -1,10 +1,14 @@
 package simpledb.plan;
 
-import java.util.Iterator;
+import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.parse.*;
 import simpledb.query.*;
+import simpledb.record.*;
+import simpledb.metadata.IndexInfo;
 import simpledb.metadata.MetadataMgr;
+import simpledb.metadata.VacuumMgr;
+import simpledb.materialize.SortPlan;
 
 /**
  * The basic planner for SQL update statements.
@@ -18,8 +22,9 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeDelete(DeleteData data, Transaction tx) {
-      Plan p = new TablePlan(tx, data.tableName(), mdm);
-      p = new SelectPlan(p, data.pred());
+      TablePlan tp = new TablePlan(tx, data.tableName(), mdm);
+      tp.lockForUpdate();
+      Plan p = new SelectPlan(tp, data.pred());
       UpdateScan us = (UpdateScan) p.open();
       int count = 0;
       while(us.next()) {
@@ -31,8 +36,9 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeModify(ModifyData data, Transaction tx) {
-      Plan p = new TablePlan(tx, data.tableName(), mdm);
-      p = new SelectPlan(p, data.pred());
+      TablePlan tp = new TablePlan(tx, data.tableName(), mdm);
+      tp.lockForUpdate();
+      Plan p = new SelectPlan(tp, data.pred());
       UpdateScan us = (UpdateScan) p.open();
       int count = 0;
       while(us.next()) {
@@ -58,7 +64,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateTable(CreateTableData data, Transaction tx) {
-      mdm.createTable(data.tableName(), data.newSchema(), tx);
+      mdm.createTable(data.tableName(), data.newSchema(), data.format(), data.partitioning(), tx);
       return 0;
    }
    
@@ -70,4 +76,57 @@ public class BasicUpdatePlanner implements UpdatePlanner {
       mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(), data.indexType(), tx);
       return 0;  
    }
+   
+   public int executeCopy(CopyData data, Transaction tx) {
+      Layout layout = mdm.getLayout(data.tableName(), tx);
+      Scan src = new CopyScan(data.fileName(), layout.schema(), data.fields());
+      BulkLoader loader = new BulkLoader(tx, data.tableName(), layout, mdm.getPartitioning(data.tableName(), tx));
+      int count = 0;
+      while (src.next()) {
+         Map<String,Constant> vals = new HashMap<>();
+         for (String fldname : layout.schema().fields())
+            if (src.hasField(fldname))
+               vals.put(fldname, src.getVal(fldname));
+         loader.insert(vals);
+         count++;
+      }
+      loader.close();
+      src.close();
+      return count;
+   }
+   
+   public int executeVacuum(VacuumData data, Transaction tx) {
+      return mdm.vacuumTable(data.tableName(), VacuumMgr.MOVES_PER_STEP, tx);
+   }
+   
+   public int executeCluster(ClusterData data, Transaction tx) {
+      String tblname = data.tableName();
+      Layout layout = mdm.getLayout(tblname, tx);
+      Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
+      String keyfld = null;
+      for (String fldname : indexes.keySet())
+         if (indexes.get(fldname).indexName().equals(data.indexName()))
+            keyfld = fldname;
+      if (keyfld == null)
+         throw new RuntimeException("no index " + data.indexName() + " on " + tblname);
+      tx.xLockTable(tblname + ".tbl");
+      Plan p = new SortPlan(tx, new TablePlan(tx, tblname, mdm), Arrays.asList(keyfld));
+      Scan src = p.open();
+      UpdateScan us = new TableScan(tx, tblname, layout);
+      while (us.next())
+         us.delete();
+      us.close();
+      us = new TableScan(tx, tblname, layout);
+      int count = 0;
+      while (src.next()) {
+         us.insert();
+         for (String fldname : layout.schema().fields())
+            us.setVal(fldname, src.getVal(fldname));
+         count++;
+      }
+      us.close();
+      src.close();
+      mdm.setClusteredIndex(tblname, data.indexName(), count, tx);
+      return count;
+   }
 }
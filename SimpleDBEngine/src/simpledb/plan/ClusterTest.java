@@ -0,0 +1,149 @@
+package simpledb.plan;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.metadata.IndexInfo;
+import simpledb.query.Scan;
+import simpledb.parse.*;
+import simpledb.record.*;
+import static simpledb.test.Check.check;
+
+public class ClusterTest {
+   private static SimpleDB db;
+   private static final int N = 1500;
+
+   public static void main(String[] args) throws Exception {
+      // "cluster" is not reserved, so it remains usable as a name
+      ClusterData cd = (ClusterData) new Parser("cluster cluster using cluster").updateCmd();
+      check(cd.tableName().equals("cluster") && cd.indexName().equals("cluster"), "cluster a table named cluster");
+
+      db = new SimpleDB("clustertest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table people(id int, grp int, name varchar(16))", tx);
+      planner.executeUpdate("create index peopleid on people(id) using btree", tx);
+      planner.executeUpdate("create index peoplegrp on people(grp) using hash", tx);
+      for (int i=0; i<N; i++) {
+         int id = i * 7919 % N;  // every id once, in scattered order
+         planner.executeUpdate("insert into people(id, grp, name) values(" + id + ", " + (id % 10) + ", 'person" + id + "')", tx);
+      }
+      tx.commit();
+      int before = blocksHolding(100, 200);
+      check(!isClustered("id"), "not clustered at first");
+
+      // a rolled-back cluster leaves the old order
+      tx = db.newTx();
+      check(planner.executeUpdate("cluster people using peopleid", tx) == N, "every record rewritten");
+      tx.rollback();
+      check(blocksHolding(100, 200) == before && !isClustered("id"), "rollback restores the order");
+
+      tx = db.newTx();
+      planner.executeUpdate("cluster people using peopleid", tx);
+      tx.commit();
+      int after = blocksHolding(100, 200);
+      System.out.println("ids 100-199: in " + before + " blocks before clustering, " + after + " after");
+      check(after * 5 < before, "neighbouring keys share blocks");
+      check(inKeyOrder(), "table scanned in key order");
+
+      // the indexes follow the moved records
+      boolean found = true;
+      for (int id=0; id<N; id+=37)
+         found = found && query("select name from people where id = " + id).equals("person" + id);
+      check(found, "btree index rebuilt");
+      check(query("select count(id) from people where grp = 3").equals("150"), "hash index rebuilt");
+
+      // the catalog records the clustering, for the planner's estimates
+      check(isClustered("id") && !isClustered("grp"), "clustering recorded");
+      tx = db.newTx();
+      IndexInfo ii = db.mdMgr().getIndexInfo("people", tx).get("id");
+      IndexInfo other = db.mdMgr().getIndexInfo("people", tx).get("grp");
+      tx.commit();
+      System.out.println("data blocks for 100 records: " + ii.recordBlocksAccessed(100) + " clustered, "
+                         + other.recordBlocksAccessed(100) + " unclustered");
+      check(ii.recordBlocksAccessed(100) * 5 < other.recordBlocksAccessed(100), "clustered fetches cost less");
+
+      // records inserted later are out of order, and vacuuming moves records
+      tx = db.newTx();
+      for (int i=N; i<2*N; i++) {
+         int id = N + i * 7919 % N;
+         planner.executeUpdate("insert into people(id, grp, name) values(" + id + ", " + (id % 10) + ", 'person" + id + "')", tx);
+      }
+      tx.commit();
+      tx = db.newTx();
+      IndexInfo grown = db.mdMgr().getIndexInfo("people", tx).get("id");
+      tx.commit();
+      System.out.println("data blocks for 100 records once the table doubled: " + grown.recordBlocksAccessed(100));
+      check(grown.recordBlocksAccessed(100) > 2 * ii.recordBlocksAccessed(100)
+            && grown.recordBlocksAccessed(100) < other.recordBlocksAccessed(100), "later inserts raise the estimate");
+      tx = db.newTx();
+      planner.executeUpdate("delete from people where grp = 3", tx);
+      tx.commit();
+      tx = db.newTx();
+      check(planner.executeUpdate("vacuum people", tx) > 0, "vacuum moves records");
+      tx.commit();
+      check(!isClustered("id"), "vacuum forgets the clustering");
+
+      boolean failed = false;
+      tx = db.newTx();
+      try {
+         planner.executeUpdate("cluster people using nosuchindex", tx);
+      }
+      catch (RuntimeException e) {
+         failed = true;
+      }
+      tx.rollback();
+      check(failed, "unknown index rejected");
+      System.out.println("done");
+   }
+
+   /**
+    * Return the number of blocks holding the
+    * records whose ids are in the specified range.
+    */
+   private static int blocksHolding(int lo, int hi) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "people", db.mdMgr().getLayout("people", tx));
+      Set<Integer> blocks = new HashSet<>();
+      while (ts.next()) {
+         int id = ts.getInt("id");
+         if (lo <= id && id < hi)
+            blocks.add(ts.getRid().blockNumber());
+      }
+      ts.close();
+      tx.commit();
+      return blocks.size();
+   }
+
+   private static boolean inKeyOrder() {
+      Transaction tx = db.newTx();
+      Scan s = new TablePlan(tx, "people", db.mdMgr()).open();
+      int prev = -1, count = 0;
+      boolean ordered = true;
+      while (s.next()) {
+         ordered = ordered && s.getInt("id") > prev;
+         prev = s.getInt("id");
+         count++;
+      }
+      s.close();
+      tx.commit();
+      return ordered && count == N;
+   }
+
+   private static boolean isClustered(String fldname) {
+      Transaction tx = db.newTx();
+      boolean clustered = db.mdMgr().getIndexInfo("people", tx).get(fldname).isClustered();
+      tx.commit();
+      return clustered;
+   }
+
+   private static String query(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      Scan s = p.open();
+      String result = s.next() ? s.getVal(p.schema().fields().get(0)).toString() : null;
+      s.close();
+      tx.commit();
+      return result;
+   }
+}
@@ -0,0 +1,108 @@
+package simpledb.plan;
+
+import java.util.List;
+import simpledb.tx.Transaction;
+import simpledb.query.Scan;
+import simpledb.record.*;
+
+/** The Plan class for reading all of a table's records,
+  * when the records will not be modified.
+  * For a table in the PAX format, it opens a column scan,
+  * which reads only the fields that the query uses;
+  * otherwise it opens an ordinary table scan.
+  * A partitioned table is read a partition at a time,
+  * each partition by a scan of the same kind.
+  */
+public class ColumnPlan implements PartitionedPlan {
+   private Transaction tx;
+   private TablePlan p;
+
+   /**
+    * Creates a read-only plan for the table
+    * of the specified table plan.
+    * @param tx the calling transaction
+    * @param p the plan for the table
+    */
+   public ColumnPlan(Transaction tx, TablePlan p) {
+      this.tx = tx;
+      this.p = p;
+   }
+
+   /**
+    * Creates a column scan if the table is in the PAX format,
+    * and a table scan otherwise.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      if (p.layout().format() != Layout.PAX)
+         return p.open();
+      else if (p.partitioning() == null)
+         return new ColumnScan(tx, p.tblname, p.layout());
+      else
+         return new PartitionScan(p.partitioning(), p.schema(), p.partitions(), part -> openPartition(part));
+   }
+
+   /**
+    * Estimates the number of block accesses,
+    * which is the same as for the table plan.
+    * A column scan may read only part of each block.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return p.blocksAccessed();
+   }
+
+   /**
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return p.recordsOutput();
+   }
+
+   /**
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return p.distinctValues(fldname);
+   }
+
+   /**
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return p.schema();
+   }
+
+   /**
+    * @see simpledb.plan.PartitionedPlan#partitioning()
+    */
+   public Partitioning partitioning() {
+      return p.partitioning();
+   }
+
+   /**
+    * @see simpledb.plan.PartitionedPlan#partitions()
+    */
+   public List<Integer> partitions() {
+      return p.partitions();
+   }
+
+   /**
+    * Creates a column scan of the partition if the table
+    * is in the PAX format, and a table scan otherwise.
+    * @see simpledb.plan.PartitionedPlan#openPartition(int)
+    */
+   public Scan openPartition(int part) {
+      if (p.layout().format() == Layout.PAX)
+         return new ColumnScan(tx, Partitioning.partitionName(p.tblname, part), p.layout());
+      else
+         return p.openPartition(part);
+   }
+
+   /**
+    * @see simpledb.plan.PartitionedPlan#partitionBlocksAccessed(int)
+    */
+   public int partitionBlocksAccessed(int part) {
+      return p.partitionBlocksAccessed(part);
+   }
+}
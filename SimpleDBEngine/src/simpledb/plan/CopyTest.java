@@ -0,0 +1,116 @@
+package simpledb.plan;
+
+import java.io.*;
+import java.sql.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.query.Scan;
+import simpledb.parse.*;
+import simpledb.jdbc.embedded.EmbeddedDriver;
+import static simpledb.test.Check.check;
+
+public class CopyTest {
+   private static SimpleDB db;
+
+   public static void main(String[] args) throws Exception {
+      // "copy" is not reserved, so it remains usable as a name
+      CopyData cd = (CopyData) new Parser("copy copy(copy) from 'copy.csv'").updateCmd();
+      check(cd.tableName().equals("copy") && cd.fields().contains("copy"), "copy into a table named copy");
+      check(new Parser("select copy from copy").query().fields().contains("copy"), "field named copy");
+
+      db = new SimpleDB("copytest");
+      Planner planner = db.planner();
+      int n = 2000;
+      try (PrintWriter out = new PrintWriter(new FileWriter("people.csv"))) {
+         for (int i=0; i<n; i++)
+            out.println(i + ", 'name " + i + ", jr.', " + (i % 40));
+      }
+
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table loaded(id int, name varchar(20), dept int)", tx);
+      planner.executeUpdate("create index loadedid on loaded(id) using btree", tx);
+      planner.executeUpdate("create index loadeddept on loaded(dept) using hash", tx);
+      planner.executeUpdate("create table inserted(id int, name varchar(20), dept int)", tx);
+      planner.executeUpdate("create table copied(id int, name varchar(20), dept int)", tx);
+      tx.commit();
+
+      // a load writes far less log than the same inserts
+      tx = db.newTx();
+      int logstart = logSize();
+      for (int i=0; i<n; i++)
+         planner.executeUpdate("insert into inserted(id, name, dept) values(" + i + ", 'name " + i + ", jr.', " + (i % 40) + ")", tx);
+      int insertlog = logSize() - logstart;
+      logstart = logSize();
+      int count = planner.executeUpdate("copy copied from 'people.csv'", tx);
+      int copylog = logSize() - logstart;
+      tx.commit();
+      System.out.println("log blocks for " + n + " records: insert " + insertlog + ", copy " + copylog);
+      check(count == n, "all lines loaded");
+      check(copylog * 10 < insertlog, "copy writes little log");
+      check(query("select count(id) from copied").equals("2000"), "loaded records are scanned");
+      check(query("select name from copied where id = 1234").equals("name 1234, jr."), "quoted strings keep their commas");
+
+      // indexes are built after the load
+      tx = db.newTx();
+      count = planner.executeUpdate("copy loaded(id, name, dept) from 'people.csv'", tx);
+      tx.commit();
+      check(count == n, "indexed table loaded");
+      check(query("select name from loaded where id = 777").equals("name 777, jr."), "btree index built");
+      check(query("select count(id) from loaded where dept = 7").equals("50"), "hash index built");
+
+      // a rolled-back load leaves the table and its indexes as they were
+      tx = db.newTx();
+      planner.executeUpdate("copy loaded from 'people.csv'", tx);
+      check(count("loaded", tx) == 2 * n, "second load seen by its transaction");
+      tx.rollback();
+      check(query("select count(id) from loaded").equals("2000"), "rollback empties the loaded blocks");
+      check(query("select count(id) from loaded where dept = 7").equals("50"), "rollback undoes the index records");
+
+      // a bad line rolls back the whole statement through JDBC
+      try (PrintWriter out = new PrintWriter(new FileWriter("bad.csv"))) {
+         out.println("1, 'one', 1");
+         out.println("two, 'two', 2");
+      }
+      Connection conn = new EmbeddedDriver().connect("jdbc:simpledb:copytest2", null);
+      Statement stmt = conn.createStatement();
+      stmt.executeUpdate("create table t(a int, b varchar(10), c int)");
+      check(stmt.executeUpdate("copy t from 'people.csv'") == n, "copy through JDBC");
+      boolean failed = false;
+      try {
+         stmt.executeUpdate("copy t from 'bad.csv'");
+      }
+      catch (SQLException e) {
+         failed = true;
+      }
+      check(failed, "bad data file rejected");
+      ResultSet rs = stmt.executeQuery("select count(a) from t");
+      check(rs.next() && rs.getInt("countofa") == n, "rejected load undone");
+      rs.close();
+      conn.close();
+      System.out.println("done");
+   }
+
+   private static int logSize() {
+      return db.fileMgr().length("simpledb.log");
+   }
+
+   private static int count(String tblname, Transaction tx) {
+      Plan p = new TablePlan(tx, tblname, db.mdMgr());
+      Scan s = p.open();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      return count;
+   }
+
+   private static String query(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      Scan s = p.open();
+      String result = s.next() ? s.getVal(p.schema().fields().get(0)).toString() : null;
+      s.close();
+      tx.commit();
+      return result;
+   }
+}
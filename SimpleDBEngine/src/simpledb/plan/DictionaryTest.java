@@ -0,0 +1,185 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.file.*;
+import simpledb.materialize.*;
+import simpledb.query.Scan;
+import simpledb.parse.*;
+import simpledb.record.*;
+import static simpledb.test.Check.check;
+
+public class DictionaryTest {
+   private static SimpleDB db;
+   private static final int N = 800;
+   private static final String[] DEPTS = {"sales", "marketing", "engineering", "support", "finance", "legal", "hr", ""};
+
+   public static void main(String[] args) throws Exception {
+      // "dictionary" is not reserved, so it remains usable as a name
+      CreateTableData ctd = (CreateTableData) new Parser(
+            "create table dictionary(dictionary varchar(5) dictionary, word varchar(5))").updateCmd();
+      check(ctd.tableName().equals("dictionary") && ctd.newSchema().isEncoded("dictionary")
+            && !ctd.newSchema().isEncoded("word"), "encoded field named dictionary");
+
+      db = new SimpleDB("dictionarytest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table emp(eid int, ename varchar(10), dept varchar(20) dictionary)", tx);
+      planner.executeUpdate("create table plain(eid int, ename varchar(10), dept varchar(20))", tx);
+      planner.executeUpdate("create table slot(eid int, ename varchar(10), dept varchar(20) dictionary) using slotted", tx);
+      planner.executeUpdate("create table pax(eid int, ename varchar(10), dept varchar(20) dictionary) using pax", tx);
+      planner.executeUpdate("create table dept(dname varchar(20) dictionary, floor int)", tx);
+      for (int i=0; i<DEPTS.length; i++)
+         planner.executeUpdate("insert into dept(dname, floor) values('" + DEPTS[i] + "', " + i + ")", tx);
+      for (int i=0; i<N; i++) {
+         String vals = "values(" + i + ", 'emp" + i + "', '" + DEPTS[i * 7 % DEPTS.length] + "')";
+         for (String tbl : new String[] {"emp", "plain", "slot", "pax"})
+            planner.executeUpdate("insert into " + tbl + "(eid, ename, dept) " + vals, tx);
+      }
+      tx.commit();
+
+      // the codes take less room than the strings
+      tx = db.newTx();
+      Layout enc = db.mdMgr().getLayout("emp", tx);
+      Layout str = db.mdMgr().getLayout("plain", tx);
+      tx.commit();
+      System.out.println("slot size: " + enc.slotSize() + " bytes encoded, " + str.slotSize() + " plain");
+      check(enc.schema().isEncoded("dept") && !enc.schema().isEncoded("ename"), "encoding read from the catalog");
+      check(enc.slotSize() < str.slotSize() && size("emp") < size("plain"), "encoded table is smaller");
+
+      // every kind of query gives the same answers as on the plain table
+      String[] queries = {
+         "select eid, dept from TBL",
+         "select ename from TBL where dept = 'legal'",
+         "select ename from TBL where 'hr' = dept and eid > 400",
+         "select ename from TBL where dept = ''",
+         "select ename from TBL where dept > 'm'",
+         "select ename from TBL where dept <> 'sales'",
+         "select dept, count(eid) from TBL group by dept",
+         "select distinct dept from TBL",
+         "select dept, ename from TBL where eid < 50 order by dept, ename",
+      };
+      for (String qry : queries) {
+         List<String> expected = rows(qry.replace("TBL", "plain"));
+         check(!expected.isEmpty(), "plain: " + qry);
+         for (String tbl : new String[] {"emp", "slot", "pax"})
+            check(rows(qry.replace("TBL", tbl)).equals(expected), tbl + ": " + qry);
+      }
+      check(rows("select ename from emp where dept = 'nosuchdept'").isEmpty(), "an unknown value matches nothing");
+
+      // joins on an encoded field
+      List<String> expected = joinRows("plain");
+      check(expected.size() == N, "plain: joined with dept");
+      for (String tbl : new String[] {"emp", "slot", "pax"})
+         check(joinRows(tbl).equals(expected), tbl + ": joined with dept");
+
+      // a rolled-back value is never seen, and updates encode the new value
+      tx = db.newTx();
+      planner.executeUpdate("insert into emp(eid, ename, dept) values(5000, 'temp', 'interns')", tx);
+      check(count(planner.createQueryPlan("select ename from emp where dept = 'interns'", tx)) == 1, "own insert seen");
+      tx.rollback();
+      check(rows("select ename from emp where dept = 'interns'").isEmpty(), "rolled-back value not found");
+      tx = db.newTx();
+      for (String tbl : new String[] {"emp", "slot"}) {
+         TableScan ts = new TableScan(tx, tbl, db.mdMgr().getLayout(tbl, tx));
+         while (ts.next())
+            if (ts.getInt("eid") < 10)
+               ts.setString("dept", "research");
+         ts.close();
+      }
+      tx.commit();
+      check(rows("select eid from emp where dept = 'research'").size() == 10, "updated values encoded");
+      check(rows("select eid from slot where dept = 'research'").size() == 10, "updated slotted values encoded");
+
+      // the dictionary survives a restart
+      FileMgr fm = new FileMgr(new File("dictionarytest"), SimpleDB.BLOCK_SIZE);
+      StringDictionary reloaded = fm.dictionary("emp.tbl");
+      tx = db.newTx();
+      StringDictionary dict = tx.dictionary("emp.tbl");
+      tx.commit();
+      boolean same = true;
+      for (String d : new String[] {"sales", "hr", "", "research", "interns", "nosuchdept"})
+         same = same && reloaded.lookup(2, d) == dict.lookup(2, d);
+      same = same && reloaded.decode(2, dict.lookup(2, "research")).equals("research");
+      check(same, "dictionary reloaded from the side file");
+      check(dict.decode(2, dict.lookup(2, "legal")) == dict.decode(2, dict.lookup(2, "legal")), "decoded values shared");
+
+      // comparing codes saves time on an equality selection
+      long start = System.nanoTime();
+      for (int k=0; k<20; k++)
+         rows("select ename from emp where dept = 'legal'");
+      long encoded = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int k=0; k<20; k++)
+         rows("select ename from plain where dept = 'legal'");
+      long plain = System.nanoTime() - start;
+      System.out.println("equality selections: " + encoded / 1000000 + " ms encoded, " + plain / 1000000 + " ms plain");
+      System.out.println("done");
+   }
+
+   /**
+    * Return the records of the query as strings, in their order
+    * if the query sorts them, and otherwise sorted.
+    */
+   private static List<String> rows(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      List<String> fields = p.schema().fields();
+      List<String> result = new ArrayList<>();
+      Scan s = p.open();
+      while (s.next()) {
+         StringBuilder row = new StringBuilder();
+         for (String fldname : fields)
+            row.append(s.getVal(fldname)).append('|');
+         result.add(row.toString());
+      }
+      s.close();
+      tx.commit();
+      if (!qry.contains("order by"))
+         Collections.sort(result);
+      return result;
+   }
+
+   /**
+    * Return the records of the table joined with dept on the
+    * department name, by a sort-merge join and a nested-loop join.
+    */
+   private static List<String> joinRows(String tblname) {
+      Transaction tx = db.newTx();
+      Plan emp = new TablePlan(tx, tblname, db.mdMgr());
+      Plan dept = new TablePlan(tx, "dept", db.mdMgr());
+      List<String> result = new ArrayList<>();
+      for (Plan p : new Plan[] {new MergeJoinPlan(tx, emp, dept, "dept", "dname"),
+                                new NestedLoopPlan(tx, dept, emp, "dname", "dept", "=")}) {
+         List<String> rows = new ArrayList<>();
+         Scan s = p.open();
+         while (s.next())
+            rows.add(s.getString("ename") + "|" + s.getString("dept") + "|" + s.getInt("floor"));
+         s.close();
+         Collections.sort(rows);
+         if (!result.isEmpty() && !result.equals(rows))
+            throw new RuntimeException("failed: join methods disagree on " + tblname);
+         result = rows;
+      }
+      tx.commit();
+      return result;
+   }
+
+   private static int size(String tblname) {
+      Transaction tx = db.newTx();
+      int size = tx.size(tblname + ".tbl");
+      tx.commit();
+      return size;
+   }
+
+   private static int count(Plan p) {
+      Scan s = p.open();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      return count;
+   }
+}
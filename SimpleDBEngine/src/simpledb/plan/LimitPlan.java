@@ -0,0 +1,78 @@
+package simpledb.plan;
+
+import simpledb.record.Schema;
+import simpledb.query.*;
+
+/** The Plan class corresponding to the <i>limit</i> operator,
+ * which keeps at most a given number of the records of its
+ * subquery, after skipping a given number of them.
+ */
+public class LimitPlan implements Plan {
+   private Plan p;
+   private int limit, offset;
+
+   /**
+    * Creates a new limit node in the query tree,
+    * having the specified subquery.
+    * @param p the subquery
+    * @param limit the largest number of records output
+    * @param offset the number of records skipped first
+    */
+   public LimitPlan(Plan p, int limit, int offset) {
+      this.p = p;
+      this.limit = limit;
+      this.offset = offset;
+   }
+
+   /**
+    * Creates a limit scan for this query.
+    * A projection that would read its records in batches
+    * is told to read them one at a time if the limit is
+    * smaller than a batch, so that the scans beneath it
+    * stop as soon as the last record needed is found.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      Scan s = p.open();
+      if (s instanceof ProjectScan && (long) limit + offset < Batch.SIZE)
+         ((ProjectScan) s).readRecords();
+      return new LimitScan(s, limit, offset);
+   }
+
+   /**
+    * Estimates the number of block accesses,
+    * which is that of the subquery, since a subquery
+    * that is materialized reads all its input
+    * before its first record is output.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return p.blocksAccessed();
+   }
+
+   /**
+    * Estimates the number of output records,
+    * which is the limit, if the subquery has enough records.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return Math.max(0, Math.min(limit, p.recordsOutput() - offset));
+   }
+
+   /**
+    * Estimates the number of distinct field values,
+    * which cannot exceed the number of records output.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return Math.min(p.distinctValues(fldname), Math.max(1, recordsOutput()));
+   }
+
+   /**
+    * Returns the schema of the subquery.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return p.schema();
+   }
+}
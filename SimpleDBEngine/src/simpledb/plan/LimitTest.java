@@ -0,0 +1,156 @@
+package simpledb.plan;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.parse.*;
+import simpledb.record.*;
+import simpledb.query.*;
+import simpledb.materialize.*;
+import static simpledb.test.Check.check;
+
+public class LimitTest {
+   private static SimpleDB db;
+   private static final int N = 20000;
+
+   public static void main(String[] args) throws Exception {
+      // the grammar
+      QueryData data = new Parser("select eid from emp order by eid limit 5 offset 10").query();
+      check(data.limit() == 5 && data.offset() == 10, "limit and offset parsed");
+      data = new Parser("select eid from emp where dept = 3 limit 5").query();
+      check(data.limit() == 5 && data.offset() == 0, "limit without offset");
+      data = new Parser("select eid from emp").query();
+      check(data.limit() == -1, "no limit");
+      boolean rejected = false;
+      try {
+         new Parser("select eid from emp limit -1").query();
+      }
+      catch (BadSyntaxException e) {
+         rejected = true;
+      }
+      check(rejected, "negative limit rejected");
+      // the words of the newer statements and clauses remain usable as names
+      data = new Parser("select limit, partition from copy where vacuum = 1 order by limit limit 2 offset 1").query();
+      check(data.fields().equals(Arrays.asList("limit", "partition")) && data.tables().contains("copy")
+            && data.limit() == 2 && data.offset() == 1, "limit and partition as field names");
+      CreateTableData ctd = (CreateTableData) new Parser(
+            "create table cluster(limit int, dictionary varchar(5) dictionary, partitions int) "
+            + "partition by hash(limit) partitions 2").updateCmd();
+      check(ctd.tableName().equals("cluster") && ctd.newSchema().isEncoded("dictionary")
+            && ctd.partitioning().fieldName().equals("limit"), "create table with clause words as names");
+      ModifyData md = (ModifyData) new Parser("update vacuum set limit = 3 where partition = 2").updateCmd();
+      check(md.tableName().equals("vacuum") && md.targetField().equals("limit"), "update with clause words as names");
+      CopyData cd = (CopyData) new Parser("copy limit(partition) from 'limit.csv'").updateCmd();
+      check(cd.tableName().equals("limit") && cd.fields().contains("partition"), "copy into a table named limit");
+      check(((VacuumData) new Parser("vacuum vacuum").updateCmd()).tableName().equals("vacuum"),
+            "vacuum a table named vacuum");
+      check(((ClusterData) new Parser("cluster copy using limit").updateCmd()).indexName().equals("limit"),
+            "cluster using an index named limit");
+
+      db = new SimpleDB("limittest");
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table emp(eid int, ename varchar(10), dept int)", tx);
+      TableScan ts = new TableScan(tx, "emp", db.mdMgr().getLayout("emp", tx));
+      for (int i=0; i<N; i++) {
+         ts.insert();
+         ts.setInt("eid", i * 7919 % N);
+         ts.setString("ename", "emp" + i);
+         ts.setInt("dept", i % 20);
+      }
+      ts.close();
+      tx.commit();
+
+      // queries with a limit
+      check(query("select eid from emp order by eid limit 10").equals(ints(0, 10, 1)), "first records in order");
+      check(query("select eid from emp order by eid desc limit 5 offset 3").equals(ints(N - 4, N - 9, -1)),
+            "records after an offset in descending order");
+      List<String> names = new ArrayList<>();
+      for (int i=0; i<N; i++)
+         names.add("emp" + i);
+      Collections.sort(names);
+      check(query("select ename from emp order by ename limit 3").equals(names.subList(0, 3)), "first strings in order");
+      check(query("select eid from emp where eid < 50 order by eid limit 5 offset 48").equals(ints(48, 50, 1)),
+            "offset near the end");
+      check(query("select eid from emp order by eid limit 0").isEmpty(), "limit of zero");
+      // (the sorts beneath distinct and group by make a temporary table for each run,
+      // so these queries keep to a few records)
+      SortedSet<Integer> depts = new TreeSet<>();
+      for (int i=0; i<N; i++)
+         if (i * 7919 % N < 100)
+            depts.add(i % 20);
+      List<String> firstdepts = new ArrayList<>();
+      for (int d : depts)
+         if (firstdepts.size() < 3)
+            firstdepts.add(String.valueOf(d));
+      check(query("select distinct dept from emp where eid < 100 order by dept limit 3").equals(firstdepts), "distinct records");
+      check(query("select dept, count(eid) from emp where eid < 100 group by dept limit 4").size() == Math.min(4, depts.size()),
+            "groups");
+      Set<String> dept3 = new HashSet<>();
+      for (int i=3; i<N; i+=20)
+         dept3.add(String.valueOf(i * 7919 % N));
+      List<String> some = query("select eid, dept from emp where dept = 3 limit 7");
+      check(some.size() == 7 && dept3.containsAll(some) && query("select eid from emp where dept = 3 limit 5 offset 2").equals(some.subList(2, 7)),
+            "selection without an order");
+      tx = db.newTx();
+      db.planner().executeUpdate("create table opts(limit int, partition varchar(5))", tx);
+      for (int i=0; i<5; i++)
+         db.planner().executeUpdate("insert into opts(limit, partition) values(" + i + ", 'p" + i + "')", tx);
+      tx.commit();
+      check(query("select limit from opts where limit > 1 order by limit desc limit 2").equals(Arrays.asList("4", "3")),
+            "query on a field named limit");
+
+      // the heap holds the records when they fit, and the records are sorted when not
+      tx = db.newTx();
+      Plan emp = new TablePlan(tx, "emp", db.mdMgr());
+      List<String> eid = Arrays.asList("eid"), asc = Arrays.asList("asc");
+      check(new TopNPlan(tx, emp, eid, asc, 10).open() instanceof TopNScan, "top records in memory");
+      Plan few = new SelectPlan(emp, new Parser("select eid from emp where eid < 300").query().pred());
+      Scan s = new TopNPlan(tx, few, eid, asc, N).open();
+      check(s instanceof SortScan, "too many records sorted");
+      int count = 0;
+      boolean ordered = true;
+      while (s.next())
+         ordered = ordered && s.getInt("eid") == count++;
+      s.close();
+      check(ordered && count == 300, "sorted records in order");
+      tx.commit();
+
+      // a limit stops the pipeline beneath it
+      long all = Long.MAX_VALUE, first = Long.MAX_VALUE, top = Long.MAX_VALUE, sorted = Long.MAX_VALUE;
+      for (int round=0; round<3; round++) {
+         all = Math.min(all, time("select eid from emp where dept = 3"));
+         first = Math.min(first, time("select eid from emp where dept = 3 limit 10"));
+         top = Math.min(top, time("select eid from emp where eid < 1000 order by eid limit 10"));
+      }
+      sorted = time("select eid from emp where eid < 1000 order by eid");
+      System.out.println("selection: " + all + "ms for all records, " + first + "ms for 10");
+      System.out.println("ordered selection: " + sorted + "ms sorted, " + top + "ms for the top 10");
+      check(first < all, "first records found sooner");
+      System.out.println("done");
+   }
+
+   private static List<String> ints(int from, int to, int step) {
+      List<String> result = new ArrayList<>();
+      for (int i=from; i!=to; i+=step)
+         result.add(String.valueOf(i));
+      return result;
+   }
+
+   private static List<String> query(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      Scan s = p.open();
+      List<String> result = new ArrayList<>();
+      while (s.next())
+         result.add(s.getVal(p.schema().fields().get(0)).toString());
+      s.close();
+      tx.commit();
+      return result;
+   }
+
+   private static long time(String qry) {
+      long start = System.currentTimeMillis();
+      query(qry);
+      return System.currentTimeMillis() - start;
+   }
+}
@@ -0,0 +1,180 @@
+package simpledb.plan;
+
+import static java.sql.Types.LONGVARCHAR;
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.query.Scan;
+import simpledb.record.*;
+import static simpledb.test.Check.check;
+
+public class OverflowTest {
+   private static SimpleDB db;
+   private static final int N = 150;
+   private static final String[] TABLES = {"docs", "sdocs", "pdocs"};
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("overflowtest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table docs(id int, title varchar(20), body longvarchar(3000))", tx);
+      planner.executeUpdate("create table sdocs(id int, title varchar(20), body longvarchar(3000)) using slotted", tx);
+      planner.executeUpdate("create table pdocs(id int, title varchar(20), body longvarchar(3000)) using pax", tx);
+      for (int i=0; i<N; i++)
+         for (String tbl : TABLES)
+            planner.executeUpdate("insert into " + tbl + "(id, title, body) values(" + i + ", 'title" + i + "', '" + body(i, 0) + "')", tx);
+      tx.commit();
+
+      // a long field takes little room in its record
+      tx = db.newTx();
+      Layout layout = db.mdMgr().getLayout("docs", tx);
+      tx.commit();
+      System.out.println("slot size: " + layout.slotSize() + " bytes for a longvarchar(3000) field");
+      check(layout.schema().type("body") == LONGVARCHAR && layout.slotSize() < 100, "long field stored out of line");
+      check(size("docs.tbl") * 3 < N, "several records per block");
+
+      // every value reads back whole, in every format
+      for (String tbl : TABLES)
+         check(bodies(tbl).equals(expected(0)), tbl + ": values read back");
+      check(count("select id from docs where body = '" + body(1, 0) + "'") == 1, "long value compared");
+      check(count("select id from docs where body = ''") == 1, "empty value compared");
+      List<String> sorted = column("select title, body from docs order by title", "body");
+      check(sorted.size() == N && sorted.containsAll(expected(0).values()), "long values sorted through a temporary table");
+
+      // updates free the old blocks, and rollbacks restore the old values
+      tx = db.newTx();
+      update("docs", 1, tx);
+      update("sdocs", 1, tx);
+      tx.rollback();
+      check(bodies("docs").equals(expected(0)) && bodies("sdocs").equals(expected(0)), "rolled-back updates undone");
+      int before = size("docs.ovf");
+
+      // a vacuum makes the blocks claimed by the rollback free again;
+      // since a transaction does not reuse the blocks it frees,
+      // rewriting every value needs at most twice the blocks
+      tx = db.newTx();
+      planner.executeUpdate("vacuum docs", tx);
+      planner.executeUpdate("vacuum sdocs", tx);
+      tx.commit();
+      for (int round=1; round<=3; round++) {
+         tx = db.newTx();
+         update("docs", round, tx);
+         update("sdocs", round, tx);
+         tx.commit();
+      }
+      check(bodies("docs").equals(expected(3)) && bodies("sdocs").equals(expected(3)), "updated values read back");
+      System.out.println("overflow blocks: " + before + " before three rounds of updates, " + size("docs.ovf") + " after");
+      check(size("docs.ovf") <= 2 * before, "freed blocks reused");
+
+      // deletions free the blocks too
+      tx = db.newTx();
+      TableScan ts = new TableScan(tx, "docs", db.mdMgr().getLayout("docs", tx));
+      while (ts.next())
+         if (ts.getInt("id") % 2 == 0)
+            ts.delete();
+      ts.close();
+      tx.commit();
+      tx = db.newTx();
+      for (int i=0; i<N; i+=2)
+         planner.executeUpdate("insert into docs(id, title, body) values(" + i + ", 'title" + i + "', '" + body(i, 3) + "')", tx);
+      tx.commit();
+      check(bodies("docs").equals(expected(3)), "reinserted values read back");
+      check(size("docs.ovf") <= 2 * before, "deleted values' blocks reused");
+
+      boolean failed = false;
+      tx = db.newTx();
+      try {
+         planner.executeUpdate("create index docsbody on docs(body) using btree", tx);
+      }
+      catch (RuntimeException e) {
+         failed = true;
+      }
+      tx.rollback();
+      check(failed, "long field not indexed");
+
+      // a long varchar field is stored in full, and can be indexed
+      tx = db.newTx();
+      planner.executeUpdate("create table notes(id int, note varchar(150))", tx);
+      planner.executeUpdate("create index notesnote on notes(note) using btree", tx);
+      planner.executeUpdate("insert into notes(id, note) values(1, '" + body(7, 0).substring(0, 150) + "')", tx);
+      layout = db.mdMgr().getLayout("notes", tx);
+      tx.commit();
+      check(layout.schema().type("note") != LONGVARCHAR && !layout.overflows("note"), "varchar(150) stored in its records");
+      check(count("select id from notes where note = '" + body(7, 0).substring(0, 150) + "'") == 1, "varchar(150) indexed");
+
+      // a scan that does not read the long field leaves the overflow file alone
+      db = new SimpleDB("overflowtest");
+      File ovf = new File("overflowtest", "docs.ovf");
+      File moved = new File("overflowtest", "docs.ovf.moved");
+      check(ovf.renameTo(moved), "overflow file moved away");
+      check(column("select id, title from docs where id > 10", "title").size() == N - 11 && !ovf.exists(), "overflow file not read");
+      check(moved.renameTo(ovf), "overflow file moved back");
+      check(bodies("docs").equals(expected(3)), "values read after a restart");
+      System.out.println("done");
+   }
+
+   /**
+    * Return the value of the body of the specified record
+    * after the specified number of updates: lengths range
+    * from empty to longer than several blocks.
+    */
+   private static String body(int id, int round) {
+      int len = (id * 37 + round * 11) % 2500;
+      if (id == 0)
+         len = 0;
+      StringBuilder sb = new StringBuilder();
+      while (sb.length() < len)
+         sb.append("doc").append(id).append('v').append(round).append(' ');
+      return sb.substring(0, len);
+   }
+
+   private static Map<Integer,String> expected(int round) {
+      Map<Integer,String> result = new HashMap<>();
+      for (int i=0; i<N; i++)
+         result.put(i, body(i, round));
+      return result;
+   }
+
+   private static void update(String tblname, int round, Transaction tx) {
+      TableScan ts = new TableScan(tx, tblname, db.mdMgr().getLayout(tblname, tx));
+      while (ts.next())
+         ts.setString("body", body(ts.getInt("id"), round));
+      ts.close();
+   }
+
+   private static Map<Integer,String> bodies(String tblname) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan("select id, body from " + tblname, tx);
+      Map<Integer,String> result = new HashMap<>();
+      Scan s = p.open();
+      while (s.next())
+         result.put(s.getInt("id"), s.getString("body"));
+      s.close();
+      tx.commit();
+      return result;
+   }
+
+   private static List<String> column(String qry, String fldname) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      List<String> result = new ArrayList<>();
+      Scan s = p.open();
+      while (s.next())
+         result.add(s.getVal(fldname).toString());
+      s.close();
+      tx.commit();
+      return result;
+   }
+
+   private static int count(String qry) {
+      return column(qry, "id").size();
+   }
+
+   private static int size(String filename) {
+      Transaction tx = db.newTx();
+      int size = tx.size(filename);
+      tx.commit();
+      return size;
+   }
+}
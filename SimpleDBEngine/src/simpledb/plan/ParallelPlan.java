@@ -0,0 +1,94 @@
+package simpledb.plan;
+
+import simpledb.tx.Transaction;
+import simpledb.query.*;
+import simpledb.record.*;
+
+/** The Plan class for a selection of a stored table
+  * read by parallel workers, each of which reads its own
+  * chunks of the table's blocks and applies the predicate.
+  * The records are output in no particular order, so the plan
+  * suits the operators that do not depend on the order of their
+  * input; the aggregation operators instead merge the partial
+  * aggregates that the workers compute.
+  */
+public class ParallelPlan implements Plan {
+   /**
+    * The smallest number of blocks worth reading in parallel.
+    */
+   public static final int MIN_BLOCKS = 4 * ParallelScan.CHUNK;
+   /**
+    * The most workers that the planner gives a parallel scan.
+    * The default of 1 has the planner read every table serially:
+    * the workers share the file manager, which reads one block
+    * at a time, so they pay off only for costly predicates
+    * on a machine with processors to spare.
+    */
+   public static int MAX_WORKERS = 1;
+   private Transaction tx;
+   private TablePlan p;
+   private Predicate pred;
+   private Plan estimates;
+
+   /**
+    * Creates a new parallel selection of the specified table.
+    * @param tx the calling transaction
+    * @param p the plan of the table, which must be unpartitioned
+    * and not stored in columns
+    * @param pred the selection predicate
+    */
+   public ParallelPlan(Transaction tx, TablePlan p, Predicate pred) {
+      this.tx = tx;
+      this.p = p;
+      this.pred = pred;
+      estimates = new SelectPlan(p, pred);
+   }
+
+   /**
+    * Creates a parallel scan of the table, with as many workers
+    * as there are processors, but no more than MAX_WORKERS
+    * nor half of the buffers available to the transaction,
+    * since each worker keeps a buffer pinned.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      int nworkers = Math.min(Runtime.getRuntime().availableProcessors(), tx.availableBuffs() / 2);
+      nworkers = Math.min(nworkers, MAX_WORKERS);
+      return new ParallelScan(tx, p.tblname, p.layout(), pred, Math.max(1, nworkers));
+   }
+
+   /**
+    * Estimates the number of block accesses,
+    * which is that of reading the table once.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return p.blocksAccessed();
+   }
+
+   /**
+    * Estimates the number of output records,
+    * as for a serial selection.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return estimates.recordsOutput();
+   }
+
+   /**
+    * Estimates the number of distinct field values,
+    * as for a serial selection.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return estimates.distinctValues(fldname);
+   }
+
+   /**
+    * Returns the schema of the table.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return p.schema();
+   }
+}
@@ -0,0 +1,227 @@
+package simpledb.plan;
+
+import java.io.*;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.parse.*;
+import simpledb.record.*;
+import simpledb.query.*;
+import simpledb.materialize.*;
+import static simpledb.test.Check.check;
+
+public class ParallelTest {
+   private static SimpleDB db;
+   private static final int N = 20000;
+   private static final int WORKERS = 4;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("paralleltest");
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table emp(eid int, ename varchar(10), dept int)", tx);
+      Layout layout = db.mdMgr().getLayout("emp", tx);
+      TableScan ts = new TableScan(tx, "emp", layout);
+      for (int i=0; i<N; i++) {
+         ts.insert();
+         ts.setInt("eid", i * 7919 % N);
+         ts.setString("ename", "emp" + i);
+         ts.setInt("dept", i % 20);
+      }
+      ts.close();
+      tx.commit();
+
+      // by default the planner reads even large tables serially
+      check(query("select count(eid) from emp").equals(Arrays.asList("" + N)) && !workersStarted(),
+            "serial by default");
+      ParallelPlan.MAX_WORKERS = WORKERS;
+
+      // the workers together find each selected record once
+      tx = db.newTx();
+      Predicate pred = pred("select eid from emp where dept = 3");
+      List<String> serial = read(new SelectPlan(new TablePlan(tx, "emp", db.mdMgr()), pred).open(), "eid");
+      List<String> parallel = read(new ParallelScan(tx, "emp", layout, pred, WORKERS), "eid");
+      Collections.sort(serial);
+      Collections.sort(parallel);
+      check(parallel.size() == N / 20 && parallel.equals(serial), "selected records");
+      check(read(new ParallelScan(tx, "emp", layout, new Predicate(), WORKERS), "ename").size() == N, "all records");
+      check(read(new ParallelScan(tx, "emp", layout, pred("select eid from emp where eid < 0"), WORKERS), "eid").isEmpty(),
+            "no records");
+
+      // a scan closed early stops its workers
+      Scan s = new ParallelScan(tx, "emp", layout, new Predicate(), WORKERS);
+      for (int i=0; i<5; i++)
+         s.next();
+      s.close();
+      int before = tx.availableBuffs();
+      s = new ParallelScan(tx, "emp", layout, new Predicate(), WORKERS);
+      s.next();
+      s.beforeFirst();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      check(count == N && tx.availableBuffs() == before, "scan stopped, restarted and closed");
+
+      // the partial aggregates of the workers are merged
+      List<AggregationFn> fns = Arrays.asList(new CountFn("eid"), new SumFn("eid"), new AvgFn("dept"),
+                                              new MinFn("ename"), new MaxFn("eid"));
+      List<String> agg = read(new AggregateScan(new ParallelScan(tx, "emp", layout, new Predicate(), WORKERS), fns),
+                              "countofeid", "sumofeid", "avgofdept", "minofename", "maxofeid");
+      check(agg.equals(Arrays.asList(N + " " + (N * (N - 1) / 2) + " 9 emp0 " + (N - 1))), "aggregates");
+      List<String> groups = read(new GroupByScan(new ParallelScan(tx, "emp", layout, pred("select eid from emp where eid < 300"), WORKERS),
+                                                 Arrays.asList("dept"), Arrays.asList(new CountFn("eid"), new MinFn("eid"))),
+                                 "dept", "countofeid", "minofeid");
+      Plan sorted = new SortPlan(tx, new SelectPlan(new TablePlan(tx, "emp", db.mdMgr()), pred("select eid from emp where eid < 300")),
+                                 Arrays.asList("dept"));
+      List<String> serialgroups = read(new GroupByScan(sorted.open(), Arrays.asList("dept"),
+                                                       Arrays.asList(new CountFn("eid"), new MinFn("eid"))),
+                                       "dept", "countofeid", "minofeid");
+      check(groups.size() > 1 && groups.equals(serialgroups), "groups in order");
+
+      // a worker can read its share again
+      ParallelScan ps = new ParallelScan(tx, "emp", layout, pred, WORKERS);
+      List<int[]> passes = ps.eachWorker(w -> {
+         int[] counts = new int[2];
+         for (int pass=0; pass<2; pass++) {
+            w.beforeFirst();
+            while (w.next())
+               counts[pass]++;
+         }
+         return counts;
+      });
+      ps.close();
+      int first = 0, again = 0;
+      for (int[] counts : passes) {
+         first += counts[0];
+         again += (counts[1] == counts[0]) ? counts[1] : -1;
+      }
+      check(first == N / 20 && again == first, "worker shares reread");
+
+      // an exception in a worker reaches the reader
+      boolean thrown = false;
+      try {
+         read(new ParallelScan(tx, "emp", layout, pred("select eid from emp where eid = 'emp1'"), WORKERS), "eid");
+      }
+      catch (RuntimeException e) {
+         thrown = true;
+      }
+      check(thrown, "worker exception rethrown");
+      tx.commit();
+
+      // the planner reads large aggregated tables in parallel
+      check(query("select count(eid), max(ename) from emp").equals(Arrays.asList(N + " emp9999")), "planned aggregates");
+      List<String> depts = query("select dept, sum(eid) from emp where dept < 5 group by dept");
+      long total = 0;
+      for (int i=0; i<depts.size(); i++)
+         total += Long.parseLong(depts.get(i).split(" ")[1]);
+      long expected = 0;
+      for (int i=0; i<N; i++)
+         if (i % 20 < 5)
+            expected += i * 7919 % N;
+      check(depts.size() == 5 && depts.get(0).startsWith("0 ") && total == expected, "planned groups");
+
+      // parallel scans of concurrent transactions, beside a writer
+      tx = db.newTx();
+      db.planner().executeUpdate("create table audit(n int)", tx);
+      tx.commit();
+      long sum = expected;
+      List<String> wrong = Collections.synchronizedList(new ArrayList<>());
+      List<Thread> threads = new ArrayList<>();
+      for (int r=0; r<2; r++)
+         threads.add(new Thread(() -> {
+            for (int i=0; i<5; i++) {
+               Transaction rtx = db.newTx();
+               List<String> result = read(new AggregateScan(new ParallelScan(rtx, "emp", layout, pred("select eid from emp where dept < 5"), 2),
+                                                            Arrays.asList(new CountFn("eid"), new SumFn("eid"))),
+                                          "countofeid", "sumofeid");
+               rtx.commit();
+               if (!result.equals(Arrays.asList(N / 4 + " " + sum)))
+                  wrong.add(result.toString());
+            }
+         }));
+      threads.add(new Thread(() -> {
+         for (int i=0; i<10; i++) {
+            Transaction wtx = db.newTx();
+            for (int j=0; j<20; j++)
+               db.planner().executeUpdate("insert into audit(n) values(" + (i * 20 + j) + ")", wtx);
+            wtx.commit();
+         }
+      }));
+      List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+      for (Thread t : threads) {
+         t.setUncaughtExceptionHandler((th, e) -> failures.add(e));
+         t.start();
+      }
+      for (Thread t : threads)
+         t.join();
+      check(wrong.isEmpty() && failures.isEmpty() && query("select count(n) from audit").equals(Arrays.asList("200")),
+            "concurrent parallel scans");
+
+      // a selection that can use an index is read serially
+      tx = db.newTx();
+      db.planner().executeUpdate("create index empeid on emp(eid) using hash", tx);
+      db.planner().executeUpdate("insert into emp(eid, ename, dept) values(" + N + ", 'late', 99)", tx);
+      tx.commit();
+      PrintStream stdout = System.out;
+      ByteArrayOutputStream plan = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(plan));
+      List<String> indexed;
+      try {
+         indexed = query("select count(ename) from emp where eid = " + N);
+      }
+      finally {
+         System.setOut(stdout);
+      }
+      System.out.print(plan);
+      check(indexed.equals(Arrays.asList("1")) && plan.toString().contains("select on emp"), "indexed aggregate read serially");
+
+      long serialtime = Long.MAX_VALUE, paralleltime = Long.MAX_VALUE;
+      for (int round=0; round<3; round++) {
+         tx = db.newTx();
+         long start = System.nanoTime();
+         read(new AggregateScan(new SelectPlan(new TablePlan(tx, "emp", db.mdMgr()), pred).open(), fns), "sumofeid");
+         serialtime = Math.min(serialtime, System.nanoTime() - start);
+         start = System.nanoTime();
+         read(new AggregateScan(new ParallelScan(tx, "emp", layout, pred, WORKERS), fns), "sumofeid");
+         paralleltime = Math.min(paralleltime, System.nanoTime() - start);
+         tx.commit();
+      }
+      System.out.println("aggregate of a selection on " + Runtime.getRuntime().availableProcessors() + " processors: "
+            + serialtime / 1000000 + "ms serial, " + paralleltime / 1000000 + "ms with " + WORKERS + " workers");
+      System.out.println("done");
+   }
+
+   /**
+    * Return true if some thread of the parallel scans' pool exists.
+    */
+   private static boolean workersStarted() {
+      for (Thread t : Thread.getAllStackTraces().keySet())
+         if (t.getName().equals("parallel-scan"))
+            return true;
+      return false;
+   }
+
+   private static Predicate pred(String qry) {
+      return new Parser(qry).query().pred();
+   }
+
+   private static List<String> read(Scan s, String... fields) {
+      List<String> result = new ArrayList<>();
+      while (s.next()) {
+         StringBuilder rec = new StringBuilder();
+         for (String fldname : fields)
+            rec.append(rec.length() == 0 ? "" : " ").append(s.getVal(fldname));
+         result.add(rec.toString());
+      }
+      s.close();
+      return result;
+   }
+
+   private static List<String> query(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      List<String> result = read(p.open(), p.schema().fields().toArray(new String[0]));
+      tx.commit();
+      return result;
+   }
+}
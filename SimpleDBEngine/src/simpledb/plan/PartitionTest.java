@@ -0,0 +1,226 @@
+package simpledb.plan;
+
+import java.io.*;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.file.BlockId;
+import simpledb.parse.*;
+import simpledb.query.*;
+import simpledb.record.*;
+import simpledb.materialize.*;
+import static simpledb.test.Check.check;
+
+public class PartitionTest {
+   private static SimpleDB db;
+   private static final int N = 1200;
+
+   public static void main(String[] args) throws Exception {
+      // "partition" and "partitions" are not reserved, so they remain usable as names
+      CreateTableData ctd = (CreateTableData) new Parser(
+            "create table partition(partition int, partitions int) partition by hash(partition) partitions 2").updateCmd();
+      check(ctd.tableName().equals("partition") && ctd.partitioning().fieldName().equals("partition")
+            && ctd.newSchema().hasField("partitions"), "partitioned table with fields named partition");
+
+      db = new SimpleDB("partitiontest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table orders(oid int, cust int, amt int) partition by hash(cust) partitions 4", tx);
+      planner.executeUpdate("create table plain(oid int, cust int, amt int)", tx);
+      planner.executeUpdate("create table custs(cid int, cname varchar(12)) using pax partition by hash(cid) partitions 4", tx);
+      planner.executeUpdate("create table events(ts int, what varchar(10)) partition by range(ts) (100, 200, 300)", tx);
+      planner.executeUpdate("create table returns(rid int, rcust int) partition by hash(rcust) partitions 4", tx);
+      for (int i=0; i<N; i++) {
+         String vals = "values(" + i + ", " + (i % 50) + ", " + (i * 13 % 1000) + ")";
+         planner.executeUpdate("insert into orders(oid, cust, amt) " + vals, tx);
+         planner.executeUpdate("insert into plain(oid, cust, amt) " + vals, tx);
+      }
+      for (int c=0; c<50; c++)
+         planner.executeUpdate("insert into custs(cid, cname) values(" + c + ", 'cust" + c + "')", tx);
+      for (int t=0; t<400; t++)
+         planner.executeUpdate("insert into events(ts, what) values(" + t + ", 'ev" + t + "')", tx);
+      for (int r=0; r<600; r++)
+         planner.executeUpdate("insert into returns(rid, rcust) values(" + r + ", " + (r * 7 % 50) + ")", tx);
+      tx.commit();
+
+      // each record is in the partition its value selects
+      tx = db.newTx();
+      Partitioning part = db.mdMgr().getPartitioning("orders", tx);
+      Layout layout = db.mdMgr().getLayout("orders", tx);
+      check(part != null && part.count() == 4 && db.mdMgr().getPartitioning("plain", tx) == null,
+            "partitioning recorded");
+      int total = 0;
+      boolean placed = true;
+      for (int p=0; p<4; p++) {
+         TableScan ts = new TableScan(tx, Partitioning.partitionName("orders", p), layout);
+         while (ts.next()) {
+            placed = placed && part.partitionOf(ts.getVal("cust")) == p;
+            total++;
+         }
+         ts.close();
+      }
+      check(new File("partitiontest", "orders.0.tbl").exists() && !new File("partitiontest", "orders.tbl").exists(),
+            "a file per partition");
+      check(placed && total == N, "records placed by hash");
+      Partitioning range = db.mdMgr().getPartitioning("events", tx);
+      placed = true;
+      for (int p=0; p<4; p++) {
+         TableScan ts = new TableScan(tx, Partitioning.partitionName("events", p),
+                                      db.mdMgr().getLayout("events", tx));
+         int count = 0;
+         while (ts.next()) {
+            placed = placed && ts.getInt("ts") / 100 == p;
+            count++;
+         }
+         ts.close();
+         placed = placed && count == 100;
+      }
+      check(placed && range.lowerBound(2) == 200, "records placed by range");
+      tx.commit();
+
+      // queries answer as over an unpartitioned table
+      String[] where = { "", " where cust = 7", " where amt > 500", " where cust = 7 and amt < 400" };
+      boolean same = true;
+      for (String w : where)
+         same = same && query("select oid, amt from orders" + w).equals(query("select oid, amt from plain" + w));
+      check(same, "same answers as the unpartitioned table");
+      check(query("select what from events where ts > 150 and ts < 160").size() == 9, "range query answered");
+
+      // a predicate on the partitioning field leaves other partitions unread
+      tx = db.newTx();
+      TablePlan all = new TablePlan(tx, "orders", db.mdMgr());
+      TablePlan one = new TablePlan(tx, "orders", db.mdMgr(), predicate("select oid from orders where cust = 7"));
+      TablePlan span = new TablePlan(tx, "events", db.mdMgr(), predicate("select ts from events where ts > 120 and ts < 250"));
+      System.out.println("blocks: " + all.blocksAccessed() + " for all partitions, " + one.blocksAccessed() + " for one");
+      check(one.partitions().size() == 1 && one.blocksAccessed() * 2 < all.blocksAccessed(), "hash partitions pruned");
+      check(span.partitions().equals(Arrays.asList(1, 2)), "range partitions pruned");
+      tx.commit();
+
+      // deletes and modifications
+      tx = db.newTx();
+      check(planner.executeUpdate("delete from orders where cust = 7", tx) == N / 50, "delete in one partition");
+      tx.commit();
+      check(query("select oid from orders where cust = 7").isEmpty() && query("select oid from orders").size() == N - N / 50,
+            "deleted records gone");
+      tx = db.newTx();
+      Plan p = new SelectPlan(new TablePlan(tx, "orders", db.mdMgr()), predicate("select oid from orders where cust = 8"));
+      UpdateScan us = (UpdateScan) p.open();
+      us.next();
+      us.setInt("amt", 5000);
+      boolean failed = false;
+      int other = 9;
+      while (part.partitionOf(new Constant(other)) == part.partitionOf(new Constant(8)))
+         other++;
+      try {
+         us.setInt("cust", other);
+      }
+      catch (RuntimeException e) {
+         failed = true;
+      }
+      us.close();
+      tx.commit();
+      check(failed, "moving a record to another partition rejected");
+      check(query("select oid from orders where amt = 5000").size() == 1, "record modified in place");
+
+      // indexes
+      tx = db.newTx();
+      failed = false;
+      try {
+         planner.executeUpdate("create index ordersoid on orders(oid) using btree", tx);
+      }
+      catch (RuntimeException e) {
+         failed = true;
+      }
+      tx.rollback();
+      check(failed, "btree index on a partitioned table rejected");
+      tx = db.newTx();
+      planner.executeUpdate("create index eventsts on events(ts) using zonemap", tx);
+      tx.commit();
+      check(query("select what from events where ts = 333").equals(Arrays.asList("ev333")), "zone map per partition");
+
+      // vacuum and copy
+      tx = db.newTx();
+      planner.executeUpdate("vacuum orders", tx);
+      tx.commit();
+      check(query("select oid from orders").size() == N - N / 50, "vacuum keeps the records");
+      try (PrintWriter out = new PrintWriter(new FileWriter("partitiontest/events.csv"))) {
+         for (int t=400; t<600; t++)
+            out.println(t + ", 'ev" + t + "'");
+      }
+      tx = db.newTx();
+      check(planner.executeUpdate("copy events from 'partitiontest/events.csv'", tx) == 200, "copy loads the records");
+      tx.commit();
+      check(query("select what from events where ts > 450").size() == 149
+            && query("select what from events where ts < 300").size() == 300, "copied records in the last partition");
+
+      // a join on the partitioning fields goes partition by partition
+      tx = db.newTx();
+      TablePlan orders = new TablePlan(tx, "orders", db.mdMgr());
+      TablePlan custs = new TablePlan(tx, "custs", db.mdMgr());
+      Plan pj = new PartitionJoinPlan(tx, orders, custs, "cust", "cid");
+      Plan mj = new MergeJoinPlan(tx, new TablePlan(tx, "orders", db.mdMgr()), new TablePlan(tx, "custs", db.mdMgr()), "cust", "cid");
+      check(rows(pj, "oid", "cname").equals(rows(mj, "oid", "cname")), "partition-wise join matches merge join");
+      check(pj.blocksAccessed() == orders.blocksAccessed() + custs.blocksAccessed(), "each input read once");
+      tx.commit();
+
+      // pairs of partitions too large for the buffers get a grace hash join
+      tx = db.newTx();
+      TablePlan returns = new TablePlan(tx, "returns", db.mdMgr());
+      pj = new PartitionJoinPlan(tx, returns, new TablePlan(tx, "orders", db.mdMgr()), "rcust", "cust");
+      List<String> inmemory = rows(pj, "rid", "oid");
+      int cost = pj.blocksAccessed();
+      int build = returns.partitionBlocksAccessed(0);
+      List<BlockId> pinned = new ArrayList<>();
+      for (int b=0; tx.availableBuffs() >= build; b++) {
+         BlockId blk = new BlockId("plain.tbl", b);
+         tx.pin(blk);
+         pinned.add(blk);
+      }
+      check(pj.blocksAccessed() > cost, "a grace hash join costs more");
+      check(rows(pj, "rid", "oid").equals(inmemory) && inmemory.size() == 600 * (N - N / 50) / 50,
+            "grace hash join of large partitions");
+      for (BlockId blk : pinned)
+         tx.unpin(blk);
+      tx.commit();
+      PrintStream stdout = System.out;
+      ByteArrayOutputStream plan = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(plan));
+      List<String> joined;
+      try {
+         joined = query("select cname from orders, custs where cust = cid");
+      }
+      finally {
+         System.setOut(stdout);
+      }
+      System.out.print(plan);
+      check(plan.toString().contains("PartitionWiseHashJoin") && joined.size() == query("select oid from orders").size(),
+            "planner chooses a partition-wise join");
+      System.out.println("done");
+   }
+
+   private static Predicate predicate(String qry) {
+      return new Parser(qry).query().pred();
+   }
+
+   private static List<String> rows(Plan p, String... fields) {
+      Scan s = p.open();
+      List<String> result = new ArrayList<>();
+      while (s.next()) {
+         StringJoiner row = new StringJoiner(" ");
+         for (String f : fields)
+            row.add(s.getVal(f).toString());
+         result.add(row.toString());
+      }
+      s.close();
+      Collections.sort(result);
+      return result;
+   }
+
+   private static List<String> query(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      List<String> result = rows(p, p.schema().fields().toArray(new String[0]));
+      tx.commit();
+      return result;
+   }
+}
@@ -0,0 +1,44 @@
+package simpledb.plan;
+
+import java.util.List;
+import simpledb.query.Scan;
+import simpledb.record.Partitioning;
+
+/**
+ * The interface implemented by the plans whose output can be
+ * produced a partition at a time, when they read a partitioned table.
+ * Two such plans over tables partitioned in the same way
+ * can be joined on their partitioning fields partition by partition,
+ * since matching records are in partitions of the same number.
+ */
+public interface PartitionedPlan extends Plan {
+
+   /**
+    * Return the partitioning of the plan's output,
+    * or null if the output is not partitioned.
+    * @return the partitioning, or null
+    */
+   public Partitioning partitioning();
+
+   /**
+    * Return the partitions that may hold output records,
+    * in increasing order.
+    * @return the partitions
+    */
+   public List<Integer> partitions();
+
+   /**
+    * Open a scan for the output records in the specified partition.
+    * @param p the partition
+    * @return a scan of the partition's output records
+    */
+   public Scan openPartition(int p);
+
+   /**
+    * Estimate the number of block accesses
+    * needed to read the specified partition.
+    * @param p the partition
+    * @return the estimated number of block accesses
+    */
+   public int partitionBlocksAccessed(int p);
+}
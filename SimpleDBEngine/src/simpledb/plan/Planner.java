@@ -30,8 +30,8 @@ public class Planner {
    }
    
    /**
-    * Executes an SQL insert, delete, modify, or
-    * create statement.
+    * Executes an SQL insert, delete, modify, copy, vacuum,
+    * cluster or create statement.
     * The method dispatches to the appropriate method of the
     * supplied update planner,
     * depending on what the parser returns.
@@ -55,6 +55,12 @@ public class Planner {
          return uplanner.executeCreateView((CreateViewData)data, tx);
       else if (data instanceof CreateIndexData)
          return uplanner.executeCreateIndex((CreateIndexData)data, tx);
+      else if (data instanceof CopyData)
+         return uplanner.executeCopy((CopyData)data, tx);
+      else if (data instanceof VacuumData)
+         return uplanner.executeVacuum((VacuumData)data, tx);
+      else if (data instanceof ClusterData)
+         return uplanner.executeCluster((ClusterData)data, tx);
       else
          return 0;
    }
@@ -1,17 +1,26 @@
 package simpledb.plan;
 
+import java.util.*;
+import simpledb.query.CompiledPredicate;
 import simpledb.query.Predicate;
 import simpledb.query.Scan;
 import simpledb.query.SelectScan;
+import simpledb.record.ColumnScan;
+import simpledb.record.PartitionScan;
+import simpledb.record.Partitioning;
+import simpledb.record.TableScan;
 import simpledb.record.Schema;
 
 /** The Plan class corresponding to the <i>select</i>
   * relational algebra operator.
+  * A selection of a partitioned table is partitioned like it,
+  * leaving out the partitions that its predicate rules out.
   * @author Edward Sciore
   */
-public class SelectPlan implements Plan {
+public class SelectPlan implements PartitionedPlan {
    private Plan p;
    private Predicate pred;
+   private CompiledPredicate compiled;
    
    /**
     * Creates a new select node in the query tree,
@@ -26,11 +35,20 @@ public class SelectPlan implements Plan {
    
    /**
     * Creates a select scan for this query.
+    * A scan of a stored table is told the predicate,
+    * so that it can skip the blocks that the table's
+    * zone map shows to have no matching records,
+    * and compare encoded fields by their codes.
+    * A scan of a partitioned table leaves out the partitions
+    * that the predicate rules out.
+    * The predicate is compiled when the plan is first opened,
+    * and each scan of the plan tests its records with it.
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
       Scan s = p.open();
-      return new SelectScan(s, pred);
+      setPredicate(s);
+      return new SelectScan(s, pred, compiled());
    }
    
    /**
@@ -83,5 +101,60 @@ public class SelectPlan implements Plan {
    public Schema schema() {
       return p.schema();
    }
-   
+
+   /**
+    * Returns the partitioning of the underlying query,
+    * if it is partitioned.
+    * @see simpledb.plan.PartitionedPlan#partitioning()
+    */
+   public Partitioning partitioning() {
+      return (p instanceof PartitionedPlan) ? ((PartitionedPlan) p).partitioning() : null;
+   }
+
+   /**
+    * Returns the partitions of the underlying query
+    * that the predicate does not rule out.
+    * @see simpledb.plan.PartitionedPlan#partitions()
+    */
+   public List<Integer> partitions() {
+      List<Integer> result = new ArrayList<>(((PartitionedPlan) p).partitions());
+      result.retainAll(partitioning().prune(pred, p.schema()));
+      return result;
+   }
+
+   /**
+    * Creates a select scan of the partition of the underlying query.
+    * @see simpledb.plan.PartitionedPlan#openPartition(int)
+    */
+   public Scan openPartition(int part) {
+      Scan s = ((PartitionedPlan) p).openPartition(part);
+      setPredicate(s);
+      return new SelectScan(s, pred, compiled());
+   }
+
+   /**
+    * @see simpledb.plan.PartitionedPlan#partitionBlocksAccessed(int)
+    */
+   public int partitionBlocksAccessed(int part) {
+      return ((PartitionedPlan) p).partitionBlocksAccessed(part);
+   }
+
+   private CompiledPredicate compiled() {
+      if (compiled == null)
+         compiled = new CompiledPredicate(pred, p.schema());
+      return compiled;
+   }
+
+   /**
+    * Tell a scan of a stored table the predicate.
+    */
+   private void setPredicate(Scan s) {
+      if (s instanceof TableScan)
+         ((TableScan) s).setPredicate(pred);
+      else if (s instanceof ColumnScan)
+         ((ColumnScan) s).setPredicate(pred);
+      else if (s instanceof PartitionScan)
+         ((PartitionScan) s).setPredicate(pred);
+   }
+
 }
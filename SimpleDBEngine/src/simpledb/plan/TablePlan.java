@@ -1,18 +1,27 @@
 package simpledb.plan;
 
+import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.metadata.*;
-import simpledb.query.Scan;
+import simpledb.query.*;
 import simpledb.record.*;
 
 /** The Plan class corresponding to a table.
+  * The plan of a partitioned table reads only the partitions
+  * that its predicate, if it is given one, does not rule out.
+  * The plan of an update statement has its scans lock
+  * the records they read for update.
   * @author Edward Sciore
   */
-public class TablePlan implements Plan {
+public class TablePlan implements PartitionedPlan {
    public String tblname;
    private Transaction tx;
    private Layout layout;
    private StatInfo si;
+   private Partitioning part;
+   private List<Integer> parts = new ArrayList<>();
+   private double share = 1.0;  // the fraction of the table's blocks read
+   private boolean forUpdate = false;
    
    /**
     * Creates a leaf node in the query tree corresponding
@@ -21,36 +30,85 @@ public class TablePlan implements Plan {
     * @param tx the calling transaction
     */
    public TablePlan(Transaction tx, String tblname, MetadataMgr md) {
+      this(tx, tblname, md, new Predicate());
+   }
+   
+   /**
+    * Creates a leaf node in the query tree corresponding
+    * to the specified table, whose records are to satisfy
+    * the specified predicate.
+    * If the table is partitioned, the partitions that the
+    * predicate rules out are left out of the plan;
+    * the predicate itself is not applied.
+    * A table missing from the catalog is rejected
+    * before any scan of it is opened.
+    * @param tblname the name of the table
+    * @param tx the calling transaction
+    * @param pred the predicate of the query
+    */
+   public TablePlan(Transaction tx, String tblname, MetadataMgr md, Predicate pred) {
       this.tblname = tblname;
       this.tx = tx;
       layout = md.getLayout(tblname, tx);
+      if (layout.slotSize() < 0)
+         throw new RuntimeException("no table " + tblname);
       si = md.getStatInfo(tblname, layout, tx);
+      part = md.getPartitioning(tblname, tx);
+      if (part != null) {
+         parts = part.prune(pred, layout.schema());
+         int total = 0, kept = 0;
+         for (int p=0; p<part.count(); p++) {
+            int size = partitionBlocksAccessed(p);
+            total += size;
+            if (parts.contains(p))
+               kept += size;
+         }
+         if (total > 0)
+            share = (double) kept / total;
+      }
    }
    
    /**
-    * Creates a table scan for this query.
+    * Creates a table scan for this query,
+    * or a scan of the chosen partitions of a partitioned table.
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
-      return new TableScan(tx, tblname, layout);
+      if (part == null)
+         return tableScan(tblname);
+      else
+         return new PartitionScan(part, layout.schema(), parts, p -> openPartition(p));
+   }
+   
+   /**
+    * Have the scans of the plan lock the records they read
+    * in exclusive mode, instead of locking the table in shared mode.
+    * The update planners call the method for the tables
+    * whose records they modify.
+    * @see simpledb.record.TableScan#lockForUpdate()
+    */
+   public void lockForUpdate() {
+      forUpdate = true;
    }
    
    /**
     * Estimates the number of block accesses for the table,
-    * which is obtainable from the statistics manager.
+    * which is obtainable from the statistics manager,
+    * scaled down to the partitions read.
     * @see simpledb.plan.Plan#blocksAccessed()
     */ 
    public int blocksAccessed() {
-      return si.blocksAccessed();
+      return (int) Math.ceil(si.blocksAccessed() * share);
    }
    
    /**
     * Estimates the number of records in the table,
-    * which is obtainable from the statistics manager.
+    * which is obtainable from the statistics manager,
+    * scaled down to the partitions read.
     * @see simpledb.plan.Plan#recordsOutput()
     */
    public int recordsOutput() {
-      return si.recordsOutput();
+      return (int) Math.ceil(si.recordsOutput() * share);
    }
    
    /**
@@ -70,5 +128,51 @@ public class TablePlan implements Plan {
    public Schema schema() {
       return layout.schema();
    }
+
+   /**
+    * Return the layout of the table's records,
+    * as recorded in the catalog.
+    * @return the table's layout
+    */
+   public Layout layout() {
+      return layout;
+   }
+
+   /**
+    * @see simpledb.plan.PartitionedPlan#partitioning()
+    */
+   public Partitioning partitioning() {
+      return part;
+   }
+
+   /**
+    * @see simpledb.plan.PartitionedPlan#partitions()
+    */
+   public List<Integer> partitions() {
+      return parts;
+   }
+
+   /**
+    * Creates a table scan of the specified partition.
+    * @see simpledb.plan.PartitionedPlan#openPartition(int)
+    */
+   public Scan openPartition(int p) {
+      return tableScan(Partitioning.partitionName(tblname, p));
+   }
+
+   /**
+    * Returns the current size of the partition's file.
+    * @see simpledb.plan.PartitionedPlan#partitionBlocksAccessed(int)
+    */
+   public int partitionBlocksAccessed(int p) {
+      return tx.size(Partitioning.partitionName(tblname, p) + ".tbl");
+   }
+
+   private TableScan tableScan(String filename) {
+      TableScan ts = new TableScan(tx, filename, layout);
+      if (forUpdate)
+         ts.lockForUpdate();
+      return ts;
+   }
    
 }
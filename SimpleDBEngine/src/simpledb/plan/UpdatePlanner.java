@@ -63,4 +63,35 @@ public interface UpdatePlanner {
     * @return the number of affected records
     */
    public int executeCreateIndex(CreateIndexData data, Transaction tx);
+   
+   /**
+    * Executes the specified copy statement, which bulk-loads
+    * the records of a data file into a table, and
+    * returns the number of loaded records.
+    * @param data the parsed representation of the copy statement
+    * @param tx the calling transaction
+    * @return the number of affected records
+    */
+   public int executeCopy(CopyData data, Transaction tx);
+   
+   /**
+    * Executes a step of the specified vacuum statement, which
+    * moves records of a table into the space of deleted records,
+    * and returns the number of moved records.
+    * The statement is repeated until it returns 0.
+    * @param data the parsed representation of the vacuum statement
+    * @param tx the calling transaction
+    * @return the number of affected records
+    */
+   public int executeVacuum(VacuumData data, Transaction tx);
+   
+   /**
+    * Executes the specified cluster statement, which rewrites
+    * a table with its records in the order of an index's key,
+    * and returns the number of rewritten records.
+    * @param data the parsed representation of the cluster statement
+    * @param tx the calling transaction
+    * @return the number of affected records
+    */
+   public int executeCluster(ClusterData data, Transaction tx);
 }
@@ -0,0 +1,196 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.file.*;
+import simpledb.parse.Parser;
+import simpledb.query.*;
+import simpledb.record.*;
+import static simpledb.test.Check.check;
+
+public class ZoneMapTest {
+   private static SimpleDB db;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("zonemaptest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table events(ts int, kind int, note varchar(20))", tx);
+      planner.executeUpdate("create table later(ts int, note varchar(20)) using slotted", tx);
+      planner.executeUpdate("create index laterts on later(ts) using zonemap", tx);
+      for (int i=0; i<3000; i++) {
+         planner.executeUpdate("insert into events(ts, kind, note) values(" + i + ", " + (i % 7) + ", 'event" + i + "')", tx);
+         planner.executeUpdate("insert into later(ts, note) values(" + (10000 + i) + ", 'later" + i + "')", tx);
+      }
+      tx.commit();
+
+      // zones computed for existing records, and kept up by inserts
+      tx = db.newTx();
+      planner.executeUpdate("create index eventsts on events(ts) using zonemap", tx);
+      tx.commit();
+      int size = size("events");
+      int read = blocksToRead("events", 0, 1500, 1510);
+      System.out.println("events: " + read + " of " + size + " blocks hold ts in [1500, 1510]");
+      check(read <= 2 && size > 50, "zones built from existing records");
+      check(blocksToRead("later", 0, 11000, 11005) <= 2, "zones widened by inserts");
+
+      // the same answers as a full scan
+      String[] preds = {
+         "ts = 2999", "ts >= 1000 and ts < 1010", "5 < ts and ts <= 40",
+         "ts > 5000", "ts > 10 and ts < 5", "kind = 3 and ts < 100", "kind = 3",
+      };
+      for (String pred : preds)
+         check(select("events", pred).equals(fullScan("events", pred)), "events where " + pred);
+      check(select("later", "ts >= 12990").size() == 10, "slotted table filtered");
+
+      // updates widen the zones, and rolled-back ones leave them conservative
+      tx = db.newTx();
+      updateTs("events", 5, 100000, tx);
+      tx.commit();
+      tx = db.newTx();
+      updateTs("events", 6, 200000, tx);
+      tx.rollback();
+      check(select("events", "ts = 100000").size() == 1, "updated record found");
+      check(select("events", "ts = 6").size() == 1, "rolled-back update undone");
+      check(select("events", "ts = 200000").isEmpty(), "rolled-back value not found");
+
+      // a snapshot older than the zone map still finds its versions
+      tx = db.newTx();
+      planner.executeUpdate("create table snap(ts int, note varchar(10))", tx);
+      for (int i=0; i<500; i++)
+         planner.executeUpdate("insert into snap(ts, note) values(" + (1000 + i) + ", 'snap" + i + "')", tx);
+      tx.commit();
+      Transaction reader = db.newReadOnlyTx();
+      tx = db.newTx();
+      updateTs("snap", 1000, 1001, tx);
+      tx.commit();
+      tx = db.newTx();
+      planner.executeUpdate("create index snapts on snap(ts) using zonemap", tx);
+      tx.commit();
+      check(count(planner.createQueryPlan("select ts from snap where ts = 1000", reader)) == 1, "snapshot reads an unknown block");
+      reader.commit();
+      check(select("snap", "ts = 1000").isEmpty(), "current readers see the update");
+
+      // the zones survive a restart
+      FileMgr fm = new FileMgr(new File("zonemaptest"), SimpleDB.BLOCK_SIZE);
+      ZoneMap reloaded = fm.zoneMap("events.tbl");
+      boolean same = true;
+      tx = db.newTx();
+      ZoneMap zones = tx.zoneMap("events.tbl");
+      for (int b=0; b<size; b++)
+         for (int[] r : new int[][] {{0, 99}, {1500, 1510}, {100000, 100000}})
+            same = same && zones.mayHold(b, 0, r[0], r[1]) == reloaded.mayHold(b, 0, r[0], r[1]);
+      tx.commit();
+      check(same, "zones reloaded from the side file");
+
+      // skipping blocks saves time on a selective range
+      long start = System.nanoTime();
+      for (int k=0; k<20; k++)
+         select("events", "ts >= 2000 and ts < 2010");
+      long zoned = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int k=0; k<20; k++)
+         select("events", "kind = 3 and note = 'event2003'");
+      long full = System.nanoTime() - start;
+      System.out.println("range queries: " + zoned / 1000000 + " ms with zones, " + full / 1000000 + " ms scanning every block");
+
+      // the files and maps of temporary tables are dropped when their transaction ends
+      for (boolean commit : new boolean[] {true, false}) {
+         tx = db.newTx();
+         Scan s = planner.createQueryPlan("select ts, note from events where kind = 3 order by note", tx).open();
+         while (s.next())
+            s.getString("note");
+         s.close();
+         List<String> temps = tempFiles();
+         String tbl = temps.stream().filter(f -> f.endsWith(".tbl")).findFirst().orElse("none");
+         ZoneMap tempzones = tx.zoneMap(tbl);
+         if (commit)
+            tx.commit();
+         else
+            tx.rollback();
+         String end = commit ? "commit" : "rollback";
+         check(!temps.isEmpty() && tempFiles().isEmpty(), "temporary files deleted at " + end);
+         check(db.fileMgr().zoneMap(tbl) != tempzones, "temporary zone map dropped at " + end);
+      }
+      System.out.println("done");
+   }
+
+   /**
+    * Return the number of blocks whose zones allow
+    * the specified range of values of a field.
+    */
+   private static int blocksToRead(String tblname, int col, int lo, int hi) {
+      Transaction tx = db.newTx();
+      ZoneMap zones = tx.zoneMap(tblname + ".tbl");
+      int size = tx.size(tblname + ".tbl");
+      int count = 0;
+      for (int b=0; b<size; b++)
+         if (zones.mayHold(b, col, lo, hi))
+            count++;
+      tx.commit();
+      return count;
+   }
+
+   private static List<String> tempFiles() {
+      List<String> result = new ArrayList<>();
+      for (String filename : new File("zonemaptest").list())
+         if (filename.startsWith("temp"))
+            result.add(filename);
+      return result;
+   }
+
+   private static Set<String> select(String tblname, String pred) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan("select note from " + tblname + " where " + pred, tx);
+      Set<String> result = new HashSet<>();
+      Scan s = p.open();
+      while (s.next())
+         result.add(s.getString("note"));
+      s.close();
+      tx.commit();
+      return result;
+   }
+
+   /**
+    * Evaluate the predicate against every record,
+    * without consulting the zone map.
+    */
+   private static Set<String> fullScan(String tblname, String pred) {
+      Predicate where = new Parser("select note from " + tblname + " where " + pred).query().pred();
+      Transaction tx = db.newTx();
+      Scan s = new TablePlan(tx, tblname, db.mdMgr()).open();
+      Set<String> result = new HashSet<>();
+      while (s.next())
+         if (where.isSatisfied(s))
+            result.add(s.getString("note"));
+      s.close();
+      tx.commit();
+      return result;
+   }
+
+   private static void updateTs(String tblname, int oldval, int newval, Transaction tx) {
+      TableScan ts = new TableScan(tx, tblname, db.mdMgr().getLayout(tblname, tx));
+      while (ts.next())
+         if (ts.getInt("ts") == oldval)
+            ts.setInt("ts", newval);
+      ts.close();
+   }
+
+   private static int size(String tblname) {
+      Transaction tx = db.newTx();
+      int size = tx.size(tblname + ".tbl");
+      tx.commit();
+      return size;
+   }
+
+   private static int count(Plan p) {
+      Scan s = p.open();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      return count;
+   }
+}
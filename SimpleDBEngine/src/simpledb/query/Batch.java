@@ -0,0 +1,204 @@
+package simpledb.query;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+
+/**
+ * A batch of records, held as a vector of values for each field:
+ * an array of ints for an integer field, and an array of strings
+ * for a string field.
+ * The selection vector lists the rows of the batch that are
+ * records of the scan producing it, in order; an operator such
+ * as a selection removes records by shortening the selection
+ * vector, leaving the values in place.
+ * A batch holds at most {@link #SIZE} rows.
+ */
+public class Batch {
+   /**
+    * The number of rows that a batch can hold.
+    */
+   public static final int SIZE = 1024;
+   private List<String> fields;
+   private int[] types;
+   private int[][] ints;
+   private String[][] strings;
+   private int[] sel;
+   private int size;
+
+   /**
+    * Create an empty batch having the specified fields.
+    * @param fields the names of the fields
+    * @param types the type of each field
+    */
+   public Batch(List<String> fields, int[] types) {
+      this.fields = fields;
+      this.types = types;
+      ints = new int[types.length][];
+      strings = new String[types.length][];
+      for (int col=0; col<types.length; col++) {
+         if (types[col] == INTEGER)
+            ints[col] = new int[SIZE];
+         else
+            strings[col] = new String[SIZE];
+      }
+      sel = new int[SIZE];
+   }
+
+   private Batch(List<String> fields, int[] types, int[][] ints, String[][] strings, int[] sel, int size) {
+      this.fields = fields;
+      this.types = types;
+      this.ints = ints;
+      this.strings = strings;
+      this.sel = sel;
+      this.size = size;
+   }
+
+   /**
+    * Return the position of the specified field in the batch.
+    * @param fldname the name of the field
+    * @return the position of the field, or -1 if the batch does not have it
+    */
+   public int indexOf(String fldname) {
+      return fields.indexOf(fldname);
+   }
+
+   /**
+    * Return the names of the batch's fields, in order of position.
+    * @return the names of the fields
+    */
+   public List<String> fields() {
+      return fields;
+   }
+
+   /**
+    * Return the type of the field at the specified position.
+    * @param col the position of the field
+    * @return the type of the field
+    */
+   public int type(int col) {
+      return types[col];
+   }
+
+   /**
+    * Return the values of the integer field at the specified
+    * position, indexed by row.
+    * @param col the position of the field
+    * @return the vector of the field's values
+    */
+   public int[] ints(int col) {
+      return ints[col];
+   }
+
+   /**
+    * Return the values of the string field at the specified
+    * position, indexed by row.
+    * @param col the position of the field
+    * @return the vector of the field's values
+    */
+   public String[] strings(int col) {
+      return strings[col];
+   }
+
+   /**
+    * Return the value of the field at the specified
+    * position in the specified row, expressed as a Constant.
+    * @param col the position of the field
+    * @param row the row
+    * @return the value of the field
+    */
+   public Constant getVal(int col, int row) {
+      if (types[col] == INTEGER)
+         return Constant.of(ints[col][row]);
+      else
+         return new Constant(strings[col][row]);
+   }
+
+   /**
+    * Set the value of the field at the specified
+    * position in the specified row.
+    * @param col the position of the field
+    * @param row the row
+    * @param val the new value
+    */
+   public void setVal(int col, int row, Constant val) {
+      if (types[col] == INTEGER)
+         ints[col][row] = val.asInt();
+      else
+         strings[col][row] = val.asString();
+   }
+
+   /**
+    * Copy a value of another batch into the specified row
+    * of the field at the specified position.
+    * The two fields have the same type.
+    * @param col the position of the field
+    * @param row the row
+    * @param src the batch holding the value
+    * @param srccol the position of the field in that batch
+    * @param srcrow the row of that batch
+    */
+   public void copy(int col, int row, Batch src, int srccol, int srcrow) {
+      if (types[col] == INTEGER)
+         ints[col][row] = src.ints[srccol][srcrow];
+      else
+         strings[col][row] = src.strings[srccol][srcrow];
+   }
+
+   /**
+    * Return the selection vector, whose first
+    * {@link #size()} entries are the rows of the batch's records.
+    * @return the selection vector
+    */
+   public int[] selection() {
+      return sel;
+   }
+
+   /**
+    * Return the number of records in the batch.
+    * @return the number of selected rows
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Make the first rows of the batch its records,
+    * once their values have been written.
+    * @param n the number of rows filled
+    */
+   public void fill(int n) {
+      for (int i=0; i<n; i++)
+         sel[i] = i;
+      size = n;
+   }
+
+   /**
+    * Keep only the first records of the selection vector,
+    * which the caller has rewritten to list the records that remain.
+    * @param n the number of records that remain
+    */
+   public void select(int n) {
+      size = n;
+   }
+
+   /**
+    * Return a batch having the specified fields of this one,
+    * which shares its vectors and its selection.
+    * @param fldnames the names of the fields to keep
+    * @return the projected batch
+    */
+   public Batch project(List<String> fldnames) {
+      int[] ptypes = new int[fldnames.size()];
+      int[][] pints = new int[ptypes.length][];
+      String[][] pstrings = new String[ptypes.length][];
+      for (int i=0; i<ptypes.length; i++) {
+         int col = indexOf(fldnames.get(i));
+         if (col < 0)
+            throw new RuntimeException("field " + fldnames.get(i) + " not found.");
+         ptypes[i] = types[col];
+         pints[i] = ints[col];
+         pstrings[i] = strings[col];
+      }
+      return new Batch(fldnames, ptypes, pints, pstrings, sel, size);
+   }
+}
@@ -0,0 +1,104 @@
+package simpledb.query;
+
+import java.util.List;
+
+/**
+ * An adapter that reads the batches of a scan
+ * and returns their records one at a time,
+ * for an operator that reads a record at a time.
+ * The adapter has the specified fields of the scan,
+ * positioned in the order given; their values are read
+ * from the vectors of the current batch.
+ */
+public class BatchRowScan implements Scan {
+   private BatchScan s;
+   private List<String> fields;
+   private Batch batch, mapped;
+   private int[] cols;
+   private int pos, row;
+
+   /**
+    * Create an adapter reading the specified fields
+    * of the specified scan.
+    * @param s the scan producing batches
+    * @param fields the names of the fields to read
+    */
+   public BatchRowScan(BatchScan s, List<String> fields) {
+      this.s = s;
+      this.fields = fields;
+      cols = new int[fields.size()];
+      s.useFields(fields);
+   }
+
+   public void beforeFirst() {
+      s.beforeFirst();
+      batch = null;
+   }
+
+   /**
+    * Move to the next record of the current batch,
+    * reading the next batch when this one is used up.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      while (batch == null || pos >= batch.size()) {
+         batch = s.nextBatch();
+         if (batch == null)
+            return false;
+         if (batch != mapped) {
+            for (int i=0; i<cols.length; i++)
+               cols[i] = batch.indexOf(fields.get(i));
+            mapped = batch;
+         }
+         pos = 0;
+      }
+      row = batch.selection()[pos++];
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return getInt(position(fldname));
+   }
+
+   public String getString(String fldname) {
+      return getString(position(fldname));
+   }
+
+   public Constant getVal(String fldname) {
+      return getVal(position(fldname));
+   }
+
+   /**
+    * The position of a field is its position in the field list.
+    */
+   public int indexOf(String fldname) {
+      return fields.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return batch.ints(cols[col])[row];
+   }
+
+   public String getString(int col) {
+      return batch.strings(cols[col])[row];
+   }
+
+   public Constant getVal(int col) {
+      return batch.getVal(cols[col], row);
+   }
+
+   public boolean hasField(String fldname) {
+      return fields.contains(fldname);
+   }
+
+   public void close() {
+      s.close();
+   }
+
+   private int position(String fldname) {
+      int col = indexOf(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
+}
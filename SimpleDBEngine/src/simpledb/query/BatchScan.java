@@ -0,0 +1,49 @@
+package simpledb.query;
+
+import java.util.Collection;
+
+/**
+ * The interface implemented by scans that can produce
+ * their records a batch at a time, as vectors of field values,
+ * instead of a record at a time.
+ * An operator reading a batch works through the vectors in
+ * a loop of its own, rather than calling the scan for each
+ * value of each record.
+ * <p>
+ * A scan is read either by records or by batches,
+ * from the time it is opened or positioned before its first record.
+ * A scan whose underlying scans cannot produce batches
+ * cannot produce them either; {@link RowBatchScan} adapts
+ * such an underlying scan, and {@link BatchRowScan} lets
+ * an operator that reads a record at a time read batches.
+ */
+public interface BatchScan extends Scan {
+
+   /**
+    * Return true if the scan can produce batches,
+    * which it can only if its underlying scans can.
+    * @return true if {@link #nextBatch()} may be called
+    */
+   public boolean producesBatches();
+
+   /**
+    * Tell the scan which fields its batches need hold.
+    * The values of the other fields may be left unread.
+    * The method is called before the first batch is read;
+    * by default, a batch holds every field.
+    * @param fldnames the names of the fields needed
+    */
+   public void useFields(Collection<String> fldnames);
+
+   /**
+    * Return the next batch of records, or null if there are none.
+    * The batch holds at least one record.
+    * Once there are no more records, the method goes on
+    * returning null until the scan is positioned before
+    * its first record again.
+    * The batch remains valid until the next call,
+    * which may reuse it for the next records.
+    * @return the next batch, or null
+    */
+   public Batch nextBatch();
+}
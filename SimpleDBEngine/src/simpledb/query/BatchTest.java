@@ -0,0 +1,218 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.parse.Parser;
+import simpledb.record.*;
+import simpledb.materialize.*;
+import static simpledb.test.Check.check;
+
+public class BatchTest {
+   private static SimpleDB db;
+   private static final int N = 20000;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("batchtest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table emp(eid int, ename varchar(10), dept int, sal int)", tx);
+      planner.executeUpdate("create table dept(did int, dname varchar(10))", tx);
+      TableScan ts = new TableScan(tx, "emp", db.mdMgr().getLayout("emp", tx));
+      for (int i=0; i<N; i++) {
+         ts.insert();
+         ts.setInt("eid", i);
+         ts.setString("ename", "emp" + i);
+         ts.setInt("dept", i % 20);
+         ts.setInt("sal", i * 37 % 1000);
+      }
+      ts.close();
+      for (int i=0; i<20; i+=2)
+         planner.executeUpdate("insert into dept(did, dname) values(" + i + ", 'dept" + i + "')", tx);
+      tx.commit();
+
+      // batches select the same records as rows do
+      String[] where = { "sal > 500", "500 > sal", "sal <= dept", "sal = 74 and dept = 2",
+                         "ename = 'emp74'", "ename > 'emp9'", "sal < 0" };
+      boolean same = true;
+      for (String w : where) {
+         tx = db.newTx();
+         Predicate pred = new Parser("select eid from emp where " + w).query().pred();
+         same = same && rows(new SelectScan(table("emp", tx), pred)).equals(batchRows(new SelectScan(table("emp", tx), pred)));
+         tx.commit();
+      }
+      check(same, "batch selection matches row selection");
+
+      // a projection reads its records from batches when it can
+      tx = db.newTx();
+      Predicate pred = new Parser("select eid from emp where sal > 900").query().pred();
+      ProjectScan ps = new ProjectScan(new SelectScan(table("emp", tx), pred), Arrays.asList("ename", "sal"));
+      check(ps.producesBatches(), "projection of a table reads batches");
+      List<String> projected = new ArrayList<>();
+      while (ps.next())
+         projected.add(ps.getString("ename") + " " + ps.getInt(1));
+      ps.close();
+      List<String> expected = new ArrayList<>();
+      Scan s = new SelectScan(table("emp", tx), pred);
+      while (s.next())
+         expected.add(s.getString("ename") + " " + s.getInt("sal"));
+      s.close();
+      check(projected.equals(expected), "projected records in order");
+      Scan product = new ProductScan(table("dept", tx), table("emp", tx));
+      ps = new ProjectScan(product, Arrays.asList("dname", "eid"));
+      check(!ps.producesBatches(), "projection of a product reads records");
+      ps.close();
+
+      // the table fills only the fields that its reader uses
+      TableScan partial = table("emp", tx);
+      partial.useFields(Arrays.asList("sal"));
+      Batch b = partial.nextBatch();
+      check(b.size() == Batch.SIZE && b.strings(b.indexOf("ename"))[0] == null
+            && b.ints(b.indexOf("sal"))[1] == 37, "unused fields left unread");
+      partial.close();
+      tx.commit();
+
+      // aggregation over batches
+      tx = db.newTx();
+      List<AggregationFn> fns = Arrays.asList(new CountFn("eid"), new SumFn("sal"), new MinFn("ename"),
+                                              new MaxFn("sal"), new AvgFn("sal"));
+      pred = new Parser("select eid from emp where dept = 3").query().pred();
+      Scan agg = new AggregateScan(new SelectScan(table("emp", tx), pred), fns);
+      agg.next();
+      String batched = agg.getVal("countofeid") + " " + agg.getVal("sumofsal") + " " + agg.getVal("minofename")
+                       + " " + agg.getVal("maxofsal") + " " + agg.getVal("avgofsal");
+      agg.close();
+      int count = 0, sum = 0, max = 0;
+      String min = null;
+      s = new SelectScan(table("emp", tx), pred);
+      while (s.next()) {
+         count++;
+         sum += s.getInt("sal");
+         max = Math.max(max, s.getInt("sal"));
+         if (min == null || s.getString("ename").compareTo(min) < 0)
+            min = s.getString("ename");
+      }
+      s.close();
+      check(batched.equals(count + " " + sum + " " + min + " " + max + " " + (sum / count)), "aggregates over batches");
+      pred = new Parser("select eid from emp where sal < 0").query().pred();
+      agg = new AggregateScan(new SelectScan(table("emp", tx), pred), fns);
+      check(!agg.next(), "no aggregate of no records");
+      agg.close();
+      tx.commit();
+
+      // a hash join produces the same records by batches as by rows
+      tx = db.newTx();
+      Schema empsch = db.mdMgr().getLayout("emp", tx).schema();
+      Schema deptsch = db.mdMgr().getLayout("dept", tx).schema();
+      Schema joinsch = new Schema();
+      joinsch.addAll(deptsch);
+      joinsch.addAll(empsch);
+      PartitionJoinScan pj = new PartitionJoinScan(table("dept", tx), deptsch, table("emp", tx), empsch, "did", "dept", joinsch);
+      List<String> joinrows = new ArrayList<>();
+      while (pj.next())
+         joinrows.add(pj.getString("dname") + " " + pj.getInt("eid"));
+      pj.close();
+      pj = new PartitionJoinScan(table("dept", tx), deptsch, table("emp", tx), empsch, "did", "dept", joinsch);
+      List<String> joinbatches = new ArrayList<>();
+      for (b = pj.nextBatch(); b != null; b = pj.nextBatch())
+         for (int i=0; i<b.size(); i++) {
+            int row = b.selection()[i];
+            joinbatches.add(b.strings(b.indexOf("dname"))[row] + " " + b.ints(b.indexOf("eid"))[row]);
+         }
+      pj.close();
+      check(joinrows.size() == N / 2 && joinrows.equals(joinbatches), "hash join batches");
+
+      // the adapters
+      product = new ProductScan(table("dept", tx), table("emp", tx));
+      Schema prodsch = new Schema();
+      prodsch.addAll(deptsch);
+      prodsch.addAll(empsch);
+      BatchScan adapted = RowBatchScan.of(product, prodsch);
+      Scan back = new BatchRowScan(adapted, Arrays.asList("dname", "eid"));
+      count = 0;
+      boolean consistent = true;
+      while (back.next()) {
+         consistent = consistent && back.getString("dname").startsWith("dept") && back.getVal("eid").asInt() < N;
+         count++;
+      }
+      back.close();
+      check(consistent && count == 10 * N && RowBatchScan.of(table("emp", tx), empsch) instanceof TableScan,
+            "adapters between records and batches");
+      tx.commit();
+
+      // the time to filter and sum a column
+      pred = new Parser("select eid from emp where sal > 250 and dept < 15").query().pred();
+      long rowtime = Long.MAX_VALUE, batchtime = Long.MAX_VALUE;
+      int rowsum = 0, batchsum = 0;
+      for (int round=0; round<5; round++) {
+         tx = db.newTx();
+         long start = System.nanoTime();
+         s = new SelectScan(table("emp", tx), pred);
+         int col = s.indexOf("sal");
+         rowsum = 0;
+         while (s.next())
+            rowsum += s.getInt(col);
+         s.close();
+         rowtime = Math.min(rowtime, System.nanoTime() - start);
+         start = System.nanoTime();
+         SelectScan ss = new SelectScan(table("emp", tx), pred);
+         ss.useFields(Arrays.asList("sal"));
+         batchsum = 0;
+         for (b = ss.nextBatch(); b != null; b = ss.nextBatch()) {
+            int[] sal = b.ints(b.indexOf("sal"));
+            int[] sel = b.selection();
+            for (int i=0; i<b.size(); i++)
+               batchsum += sal[sel[i]];
+         }
+         ss.close();
+         batchtime = Math.min(batchtime, System.nanoTime() - start);
+         tx.commit();
+      }
+      System.out.println("filter and sum of " + N + " records: " + rowtime / 1000 + "us by rows, "
+                         + batchtime / 1000 + "us by batches");
+      check(rowsum == batchsum, "same sum by rows and batches");
+
+      // queries through the planner
+      check(query("select ename from emp where eid = 74").equals(Arrays.asList("emp74")), "query by batches");
+      check(query("select count(eid) from emp where dept = 1").equals(Arrays.asList(String.valueOf(N / 20))),
+            "aggregate query by batches");
+      System.out.println("done");
+   }
+
+   private static TableScan table(String tblname, Transaction tx) {
+      return new TableScan(tx, tblname, db.mdMgr().getLayout(tblname, tx));
+   }
+
+   private static List<Integer> rows(Scan s) {
+      List<Integer> result = new ArrayList<>();
+      while (s.next())
+         result.add(s.getInt("eid"));
+      s.close();
+      return result;
+   }
+
+   private static List<Integer> batchRows(BatchScan s) {
+      List<Integer> result = new ArrayList<>();
+      s.useFields(Arrays.asList("eid"));
+      for (Batch b = s.nextBatch(); b != null; b = s.nextBatch()) {
+         int[] eids = b.ints(b.indexOf("eid"));
+         for (int i=0; i<b.size(); i++)
+            result.add(eids[b.selection()[i]]);
+      }
+      s.close();
+      return result;
+   }
+
+   private static List<String> query(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      Scan s = p.open();
+      List<String> result = new ArrayList<>();
+      while (s.next())
+         result.add(s.getVal(p.schema().fields().get(0)).toString());
+      s.close();
+      tx.commit();
+      return result;
+   }
+}
@@ -0,0 +1,60 @@
+package simpledb.query;
+
+import java.util.*;
+import java.util.function.*;
+import simpledb.record.Schema;
+
+/**
+ * A predicate compiled for the records of a schema.
+ * Each term is compiled once, choosing how to read and compare
+ * its values from the types of its fields; the compiled predicate
+ * is then bound to each scan of such records, giving a tree of
+ * lambdas that tests the scan's current record.
+ * The test reads the fields by position and compares integers
+ * as primitives, and neither evaluates expressions into constants
+ * nor looks at the terms' operators.
+ */
+public class CompiledPredicate {
+   private List<Function<Scan,BooleanSupplier>> terms = new ArrayList<>();
+
+   /**
+    * Compile the specified predicate for the records
+    * of the specified schema.
+    * @param pred the predicate
+    * @param sch the schema of the records to be tested
+    */
+   public CompiledPredicate(Predicate pred, Schema sch) {
+      for (Term t : pred.terms)
+         terms.add(t.compile(sch));
+   }
+
+   /**
+    * Return a test of whether the current record
+    * of the specified scan satisfies the predicate.
+    * The terms are tested in order, stopping at the first
+    * that the record does not satisfy.
+    * @param s the scan
+    * @return the test of the scan's current record
+    */
+   public BooleanSupplier bind(Scan s) {
+      BooleanSupplier[] tests = new BooleanSupplier[terms.size()];
+      for (int i=0; i<tests.length; i++)
+         tests[i] = terms.get(i).apply(s);
+      switch (tests.length) {
+      case 0:
+         return () -> true;
+      case 1:
+         return tests[0];
+      case 2:
+         BooleanSupplier t1 = tests[0], t2 = tests[1];
+         return () -> t1.getAsBoolean() && t2.getAsBoolean();
+      default:
+         return () -> {
+            for (BooleanSupplier t : tests)
+               if (!t.getAsBoolean())
+                  return false;
+            return true;
+         };
+      }
+   }
+}
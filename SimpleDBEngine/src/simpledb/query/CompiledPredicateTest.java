@@ -0,0 +1,113 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.parse.Parser;
+import simpledb.record.*;
+import static simpledb.test.Check.check;
+
+public class CompiledPredicateTest {
+   private static SimpleDB db;
+   private static final int N = 20000;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("compiledpredicatetest");
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table emp(eid int, ename varchar(10), dept int, sal int)", tx);
+      db.planner().executeUpdate("create table dept(did int, dname varchar(10))", tx);
+      TableScan ts = new TableScan(tx, "emp", db.mdMgr().getLayout("emp", tx));
+      for (int i=0; i<N; i++) {
+         ts.insert();
+         ts.setInt("eid", i);
+         ts.setString("ename", "emp" + i);
+         ts.setInt("dept", i % 20);
+         ts.setInt("sal", i * 37 % 1000);
+      }
+      ts.close();
+      for (int i=0; i<20; i+=2)
+         db.planner().executeUpdate("insert into dept(did, dname) values(" + i + ", 'dept" + i + "')", tx);
+      tx.commit();
+
+      // every form of term selects the records that the interpreted predicate does
+      String[] where = { "sal = 74", "sal < 100", "sal <= 100", "sal > 900", "sal >= 900", "sal <> 5",
+                         "100 > sal", "900 <= sal", "sal = dept", "sal < dept", "ename = 'emp74'",
+                         "ename >= 'emp9'", "'emp5' > ename", "1 = 1", "1 = 2", "sal > 500 and dept = 3",
+                         "sal > 100 and dept < 10 and ename <> 'emp1'", "nosuchfield = 3" };
+      Schema sch = db.mdMgr().getLayout("emp", tx).schema();
+      boolean same = true;
+      for (String w : where) {
+         tx = db.newTx();
+         Predicate pred = new Parser("select eid from emp where " + w).query().pred();
+         List<Integer> interpreted = new ArrayList<>(), compiled = new ArrayList<>();
+         try {
+            interpreted = eids(new SelectScan(table("emp", tx), pred));
+         }
+         catch (RuntimeException e) {
+            interpreted = null;
+         }
+         try {
+            compiled = eids(new SelectScan(table("emp", tx), pred, new CompiledPredicate(pred, sch)));
+         }
+         catch (RuntimeException e) {
+            compiled = null;
+         }
+         if (!Objects.equals(interpreted, compiled)) {
+            System.out.println("differs: " + w);
+            same = false;
+         }
+         tx.commit();
+      }
+      check(same, "compiled terms select the same records");
+
+      // a compiled predicate is bound to each scan it tests
+      tx = db.newTx();
+      Predicate joinpred = new Parser("select eid from emp, dept where dept = did and sal < 50").query().pred();
+      Plan product = new ProductPlan(new TablePlan(tx, "dept", db.mdMgr()), new TablePlan(tx, "emp", db.mdMgr()));
+      SelectPlan sp = new SelectPlan(product, joinpred);
+      int first = eids(sp.open()).size(), second = eids(sp.open()).size();
+      check(first == second && first == eids(new SelectScan(product.open(), joinpred)).size() && first > 0,
+            "a plan's compiled predicate serves each scan");
+      tx.commit();
+
+      // the time to filter a table
+      Predicate pred = new Parser("select eid from emp where sal > 250 and dept < 15 and ename <> 'emp7'").query().pred();
+      long interpreted = Long.MAX_VALUE, compiled = Long.MAX_VALUE;
+      int icount = 0, ccount = 0;
+      for (int round=0; round<5; round++) {
+         tx = db.newTx();
+         long start = System.nanoTime();
+         icount = count(new SelectScan(table("emp", tx), pred));
+         interpreted = Math.min(interpreted, System.nanoTime() - start);
+         start = System.nanoTime();
+         ccount = count(new SelectScan(table("emp", tx), pred, new CompiledPredicate(pred, sch)));
+         compiled = Math.min(compiled, System.nanoTime() - start);
+         tx.commit();
+      }
+      System.out.println("filter of " + N + " records: " + interpreted / 1000 + "us interpreted, "
+                         + compiled / 1000 + "us compiled");
+      check(icount == ccount, "same records either way");
+      System.out.println("done");
+   }
+
+   private static TableScan table(String tblname, Transaction tx) {
+      return new TableScan(tx, tblname, db.mdMgr().getLayout(tblname, tx));
+   }
+
+   private static List<Integer> eids(Scan s) {
+      List<Integer> result = new ArrayList<>();
+      while (s.next())
+         result.add(s.getInt("eid"));
+      s.close();
+      return result;
+   }
+
+   private static int count(Scan s) {
+      int n = 0;
+      while (s.next())
+         n++;
+      s.close();
+      return n;
+   }
+}
@@ -2,43 +2,72 @@ package simpledb.query;
 
 /**
  * The class that denotes values stored in the database.
+ * An integer value is held unboxed, and the constants
+ * for small integers are shared; see {@link #of(int)}.
  * @author Edward Sciore
  */
 public class Constant implements Comparable<Constant> {
-   private Integer ival = null;
+   private static final int CACHE_LOW = -128, CACHE_HIGH = 1023;
+   private static final Constant[] cache = new Constant[CACHE_HIGH - CACHE_LOW + 1];
+   static {
+      for (int i=0; i<cache.length; i++)
+         cache[i] = new Constant(i + CACHE_LOW);
+   }
+
+   private int     ival;
    private String  sval = null;
-   
-   public Constant(Integer ival) {
+
+   public Constant(int ival) {
       this.ival = ival;
    }
-   
+
    public Constant(String sval) {
       this.sval = sval;
    }
-   
+
+   /**
+    * Return a constant for the specified integer.
+    * Scans call this method rather than the constructor,
+    * so that the values of the many small integers
+    * they read do not each allocate a constant.
+    * @param ival the integer
+    * @return a constant denoting the integer
+    */
+   public static Constant of(int ival) {
+      if (ival >= CACHE_LOW && ival <= CACHE_HIGH)
+         return cache[ival - CACHE_LOW];
+      return new Constant(ival);
+   }
+
+   public boolean isInt() {
+      return sval == null;
+   }
+
    public int asInt() {
+      if (sval != null)
+         throw new NullPointerException("'" + sval + "' is not an integer");
       return ival;
    }
-   
+
    public String asString() {
       return sval;
    }
-   
+
    public boolean equals(Object obj) {
       Constant c = (Constant) obj;
 
-      return (ival != null) ? ival.equals(c.ival) : sval.equals(c.sval);
+      return (sval == null) ? c.sval == null && ival == c.ival : sval.equals(c.sval);
    }
-   
+
    public int compareTo(Constant c) {
-      return (ival != null) ? ival.compareTo(c.ival) : sval.compareTo(c.sval);
+      return (sval == null) ? Integer.compare(ival, c.asInt()) : sval.compareTo(c.sval);
    }
-   
+
    public int hashCode() {
-      return (ival != null) ? ival.hashCode() : sval.hashCode();
+      return (sval == null) ? Integer.hashCode(ival) : sval.hashCode();
    }
-   
+
    public String toString() {
-      return (ival != null) ? ival.toString() : sval.toString();
-   }   
+      return (sval == null) ? Integer.toString(ival) : sval;
+   }
 }
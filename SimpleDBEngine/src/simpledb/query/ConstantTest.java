@@ -0,0 +1,186 @@
+package simpledb.query;
+
+import java.lang.management.*;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.record.*;
+import simpledb.materialize.*;
+import static simpledb.test.Check.check;
+
+public class ConstantTest {
+   private static SimpleDB db;
+   private static final int N = 20000;
+   private static com.sun.management.ThreadMXBean threads =
+         (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+   public static void main(String[] args) throws Exception {
+      // the constants themselves
+      check(Constant.of(7) == Constant.of(7) && Constant.of(-128) == Constant.of(-128)
+            && Constant.of(5000) != Constant.of(5000), "small integers are shared");
+      check(Constant.of(5000).equals(new Constant(5000)) && Constant.of(7).hashCode() == new Constant(7).hashCode()
+            && !new Constant(0).equals(new Constant("")) && new Constant(-1).compareTo(Constant.of(1)) < 0
+            && new Constant("b").compareTo(new Constant("a")) > 0, "values compare as before");
+      check(Constant.of(3).isInt() && !new Constant("x").isInt() && Constant.of(3).asString() == null
+            && Constant.of(-42).toString().equals("-42"), "int and string constants");
+
+      db = new SimpleDB("constanttest");
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table emp(eid int, ename varchar(10), dept int, sal int)", tx);
+      db.planner().executeUpdate("create table dept(did int, dname varchar(10))", tx);
+      TableScan ts = new TableScan(tx, "emp", db.mdMgr().getLayout("emp", tx));
+      for (int i=0; i<N; i++) {
+         ts.insert();
+         ts.setInt("eid", N + i);
+         ts.setString("ename", "emp" + i);
+         ts.setInt("dept", i % 20);
+         ts.setInt("sal", i * 37 % 1000);
+      }
+      ts.close();
+      for (int i=0; i<20; i+=2)
+         db.planner().executeUpdate("insert into dept(did, dname) values(" + i + ", 'dept" + i + "')", tx);
+      tx.commit();
+
+      // operators that compare values without constants
+      tx = db.newTx();
+      List<String> sorted = query("select eid, ename from emp where eid < " + (N + 200) + " order by ename desc", "ename");
+      List<String> expected = new ArrayList<>();
+      for (int i=0; i<200; i++)
+         expected.add("emp" + i);
+      expected.sort(Comparator.reverseOrder());
+      check(sorted.equals(expected), "sort on a string field");
+      sorted = query("select eid from emp order by eid", "eid");
+      boolean ascending = sorted.size() == N;
+      for (int i=0; i<N; i++)
+         ascending = ascending && sorted.get(i).equals(String.valueOf(N + i));
+      check(ascending, "sort on an int field");
+      check(query("select dept, count(eid) from emp group by dept", "countofeid").equals(Collections.nCopies(20, String.valueOf(N / 20))),
+            "groups of an int field");
+      Plan emp = new TablePlan(tx, "emp", db.mdMgr()), dept = new TablePlan(tx, "dept", db.mdMgr());
+      Plan join = new MergeJoinPlan(tx, dept, emp, "did", "dept");
+      Scan s = join.open();
+      int count = 0;
+      boolean matched = true;
+      while (s.next()) {
+         matched = matched && s.getInt("did") == s.getInt("dept") && s.getString("dname").equals("dept" + s.getInt("dept"));
+         count++;
+      }
+      s.close();
+      check(matched && count == N / 2, "merge join on an int field");
+      s = new MergeJoinPlan(tx, new TablePlan(tx, "emp", db.mdMgr()), new TablePlan(tx, "emp", db.mdMgr()), "ename", "ename").open();
+      count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      check(count == N, "merge join on a string field");
+      tx.commit();
+
+      // the bytes allocated by comparisons, with constants and without
+      tx = db.newTx();
+      RecordComparator comp = new RecordComparator(Arrays.asList("eid", "dept"));
+      Scan s1 = table("emp", tx), s2 = table("emp", tx);
+      long scanning = allocated(() -> {
+         int n = 0;
+         s1.beforeFirst(); s2.beforeFirst(); s2.next();
+         while (s1.next() && s2.next())
+            n++;
+         return n;
+      });
+      long withconsts = allocated(() -> {
+         int sign = 0;
+         s1.beforeFirst(); s2.beforeFirst(); s2.next();
+         while (s1.next() && s2.next())
+            sign += Integer.signum(s1.getVal("eid").compareTo(s2.getVal("eid")));
+         return sign;
+      });
+      long withoutconsts = allocated(() -> {
+         int sign = 0;
+         s1.beforeFirst(); s2.beforeFirst(); s2.next();
+         while (s1.next() && s2.next())
+            sign += Integer.signum(comp.compare(s1, s2));
+         return sign;
+      });
+      withconsts -= scanning;
+      withoutconsts -= scanning;
+      System.out.println("comparing " + N + " records: " + withconsts / N + " bytes per record with constants, "
+                         + withoutconsts / N + " without");
+      check(withoutconsts < withconsts / 4, "comparisons allocate less");
+
+      s1.beforeFirst();
+      s1.next();
+      GroupValue group = new GroupValue(s1, Arrays.asList("dept"));
+      scanning = allocated(() -> {
+         int n = 0;
+         s2.beforeFirst();
+         while (s2.next())
+            n++;
+         return n;
+      });
+      long groupvals = allocated(() -> {
+         int n = 0;
+         s2.beforeFirst();
+         while (s2.next())
+            n += group.equals(new GroupValue(s2, Arrays.asList("dept"))) ? 1 : 0;
+         return n;
+      });
+      long matches = allocated(() -> {
+         int n = 0;
+         s2.beforeFirst();
+         while (s2.next())
+            n += group.matches(s2) ? 1 : 0;
+         return n;
+      });
+      groupvals -= scanning;
+      matches -= scanning;
+      System.out.println("testing " + N + " records for a group: " + groupvals / N + " bytes per record with group values, "
+                         + matches / N + " without");
+      check(matches < groupvals / 4, "group tests allocate less");
+      s1.close();
+      s2.close();
+
+      List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+      long before = collections(gcs);
+      long start = System.nanoTime();
+      for (int round=0; round<5; round++)
+         query("select eid from emp order by eid", "eid");
+      System.out.println("5 sorts of " + N + " records: " + (System.nanoTime() - start) / 1000000 + "ms, "
+                         + (collections(gcs) - before) + " collections");
+      tx.commit();
+      System.out.println("done");
+   }
+
+   // the bytes allocated by the current thread to run the task, the least of 5 runs
+   private static long allocated(java.util.function.IntSupplier task) {
+      long least = Long.MAX_VALUE;
+      for (int round=0; round<5; round++) {
+         long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+         task.getAsInt();
+         least = Math.min(least, threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before);
+      }
+      return least;
+   }
+
+   private static long collections(List<GarbageCollectorMXBean> gcs) {
+      long n = 0;
+      for (GarbageCollectorMXBean gc : gcs)
+         n += gc.getCollectionCount();
+      return n;
+   }
+
+   private static TableScan table(String tblname, Transaction tx) {
+      return new TableScan(tx, tblname, db.mdMgr().getLayout(tblname, tx));
+   }
+
+   private static List<String> query(String qry, String fldname) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      Scan s = p.open();
+      List<String> result = new ArrayList<>();
+      while (s.next())
+         result.add(s.getVal(fldname).toString());
+      s.close();
+      tx.commit();
+      return result;
+   }
+}
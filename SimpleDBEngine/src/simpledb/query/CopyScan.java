@@ -0,0 +1,152 @@
+package simpledb.query;
+
+import static java.sql.Types.INTEGER;
+import java.io.*;
+import java.util.*;
+import simpledb.record.Schema;
+
+/**
+ * The scan class for the data file of a <i>copy</i> statement.
+ * Each line of the file is a record, holding the values
+ * of the named fields in order, separated by commas.
+ * A string value may be enclosed in single quotes,
+ * in which case it may contain commas.
+ * Blank lines are skipped.
+ */
+public class CopyScan implements Scan {
+   private String filename;
+   private Schema sch;
+   private List<String> flds;
+   private BufferedReader reader;
+   private List<String> vals;
+   private int linenum;
+
+   /**
+    * Open the specified data file.
+    * @param filename the name of the data file
+    * @param sch the schema of the table being loaded
+    * @param flds the fields of each line, or null for all fields of the schema
+    */
+   public CopyScan(String filename, Schema sch, List<String> flds) {
+      this.filename = filename;
+      this.sch = sch;
+      this.flds = (flds != null) ? flds : sch.fields();
+      beforeFirst();
+   }
+
+   public void beforeFirst() {
+      close();
+      try {
+         reader = new BufferedReader(new FileReader(filename));
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot open data file " + filename);
+      }
+      linenum = 0;
+   }
+
+   public boolean next() {
+      try {
+         String line = reader.readLine();
+         linenum++;
+         while (line != null && line.trim().isEmpty()) {
+            line = reader.readLine();
+            linenum++;
+         }
+         if (line == null)
+            return false;
+         vals = split(line);
+         if (vals.size() != flds.size())
+            throw error("expected " + flds.size() + " values");
+         return true;
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read data file " + filename);
+      }
+   }
+
+   public int getInt(String fldname) {
+      return getInt(indexOf(fldname));
+   }
+
+   public String getString(String fldname) {
+      return getString(indexOf(fldname));
+   }
+
+   public Constant getVal(String fldname) {
+      return getVal(indexOf(fldname));
+   }
+
+   /**
+    * The position of a field is its position in each line.
+    */
+   public int indexOf(String fldname) {
+      return flds.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      try {
+         return Integer.parseInt(vals.get(col));
+      }
+      catch (NumberFormatException e) {
+         throw error("bad integer for " + flds.get(col));
+      }
+   }
+
+   public String getString(int col) {
+      return vals.get(col);
+   }
+
+   public Constant getVal(int col) {
+      if (sch.type(flds.get(col)) == INTEGER)
+         return Constant.of(getInt(col));
+      else
+         return new Constant(getString(col));
+   }
+
+   public boolean hasField(String fldname) {
+      return flds.contains(fldname);
+   }
+
+   public void close() {
+      try {
+         if (reader != null)
+            reader.close();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot close data file " + filename);
+      }
+   }
+
+   /**
+    * Split a line into its values, removing the
+    * surrounding spaces and quotes.
+    */
+   private List<String> split(String line) {
+      List<String> result = new ArrayList<>();
+      int pos = 0;
+      while (true) {
+         while (pos < line.length() && line.charAt(pos) == ' ')
+            pos++;
+         int end;
+         if (pos < line.length() && line.charAt(pos) == '\'') {
+            end = line.indexOf('\'', pos + 1);
+            if (end < 0)
+               throw error("unterminated string");
+            result.add(line.substring(pos + 1, end));
+            end = line.indexOf(',', end);
+         }
+         else {
+            end = line.indexOf(',', pos);
+            result.add(line.substring(pos, (end < 0) ? line.length() : end).trim());
+         }
+         if (end < 0)
+            return result;
+         pos = end + 1;
+      }
+   }
+
+   private RuntimeException error(String msg) {
+      return new RuntimeException(filename + ", line " + linenum + ": " + msg);
+   }
+}
@@ -0,0 +1,112 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.record.*;
+import static simpledb.test.Check.check;
+
+public class FieldPositionTest {
+   private static SimpleDB db;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("fieldpositiontest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table dept(did int, dname varchar(10))", tx);
+      planner.executeUpdate("create table emp(eid int, ename varchar(10), edept int, sal int)", tx);
+      planner.executeUpdate("create table slot(eid int, note varchar(20)) using slotted", tx);
+      planner.executeUpdate("create table pax(eid int, note varchar(20)) using pax", tx);
+      planner.executeUpdate("create index empdept on emp(edept) using btree", tx);
+      for (int i=0; i<10; i++)
+         planner.executeUpdate("insert into dept(did, dname) values(" + i + ", 'dept" + i + "')", tx);
+      for (int i=0; i<300; i++) {
+         planner.executeUpdate("insert into emp(eid, ename, edept, sal) values(" + i + ", 'emp" + i + "', " + (i % 10) + ", " + (i * 37 % 1000) + ")", tx);
+         planner.executeUpdate("insert into slot(eid, note) values(" + i + ", 'note" + i + "')", tx);
+         planner.executeUpdate("insert into pax(eid, note) values(" + i + ", 'note" + i + "')", tx);
+      }
+      tx.commit();
+
+      // each kind of scan reads the same values by position as by name
+      String[] queries = {
+         "select eid, ename, edept, sal from emp",
+         "select eid, note from slot",
+         "select eid, note from pax",
+         "select ename, sal from emp where sal > 500",
+         "select ename, dname from emp, dept where edept = did",
+         "select ename, dname from dept, emp where did = edept and sal < 100",
+         "select dname, ename from emp, dept where edept = did order by dname, ename",
+         "select edept, count(eid), max(sal) from emp group by edept",
+         "select distinct edept from emp",
+      };
+      for (String qry : queries) {
+         tx = db.newTx();
+         Plan p = planner.createQueryPlan(qry, tx);
+         check(samePositionalValues(p), qry);
+         tx.commit();
+      }
+
+      // a product built directly, including a missing field
+      tx = db.newTx();
+      Plan p = new ProductPlan(new TablePlan(tx, "dept", db.mdMgr()), new TablePlan(tx, "slot", db.mdMgr()));
+      check(samePositionalValues(p), "product of two tables");
+      Scan s = p.open();
+      check(s.indexOf("nosuchfield") < 0 && !s.hasField("nosuchfield"), "a missing field has no position");
+      s.close();
+      tx.commit();
+
+      // reading by position avoids the lookups by name
+      tx = db.newTx();
+      p = new ProductPlan(new TablePlan(tx, "dept", db.mdMgr()), new TablePlan(tx, "emp", db.mdMgr()));
+      long sum1 = 0, sum2 = 0;
+      long start = System.nanoTime();
+      for (int k=0; k<5; k++) {
+         s = p.open();
+         while (s.next())
+            sum1 += s.getInt("sal") + s.getInt("did") + s.getString("ename").length();
+         s.close();
+      }
+      long byname = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int k=0; k<5; k++) {
+         s = p.open();
+         int sal = s.indexOf("sal"), did = s.indexOf("did"), ename = s.indexOf("ename");
+         while (s.next())
+            sum2 += s.getInt(sal) + s.getInt(did) + s.getString(ename).length();
+         s.close();
+      }
+      long byposition = System.nanoTime() - start;
+      tx.commit();
+      System.out.println("product reads: by name " + byname / 1000000 + " ms, by position " + byposition / 1000000 + " ms");
+      check(sum1 == sum2, "same sums by name and by position");
+      System.out.println("done");
+   }
+
+   /**
+    * Return true if every record of the plan has the same
+    * values when read by position as when read by name.
+    */
+   private static boolean samePositionalValues(Plan p) {
+      Scan s = p.open();
+      List<String> fields = p.schema().fields();
+      int[] cols = new int[fields.size()];
+      for (int i=0; i<cols.length; i++)
+         cols[i] = s.indexOf(fields.get(i));
+      boolean ok = true;
+      int count = 0;
+      while (s.next()) {
+         count++;
+         for (int i=0; i<cols.length; i++) {
+            String fldname = fields.get(i);
+            ok = ok && cols[i] >= 0 && s.getVal(cols[i]).equals(s.getVal(fldname));
+            if (p.schema().type(fldname) == java.sql.Types.INTEGER)
+               ok = ok && s.getInt(cols[i]) == s.getInt(fldname);
+            else
+               ok = ok && s.getString(cols[i]).equals(s.getString(fldname));
+         }
+      }
+      s.close();
+      return ok && count > 0;
+   }
+}
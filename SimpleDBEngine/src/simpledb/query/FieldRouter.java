@@ -0,0 +1,87 @@
+package simpledb.query;
+
+import java.util.*;
+
+/**
+ * The field positions of a scan whose records combine
+ * the fields of two underlying scans, such as a product or a join.
+ * A field is given a position the first time it is looked up,
+ * and the router remembers which underlying scan has the field
+ * and the field's position there; reading the field by position
+ * then needs no search by name.
+ * When both scans have a field, the first scan's is used.
+ */
+public class FieldRouter {
+   private Scan[] scans;
+   private Map<String,Integer> positions = new HashMap<>();
+   private int[] sides = new int[8];
+   private int[] cols = new int[8];
+
+   /**
+    * Create a router for fields of the two specified scans.
+    * @param s1 the scan looked at first
+    * @param s2 the other scan
+    */
+   public FieldRouter(Scan s1, Scan s2) {
+      scans = new Scan[] {s1, s2};
+   }
+
+   /**
+    * Replace one of the underlying scans by another
+    * having the same fields at the same positions,
+    * as when a scan moves on to a new chunk of a table.
+    * @param side 0 for the first scan, 1 for the other
+    * @param s the new scan
+    */
+   public void setScan(int side, Scan s) {
+      scans[side] = s;
+   }
+
+   /**
+    * Return the position of the specified field.
+    * @param fldname the name of the field
+    * @return the position of the field, or -1 if neither scan has it
+    */
+   public int indexOf(String fldname) {
+      Integer pos = positions.get(fldname);
+      if (pos != null)
+         return pos;
+      int side = 0;
+      int col = scans[0].indexOf(fldname);
+      if (col < 0) {
+         side = 1;
+         col = scans[1].indexOf(fldname);
+         if (col < 0)
+            return -1;
+      }
+      int n = positions.size();
+      if (n == sides.length) {
+         sides = Arrays.copyOf(sides, 2*n);
+         cols = Arrays.copyOf(cols, 2*n);
+      }
+      sides[n] = side;
+      cols[n] = col;
+      positions.put(fldname, n);
+      return n;
+   }
+
+   /**
+    * Return the underlying scan that has the field
+    * at the specified position.
+    * @param pos the position of the field
+    * @return the scan having the field
+    */
+   public Scan scan(int pos) {
+      return scans[sides[pos]];
+   }
+
+   /**
+    * Return the position of the specified field
+    * within its underlying scan.
+    * @param pos the position of the field
+    * @return the field's position in {@link #scan(int)}
+    */
+   public int column(int pos) {
+      return cols[pos];
+   }
+}
@@ -0,0 +1,97 @@
+package simpledb.query;
+
+/**
+ * The scan class corresponding to the <i>limit</i> operator,
+ * which returns at most a given number of the records of its
+ * underlying scan, after skipping a given number of them.
+ * Once it has returned its records, the scan stops reading
+ * the underlying scan, so a pipeline beneath it does
+ * no more work than its first records need.
+ * All methods except next delegate their work to the
+ * underlying scan.
+ */
+public class LimitScan implements Scan {
+   private Scan s;
+   private int limit, offset;
+   private int count = 0;
+   private boolean skipped = false;
+
+   /**
+    * Create a limit scan having the specified underlying scan.
+    * @param s the underlying scan
+    * @param limit the largest number of records returned
+    * @param offset the number of records skipped first
+    */
+   public LimitScan(Scan s, int limit, int offset) {
+      this.s = s;
+      this.limit = limit;
+      this.offset = offset;
+   }
+
+   public void beforeFirst() {
+      s.beforeFirst();
+      count = 0;
+      skipped = false;
+   }
+
+   /**
+    * Move to the next record of the underlying scan,
+    * unless the limit has been reached.
+    * The records to be skipped are read by the first call.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      if (count >= limit)
+         return false;
+      if (!skipped) {
+         skipped = true;
+         for (int i=0; i<offset; i++)
+            if (!s.next()) {
+               count = limit;
+               return false;
+            }
+      }
+      if (!s.next()) {
+         count = limit;
+         return false;
+      }
+      count++;
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return s.getInt(fldname);
+   }
+
+   public String getString(String fldname) {
+      return s.getString(fldname);
+   }
+
+   public Constant getVal(String fldname) {
+      return s.getVal(fldname);
+   }
+
+   public int indexOf(String fldname) {
+      return s.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return s.getInt(col);
+   }
+
+   public String getString(int col) {
+      return s.getString(col);
+   }
+
+   public Constant getVal(int col) {
+      return s.getVal(col);
+   }
+
+   public boolean hasField(String fldname) {
+      return s.hasField(fldname);
+   }
+
+   public void close() {
+      s.close();
+   }
+}
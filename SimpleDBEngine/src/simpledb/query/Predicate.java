@@ -51,6 +51,31 @@ public class Predicate {
       return true;
    }
 
+   /**
+    * Remove from the selection of the specified batch
+    * the records that do not satisfy the predicate,
+    * applying each term in turn to the records that remain.
+    * @param b the batch
+    */
+   public void select(Batch b) {
+      for (Term t : terms) {
+         if (b.size() == 0)
+            return;
+         t.select(b);
+      }
+   }
+
+   /**
+    * Return the names of the fields that the predicate mentions.
+    * @return the names of the fields
+    */
+   public Set<String> fields() {
+      Set<String> result = new HashSet<>();
+      for (Term t : terms)
+         result.addAll(t.fields());
+      return result;
+   }
+
    /** 
     * Calculate the extent to which selecting on the predicate 
     * reduces the number of records output by a query.
@@ -174,6 +199,39 @@ public class Predicate {
       return null;
    }
 
+   /**
+    * Return the smallest and largest values of the specified
+    * integer field that can satisfy the predicate,
+    * judging by the terms that compare the field with a constant.
+    * The range is empty (the smallest value is larger than the largest)
+    * if the terms contradict each other.
+    * @param fldname the name of the field
+    * @return the smallest and largest value, or the whole range of integers
+    */
+   public int[] intRange(String fldname) {
+      int[] range = {Integer.MIN_VALUE, Integer.MAX_VALUE};
+      for (Term t : terms)
+         t.narrowRange(fldname, range);
+      return range;
+   }
+
+   /**
+    * Return the constants that the specified field must equal,
+    * from the terms of the form "F=c" (or "c=F").
+    * Terms comparing the field by another operator are ignored.
+    * @param fldname the name of the field
+    * @return the constants, which may be none
+    */
+   public List<Constant> equalsConstants(String fldname) {
+      List<Constant> result = new ArrayList<>();
+      for (Term t : terms) {
+         Constant c = t.equatesWithConstant(fldname);
+         if (c != null && t.operator().equals("="))
+            result.add(c);
+      }
+      return result;
+   }
+
    /**
     * Convert the predicate to string form.
     * @return predicate in string form
@@ -7,6 +7,7 @@ package simpledb.query;
  */
 public class ProductScan implements Scan {
    private Scan s1, s2;
+   private FieldRouter router;
 
    /**
     * Create a product scan having the two underlying scans.
@@ -16,6 +17,7 @@ public class ProductScan implements Scan {
    public ProductScan(Scan s1, Scan s2) {
       this.s1 = s1;
       this.s2 = s2;
+      router = new FieldRouter(s1, s2);
       beforeFirst();
    }
 
@@ -56,10 +58,7 @@ public class ProductScan implements Scan {
     * @see simpledb.query.Scan#getInt(java.lang.String)
     */
    public int getInt(String fldname) {
-      if (s1.hasField(fldname))
-         return s1.getInt(fldname);
-      else
-         return s2.getInt(fldname);
+      return getInt(indexOf(fldname));
    }
 
    /** 
@@ -69,10 +68,7 @@ public class ProductScan implements Scan {
     * @see simpledb.query.Scan#getString(java.lang.String)
     */
    public String getString(String fldname) {
-      if (s1.hasField(fldname))
-         return s1.getString(fldname);
-      else
-         return s2.getString(fldname);
+      return getString(indexOf(fldname));
    }
 
    /** 
@@ -82,10 +78,28 @@ public class ProductScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
-      if (s1.hasField(fldname))
-         return s1.getVal(fldname);
-      else
-         return s2.getVal(fldname);
+      return getVal(indexOf(fldname));
+   }
+
+   /**
+    * Return the position of the specified field,
+    * which also says which scan contains it.
+    * @see simpledb.query.Scan#indexOf(java.lang.String)
+    */
+   public int indexOf(String fldname) {
+      return router.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return router.scan(col).getInt(router.column(col));
+   }
+
+   public String getString(int col) {
+      return router.scan(col).getString(router.column(col));
+   }
+
+   public Constant getVal(int col) {
+      return router.scan(col).getVal(router.column(col));
    }
 
    /**
@@ -94,7 +108,7 @@ public class ProductScan implements Scan {
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
    public boolean hasField(String fldname) {
-      return s1.hasField(fldname) || s2.hasField(fldname);
+      return indexOf(fldname) >= 0;
    }
 
    /**
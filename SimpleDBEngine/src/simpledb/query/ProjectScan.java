@@ -1,17 +1,23 @@
 package simpledb.query;
 
-import java.util.List;
+import java.util.*;
 
 /**
  * The scan class corresponding to the <i>project</i> relational
  * algebra operator.
  * All methods except hasField delegate their work to the
  * underlying scan.
+ * The positions of the projected fields in the underlying
+ * scan are looked up once, when the scan is created.
+ * If the underlying scan can produce batches, the scan
+ * reads its records from them, a batch at a time.
  * @author Edward Sciore
  */
-public class ProjectScan implements Scan {
+public class ProjectScan implements BatchScan {
    private Scan s;
+   private BatchScan batches;
    private List<String> fieldlist;
+   private int[] cols;
    
    /**
     * Create a project scan having the specified
@@ -20,8 +26,31 @@ public class ProjectScan implements Scan {
     * @param fieldlist the list of field names
     */
    public ProjectScan(Scan s, List<String> fieldlist) {
-      this.s = s;
       this.fieldlist = fieldlist;
+      if (s instanceof BatchScan && ((BatchScan) s).producesBatches()) {
+         batches = (BatchScan) s;
+         s = new BatchRowScan(batches, fieldlist);
+      }
+      this.s = s;
+      cols = new int[fieldlist.size()];
+      for (int i=0; i<cols.length; i++)
+         cols[i] = s.indexOf(fieldlist.get(i));
+   }
+   
+   /**
+    * Read the underlying scan a record at a time,
+    * even if it can produce batches.
+    * A reader that needs only the first few records
+    * calls this method before the first,
+    * since reading a batch may read many more records.
+    */
+   public void readRecords() {
+      if (batches == null)
+         return;
+      s = batches;
+      batches = null;
+      for (int i=0; i<cols.length; i++)
+         cols[i] = s.indexOf(fieldlist.get(i));
    }
    
    public void beforeFirst() {
@@ -33,24 +62,34 @@ public class ProjectScan implements Scan {
    }
    
    public int getInt(String fldname) {
-      if (hasField(fldname))
-         return s.getInt(fldname);
-      else
-         throw new RuntimeException("field " + fldname + " not found.");
+      return getInt(position(fldname));
    }
    
    public String getString(String fldname) {
-      if (hasField(fldname))
-         return s.getString(fldname);
-      else
-         throw new RuntimeException("field " + fldname + " not found.");
+      return getString(position(fldname));
    }
    
    public Constant getVal(String fldname) {
-      if (hasField(fldname))
-         return s.getVal(fldname);
-      else
-         throw new RuntimeException("field " + fldname + " not found.");
+      return getVal(position(fldname));
+   }
+
+   /**
+    * The position of a field is its position in the field list.
+    */
+   public int indexOf(String fldname) {
+      return fieldlist.indexOf(fldname);
+   }
+   
+   public int getInt(int col) {
+      return s.getInt(cols[col]);
+   }
+   
+   public String getString(int col) {
+      return s.getString(cols[col]);
+   }
+   
+   public Constant getVal(int col) {
+      return s.getVal(cols[col]);
    }
 
    public boolean hasField(String fldname) {
@@ -60,4 +99,29 @@ public class ProjectScan implements Scan {
    public void close() {
       s.close();
    }
+   
+   public boolean producesBatches() {
+      return batches != null;
+   }
+
+   public void useFields(Collection<String> fldnames) {
+      batches.useFields(fldnames);
+   }
+
+   /**
+    * Return the projection of the next batch
+    * of the underlying scan, which shares its vectors.
+    * @see simpledb.query.BatchScan#nextBatch()
+    */
+   public Batch nextBatch() {
+      Batch b = batches.nextBatch();
+      return (b == null) ? null : b.project(fieldlist);
+   }
+   
+   private int position(String fldname) {
+      int col = indexOf(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
 }
@@ -0,0 +1,132 @@
+package simpledb.query;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.record.Schema;
+
+/**
+ * An adapter that produces the records of a scan
+ * that reads a record at a time in batches,
+ * by copying the values of each record into the batch.
+ * All other methods delegate their work to the underlying scan.
+ */
+public class RowBatchScan implements BatchScan {
+   private Scan s;
+   private Batch batch;
+   private int[] cols, types;
+   private boolean[] wanted;
+   private boolean done = false;
+
+   /**
+    * Return a scan producing the records of the specified scan
+    * in batches: the scan itself if it can, and otherwise an adapter.
+    * @param s the scan
+    * @param sch the schema of the scan's records
+    * @return a scan producing batches
+    */
+   public static BatchScan of(Scan s, Schema sch) {
+      if (s instanceof BatchScan && ((BatchScan) s).producesBatches())
+         return (BatchScan) s;
+      return new RowBatchScan(s, sch);
+   }
+
+   /**
+    * Create an adapter for the specified scan.
+    * @param s the scan
+    * @param sch the schema of the scan's records
+    */
+   public RowBatchScan(Scan s, Schema sch) {
+      this.s = s;
+      List<String> fields = sch.fields();
+      cols = new int[fields.size()];
+      types = new int[fields.size()];
+      wanted = new boolean[fields.size()];
+      for (int i=0; i<cols.length; i++) {
+         cols[i] = s.indexOf(fields.get(i));
+         types[i] = sch.type(fields.get(i));
+         wanted[i] = true;
+      }
+      batch = new Batch(fields, types);
+   }
+
+   // Methods that implement BatchScan
+
+   public boolean producesBatches() {
+      return true;
+   }
+
+   public void useFields(Collection<String> fldnames) {
+      for (int i=0; i<wanted.length; i++)
+         wanted[i] = fldnames.contains(batch.fields().get(i));
+   }
+
+   public Batch nextBatch() {
+      int n = 0;
+      while (n < Batch.SIZE && !done) {
+         if (!s.next()) {
+            done = true;
+            break;
+         }
+         for (int i=0; i<cols.length; i++) {
+            if (!wanted[i])
+               continue;
+            if (types[i] == INTEGER)
+               batch.ints(i)[n] = s.getInt(cols[i]);
+            else
+               batch.strings(i)[n] = s.getString(cols[i]);
+         }
+         n++;
+      }
+      if (n == 0)
+         return null;
+      batch.fill(n);
+      return batch;
+   }
+
+   // Methods that implement Scan
+
+   public void beforeFirst() {
+      done = false;
+      s.beforeFirst();
+   }
+
+   public boolean next() {
+      return s.next();
+   }
+
+   public int getInt(String fldname) {
+      return s.getInt(fldname);
+   }
+
+   public String getString(String fldname) {
+      return s.getString(fldname);
+   }
+
+   public Constant getVal(String fldname) {
+      return s.getVal(fldname);
+   }
+
+   public int indexOf(String fldname) {
+      return s.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return s.getInt(col);
+   }
+
+   public String getString(int col) {
+      return s.getString(col);
+   }
+
+   public Constant getVal(int col) {
+      return s.getVal(col);
+   }
+
+   public boolean hasField(String fldname) {
+      return s.hasField(fldname);
+   }
+
+   public void close() {
+      s.close();
+   }
+}
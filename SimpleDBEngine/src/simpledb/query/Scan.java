@@ -4,6 +4,13 @@ package simpledb.query;
  * The interface will be implemented by each query scan.
  * There is a Scan class for each relational
  * algebra operator.
+ * <p>
+ * A field can be read either by name, or by its position in
+ * the scan, as returned by {@link #indexOf(String)}.
+ * A caller that reads a field of many records should look up
+ * its position once, when the scan is opened, and then read
+ * by position, which avoids looking the field up by name
+ * for every value.
  * @author Edward Sciore
  */
 public interface Scan {
@@ -44,6 +51,39 @@ public interface Scan {
     */
    public Constant getVal(String fldname);
    
+   /**
+    * Return the position of the specified field in the scan,
+    * for use with the methods that read a field by position.
+    * The position stays valid until the scan is closed.
+    * @param fldname the name of the field
+    * @return the position of the field, or -1 if the scan does not have it
+    */
+   public int indexOf(String fldname);
+   
+   /**
+    * Return the value of the integer field
+    * at the specified position in the current record.
+    * @param col the position of the field
+    * @return the field's integer value in the current record
+    */
+   public int getInt(int col);
+   
+   /**
+    * Return the value of the string field
+    * at the specified position in the current record.
+    * @param col the position of the field
+    * @return the field's string value in the current record
+    */
+   public String getString(int col);
+   
+   /**
+    * Return the value of the field at the specified
+    * position in the current record, expressed as a Constant.
+    * @param col the position of the field
+    * @return the value of that field, expressed as a Constant
+    */
+   public Constant getVal(int col);
+   
    /**
     * Return true if the scan has the specified field.
     * @param fldname the name of the field
@@ -1,5 +1,7 @@
 package simpledb.query;
 
+import java.util.*;
+import java.util.function.BooleanSupplier;
 import simpledb.record.*;
 
 /**
@@ -7,11 +9,16 @@ import simpledb.record.*;
  * algebra operator.
  * All methods except next delegate their work to the
  * underlying scan.
+ * A batch of the underlying scan is selected by
+ * shortening its selection vector.
+ * Given a compiled predicate, the scan tests each record
+ * with the predicate bound to the underlying scan.
  * @author Edward Sciore
  */
-public class SelectScan implements UpdateScan {
+public class SelectScan implements UpdateScan, BatchScan {
 	private Scan s;
 	private Predicate pred;
+	private BooleanSupplier test;
 
 	/**
 	 * Create a select scan having the specified underlying
@@ -22,6 +29,21 @@ public class SelectScan implements UpdateScan {
 	public SelectScan(Scan s, Predicate pred) {
 		this.s = s;
 		this.pred = pred;
+		test = () -> pred.isSatisfied(s);
+	}
+
+	/**
+	 * Create a select scan having the specified underlying
+	 * scan and predicate, which is also given compiled
+	 * for the underlying scan's records.
+	 * @param s the scan of the underlying query
+	 * @param pred the selection predicate
+	 * @param compiled the predicate, compiled
+	 */
+	public SelectScan(Scan s, Predicate pred, CompiledPredicate compiled) {
+		this.s = s;
+		this.pred = pred;
+		test = compiled.bind(s);
 	}
 
 	// Scan methods
@@ -32,7 +54,7 @@ public class SelectScan implements UpdateScan {
 
 	public boolean next() {
 		while (s.next()) {
-			if (pred.isSatisfied(s))
+			if (test.getAsBoolean())
 				return true;
 		}
 		return false;
@@ -50,6 +72,22 @@ public class SelectScan implements UpdateScan {
       return s.getVal(fldname);
    }
 
+	public int indexOf(String fldname) {
+		return s.indexOf(fldname);
+	}
+
+	public int getInt(int col) {
+		return s.getInt(col);
+	}
+
+	public String getString(int col) {
+		return s.getString(col);
+	}
+
+	public Constant getVal(int col) {
+		return s.getVal(col);
+	}
+
 	public boolean hasField(String fldname) {
 		return s.hasField(fldname);
 	}
@@ -58,6 +96,39 @@ public class SelectScan implements UpdateScan {
       s.close();
    }
 
+	// BatchScan methods
+
+	public boolean producesBatches() {
+		return s instanceof BatchScan && ((BatchScan) s).producesBatches();
+	}
+
+	/**
+	 * The underlying scan also reads the fields of the predicate.
+	 * @see simpledb.query.BatchScan#useFields(java.util.Collection)
+	 */
+	public void useFields(Collection<String> fldnames) {
+		Set<String> fields = new HashSet<>(fldnames);
+		fields.addAll(pred.fields());
+		((BatchScan) s).useFields(fields);
+	}
+
+	/**
+	 * Return the next batch of the underlying scan
+	 * having a record that satisfies the predicate,
+	 * with the other records removed.
+	 * @see simpledb.query.BatchScan#nextBatch()
+	 */
+	public Batch nextBatch() {
+		Batch b = ((BatchScan) s).nextBatch();
+		while (b != null) {
+			pred.select(b);
+			if (b.size() > 0)
+				return b;
+			b = ((BatchScan) s).nextBatch();
+		}
+		return null;
+	}
+
 	// UpdateScan methods
 
 	public void setInt(String fldname, int val) {
@@ -1,5 +1,8 @@
 package simpledb.query;
 
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import java.util.function.*;
 import simpledb.plan.Plan;
 import simpledb.record.*;
 
@@ -9,8 +12,10 @@ import simpledb.record.*;
  *
  */
 public class Term {
+   private static final int EQ = 0, LT = 1, LE = 2, GT = 3, GE = 4, NE = 5, NONE = -1;
    private Expression lhs, rhs;
    private String opr;
+   private int op;  // the operator, decoded once
    
    /**
     * Create a new term that compares two expressions
@@ -23,6 +28,7 @@ public class Term {
       this.lhs = lhs;
       this.rhs = rhs;
       this.opr = opr;
+      op = decode(opr);
    }
    
    /**
@@ -33,28 +39,124 @@ public class Term {
     * @return true if both expressions have the corresponding value in the scan
     */
    public boolean isSatisfied(Scan s) { 
-
       Constant lhsval = lhs.evaluate(s);
       Constant rhsval = rhs.evaluate(s);
-      switch(this.opr) {
-      case "=":
-    	  return lhsval.compareTo(rhsval) == 0;
-      case "<":
-    	  return lhsval.compareTo(rhsval) < 0;
-      case "<=":
-    	  return lhsval.compareTo(rhsval) < 0 || lhsval.compareTo(rhsval) == 0;
-      case ">":
-    	  return lhsval.compareTo(rhsval) > 0;
-      case ">=":
-    	  return lhsval.compareTo(rhsval) > 0 || lhsval.compareTo(rhsval) == 0;
-      case "!=":
-    	  return lhsval.compareTo(rhsval) != 0;
-      case "<>":
-    	  return lhsval.compareTo(rhsval) != 0;
-	  default:
-		  return false;  
-    	  
+      return holds(op, lhsval.compareTo(rhsval));
+   }
+   
+   /**
+    * Remove from the selection of the specified batch
+    * the records that do not satisfy the term.
+    * A term comparing integer fields with each other or
+    * with a constant is evaluated on the field vectors directly;
+    * other terms compare the values of each record as constants.
+    * @param b the batch
+    */
+   public void select(Batch b) {
+      int lcol = column(lhs, b);
+      int rcol = column(rhs, b);
+      int[] sel = b.selection();
+      int n = b.size(), kept = 0;
+      int[] lvals = (lcol >= 0 && b.type(lcol) == INTEGER) ? b.ints(lcol) : null;
+      int[] rvals = (rcol >= 0 && b.type(rcol) == INTEGER) ? b.ints(rcol) : null;
+      if ((lvals != null || rvals != null) && (lvals != null || lcol < 0) && (rvals != null || rcol < 0)) {
+         int lconst = (lvals == null) ? lhs.asConstant().asInt() : 0;
+         int rconst = (rvals == null) ? rhs.asConstant().asInt() : 0;
+         for (int i=0; i<n; i++) {
+            int row = sel[i];
+            int lval = (lvals == null) ? lconst : lvals[row];
+            int rval = (rvals == null) ? rconst : rvals[row];
+            if (holds(op, Integer.compare(lval, rval)))
+               sel[kept++] = row;
+         }
+      }
+      else {
+         for (int i=0; i<n; i++) {
+            int row = sel[i];
+            Constant lhsval = (lcol < 0) ? lhs.asConstant() : b.getVal(lcol, row);
+            Constant rhsval = (rcol < 0) ? rhs.asConstant() : b.getVal(rcol, row);
+            if (holds(op, lhsval.compareTo(rhsval)))
+               sel[kept++] = row;
+         }
+      }
+      b.select(kept);
+   }
+   
+   /**
+    * Compile the term for the records of the specified schema.
+    * The result binds the term to a scan having those records,
+    * returning a test of the scan's current record that reads
+    * the compared fields by position, as primitive ints where
+    * they are integers, and applies the operator chosen here.
+    * A constant on the left is moved to the right by reversing
+    * the operator.
+    * A term whose fields are not in the schema, or that compares
+    * values of different types, is tested as by {@link #isSatisfied(Scan)}.
+    * @param sch the schema of the records to be tested
+    * @return a function binding the term to a scan
+    */
+   public Function<Scan,BooleanSupplier> compile(Schema sch) {
+      Expression l = lhs, r = rhs;
+      int cop = op;
+      if (!l.isFieldName() && r.isFieldName()) {
+         l = rhs;
+         r = lhs;
+         cop = reverse(op);
+      }
+      int testop = cop;
+      if (!l.isFieldName()) {
+         // a comparison of constants is the same for every record
+         if (isIntConstant(lhs.asConstant()) != isIntConstant(rhs.asConstant()))
+            return s -> () -> isSatisfied(s);
+         boolean result = holds(testop, lhs.asConstant().compareTo(rhs.asConstant()));
+         return s -> () -> result;
+      }
+      String lfld = l.asFieldName();
+      if (!sch.hasField(lfld) || r.isFieldName() && !sch.hasField(r.asFieldName()))
+         return s -> () -> isSatisfied(s);
+      boolean lint = (sch.type(lfld) == INTEGER);
+      if (r.isFieldName()) {
+         String rfld = r.asFieldName();
+         if (lint != (sch.type(rfld) == INTEGER))
+            return s -> () -> isSatisfied(s);
+         if (lint)
+            return s -> {
+               int c1 = s.indexOf(lfld), c2 = s.indexOf(rfld);
+               return () -> holds(testop, Integer.compare(s.getInt(c1), s.getInt(c2)));
+            };
+         return s -> {
+            int c1 = s.indexOf(lfld), c2 = s.indexOf(rfld);
+            return () -> holds(testop, s.getString(c1).compareTo(s.getString(c2)));
+         };
       }
+      Constant c = r.asConstant();
+      if (lint != isIntConstant(c))
+         return s -> () -> isSatisfied(s);
+      if (lint)
+         return s -> intTest(s, s.indexOf(lfld), testop, c.asInt());
+      String k = c.asString();
+      if (testop == EQ)
+         return s -> {
+            int col = s.indexOf(lfld);
+            return () -> s.getString(col).equals(k);
+         };
+      return s -> {
+         int col = s.indexOf(lfld);
+         return () -> holds(testop, s.getString(col).compareTo(k));
+      };
+   }
+   
+   /**
+    * Return the names of the fields that the term compares.
+    * @return the names of the fields
+    */
+   public List<String> fields() {
+      List<String> result = new ArrayList<>();
+      if (lhs.isFieldName())
+         result.add(lhs.asFieldName());
+      if (rhs.isFieldName())
+         result.add(rhs.asFieldName());
+      return result;
    }
    
    /**
@@ -130,6 +232,49 @@ public class Term {
          return null;
    }
    
+   /**
+    * Narrow the specified range of integer values to those
+    * that can satisfy this term, if the term compares
+    * the specified integer field with a constant.
+    * Other terms leave the range alone.
+    * @param fldname the name of the field
+    * @param range the smallest and largest value, narrowed in place
+    */
+   public void narrowRange(String fldname, int[] range) {
+      Constant c = equatesWithConstant(fldname);
+      if (c == null || !c.isInt())
+         return;
+      int val = c.asInt();
+      String op = opr;
+      if (!lhs.isFieldName() && !op.equals("<>")) {
+         // the constant is on the left, as in "5 < F"
+         if (op.startsWith("<"))
+            op = op.replace('<', '>');
+         else if (op.startsWith(">"))
+            op = op.replace('>', '<');
+      }
+      switch (op) {
+      case "=":
+         range[0] = Math.max(range[0], val);
+         range[1] = Math.min(range[1], val);
+         break;
+      case "<":
+         range[1] = Math.min(range[1], val == Integer.MIN_VALUE ? val : val - 1);
+         break;
+      case "<=":
+         range[1] = Math.min(range[1], val);
+         break;
+      case ">":
+         range[0] = Math.max(range[0], val == Integer.MAX_VALUE ? val : val + 1);
+         break;
+      case ">=":
+         range[0] = Math.max(range[0], val);
+         break;
+      default:
+         break;
+      }
+   }
+   
    /**
     * Return true if both of the term's expressions
     * apply to the specified schema.
@@ -184,4 +329,110 @@ public class Term {
 	   return false;
    }
    
+   /**
+    * Return true if the specified operator holds between
+    * two values, given the result of comparing them.
+    */
+   private static boolean holds(int op, int cmp) {
+      switch (op) {
+      case EQ:
+         return cmp == 0;
+      case LT:
+         return cmp < 0;
+      case LE:
+         return cmp <= 0;
+      case GT:
+         return cmp > 0;
+      case GE:
+         return cmp >= 0;
+      case NE:
+         return cmp != 0;
+      default:
+         return false;
+      }
+   }
+   
+   private static int decode(String opr) {
+      switch (opr) {
+      case "=":
+         return EQ;
+      case "<":
+         return LT;
+      case "<=":
+         return LE;
+      case ">":
+         return GT;
+      case ">=":
+         return GE;
+      case "!=":
+      case "<>":
+         return NE;
+      default:
+         return NONE;
+      }
+   }
+   
+   /**
+    * Return the operator that holds between two values
+    * when the specified one holds between them in reverse order.
+    */
+   private static int reverse(int op) {
+      switch (op) {
+      case LT:
+         return GT;
+      case LE:
+         return GE;
+      case GT:
+         return LT;
+      case GE:
+         return LE;
+      default:
+         return op;
+      }
+   }
+   
+   /**
+    * Return a test comparing the integer field at the specified
+    * position of a scan with a constant, a lambda for each
+    * operator so that the test itself makes no choice.
+    */
+   private static BooleanSupplier intTest(Scan s, int col, int op, int k) {
+      switch (op) {
+      case EQ:
+         return () -> s.getInt(col) == k;
+      case LT:
+         return () -> s.getInt(col) < k;
+      case LE:
+         return () -> s.getInt(col) <= k;
+      case GT:
+         return () -> s.getInt(col) > k;
+      case GE:
+         return () -> s.getInt(col) >= k;
+      case NE:
+         return () -> s.getInt(col) != k;
+      default:
+         return () -> false;
+      }
+   }
+   
+   /**
+    * Return true if the constant is an integer:
+    * a constant holds either an integer or a string.
+    */
+   private static boolean isIntConstant(Constant c) {
+      return c.asString() == null;
+   }
+   
+   /**
+    * Return the position in the batch of the field that
+    * the specified expression names, or -1 for a constant.
+    */
+   private int column(Expression e, Batch b) {
+      if (!e.isFieldName())
+         return -1;
+      int col = b.indexOf(e.asFieldName());
+      if (col < 0)
+         throw new RuntimeException("field " + e.asFieldName() + " not found.");
+      return col;
+   }
 }
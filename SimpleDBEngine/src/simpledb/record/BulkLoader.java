@@ -0,0 +1,140 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.file.*;
+import simpledb.query.Constant;
+import simpledb.tx.Transaction;
+
+/**
+ * Loads records into a table a page at a time.
+ * Records are added to an in-memory image of a newly-appended
+ * block, and the image is written to the block once it is full.
+ * Only the block is logged, not its records
+ * (see {@link Transaction#loadBlock(BlockId, Page)}),
+ * so a load writes a small fraction of the log that
+ * inserting the same records would.
+ * The loader locks the table exclusively, since an
+ * uncommitted load is undone by emptying its blocks.
+ * The zones of the loaded blocks are widened as each record is added,
+ * and the values of encoded fields are replaced by their codes.
+ * The long string values are written to the overflow file
+ * by the usual, logged, means.
+ * A partitioned table is loaded by a loader for each partition,
+ * each record going to the partition its values select.
+ */
+public class BulkLoader {
+   private Transaction tx;
+   private Layout layout;
+   private String filename;
+   private FreeSpaceMap freespace;
+   private ZoneMap zones;
+   private StringDictionary dict;
+   private OverflowFile overflow;
+   private int[] zonecols;
+   private RecordBlock rp;
+   private Page image;
+   private int currentslot;
+   private Partitioning part;
+   private String tblname;
+   private Map<Integer,BulkLoader> loaders = new HashMap<>();
+
+   public BulkLoader(Transaction tx, String tblname, Layout layout) {
+      this(tx, tblname, layout, null);
+   }
+
+   /**
+    * Create a loader for the specified table,
+    * which is partitioned if the partitioning is not null.
+    * @param tx the transaction
+    * @param tblname the name of the table
+    * @param layout the table's layout
+    * @param part the table's partitioning, or null
+    */
+   public BulkLoader(Transaction tx, String tblname, Layout layout, Partitioning part) {
+      this.tx = tx;
+      this.tblname = tblname;
+      this.part = part;
+      if (part != null) {
+         this.layout = layout;
+         return;
+      }
+      this.layout = layout;
+      filename = tblname + ".tbl";
+      freespace = tx.freeSpaceMap(filename);
+      tx.xLockTable(filename);
+      zones = tx.zoneMap(filename);
+      zonecols = zones.columns();
+      if (layout.hasEncodedFields())
+         dict = tx.dictionary(filename);
+      if (layout.hasLongFields())
+         overflow = new OverflowFile(tx, tblname);
+   }
+
+   /**
+    * Add a record having the specified values to the table,
+    * and return its RID.
+    * Fields without a value are zero or empty.
+    * @param vals the values of the record's fields
+    * @return the RID of the new record
+    */
+   public RID insert(Map<String,Constant> vals) {
+      if (part != null)
+         return partitionLoader(vals).insert(vals);
+      vals = TableScan.storedValues(layout, dict, overflow, vals);
+      if (rp != null)
+         currentslot = rp.loadAfter(image, currentslot, vals);
+      if (rp == null || currentslot < 0) {
+         if (rp != null)
+            freespace.setFull(rp.block().number(), true);
+         writeBlock();
+         rp = RecordBlock.open(tx, tx.append(filename), layout);
+         image = new Page(tx.blockSize());
+         currentslot = rp.loadAfter(image, -1, vals);
+         if (currentslot < 0)
+            throw new RuntimeException("record too large for a page of " + filename);
+      }
+      for (int col : zonecols) {
+         Constant val = vals.get(layout.schema().fields().get(col));
+         zones.widen(rp.block().number(), col, (val == null) ? 0 : val.asInt());
+      }
+      return new RID(rp.block().number(), currentslot);
+   }
+
+   /**
+    * Write the last, partly-filled, block of the load.
+    */
+   public void close() {
+      if (part != null)
+         for (BulkLoader loader : loaders.values())
+            loader.close();
+      else
+         writeBlock();
+   }
+
+   /**
+    * Return the loader of the partition that
+    * the specified values select.
+    */
+   private BulkLoader partitionLoader(Map<String,Constant> vals) {
+      String fldname = part.fieldName();
+      Constant key = vals.get(fldname);
+      if (key == null)
+         key = (layout.schema().type(fldname) == INTEGER) ? new Constant(0) : new Constant("");
+      int p = part.partitionOf(key);
+      BulkLoader loader = loaders.get(p);
+      if (loader == null) {
+         loader = new BulkLoader(tx, Partitioning.partitionName(tblname, p), layout);
+         loaders.put(p, loader);
+      }
+      return loader;
+   }
+
+   private void writeBlock() {
+      if (rp != null) {
+         tx.loadBlock(rp.block(), image);
+         rp.close();
+         rp = null;
+      }
+   }
+}
@@ -0,0 +1,92 @@
+package simpledb.record;
+
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+import simpledb.file.StringDictionary;
+import simpledb.query.*;
+
+/**
+ * Decides which records of a table a scan for a predicate
+ * must return, by comparing the codes of its encoded fields.
+ * A term "F = c" on an encoded field F is satisfied
+ * exactly by the records holding the code of c,
+ * so a record is rejected without decoding its strings.
+ * A value not in the dictionary has no code, and
+ * no record can hold it.
+ */
+class CodeFilter {
+   private StringDictionary dict;
+   private int[] cols, codes;
+   private String[] vals;
+
+   /**
+    * Create a filter for the specified predicate,
+    * or return null if the predicate does not equate
+    * any encoded field with a constant.
+    * @param dict the table's dictionary
+    * @param sch the table's schema
+    * @param pred the predicate selecting the records
+    * @return the filter, or null
+    */
+   static CodeFilter create(StringDictionary dict, Schema sch, Predicate pred) {
+      List<String> fields = sch.fields();
+      List<Integer> cols = new ArrayList<>();
+      List<String> vals = new ArrayList<>();
+      for (int col=0; col<fields.size(); col++) {
+         String fldname = fields.get(col);
+         if (!sch.isEncoded(fldname))
+            continue;
+         for (Constant c : pred.equalsConstants(fldname))
+            if (c.asString() != null) {
+               cols.add(col);
+               vals.add(c.asString());
+            }
+      }
+      return cols.isEmpty() ? null : new CodeFilter(dict, cols, vals);
+   }
+
+   private CodeFilter(StringDictionary dict, List<Integer> cols, List<String> vals) {
+      this.dict = dict;
+      int n = cols.size();
+      this.cols = new int[n];
+      this.vals = vals.toArray(new String[n]);
+      codes = new int[n];
+      for (int i=0; i<n; i++)
+         this.cols[i] = cols.get(i);
+      Arrays.fill(codes, -1);
+      refresh();
+   }
+
+   /**
+    * Look up the codes of the values that had none,
+    * since a value may have been added since.
+    */
+   void refresh() {
+      for (int i=0; i<codes.length; i++)
+         if (codes[i] < 0)
+            codes[i] = dict.lookup(cols[i], vals[i]);
+   }
+
+   /**
+    * Return true if no record can satisfy the predicate,
+    * because some value sought has no code.
+    */
+   boolean excludesAll() {
+      for (int code : codes)
+         if (code < 0)
+            return true;
+      return false;
+   }
+
+   /**
+    * Return true if the record whose codes are given
+    * holds every value sought.
+    * @param codeOf the code of the record's field at each schema position
+    */
+   boolean matches(IntUnaryOperator codeOf) {
+      for (int i=0; i<cols.length; i++)
+         if (codeOf.applyAsInt(cols[i]) != codes[i])
+            return false;
+      return true;
+   }
+}
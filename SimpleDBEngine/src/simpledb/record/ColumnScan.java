@@ -0,0 +1,229 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.file.*;
+import simpledb.query.*;
+import simpledb.tx.*;
+
+/**
+ * A read-only scan of a table in the PAX format
+ * that reads only the fields that are asked for.
+ * When the scan moves to a block, it copies out the
+ * block's occupancy bitmap; the minipage of a field is
+ * copied out the first time the field is read in that block.
+ * Each record's values are then read from those copies,
+ * so a query over a few fields of a wide table
+ * touches only their part of each page.
+ * Like a sequential table scan, the scan locks
+ * the whole table in shared mode, can skip the blocks
+ * that the table's zone map excludes, compares
+ * encoded fields by their codes, and tests the terms comparing
+ * its other fields with constants against the minipages.
+ */
+public class ColumnScan implements Scan {
+   private Transaction tx;
+   private Layout layout;
+   private String filename;
+   private int slotcount, headersize;
+   private BlockId blk;
+   private BlockHandle handle;
+   private Page bitmap;
+   private Page[] minipages;
+   private int[] offsets, sizes, types;
+   private int currentslot = -1;
+   private boolean tableLocked = false;
+   private ZoneFilter filter;
+   private StringDictionary dict;
+   private CodeFilter codefilter;
+   private RecordFilter recfilter;
+   private RecordFilter.Slots slots = new RecordFilter.Slots() {
+      public int getInt(int slot, int col) {
+         return minipage(col).getInt(slot * sizes[col]);
+      }
+
+      public boolean hasString(int slot, int col, byte[] val) {
+         return minipage(col).hasString(slot * sizes[col], val);
+      }
+   };
+   private boolean[] encoded, overflows;
+   private OverflowFile overflow;
+
+   public ColumnScan(Transaction tx, String tblname, Layout layout) {
+      this.tx = tx;
+      this.layout = layout;
+      filename = tblname + ".tbl";
+      slotcount = RecordPage.slotCount(layout, tx.blockSize());
+      headersize = RecordPage.headerSize(slotcount);
+      List<String> fields = layout.schema().fields();
+      minipages = new Page[fields.size()];
+      offsets = new int[fields.size()];
+      sizes = new int[fields.size()];
+      types = new int[fields.size()];
+      encoded = new boolean[fields.size()];
+      overflows = new boolean[fields.size()];
+      for (int i=0; i<minipages.length; i++) {
+         String fldname = fields.get(i);
+         offsets[i] = RecordPage.minipageOffset(layout, slotcount, fldname);
+         sizes[i] = layout.fieldSize(fldname);
+         types[i] = layout.schema().type(fldname);
+         encoded[i] = layout.schema().isEncoded(fldname);
+         overflows[i] = layout.overflows(fldname);
+      }
+      if (layout.hasLongFields())
+         overflow = new OverflowFile(tx, tblname);
+      if (layout.hasEncodedFields())
+         dict = tx.dictionary(filename);
+   }
+
+   public void beforeFirst() {
+      close();
+      blk = null;
+      currentslot = -1;
+   }
+
+   public boolean next() {
+      if (!tableLocked) {
+         tx.sLockTable(filename);
+         tableLocked = true;
+      }
+      currentslot = nextMatch(currentslot);
+      while (currentslot < 0) {
+         int size = tx.size(filename);
+         int next = (blk == null) ? 0 : blk.number() + 1;
+         if (filter != null)
+            next = filter.nextBlock(next, size);
+         if (next >= size)
+            return false;
+         moveToBlock(next);
+         currentslot = nextMatch(-1);
+      }
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return getInt(indexOf(fldname));
+   }
+
+   public String getString(String fldname) {
+      return getString(indexOf(fldname));
+   }
+
+   public Constant getVal(String fldname) {
+      return getVal(indexOf(fldname));
+   }
+
+   public int indexOf(String fldname) {
+      return layout.schema().indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return minipage(col).getInt(currentslot * sizes[col]);
+   }
+
+   public String getString(int col) {
+      if (encoded[col])
+         return dict.decode(col, getInt(col));
+      String s = minipage(col).getString(currentslot * sizes[col]);
+      return overflows[col] ? overflow.read(s) : s;
+   }
+
+   public Constant getVal(int col) {
+      if (types[col] == INTEGER)
+         return Constant.of(getInt(col));
+      else
+         return new Constant(getString(col));
+   }
+
+   public boolean hasField(String fldname) {
+      return indexOf(fldname) >= 0;
+   }
+
+   public void close() {
+      if (handle != null) {
+         tx.unpin(blk);
+         handle = null;
+      }
+   }
+
+   /**
+    * Tell the scan the predicate that its records are to satisfy,
+    * so that it skips the blocks and records that cannot satisfy it.
+    * @param pred the predicate selecting the scan's records
+    * @see TableScan#setPredicate(Predicate)
+    */
+   public void setPredicate(Predicate pred) {
+      if (!tableLocked) {
+         tx.sLockTable(filename);
+         tableLocked = true;
+      }
+      filter = ZoneFilter.create(tx.zoneMap(filename), layout.schema(), pred);
+      codefilter = CodeFilter.create(dict, layout.schema(), pred);
+      recfilter = RecordFilter.create(layout, pred);
+   }
+
+   // Private auxiliary methods
+
+   private void moveToBlock(int blknum) {
+      close();
+      blk = new BlockId(filename, blknum);
+      handle = tx.pin(blk);
+      bitmap = new Page(handle.getRange(0, headersize));
+      Arrays.fill(minipages, null);
+      if (codefilter != null)
+         codefilter.refresh();
+   }
+
+   /**
+    * Return the first used slot after the specified one
+    * whose codes satisfy the code filter
+    * and whose values satisfy the record filter, or -1.
+    */
+   private int nextMatch(int slot) {
+      if (codefilter == null && recfilter == null)
+         return nextUsed(slot);
+      if (codefilter != null && codefilter.excludesAll())
+         return -1;
+      slot = nextUsed(slot);
+      while (slot >= 0 && !(codesMatch(slot) && (recfilter == null || recfilter.matches(slots, slot))))
+         slot = nextUsed(slot);
+      return slot;
+   }
+
+   private boolean codesMatch(int slot) {
+      return codefilter == null || codefilter.matches(col -> minipage(col).getInt(slot * sizes[col]));
+   }
+
+   /**
+    * Return the copy of the field's minipage in the current block,
+    * reading it from the block if this is the first use.
+    */
+   private Page minipage(int col) {
+      Page mp = minipages[col];
+      if (mp == null) {
+         mp = new Page(handle.getRange(offsets[col], slotcount * sizes[col]));
+         minipages[col] = mp;
+      }
+      return mp;
+   }
+
+   /**
+    * Find the first used slot after the specified one,
+    * a word of the bitmap at a time.
+    */
+   private int nextUsed(int slot) {
+      if (handle == null)
+         return -1;
+      slot++;
+      while (slot < slotcount) {
+         int word = bitmap.getInt(slot / Integer.SIZE * Integer.BYTES);
+         word &= -1 << (slot % Integer.SIZE);
+         if (word != 0) {
+            int found = slot - slot % Integer.SIZE + Integer.numberOfTrailingZeros(word);
+            return (found < slotcount) ? found : -1;
+         }
+         slot += Integer.SIZE - slot % Integer.SIZE;
+      }
+      return -1;
+   }
+}
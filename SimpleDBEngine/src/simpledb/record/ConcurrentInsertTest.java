@@ -0,0 +1,66 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import static simpledb.test.Check.check;
+
+public class ConcurrentInsertTest {
+   private static final int NUM_THREADS = 4, ROWS = 200;
+   private static SimpleDB db;
+   private static Layout layout;
+   private static String tblname;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("concurrentinserttest", 400, 16);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      // in a bitmap page, the inserters also share the words of flags
+      for (int format : new int[] {Layout.FLAGGED, Layout.BITMAP}) {
+         layout = new Layout(sch, format);
+         tblname = "T" + format;
+         run();
+      }
+      System.out.println("done");
+   }
+
+   private static void run() throws Exception {
+      // each thread extends the table, and keeps its transaction
+      // open until all the threads have finished inserting
+      Thread[] threads = new Thread[NUM_THREADS];
+      Transaction[] txs = new Transaction[NUM_THREADS];
+      for (int t=0; t<NUM_THREADS; t++) {
+         int id = t;
+         txs[t] = db.newTx();
+         threads[t] = new Thread(() -> insert(txs[id], id));
+         threads[t].start();
+      }
+      boolean finished = true;
+      for (Thread t : threads) {
+         t.join(30000);
+         finished = finished && !t.isAlive();
+      }
+      check(finished, "inserters do not wait for each other");
+      for (Transaction tx : txs)
+         tx.commit();
+
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      int count = 0;
+      while (ts.next())
+         count++;
+      ts.close();
+      tx.commit();
+      check(count == NUM_THREADS * ROWS, "all records inserted");
+   }
+
+   private static void insert(Transaction tx, int id) {
+      TableScan ts = new TableScan(tx, tblname, layout);
+      for (int i=0; i<ROWS; i++) {
+         ts.insert();
+         ts.setInt("A", id*ROWS + i);
+         ts.setString("B", "rec"+i);
+      }
+      ts.close();
+   }
+}
@@ -0,0 +1,68 @@
+package simpledb.record;
+
+import java.util.HashMap;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import static simpledb.test.Check.check;
+
+/**
+ * Measures the cost of inserting records as the table grows.
+ * As in the update planners, each insertion opens a new table scan.
+ * With the free-space map the cost per insert should stay flat,
+ * instead of growing with the number of blocks in the table.
+ */
+public class InsertThroughputTest {
+   private static final int BATCH = 1000;
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("inserttest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      Layout layout = new Layout(sch);
+      int rows = 0;
+      for (int round=0; round<8; round++) {
+         Transaction tx = db.newTx();
+         long start = System.nanoTime();
+         for (int i=0; i<BATCH; i++) {
+            TableScan ts = new TableScan(tx, "T", layout);
+            ts.insert();
+            ts.setInt("A", rows);
+            ts.setString("B", "rec"+rows);
+            ts.close();
+            rows++;
+         }
+         long elapsed = System.nanoTime() - start;
+         int blocks = tx.size("T.tbl");
+         tx.commit();
+         System.out.println(rows + " rows in " + blocks + " blocks: "
+               + (elapsed / 1000 / BATCH) + " us per insert");
+      }
+
+      // an insert into a table missing from the catalog fails at once
+      SimpleDB sqldb = new SimpleDB("insertmissingtest");
+      Transaction tx = sqldb.newTx();
+      boolean failed = false;
+      try {
+         sqldb.planner().executeUpdate("insert into missing(A) values(1)", tx);
+      }
+      catch (RuntimeException e) {
+         failed = true;
+      }
+      check(failed && tx.size("missing.tbl") == 0, "insert into a missing table rejected");
+      tx.rollback();
+
+      // as does a scan whose layout has no slots in a block
+      tx = db.newTx();
+      TableScan ts = new TableScan(tx, "U", new Layout(new Schema(), new HashMap<>(), -1, Layout.BITMAP));
+      failed = false;
+      try {
+         ts.insert();
+      }
+      catch (RuntimeException e) {
+         failed = true;
+      }
+      check(failed && tx.size("U.tbl") <= 2, "insert with an unusable layout rejected");
+      tx.rollback();
+   }
+}
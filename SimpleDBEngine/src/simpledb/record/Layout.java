@@ -7,32 +7,75 @@ import simpledb.file.Page;
 /**
  * Description of the structure of a record.
  * It contains the name, type, length and offset of
- * each field of the table.
+ * each field of the table, and the format of
+ * the table's record pages.
+ * <p>
+ * In the original FLAGGED format, each slot begins with
+ * an empty/inuse flag.
+ * In the BITMAP format, the flags are gathered into an
+ * occupancy bitmap at the start of the page, and a slot
+ * holds just the record's fields.
+ * In the SLOTTED format, records are variable-length
+ * (see {@link SlottedPage}): each field has a four-byte entry
+ * at the start of the record, and the slot size is the
+ * largest size a record can have.
+ * In the PAX format, the page begins with an occupancy bitmap
+ * as in the BITMAP format, and the values of each field are
+ * gathered into a minipage of their own, so that a scan
+ * can read just the fields it needs
+ * (see {@link ColumnScan}). The offset of a field then
+ * says where its value lies within the record as a whole,
+ * and its minipage starts that many slots into the page.
+ * <p>
+ * In every format, a dictionary-encoded string field
+ * is stored as an integer code, and a long string field
+ * as a string of fixed length that may refer to the
+ * table's overflow file (see {@link OverflowFile}).
  * @author Edward Sciore
  *
  */
 public class Layout {
+   public static final int FLAGGED = 0, BITMAP = 1, SLOTTED = 2, PAX = 3;
+   private static final List<String> FORMAT_NAMES = Arrays.asList("flagged", "bitmap", "slotted", "pax");
    private Schema schema;
    private Map<String,Integer> offsets;
+   private int[] coloffsets;
    private int slotsize;
+   private int format;
+
+   /**
+    * This constructor creates a Layout object from a schema,
+    * for a table in the FLAGGED format.
+    * @param tblname the name of the table
+    * @param schema the schema of the table's records
+    */
+   public Layout(Schema schema) {
+      this(schema, FLAGGED);
+   }
 
    /**
     * This constructor creates a Layout object from a schema. 
     * This constructor is used when a table 
     * is created. It determines the physical offset of 
     * each field within the record.
-    * @param tblname the name of the table
     * @param schema the schema of the table's records
+    * @param format the format of the table's pages
     */
-   public Layout(Schema schema) {
+   public Layout(Schema schema, int format) {
       this.schema = schema;
+      this.format = format;
       offsets  = new HashMap<>();
-      int pos = Integer.BYTES; // leave space for the empty/inuse flag
+      int pos = (format == FLAGGED) ? Integer.BYTES : 0; // leave space for the empty/inuse flag
       for (String fldname : schema.fields()) {
          offsets.put(fldname, pos);
-         pos += lengthInBytes(fldname);
+         pos += (format == SLOTTED) ? Integer.BYTES : lengthInBytes(fldname);
       }
+      if (format == SLOTTED)
+         for (String fldname : schema.fields())
+            if (!storesInt(fldname))
+               pos += lengthInBytes(fldname);
       slotsize = pos;
+      coloffsets = columnOffsets();
    }
 
    /**
@@ -45,9 +88,23 @@ public class Layout {
     * @param recordlen the already-calculated length of each record
     */
    public Layout(Schema schema, Map<String,Integer> offsets, int slotsize) {
+      this(schema, offsets, slotsize, FLAGGED);
+   }
+
+   /**
+    * Create a Layout object from the specified metadata,
+    * for a table in the specified format.
+    * @param schema the schema of the table's records
+    * @param offsets the already-calculated offsets of the fields within a record
+    * @param slotsize the already-calculated length of each record
+    * @param format the format of the table's pages
+    */
+   public Layout(Schema schema, Map<String,Integer> offsets, int slotsize, int format) {
       this.schema    = schema;
       this.offsets   = offsets;
       this.slotsize = slotsize;
+      this.format = format;
+      coloffsets = columnOffsets();
    }
 
    /**
@@ -67,6 +124,65 @@ public class Layout {
       return offsets.get(fldname);
    }
 
+   /**
+    * Return the offset of the field at the specified
+    * position in the schema.
+    * @param col the position of the field
+    * @return the offset of that field within a record
+    */
+   public int offset(int col) {
+      return coloffsets[col];
+   }
+
+   /**
+    * Return the number of bytes that a fixed-length
+    * slot reserves for the specified field.
+    * @param fldname the name of the field
+    * @return the size of the field's value
+    */
+   public int fieldSize(String fldname) {
+      return lengthInBytes(fldname);
+   }
+
+   /**
+    * Return true if the value of the specified field is stored
+    * as an integer: that is, if the field is an integer field
+    * or a dictionary-encoded string field.
+    * @param fldname the name of the field
+    */
+   public boolean storesInt(String fldname) {
+      return schema.type(fldname) == INTEGER || schema.isEncoded(fldname);
+   }
+
+   /**
+    * Return true if the specified field is a long string field,
+    * whose values may be stored partly in the overflow file.
+    * @param fldname the name of the field
+    */
+   public boolean overflows(String fldname) {
+      return schema.type(fldname) == LONGVARCHAR && !schema.isEncoded(fldname);
+   }
+
+   /**
+    * Return true if some field of the schema is a long string field.
+    */
+   public boolean hasLongFields() {
+      for (String fldname : schema.fields())
+         if (overflows(fldname))
+            return true;
+      return false;
+   }
+
+   /**
+    * Return true if some field of the schema is dictionary-encoded.
+    */
+   public boolean hasEncodedFields() {
+      for (String fldname : schema.fields())
+         if (schema.isEncoded(fldname))
+            return true;
+      return false;
+   }
+
    /**
     * Return the size of a slot, in bytes.
     * @return the size of a slot
@@ -75,10 +191,38 @@ public class Layout {
       return slotsize;
    }
 
+   /**
+    * Return the format of the table's record pages,
+    * either FLAGGED, BITMAP, SLOTTED or PAX.
+    * @return the page format
+    */
+   public int format() {
+      return format;
+   }
+
+   /**
+    * Return the page format having the specified name,
+    * as written in a create table statement.
+    * @param name the name of the format
+    * @return the format, or -1 if there is none of that name
+    */
+   public static int formatNamed(String name) {
+      return FORMAT_NAMES.indexOf(name);
+   }
+
+   private int[] columnOffsets() {
+      List<String> fields = schema.fields();
+      int[] result = new int[fields.size()];
+      for (int i=0; i<result.length; i++)
+         result[i] = offsets.get(fields.get(i));
+      return result;
+   }
+
    private int lengthInBytes(String fldname) {
-      int fldtype = schema.type(fldname);
-      if (fldtype == INTEGER)
+      if (storesInt(fldname))
          return Integer.BYTES;
+      else if (overflows(fldname))
+         return Page.maxLength(OverflowFile.INLINE_LENGTH);
       else // fldtype == VARCHAR
          return Page.maxLength(schema.length(fldname));
    }
@@ -0,0 +1,184 @@
+package simpledb.record;
+
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+/**
+ * The out-of-line storage of the long string fields of a table.
+ * A long string field holds, in its record, a string of at most
+ * {@link #INLINE_LENGTH} characters: a value of up to
+ * {@link #PREFIX} characters is held in full, and a longer one
+ * as its first {@link #PREFIX} characters followed by the number
+ * of the block of the overflow file where the rest begins.
+ * The records therefore hold ordinary strings, written and
+ * logged like any other, and a scan reads the overflow file
+ * only for the long values that it asks for.
+ * <p>
+ * The overflow file (the table's name with the extension ".ovf")
+ * holds each remainder as a chain of blocks. A block starts with
+ * a flag telling whether it is in use, followed by the number
+ * of the next block of its chain (plus one, so that 0 ends the
+ * chain) and a piece of the string.
+ * Claiming or freeing a block is logged as a change of its flag;
+ * the rest of a newly-claimed block is written without logging,
+ * since a rollback makes the block free again.
+ * The blocks of a chain are reached only through its record,
+ * whose lock also protects them; a block being claimed is
+ * locked like a record, so that a block freed by an uncommitted
+ * transaction, including the current one, is passed over. The file's free-space map,
+ * in which a block in use counts as full, tells where to look
+ * for free blocks.
+ */
+public class OverflowFile {
+   /**
+    * The number of characters of a long value held in its record.
+    */
+   public static final int PREFIX = 32;
+   /**
+    * The length of the string that a record holds for a long field.
+    */
+   public static final int INLINE_LENGTH = PREFIX + String.valueOf(Integer.MAX_VALUE).length();
+   private static final int USED = 0, NEXT = Integer.BYTES, CHUNK = 2 * Integer.BYTES;
+   private Transaction tx;
+   private String filename;
+   private FreeSpaceMap freespace;
+   private int chunksize;
+
+   /**
+    * Create an object for the overflow file of the specified table.
+    * @param tx the transaction
+    * @param tblname the name of the table
+    */
+   public OverflowFile(Transaction tx, String tblname) {
+      this.tx = tx;
+      filename = tblname + ".ovf";
+      freespace = tx.freeSpaceMap(filename);
+      int bytesPerChar = Page.maxLength(1) - Page.maxLength(0);
+      chunksize = (tx.blockSize() - CHUNK - Page.maxLength(0)) / bytesPerChar;
+   }
+
+   /**
+    * Return the value that the specified string,
+    * as held in a record, stands for.
+    * @param inline the string held in the record
+    * @return the complete value
+    */
+   public String read(String inline) {
+      if (inline.length() <= PREFIX)
+         return inline;
+      StringBuilder sb = new StringBuilder(inline.substring(0, PREFIX));
+      int blknum = pointer(inline);
+      while (blknum >= 0) {
+         BlockId blk = new BlockId(filename, blknum);
+         tx.pin(blk);
+         tx.sLockRecord(blk, 0);
+         sb.append(tx.getString(blk, CHUNK));
+         blknum = tx.getInt(blk, NEXT) - 1;
+         tx.unpin(blk);
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Store the specified value, and return the string
+    * that its record is to hold.
+    * The part of a long value that does not fit in
+    * the record is written to a new chain of blocks.
+    * @param val the value
+    * @return the string to be held in the record
+    */
+   public String write(String val) {
+      if (val.length() <= PREFIX)
+         return val;
+      String rest = val.substring(PREFIX);
+      int nchunks = (rest.length() + chunksize - 1) / chunksize;
+      int[] blocks = new int[nchunks];
+      int start = 0;
+      for (int i=0; i<nchunks; i++) {
+         blocks[i] = claim(start);
+         start = blocks[i] + 1;
+      }
+      for (int i=0; i<nchunks; i++) {
+         String chunk = rest.substring(i * chunksize, Math.min(rest.length(), (i+1) * chunksize));
+         byte[] b = new byte[Integer.BYTES + Page.maxLength(chunk.length())];
+         Page p = new Page(b);
+         p.setInt(0, (i+1 < nchunks) ? blocks[i+1] + 1 : 0);
+         p.setString(Integer.BYTES, chunk);
+         BlockId blk = new BlockId(filename, blocks[i]);
+         tx.pin(blk);
+         tx.setRange(blk, NEXT, b);
+         tx.unpin(blk);
+      }
+      return val.substring(0, PREFIX) + blocks[0];
+   }
+
+   /**
+    * Free the chain of blocks, if any, of the value
+    * that the specified string stands for.
+    * The string is the one held in the value's record,
+    * which is about to be overwritten or deleted.
+    * @param inline the string held in the record
+    */
+   public void free(String inline) {
+      if (inline.length() <= PREFIX)
+         return;
+      int blknum = pointer(inline);
+      while (blknum >= 0) {
+         BlockId blk = new BlockId(filename, blknum);
+         tx.pin(blk);
+         tx.xLockRecord(blk, 0);
+         int next = tx.getInt(blk, NEXT) - 1;
+         tx.setInt(blk, USED, 0, true);
+         tx.unpin(blk);
+         freespace.setFull(blknum, false);
+         blknum = next;
+      }
+   }
+
+   /**
+    * Rebuild the free-space map of the overflow file from
+    * the flags of its blocks, so that the blocks freed by
+    * rollbacks can be claimed again.
+    * The caller must hold an exclusive lock on the table.
+    */
+   public void resetFreeSpace() {
+      int size = tx.size(filename);
+      for (int b=0; b<size; b++) {
+         BlockId blk = new BlockId(filename, b);
+         tx.pin(blk);
+         freespace.setFull(b, tx.getInt(blk, USED) != 0);
+         tx.unpin(blk);
+      }
+   }
+
+   /**
+    * Claim a free block, looking first at the blocks that
+    * the free-space map shows as free from the specified one,
+    * and otherwise appending a block to the file.
+    */
+   private int claim(int start) {
+      int blknum = freespace.nextFree(start);
+      while (true) {
+         BlockId blk = (blknum < tx.size(filename)) ? new BlockId(filename, blknum)
+                                                    : tx.append(filename);
+         blknum = blk.number();
+         // a block freed by this transaction keeps its old contents,
+         // which a rollback would need
+         if (!tx.hasXLockRecord(blk, 0) && tx.tryXLockRecord(blk, 0)) {
+            tx.pin(blk);
+            boolean free = (tx.getInt(blk, USED) == 0);
+            if (free)
+               tx.setInt(blk, USED, 1, true);
+            tx.unpin(blk);
+            freespace.setFull(blknum, true);
+            if (free)
+               return blknum;
+         }
+         blknum = freespace.nextFree(blknum + 1);
+      }
+   }
+
+   private int pointer(String inline) {
+      return Integer.parseInt(inline.substring(PREFIX));
+   }
+}
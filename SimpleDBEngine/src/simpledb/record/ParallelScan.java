@@ -0,0 +1,420 @@
+package simpledb.record;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import simpledb.query.*;
+import simpledb.tx.Transaction;
+
+/**
+ * A scan of the records of a table satisfying a predicate,
+ * read by a pool of worker threads.
+ * The table's blocks are split into chunks, which the workers
+ * claim in turn; each worker reads its chunks with a table scan
+ * of its own, confined to the chunk's range of blocks, and
+ * tests each record against the predicate.
+ * The workers copy the records they select into lists, which
+ * they hand to the reader through a bounded queue, so that
+ * they get at most a few lists ahead of it.
+ * The records are therefore returned in no particular order.
+ * <p>
+ * Instead of reading the records, a client may have each worker
+ * compute something over its own share of them,
+ * such as partial aggregates, and then combine the results;
+ * see {@link #eachWorker(Function)}.
+ * <p>
+ * The workers read for the calling transaction, whose table lock
+ * is taken before they start. Each worker holds a buffer pinned,
+ * so their number should leave buffers for the rest of the query.
+ */
+public class ParallelScan implements Scan {
+   public static final int CHUNK = 16;  // the number of blocks claimed by a worker at a time
+   private static final int ROWS = Batch.SIZE;  // the number of records in a list handed to the reader
+   private static final List<Constant[]> END = new ArrayList<>();  // marks the end of a worker's records
+   private static ExecutorService pool = Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r, "parallel-scan");
+      t.setDaemon(true);
+      return t;
+   });
+   private Transaction tx;
+   private String filename;
+   private List<String> fields;
+   private List<Worker> workers = new ArrayList<>();
+   private AtomicInteger nextchunk = new AtomicInteger();
+   private int size;
+   private BlockingQueue<List<Constant[]>> queue;
+   private List<Future<?>> running = new ArrayList<>();
+   private volatile boolean stopped = false;
+   private volatile RuntimeException error;
+   private List<Constant[]> rows;
+   private int pos, live;
+
+   /**
+    * Create a parallel scan of the records of the specified table
+    * that satisfy the specified predicate.
+    * The table scans of the workers are created, and told
+    * the predicate, by the calling thread.
+    * @param tx the calling transaction
+    * @param tblname the name of the table
+    * @param layout the table's layout
+    * @param pred the predicate selecting the records
+    * @param nworkers the number of worker threads
+    */
+   public ParallelScan(Transaction tx, String tblname, Layout layout, Predicate pred, int nworkers) {
+      this.tx = tx;
+      filename = tblname + ".tbl";
+      fields = layout.schema().fields();
+      CompiledPredicate compiled = new CompiledPredicate(pred, layout.schema());
+      for (int i=0; i<nworkers; i++) {
+         TableScan ts = new TableScan(tx, tblname, layout);
+         ts.setPredicate(pred);
+         workers.add(new Worker(ts, compiled));
+      }
+      queue = new ArrayBlockingQueue<>(2 * nworkers);
+   }
+
+   /**
+    * Stop the workers, so that the next call to next
+    * starts them again from the first block.
+    * @see simpledb.query.Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      stop();
+   }
+
+   /**
+    * Move to the next record handed over by the workers,
+    * waiting for one if necessary.
+    * The workers are started by the first call.
+    * An exception thrown by a worker is thrown here,
+    * once the other workers have stopped.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      if (running.isEmpty() && live == 0 && rows == null)
+         start();
+      pos++;
+      while (rows == null || pos >= rows.size()) {
+         if (live == 0) {
+            rows = Collections.emptyList();
+            return false;
+         }
+         List<Constant[]> chunk = take();
+         if (chunk == END) {
+            live--;
+            if (error != null) {
+               RuntimeException e = error;
+               stop();
+               throw e;
+            }
+         }
+         else {
+            rows = chunk;
+            pos = 0;
+         }
+      }
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return getVal(fldname).asInt();
+   }
+
+   public String getString(String fldname) {
+      return getVal(fldname).asString();
+   }
+
+   public Constant getVal(String fldname) {
+      int col = indexOf(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return getVal(col);
+   }
+
+   public int indexOf(String fldname) {
+      return fields.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return getVal(col).asInt();
+   }
+
+   public String getString(int col) {
+      return getVal(col).asString();
+   }
+
+   public Constant getVal(int col) {
+      return rows.get(pos)[col];
+   }
+
+   public boolean hasField(String fldname) {
+      return fields.contains(fldname);
+   }
+
+   /**
+    * Stop the workers, and close their table scans.
+    * @see simpledb.query.Scan#close()
+    */
+   public void close() {
+      stop();
+      for (Worker w : workers)
+         w.ts.close();
+   }
+
+   /**
+    * Apply the specified function in each worker to a scan
+    * of the worker's share of the selected records,
+    * and return the results of the workers.
+    * The shares are disjoint, and together hold all the
+    * selected records. A worker whose share is empty
+    * still applies the function, to a scan of no records.
+    * The function may read its scan more than once;
+    * see {@link Worker#beforeFirst()}.
+    * An exception thrown by the function in some worker is
+    * thrown here, once the other workers have stopped.
+    * @param fn the function computed over each share
+    * @return the results of the workers
+    */
+   public <T> List<T> eachWorker(Function<Scan,T> fn) {
+      stop();
+      reset();
+      List<Future<T>> futures = new ArrayList<>();
+      for (Worker w : workers) {
+         w.reset();
+         futures.add(pool.submit(() -> fn.apply(w)));
+      }
+      List<T> results = new ArrayList<>();
+      RuntimeException failure = null;
+      for (Future<T> f : futures) {
+         try {
+            results.add(f.get());
+         }
+         catch (ExecutionException e) {
+            // the other workers give up their shares
+            stopped = true;
+            if (failure == null)
+               failure = unwrap(e);
+         }
+         catch (InterruptedException e) {
+            stopped = true;
+            if (failure == null)
+               failure = new RuntimeException(e);
+         }
+      }
+      if (failure != null)
+         throw failure;
+      return results;
+   }
+
+   /**
+    * Start each worker on the table, to copy its selected
+    * records into lists and hand them to the reader.
+    */
+   private void start() {
+      reset();
+      queue.clear();
+      rows = null;
+      error = null;
+      live = workers.size();
+      for (Worker w : workers) {
+         w.reset();
+         running.add(pool.submit(() -> produce(w)));
+      }
+   }
+
+   /**
+    * Let the workers claim the table's chunks from the first.
+    */
+   private void reset() {
+      stopped = false;
+      nextchunk.set(0);
+      size = tx.size(filename);
+   }
+
+   /**
+    * Tell the running workers to stop, and wait until they have,
+    * so that no worker uses its table scan or the
+    * transaction's buffers once the method returns.
+    */
+   private void stop() {
+      stopped = true;
+      for (Future<?> f : running) {
+         try {
+            f.get();
+         }
+         catch (InterruptedException | ExecutionException e) {
+            // a worker records its own exceptions
+         }
+      }
+      running.clear();
+      queue.clear();
+      rows = null;
+      live = 0;
+   }
+
+   /**
+    * The task of a worker, which copies the worker's selected
+    * records into lists for the reader, and then tells the reader
+    * that it has finished, unless the workers were told to stop.
+    */
+   private void produce(Worker w) {
+      try {
+         List<Constant[]> recs = new ArrayList<>(ROWS);
+         while (w.next()) {
+            Constant[] rec = new Constant[fields.size()];
+            for (int col=0; col<rec.length; col++)
+               rec[col] = w.getVal(col);
+            recs.add(rec);
+            if (recs.size() == ROWS) {
+               if (!deliver(recs))
+                  return;
+               recs = new ArrayList<>(ROWS);
+            }
+         }
+         if (!recs.isEmpty() && !deliver(recs))
+            return;
+      }
+      catch (RuntimeException e) {
+         error = e;
+      }
+      finally {
+         deliver(END);
+      }
+   }
+
+   /**
+    * Put the list into the queue, waiting for room unless
+    * the workers are told to stop.
+    * Return false if they were.
+    */
+   private boolean deliver(List<Constant[]> recs) {
+      try {
+         while (!stopped)
+            if (queue.offer(recs, 10, TimeUnit.MILLISECONDS))
+               return true;
+      }
+      catch (InterruptedException e) {
+      }
+      return false;
+   }
+
+   private List<Constant[]> take() {
+      try {
+         return queue.take();
+      }
+      catch (InterruptedException e) {
+         stop();
+         throw new RuntimeException(e);
+      }
+   }
+
+   private static RuntimeException unwrap(ExecutionException e) {
+      Throwable cause = e.getCause();
+      return (cause instanceof RuntimeException) ? (RuntimeException) cause : new RuntimeException(cause);
+   }
+
+   /**
+    * The scan of a worker's share of the selected records,
+    * which claims the table's chunks one at a time,
+    * until none is left or the workers are told to stop.
+    * The worker remembers the chunks it has claimed,
+    * so that it can read its share again.
+    */
+   private class Worker implements Scan {
+      private TableScan ts;
+      private BooleanSupplier test;
+      private boolean inchunk;
+      private List<Integer> claimed = new ArrayList<>();  // the first blocks of the claimed chunks
+      private int replayed;  // the number of claimed chunks read since the last beforeFirst
+
+      Worker(TableScan ts, CompiledPredicate compiled) {
+         this.ts = ts;
+         test = compiled.bind(ts);
+      }
+
+      /**
+       * Forget the claimed chunks, for a new pass of the workers.
+       */
+      void reset() {
+         inchunk = false;
+         claimed.clear();
+         replayed = 0;
+      }
+
+      /**
+       * Position the worker before its first record, so that
+       * it reads the chunks it has claimed again, in the same order,
+       * before going on to claim further chunks.
+       * @see simpledb.query.Scan#beforeFirst()
+       */
+      public void beforeFirst() {
+         inchunk = false;
+         replayed = 0;
+      }
+
+      public boolean next() {
+         while (true) {
+            if (inchunk) {
+               while (ts.next())
+                  if (test.getAsBoolean())
+                     return true;
+            }
+            if (stopped) {
+               inchunk = false;
+               return false;
+            }
+            int first;
+            if (replayed < claimed.size())
+               first = claimed.get(replayed);
+            else {
+               first = nextchunk.getAndIncrement() * CHUNK;
+               if (first >= size) {
+                  inchunk = false;
+                  return false;
+               }
+               claimed.add(first);
+            }
+            replayed++;
+            ts.setRange(first, Math.min(size, first + CHUNK));
+            inchunk = true;
+         }
+      }
+
+      public int getInt(String fldname) {
+         return ts.getInt(fldname);
+      }
+
+      public String getString(String fldname) {
+         return ts.getString(fldname);
+      }
+
+      public Constant getVal(String fldname) {
+         return ts.getVal(fldname);
+      }
+
+      public int indexOf(String fldname) {
+         return ts.indexOf(fldname);
+      }
+
+      public int getInt(int col) {
+         return ts.getInt(col);
+      }
+
+      public String getString(int col) {
+         return ts.getString(col);
+      }
+
+      public Constant getVal(int col) {
+         return ts.getVal(col);
+      }
+
+      public boolean hasField(String fldname) {
+         return ts.hasField(fldname);
+      }
+
+      public void close() {
+      }
+   }
+}
@@ -0,0 +1,231 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import java.util.function.IntFunction;
+import simpledb.query.*;
+
+/**
+ * A scan of a partitioned table, which reads the
+ * partitions it is given one after another.
+ * Each partition is read by a scan of its own file,
+ * opened only when the partition is reached.
+ * <p>
+ * A record inserted into the scan is held in memory until the
+ * scan moves on, or its RID is requested, and then goes to the
+ * partition that the value of its partitioning field selects.
+ * The partitioning field of an existing record may be changed
+ * only to a value of the same partition.
+ * The RIDs of the scan identify a record within its partition,
+ * which is why a partitioned table cannot be indexed.
+ */
+public class PartitionScan implements UpdateScan {
+   private Partitioning part;
+   private Schema sch;
+   private IntFunction<Scan> opener;
+   private List<Integer> parts;
+   private int current = -1;
+   private Scan s;
+   private Predicate pred;
+   private Map<Integer,UpdateScan> inserters = new HashMap<>();
+   private UpdateScan inserted;
+   private Map<String,Constant> newrecord;  // a record not yet in a partition
+
+   /**
+    * Create a scan of the specified partitions of a table.
+    * @param part the table's partitioning
+    * @param sch the table's schema
+    * @param parts the partitions to read, in order
+    * @param opener opens a scan of the specified partition
+    */
+   public PartitionScan(Partitioning part, Schema sch, List<Integer> parts, IntFunction<Scan> opener) {
+      this.part = part;
+      this.sch = sch;
+      this.parts = parts;
+      this.opener = opener;
+   }
+
+   // Methods that implement Scan
+
+   public void beforeFirst() {
+      finishInsert();
+      closeCurrent();
+      current = -1;
+      inserted = null;
+   }
+
+   public boolean next() {
+      finishInsert();
+      inserted = null;
+      while (s == null || !s.next()) {
+         closeCurrent();
+         if (current + 1 >= parts.size())
+            return false;
+         current++;
+         s = opener.apply(parts.get(current));
+         if (pred != null && s instanceof TableScan)
+            ((TableScan) s).setPredicate(pred);
+         else if (pred != null && s instanceof ColumnScan)
+            ((ColumnScan) s).setPredicate(pred);
+      }
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return getInt(indexOf(fldname));
+   }
+
+   public String getString(String fldname) {
+      return getString(indexOf(fldname));
+   }
+
+   public Constant getVal(String fldname) {
+      return getVal(indexOf(fldname));
+   }
+
+   public int indexOf(String fldname) {
+      return sch.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      if (newrecord != null)
+         return newrecord.getOrDefault(sch.fields().get(col), new Constant(0)).asInt();
+      return currentScan().getInt(col);
+   }
+
+   public String getString(int col) {
+      if (newrecord != null)
+         return newrecord.getOrDefault(sch.fields().get(col), new Constant("")).asString();
+      return currentScan().getString(col);
+   }
+
+   public Constant getVal(int col) {
+      if (sch.type(sch.fields().get(col)) == INTEGER)
+         return Constant.of(getInt(col));
+      else
+         return new Constant(getString(col));
+   }
+
+   public boolean hasField(String fldname) {
+      return sch.hasField(fldname);
+   }
+
+   public void close() {
+      finishInsert();
+      closeCurrent();
+      for (UpdateScan us : inserters.values())
+         us.close();
+      inserters.clear();
+   }
+
+   // Methods that implement UpdateScan
+
+   public void setVal(String fldname, Constant val) {
+      if (newrecord != null)
+         newrecord.put(fldname, val);
+      else {
+         if (fldname.equals(part.fieldName())
+               && part.partitionOf(val) != part.partitionOf(currentScan().getVal(fldname)))
+            throw new RuntimeException("cannot move a record to another partition of its table");
+         ((UpdateScan) currentScan()).setVal(fldname, val);
+      }
+   }
+
+   public void setInt(String fldname, int val) {
+      setVal(fldname, new Constant(val));
+   }
+
+   public void setString(String fldname, String val) {
+      setVal(fldname, new Constant(val));
+   }
+
+   /**
+    * Start a new record, which is placed in its
+    * partition once its values are known.
+    */
+   public void insert() {
+      finishInsert();
+      newrecord = new HashMap<>();
+   }
+
+   public void delete() {
+      finishInsert();
+      ((UpdateScan) currentScan()).delete();
+   }
+
+   /**
+    * Return the RID of the current record within its partition.
+    */
+   public RID getRid() {
+      finishInsert();
+      return ((UpdateScan) currentScan()).getRid();
+   }
+
+   /**
+    * Position the scan at the record having the specified RID
+    * within the partition of the current record.
+    */
+   public void moveToRid(RID rid) {
+      finishInsert();
+      ((UpdateScan) currentScan()).moveToRid(rid);
+   }
+
+   /**
+    * Tell the scan the predicate that its records are to satisfy.
+    * The partitions that the predicate rules out are dropped,
+    * and the scan of each remaining partition is told the
+    * predicate in turn.
+    * The method is called before the scan is read.
+    * @param pred the predicate selecting the scan's records
+    */
+   public void setPredicate(Predicate pred) {
+      this.pred = pred;
+      List<Integer> kept = new ArrayList<>(parts);
+      kept.retainAll(part.prune(pred, sch));
+      parts = kept;
+      beforeFirst();
+   }
+
+   // Private auxiliary methods
+
+   /**
+    * Return the scan holding the current record: the scan of the
+    * partition that received the last insert, if the scan has not
+    * moved since, and otherwise the scan of the current partition.
+    */
+   private Scan currentScan() {
+      return (inserted != null) ? inserted : s;
+   }
+
+   /**
+    * Complete the last insert, by inserting the pending
+    * record into the partition its values select.
+    * A field left without a value is zero or empty.
+    */
+   private void finishInsert() {
+      if (newrecord == null)
+         return;
+      Map<String,Constant> vals = newrecord;
+      newrecord = null;
+      String fldname = part.fieldName();
+      Constant key = vals.get(fldname);
+      if (key == null)
+         key = (sch.type(fldname) == INTEGER) ? new Constant(0) : new Constant("");
+      int p = part.partitionOf(key);
+      UpdateScan us = inserters.get(p);
+      if (us == null) {
+         us = (UpdateScan) opener.apply(p);
+         inserters.put(p, us);
+      }
+      us.insert();
+      for (Map.Entry<String,Constant> e : vals.entrySet())
+         us.setVal(e.getKey(), e.getValue());
+      inserted = us;
+   }
+
+   private void closeCurrent() {
+      if (s != null)
+         s.close();
+      s = null;
+   }
+}
@@ -0,0 +1,175 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.query.*;
+
+/**
+ * The way that the records of a partitioned table are divided
+ * among its partitions, each of which is stored in a file of its own.
+ * A table partitioned by hash on a field puts a record in the
+ * partition given by the hash code of the field's value, modulo
+ * the number of partitions.
+ * A table partitioned by range on an integer field has
+ * a series of increasing bounds; partition 0 holds the values
+ * below the first bound, and partition <i>p</i> the values
+ * from the <i>p</i>th bound up to the next one.
+ * <p>
+ * A predicate that fixes the field's value, or for a range
+ * partitioning bounds it, rules out the other partitions,
+ * which a scan for it need not read.
+ */
+public class Partitioning {
+   /**
+    * The methods of partitioning.
+    */
+   public static final int HASH = 0, RANGE = 1;
+   private String fldname;
+   private int method;
+   private int[] bounds;
+   private int count;
+
+   /**
+    * Create a partitioning by hash on the specified field.
+    * @param fldname the name of the partitioning field
+    * @param count the number of partitions
+    */
+   public Partitioning(String fldname, int count) {
+      this.fldname = fldname;
+      this.method = HASH;
+      this.count = count;
+      bounds = new int[0];
+   }
+
+   /**
+    * Create a partitioning by range on the specified integer field.
+    * @param fldname the name of the partitioning field
+    * @param bounds the lowest value of each partition but the first, in increasing order
+    */
+   public Partitioning(String fldname, int[] bounds) {
+      this.fldname = fldname;
+      this.method = RANGE;
+      this.bounds = bounds;
+      count = bounds.length + 1;
+   }
+
+   /**
+    * Return the name of the partitioning field.
+    * @return the name of the field
+    */
+   public String fieldName() {
+      return fldname;
+   }
+
+   /**
+    * Return the method of partitioning, HASH or RANGE.
+    * @return the method
+    */
+   public int method() {
+      return method;
+   }
+
+   /**
+    * Return the number of partitions.
+    * @return the number of partitions
+    */
+   public int count() {
+      return count;
+   }
+
+   /**
+    * Return the lowest value of the specified partition
+    * of a range partitioning, or 0 for the first partition
+    * and for a hash partitioning.
+    * @param p the partition
+    * @return the lowest value of the partition
+    */
+   public int lowerBound(int p) {
+      return (method == RANGE && p > 0) ? bounds[p-1] : 0;
+   }
+
+   /**
+    * Return the name under which the files of
+    * the specified partition of a table are stored.
+    * @param tblname the name of the table
+    * @param p the partition
+    * @return the name of the partition
+    */
+   public static String partitionName(String tblname, int p) {
+      return tblname + "." + p;
+   }
+
+   /**
+    * Return the partition holding the records whose partitioning
+    * field has the specified value.
+    * @param val the value of the partitioning field
+    * @return the partition
+    */
+   public int partitionOf(Constant val) {
+      if (method == HASH)
+         return Math.floorMod(val.hashCode(), count);
+      int p = 0;
+      while (p < bounds.length && val.asInt() >= bounds[p])
+         p++;
+      return p;
+   }
+
+   /**
+    * Return the partitions that may hold records satisfying
+    * the specified predicate, in increasing order.
+    * The predicate rules out a partition by equating the
+    * partitioning field with a constant or, if the field is an
+    * integer, by bounding its values: the bounds of a hash
+    * partitioning are used only if they allow fewer values
+    * than there are partitions.
+    * @param pred the predicate
+    * @param sch the schema of the table
+    * @return the partitions that cannot be ruled out
+    */
+   public List<Integer> prune(Predicate pred, Schema sch) {
+      BitSet parts = new BitSet();
+      parts.set(0, count);
+      for (Constant c : pred.equalsConstants(fldname)) {
+         BitSet one = new BitSet();
+         one.set(partitionOf(c));
+         parts.and(one);
+      }
+      if (sch.type(fldname) == INTEGER) {
+         int[] range = pred.intRange(fldname);
+         if (range[0] > range[1])
+            parts.clear();
+         else if (method == RANGE)
+            parts.and(partitionsBetween(partitionOf(new Constant(range[0])), partitionOf(new Constant(range[1]))));
+         else if ((long) range[1] - range[0] < count) {
+            BitSet hashed = new BitSet();
+            for (long val=range[0]; val<=range[1]; val++)
+               hashed.set(partitionOf(new Constant((int) val)));
+            parts.and(hashed);
+         }
+      }
+      List<Integer> result = new ArrayList<>();
+      for (int p = parts.nextSetBit(0); p >= 0; p = parts.nextSetBit(p+1))
+         result.add(p);
+      return result;
+   }
+
+   /**
+    * Return true if the specified partitioning divides
+    * values among partitions in the same way as this one,
+    * whatever the names of the partitioning fields.
+    * Records of two such tables that agree on their partitioning
+    * fields are then in partitions of the same number.
+    * @param other the other partitioning
+    * @return true if the partitionings match
+    */
+   public boolean matches(Partitioning other) {
+      return other != null && method == other.method && count == other.count
+            && Arrays.equals(bounds, other.bounds);
+   }
+
+   private BitSet partitionsBetween(int lo, int hi) {
+      BitSet result = new BitSet();
+      result.set(lo, hi + 1);
+      return result;
+   }
+}
@@ -0,0 +1,130 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import static simpledb.test.Check.check;
+
+public class PaxTest {
+   private static SimpleDB db;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("paxtest");
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addIntField("dept");
+      sch.addIntField("sal");
+      sch.addStringField("name", 30);
+      sch.addStringField("addr", 60);
+      sch.addStringField("note", 80);
+
+      // the same records in a row table and a PAX table
+      Transaction tx = db.newTx();
+      db.mdMgr().createTable("rowtbl", sch, Layout.BITMAP, tx);
+      db.mdMgr().createTable("paxtbl", sch, Layout.PAX, tx);
+      for (String tblname : new String[] {"rowtbl", "paxtbl"}) {
+         TableScan ts = new TableScan(tx, tblname, db.mdMgr().getLayout(tblname, tx));
+         for (int i=0; i<3000; i++) {
+            ts.insert();
+            ts.setInt("id", i);
+            ts.setInt("dept", i % 17);
+            ts.setInt("sal", (i * 7919) % 1000);
+            ts.setString("name", "name" + i);
+            ts.setString("addr", i + " some street");
+            ts.setString("note", "note for record " + i);
+         }
+         ts.close();
+      }
+      tx.commit();
+      tx = db.newTx();
+      check(tx.size("paxtbl.tbl") == tx.size("rowtbl.tbl"), "both formats hold the same number of records per block");
+      tx.commit();
+
+      // deleted records are skipped, and updates are seen
+      tx = db.newTx();
+      TableScan ts = new TableScan(tx, "paxtbl", db.mdMgr().getLayout("paxtbl", tx));
+      while (ts.next())
+         if (ts.getInt("id") % 10 == 3)
+            ts.delete();
+         else if (ts.getInt("id") % 10 == 4)
+            ts.setString("name", "renamed" + ts.getInt("id"));
+      ts.close();
+      ts = new TableScan(tx, "rowtbl", db.mdMgr().getLayout("rowtbl", tx));
+      while (ts.next())
+         if (ts.getInt("id") % 10 == 3)
+            ts.delete();
+         else if (ts.getInt("id") % 10 == 4)
+            ts.setString("name", "renamed" + ts.getInt("id"));
+      ts.close();
+      tx.commit();
+      check(contents("rowtbl").equals(contents("paxtbl")), "column scan reads the same records");
+
+      // aggregation queries give the same answers on both formats
+      String[] queries = {
+         "select dept, sum(sal) from %s group by dept",
+         "select count(id), max(sal) from %s",
+         "select dept, avg(sal) from %s where dept = 3 group by dept"};
+      for (String q : queries) {
+         List<String> rowresult = query(String.format(q, "rowtbl"));
+         List<String> paxresult = query(String.format(q, "paxtbl"));
+         check(!rowresult.isEmpty() && rowresult.equals(paxresult), "same answer for " + String.format(q, "T"));
+      }
+
+      // a rough comparison of the time taken by each format
+      for (String q : queries) {
+         long rowtime = time(String.format(q, "rowtbl"));
+         long paxtime = time(String.format(q, "paxtbl"));
+         System.out.println(String.format(q, "T") + ": row " + rowtime + "ms, pax " + paxtime + "ms");
+      }
+
+      // the format can be chosen in SQL
+      tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table P(A int, B varchar(10)) using pax", tx);
+      for (int i=0; i<40; i++)
+         planner.executeUpdate("insert into P(A,B) values(" + i + ", 'rec" + i + "')", tx);
+      check(db.mdMgr().getLayout("p", tx).format() == Layout.PAX, "format recorded in the catalog");
+      tx.commit();
+      check(query("select sum(a) from p").equals(Arrays.asList("780")), "pax table through SQL");
+      System.out.println("done");
+   }
+
+   private static Map<Integer,String> contents(String tblname) {
+      Transaction tx = db.newReadOnlyTx();
+      Layout layout = db.mdMgr().getLayout(tblname, tx);
+      Scan s = (layout.format() == Layout.PAX) ? new ColumnScan(tx, tblname, layout)
+                                               : new TableScan(tx, tblname, layout);
+      Map<Integer,String> result = new HashMap<>();
+      while (s.next())
+         result.put(s.getInt("id"), s.getInt("dept") + " " + s.getInt("sal") + " " + s.getString("name") + " "
+               + s.getString("addr") + " " + s.getString("note"));
+      s.close();
+      tx.commit();
+      return result;
+   }
+
+   private static List<String> query(String qry) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(qry, tx);
+      Scan s = p.open();
+      List<String> result = new ArrayList<>();
+      while (s.next()) {
+         String row = "";
+         for (String fldname : p.schema().fields())
+            row += (row.isEmpty() ? "" : " ") + s.getVal(fldname);
+         result.add(row);
+      }
+      s.close();
+      tx.commit();
+      return result;
+   }
+
+   private static long time(String qry) {
+      long start = System.currentTimeMillis();
+      for (int i=0; i<5; i++)
+         query(qry);
+      return System.currentTimeMillis() - start;
+   }
+}
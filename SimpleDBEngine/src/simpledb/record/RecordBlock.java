@@ -0,0 +1,144 @@
+package simpledb.record;
+
+import java.util.Map;
+import simpledb.file.*;
+import simpledb.query.Constant;
+import simpledb.tx.Transaction;
+
+/**
+ * The records stored in one pinned block of a table.
+ * The block is accessed through an implementation
+ * for the table's page format:
+ * {@link RecordPage} for fixed-length slots,
+ * and {@link SlottedPage} for variable-length records.
+ */
+public interface RecordBlock {
+   /**
+    * Return the integer value stored for the
+    * specified field of a specified slot.
+    * @param slot the record's slot
+    * @param fldname the name of the field
+    * @return the integer stored in that field
+    */
+   public int getInt(int slot, String fldname);
+
+   /**
+    * Return the string value stored for the
+    * specified field of the specified slot.
+    * @param slot the record's slot
+    * @param fldname the name of the field
+    * @return the string stored in that field
+    */
+   public String getString(int slot, String fldname);
+
+   /**
+    * Return the integer value stored for the field at
+    * the specified position of the schema, in the specified slot.
+    * @param slot the record's slot
+    * @param col the position of the field in the schema
+    * @return the integer stored in that field
+    */
+   public int getInt(int slot, int col);
+
+   /**
+    * Return the string value stored for the field at
+    * the specified position of the schema, in the specified slot.
+    * @param slot the record's slot
+    * @param col the position of the field in the schema
+    * @return the string stored in that field
+    */
+   public String getString(int slot, int col);
+
+   /**
+    * Return true if the string stored for the field at the
+    * specified position of the schema, in the specified slot,
+    * has the specified bytes.
+    * The string is compared in the page, without being read.
+    * @param slot the record's slot
+    * @param col the position of the field in the schema
+    * @param val the bytes of a string, in the page's character set
+    * @return true if the field holds that string
+    */
+   public boolean hasString(int slot, int col, byte[] val);
+
+   /**
+    * Store an integer at the specified field
+    * of the specified slot.
+    * @param slot the record's slot
+    * @param fldname the name of the field
+    * @param val the integer value stored in that field
+    */
+   public void setInt(int slot, String fldname, int val);
+
+   /**
+    * Store a string at the specified field
+    * of the specified slot.
+    * @param slot the record's slot
+    * @param fldname the name of the field
+    * @param val the string value stored in that field
+    */
+   public void setString(int slot, String fldname, String val);
+
+   /**
+    * Delete the record in the specified slot.
+    * @param slot the record's slot
+    */
+   public void delete(int slot);
+
+   /**
+    * Return the first slot after the specified one
+    * that holds a record.
+    * @param slot a slot, or -1 to start at the beginning
+    * @return the next used slot, or -1 if there is none
+    */
+   public int nextAfter(int slot);
+
+   /**
+    * Claim an empty slot after the specified one for a new record.
+    * @param slot a slot, or -1 to start at the beginning
+    * @return the claimed slot, or -1 if the block has no room
+    */
+   public int insertAfter(int slot);
+
+   /**
+    * Add a record having the specified values to an in-memory
+    * image of this block, in the slot after the specified one.
+    * The image starts out empty, and is written to the block
+    * as a whole once it is full; see {@link BulkLoader}.
+    * Fields without a value are zero or empty.
+    * @param image the image of the block
+    * @param slot a slot, or -1 to start at the beginning
+    * @param vals the values of the record's fields
+    * @return the record's slot, or -1 if the image is full
+    */
+   public int loadAfter(Page image, int slot, Map<String,Constant> vals);
+
+   /**
+    * Return true if nothing in the block is in use,
+    * so that the block could be removed from the table.
+    * @return true if the block is empty
+    */
+   public boolean isEmpty();
+
+   public BlockId block();
+
+   /**
+    * Unpin the block; the object can no longer be used.
+    */
+   public void close();
+
+   /**
+    * Pin the specified block of a table, and return
+    * the implementation for the table's page format.
+    * @param tx the calling transaction
+    * @param blk a reference to the block
+    * @param layout the layout of the table's records
+    * @return the records of the block
+    */
+   static RecordBlock open(Transaction tx, BlockId blk, Layout layout) {
+      if (layout.format() == Layout.SLOTTED)
+         return new SlottedPage(tx, blk, layout);
+      else
+         return new RecordPage(tx, blk, layout);
+   }
+}
@@ -0,0 +1,127 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.file.Page;
+import simpledb.query.*;
+
+/**
+ * Decides which records of a block a scan for a predicate
+ * must return, by testing the terms that compare a field
+ * with a constant against the values in the page.
+ * An integer field must lie in the range of values that
+ * its terms allow, and a string field must have the bytes
+ * of each constant that a term equates it with.
+ * A record that fails is rejected without a value being read
+ * out of the page, or an object being created for it.
+ * The fields whose values are not held in the record,
+ * being encoded or overflowing, are left to other filters.
+ */
+class RecordFilter {
+   private int[] intcols, lo, hi, strcols;
+   private byte[][] strvals;
+
+   /**
+    * The values of the records of a block, as a filter reads them.
+    */
+   interface Slots {
+      int getInt(int slot, int col);
+
+      boolean hasString(int slot, int col, byte[] val);
+   }
+
+   /**
+    * Create a filter for the specified predicate,
+    * or return null if no term compares
+    * a field of the record with a constant.
+    * @param layout the table's layout
+    * @param pred the predicate selecting the records
+    * @return the filter, or null
+    */
+   static RecordFilter create(Layout layout, Predicate pred) {
+      Schema sch = layout.schema();
+      List<String> fields = sch.fields();
+      List<int[]> bounds = new ArrayList<>();
+      List<Integer> strcols = new ArrayList<>();
+      List<byte[]> strvals = new ArrayList<>();
+      for (int col=0; col<fields.size(); col++) {
+         String fldname = fields.get(col);
+         if (sch.isEncoded(fldname) || layout.overflows(fldname))
+            continue;
+         if (sch.type(fldname) == INTEGER) {
+            int[] range = pred.intRange(fldname);
+            if (range[0] != Integer.MIN_VALUE || range[1] != Integer.MAX_VALUE)
+               bounds.add(new int[] {col, range[0], range[1]});
+         }
+         else
+            for (Constant c : pred.equalsConstants(fldname))
+               if (!c.isInt()) {
+                  strcols.add(col);
+                  strvals.add(c.asString().getBytes(Page.CHARSET));
+               }
+      }
+      if (bounds.isEmpty() && strcols.isEmpty())
+         return null;
+      return new RecordFilter(bounds, strcols, strvals);
+   }
+
+   private RecordFilter(List<int[]> bounds, List<Integer> strcols, List<byte[]> strvals) {
+      int n = bounds.size();
+      intcols = new int[n];
+      lo = new int[n];
+      hi = new int[n];
+      for (int i=0; i<n; i++) {
+         intcols[i] = bounds.get(i)[0];
+         lo[i] = bounds.get(i)[1];
+         hi[i] = bounds.get(i)[2];
+      }
+      this.strcols = new int[strcols.size()];
+      for (int i=0; i<this.strcols.length; i++)
+         this.strcols[i] = strcols.get(i);
+      this.strvals = strvals.toArray(new byte[0][]);
+   }
+
+   /**
+    * Return true if the record in the specified slot of the page
+    * may satisfy the predicate.
+    * The value of the field at schema position col is at
+    * offset base[col] + slot * stride[col] of the page,
+    * so that the test reads the page directly.
+    * @param p the page of the block
+    * @param slot the record's slot
+    * @param base the offset of each field in slot 0
+    * @param stride the distance between the values of each field in successive slots
+    */
+   boolean matches(Page p, int slot, int[] base, int[] stride) {
+      for (int i=0; i<intcols.length; i++) {
+         int col = intcols[i];
+         int val = p.getInt(base[col] + slot * stride[col]);
+         if (val < lo[i] || val > hi[i])
+            return false;
+      }
+      for (int i=0; i<strcols.length; i++) {
+         int col = strcols[i];
+         if (!p.hasString(base[col] + slot * stride[col], strvals[i]))
+            return false;
+      }
+      return true;
+   }
+
+   /**
+    * Return true if the record in the specified slot
+    * may satisfy the predicate.
+    * @param slots the values of the block's records
+    * @param slot the record's slot
+    */
+   boolean matches(Slots slots, int slot) {
+      for (int i=0; i<intcols.length; i++) {
+         int val = slots.getInt(slot, intcols[i]);
+         if (val < lo[i] || val > hi[i])
+            return false;
+      }
+      for (int i=0; i<strcols.length; i++)
+         if (!slots.hasString(slot, strcols[i], strvals[i]))
+            return false;
+      return true;
+   }
+}
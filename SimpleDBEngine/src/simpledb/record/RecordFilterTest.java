@@ -0,0 +1,138 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.parse.Parser;
+import simpledb.query.*;
+import static simpledb.test.Check.check;
+
+public class RecordFilterTest {
+   private static SimpleDB db;
+   private static final int N = 20000;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("recordfiltertest");
+      Transaction tx = db.newTx();
+      Schema sch = new Schema();
+      sch.addIntField("eid");
+      sch.addStringField("ename", 10);
+      sch.addIntField("dept");
+      sch.addIntField("sal");
+      int[] formats = {Layout.FLAGGED, Layout.BITMAP, Layout.SLOTTED, Layout.PAX};
+      for (int format : formats) {
+         String tblname = "emp" + format;
+         db.mdMgr().createTable(tblname, sch, format, tx);
+         TableScan ts = new TableScan(tx, tblname, db.mdMgr().getLayout(tblname, tx));
+         for (int i=0; i<N; i++) {
+            ts.insert();
+            ts.setInt("eid", i);
+            ts.setString("ename", "emp" + i);
+            ts.setInt("dept", i % 20);
+            ts.setInt("sal", i * 37 % 1000);
+         }
+         ts.close();
+      }
+      tx.commit();
+
+      // a scan told its predicate returns the records that satisfy it, in every format
+      String[] where = { "sal > 500", "500 > sal", "sal = 74 and dept = 2", "ename = 'emp74'",
+                         "ename = 'nobody'", "sal < 0", "sal >= 990 and ename = 'emp1990'",
+                         "sal <> 5", "sal <= dept" };
+      boolean same = true, exact = true;
+      for (String w : where) {
+         Predicate pred = new Parser("select eid from emp where " + w).query().pred();
+         boolean pushed = !w.contains("<>") && !w.contains("dept");
+         for (int format : formats) {
+            tx = db.newTx();
+            String tblname = "emp" + format;
+            List<Integer> expected = eids(new SelectScan(scan(tblname, tx), pred));
+            Scan filtered = scan(tblname, tx);
+            setPredicate(filtered, pred);
+            List<Integer> selected = eids(new SelectScan(filtered, pred));
+            if (!selected.equals(expected)) {
+               System.out.println("differs: " + w + " on " + tblname);
+               same = false;
+            }
+            filtered = scan(tblname, tx);
+            setPredicate(filtered, pred);
+            if (pushed && !eids(filtered).equals(expected)) {
+               System.out.println("not filtered in the page: " + w + " on " + tblname);
+               exact = false;
+            }
+            tx.commit();
+         }
+      }
+      check(same, "filtered scans select the same records");
+      check(exact, "field-constant terms rejected in the page");
+      tx = db.newTx();
+      Layout layout = db.mdMgr().getLayout("emp1", tx);
+      check(RecordFilter.create(layout, new Parser("select eid from emp where eid = 'emp1' and ename = 74").query().pred()) == null
+            && RecordFilter.create(layout, new Parser("select eid from emp where sal <> 5").query().pred()) == null,
+            "no filter for other terms");
+      tx.commit();
+
+      // the filter sees records changed since the scan was opened
+      tx = db.newTx();
+      Predicate pred = new Parser("select eid from emp where ename = 'changed'").query().pred();
+      TableScan ts = new TableScan(tx, "emp1", db.mdMgr().getLayout("emp1", tx));
+      ts.setPredicate(pred);
+      TableScan changer = new TableScan(tx, "emp1", db.mdMgr().getLayout("emp1", tx));
+      while (changer.next())
+         if (changer.getInt("eid") % 1000 == 3)
+            changer.setString("ename", "changed");
+      changer.close();
+      check(eids(ts).size() == N / 1000, "changed records found");
+      tx.rollback();
+
+      // through the planner
+      tx = db.newTx();
+      Plan p = db.planner().createQueryPlan("select eid, sal from emp1 where sal = 74 and ename = 'emp2002'", tx);
+      Scan s = p.open();
+      check(s.next() && s.getInt("eid") == 2002 && !s.next(), "query with its terms in the page");
+      s.close();
+      tx.commit();
+
+      // the time to select a few records
+      pred = new Parser("select eid from emp where sal = 74").query().pred();
+      long unfiltered = Long.MAX_VALUE, filtered = Long.MAX_VALUE;
+      for (int round=0; round<20; round++) {
+         tx = db.newTx();
+         long start = System.nanoTime();
+         eids(new SelectScan(scan("emp1", tx), pred));
+         unfiltered = Math.min(unfiltered, System.nanoTime() - start);
+         start = System.nanoTime();
+         Scan f = scan("emp1", tx);
+         setPredicate(f, pred);
+         eids(new SelectScan(f, pred));
+         filtered = Math.min(filtered, System.nanoTime() - start);
+         tx.commit();
+      }
+      System.out.println("selection of " + N / 1000 + " of " + N + " records: " + unfiltered / 1000 + "us above the scan, "
+                         + filtered / 1000 + "us in the page");
+      check(filtered < unfiltered, "selection in the page is faster");
+      System.out.println("done");
+   }
+
+   private static Scan scan(String tblname, Transaction tx) {
+      Layout layout = db.mdMgr().getLayout(tblname, tx);
+      return (layout.format() == Layout.PAX) ? new ColumnScan(tx, tblname, layout)
+                                             : new TableScan(tx, tblname, layout);
+   }
+
+   private static void setPredicate(Scan s, Predicate pred) {
+      if (s instanceof ColumnScan)
+         ((ColumnScan) s).setPredicate(pred);
+      else
+         ((TableScan) s).setPredicate(pred);
+   }
+
+   private static List<Integer> eids(Scan s) {
+      List<Integer> result = new ArrayList<>();
+      while (s.next())
+         result.add(s.getInt("eid"));
+      s.close();
+      return result;
+   }
+}
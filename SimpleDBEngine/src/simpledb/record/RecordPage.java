@@ -1,24 +1,72 @@
 package simpledb.record;
 
-import static java.sql.Types.INTEGER;
+import java.util.*;
 import simpledb.file.*;
-import simpledb.tx.Transaction;
+import simpledb.query.Constant;
+import simpledb.tx.*;
 
 /**
  * Store a record at a given location in a block. 
+ * A page in the BITMAP format begins with an occupancy bitmap,
+ * one bit per slot packed into integers, followed by the slots;
+ * empty and used slots can then be found a word at a time.
+ * A page in the PAX format has the same bitmap, but stores
+ * the values of each field together, in one minipage per field.
+ * A page of zeros is a valid empty page in either format.
  * @author Edward Sciore
  */
-public class RecordPage {
+public class RecordPage implements RecordBlock {
    public static final int EMPTY = 0, USED = 1;
    private Transaction tx;
    private BlockId blk;
    private Layout layout;
+   private BlockHandle handle;
+   private BitSet fresh = new BitSet();
+   private boolean bitmap, pax;
+   private int slotcount, headersize;
+   private int[] minipages, fldsizes;  // PAX only
+   private int[] base, stride;  // the field positions read by record filters
 
    public RecordPage(Transaction tx, BlockId blk, Layout layout) {
       this.tx = tx;
       this.blk = blk;
       this.layout = layout;
-      tx.pin(blk);
+      handle = tx.pin(blk);
+      pax = (layout.format() == Layout.PAX);
+      bitmap = (layout.format() == Layout.BITMAP || pax);
+      slotcount = slotCount(layout, tx.blockSize());
+      headersize = bitmap ? headerSize(slotcount) : 0;
+      if (pax) {
+         List<String> fields = layout.schema().fields();
+         minipages = new int[fields.size()];
+         fldsizes = new int[fields.size()];
+         for (int i=0; i<minipages.length; i++) {
+            minipages[i] = minipageOffset(layout, slotcount, fields.get(i));
+            fldsizes[i] = layout.fieldSize(fields.get(i));
+         }
+      }
+   }
+
+   /**
+    * Return the number of slots in a page of the specified layout.
+    * @param layout the layout of the records
+    * @param blocksize the size of a page
+    * @return the number of slots that fit in the page
+    */
+   public static int slotCount(Layout layout, int blocksize) {
+      int n = blocksize / layout.slotSize();
+      if (layout.format() == Layout.BITMAP || layout.format() == Layout.PAX)
+         while (headerSize(n) + n * layout.slotSize() > blocksize)
+            n--;
+      return n;
+   }
+
+   /**
+    * Return the size of the occupancy bitmap for the
+    * specified number of slots.
+    */
+   static int headerSize(int slotcount) {
+      return (slotcount + Integer.SIZE - 1) / Integer.SIZE * Integer.BYTES;
    }
 
    /**
@@ -28,8 +76,8 @@ public class RecordPage {
     * @return the integer stored in that field
     */
    public int getInt(int slot, String fldname) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      return tx.getInt(blk, fldpos);
+      int fldpos = fieldOffset(slot, fldname);
+      return handle.getInt(fldpos);
    }
 
    /**
@@ -39,48 +87,82 @@ public class RecordPage {
     * @return the string stored in that field
     */
    public String getString(int slot, String fldname) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      return tx.getString(blk, fldpos);
+      int fldpos = fieldOffset(slot, fldname);
+      return handle.getString(fldpos);
+   }
+
+   public int getInt(int slot, int col) {
+      return handle.getInt(fieldOffset(slot, col));
+   }
+
+   public String getString(int slot, int col) {
+      return handle.getString(fieldOffset(slot, col));
+   }
+
+   public boolean hasString(int slot, int col, byte[] val) {
+      return handle.hasString(fieldOffset(slot, col), val);
    }
 
    /**
     * Store an integer at the specified field
     * of the specified slot.
+    * The old value is logged, unless the record was
+    * inserted through this record page; in that case
+    * undoing the insertion is enough.
     * @param fldname the name of the field
     * @param val the integer value stored in that field
     */
    public void setInt(int slot, String fldname, int val) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setInt(blk, fldpos, val, true);
+      tx.xLockRecord(blk, slot);
+      int fldpos = fieldOffset(slot, fldname);
+      if (fresh.get(slot))
+         tx.setInt(blk, fldpos, val, false);
+      else
+         tx.updateInt(blk, fldpos, val);
    }
 
    /**
     * Store a string at the specified field
     * of the specified slot.
+    * As with setInt, the fields of a newly-inserted
+    * record are not logged.
     * @param fldname the name of the field
     * @param val the string value stored in that field
     */
    public void setString(int slot, String fldname, String val) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setString(blk, fldpos, val, true);
+      tx.xLockRecord(blk, slot);
+      int fldpos = fieldOffset(slot, fldname);
+      if (fresh.get(slot))
+         tx.setString(blk, fldpos, val, false);
+      else
+         tx.updateString(blk, fldpos, val);
    }
    
    public void delete(int slot) {
-      setFlag(slot, EMPTY);
+      tx.xLockRecord(blk, slot);
+      tx.deleteSlot(blk, slot, flagOffset(slot), flagBit(slot));
+      fresh.clear(slot);
    }
    
    /** Use the layout to format a new block of records.
     *  These values should not be logged 
     *  (because the old values are meaningless).
+    *  In the BITMAP format only the bitmap is cleared,
+    *  since the fields of an empty slot are never read.
     */ 
    public void format() {
+      if (bitmap) {
+         for (int pos=0; pos<headersize; pos+=Integer.BYTES)
+            tx.setInt(blk, pos, 0, false);
+         return;
+      }
       int slot = 0;
       while (isValidSlot(slot)) {
          tx.setInt(blk, offset(slot), EMPTY, false); 
          Schema sch = layout.schema();
          for (String fldname : sch.fields()) {
-            int fldpos = offset(slot) + layout.offset(fldname);
-            if (sch.type(fldname) == INTEGER)
+            int fldpos = fieldOffset(slot, fldname);
+            if (layout.storesInt(fldname))
                tx.setInt(blk, fldpos, 0, false);
             else
                tx.setString(blk, fldpos, "", false);
@@ -89,46 +171,212 @@ public class RecordPage {
       }
    }
 
+   /**
+    * Rewrite this page in the format of the specified layout,
+    * which must have the same schema and at least as many slots
+    * (as a BITMAP layout always has, compared to a FLAGGED one).
+    * Each record keeps its slot, so its RID does not change.
+    * The new image of the page is built in memory,
+    * and each integer that differs from the old image is
+    * written as a logged update, so the change can be undone.
+    * The caller should hold an XLock on the table.
+    * @param newlayout the layout of the rewritten page
+    */
+   public void reformat(Layout newlayout) {
+      RecordPage newrp = new RecordPage(tx, blk, newlayout);
+      Page image = new Page(tx.blockSize());
+      Schema sch = layout.schema();
+      for (int slot=nextAfter(-1); slot>=0; slot=nextAfter(slot)) {
+         int flagpos = newrp.flagOffset(slot);
+         image.setInt(flagpos, image.getInt(flagpos) | (1 << newrp.flagBit(slot)));
+         for (String fldname : sch.fields()) {
+            int fldpos = newrp.fieldOffset(slot, fldname);
+            if (layout.storesInt(fldname))
+               image.setInt(fldpos, getInt(slot, fldname));
+            else
+               image.setString(fldpos, getString(slot, fldname));
+         }
+      }
+      for (int pos=0; pos+Integer.BYTES<=tx.blockSize(); pos+=Integer.BYTES) {
+         int val = image.getInt(pos);
+         if (handle.getInt(pos) != val)
+            tx.updateInt(blk, pos, val);
+      }
+      tx.unpin(blk);  // the pin of newrp
+      layout = newlayout;
+      bitmap = newrp.bitmap;
+      pax = newrp.pax;
+      slotcount = newrp.slotcount;
+      headersize = newrp.headersize;
+      base = stride = null;
+   }
+
    public int nextAfter(int slot) {
-      return searchAfter(slot, USED);
+      return searchAfter(slot, true);
+   }
+
+   /**
+    * Return the first used slot after the specified one
+    * whose values satisfy the record filter, or -1.
+    * The flags and values are read from the page under
+    * a single latch, instead of through the block handle
+    * one value at a time.
+    * @param slot a slot, or -1 to start at the beginning
+    * @param filter the record filter
+    * @return the next matching slot, or -1 if there is none
+    */
+   int nextMatch(int slot, RecordFilter filter) {
+      if (base == null) {
+         int n = layout.schema().fields().size();
+         base = new int[n];
+         stride = new int[n];
+         for (int col=0; col<n; col++) {
+            base[col] = fieldOffset(0, col);
+            stride[col] = pax ? fldsizes[col] : layout.slotSize();
+         }
+      }
+      return handle.search(p -> {
+         int s = searchAfter(p, slot, true);
+         while (s >= 0 && !filter.matches(p, s, base, stride))
+            s = searchAfter(p, s, true);
+         return s;
+      });
    }
  
+   /**
+    * Claim the first empty slot after the specified one.
+    * A slot that another transaction has locked, such as one
+    * emptied by a delete that has not yet committed,
+    * is passed over.
+    * @return the claimed slot, or -1 if there is none
+    */
    public int insertAfter(int slot) {
-      int newslot = searchAfter(slot, EMPTY);
-      if (newslot >= 0)
-         setFlag(newslot, USED);
+      int newslot = searchAfter(slot, false);
+      while (newslot >= 0 && !claim(newslot))
+         newslot = searchAfter(newslot, false);
+      if (newslot >= 0 && tx.insertSlot(blk, newslot, flagOffset(newslot), flagBit(newslot)))
+         fresh.set(newslot);
       return newslot;
    }
   
+   public int loadAfter(Page image, int slot, Map<String,Constant> vals) {
+      int newslot = slot + 1;
+      if (!isValidSlot(newslot))
+         return -1;
+      int flagpos = flagOffset(newslot);
+      image.setInt(flagpos, image.getInt(flagpos) | (1 << flagBit(newslot)));
+      Schema sch = layout.schema();
+      for (String fldname : sch.fields()) {
+         Constant val = vals.get(fldname);
+         int fldpos = fieldOffset(newslot, fldname);
+         if (layout.storesInt(fldname))
+            image.setInt(fldpos, (val == null) ? 0 : val.asInt());
+         else
+            image.setString(fldpos, (val == null) ? "" : val.asString());
+      }
+      return newslot;
+   }
+
+   public boolean isEmpty() {
+      return nextAfter(-1) < 0;
+   }
+
    public BlockId block() {
       return blk;
    }
+
+   public void close() {
+      tx.unpin(blk);
+   }
    
    // Private auxiliary methods
    
    /**
-    * Set the record's empty/inuse flag.
+    * Lock an empty slot for insertion, without waiting.
+    * The flag is checked again once the slot is locked,
+    * since another transaction may have filled it meanwhile.
     */
-   private void setFlag(int slot, int flag) {
-      tx.setInt(blk, offset(slot), flag, true); 
+   private boolean claim(int slot) {
+      return tx.tryXLockRecord(blk, slot) && !isUsed(slot);
    }
 
-   private int searchAfter(int slot, int flag) {
+   /**
+    * Find the first slot after the specified one that is
+    * in use (or empty, if used is false).
+    * A bitmap page is searched a word of flags at a time.
+    */
+   private int searchAfter(int slot, boolean used) {
+      return handle.search(p -> searchAfter(p, slot, used));
+   }
+
+   /**
+    * Find the first slot after the specified one that is
+    * in use (or empty), reading the flags from the specified page.
+    * The caller holds the page's latch.
+    */
+   private int searchAfter(Page p, int slot, boolean used) {
       slot++;
       while (isValidSlot(slot)) {
-         if (tx.getInt(blk, offset(slot)) == flag)
+         int word = p.getInt(flagOffset(slot));
+         if (!used)
+            word = ~word;
+         word &= -1 << flagBit(slot);
+         if (bitmap && word != 0) {
+            int found = slot - flagBit(slot) + Integer.numberOfTrailingZeros(word);
+            return isValidSlot(found) ? found : -1;
+         }
+         if (!bitmap && (word & 1) != 0)
             return slot;
-         slot++;
+         slot += bitmap ? Integer.SIZE - flagBit(slot) : 1;
       }
       return -1;
    }
 
+   private boolean isUsed(int slot) {
+      return (handle.getInt(flagOffset(slot)) & (1 << flagBit(slot))) != 0;
+   }
+
    private boolean isValidSlot(int slot) {
-      return offset(slot+1) <= tx.blockSize();
+      return slot < slotcount;
    }
 
    private int offset(int slot) {
-      return slot * layout.slotSize();
+      return headersize + slot * layout.slotSize();
+   }
+
+   /**
+    * Return the offset of the specified field of a slot:
+    * either within the slot, or within the field's minipage.
+    */
+   private int fieldOffset(int slot, String fldname) {
+      return fieldOffset(slot, layout.schema().indexOf(fldname));
+   }
+
+   private int fieldOffset(int slot, int col) {
+      if (pax)
+         return minipages[col] + slot * fldsizes[col];
+      return offset(slot) + layout.offset(col);
+   }
+
+   /**
+    * Return the offset of the minipage holding the values
+    * of the specified field, in a PAX page with the
+    * specified number of slots.
+    */
+   static int minipageOffset(Layout layout, int slotcount, String fldname) {
+      return headerSize(slotcount) + slotcount * layout.offset(fldname);
+   }
+
+   /**
+    * Return the offset of the integer holding the slot's flag:
+    * either the start of the slot, or a word of the bitmap.
+    */
+   private int flagOffset(int slot) {
+      return bitmap ? slot / Integer.SIZE * Integer.BYTES : offset(slot);
+   }
+
+   private int flagBit(int slot) {
+      return bitmap ? slot % Integer.SIZE : 0;
    }
 }
 
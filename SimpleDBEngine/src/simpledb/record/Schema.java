@@ -8,6 +8,13 @@ import java.util.*;
  * A schema contains the name and type of
  * each field of the table, as well as the length
  * of each varchar field.
+ * A varchar field may be dictionary-encoded: its values are
+ * then stored as integer codes of the table's dictionary
+ * (see {@link simpledb.file.StringDictionary}), but it is
+ * read and written as a string like any other.
+ * A long string field, of type LONGVARCHAR, holds
+ * values too long to be stored in full in their records
+ * (see {@link OverflowFile}).
  * @author Edward Sciore
  *
  */
@@ -25,8 +32,7 @@ public class Schema {
     * @param length the conceptual length of a string field.
     */
    public void addField(String fldname, int type, int length) {
-      fields.add(fldname);
-      info.put(fldname, new FieldInfo(type, length));
+      addField(fldname, type, length, false);
    }
    
    /**
@@ -49,6 +55,25 @@ public class Schema {
       addField(fldname, VARCHAR, length);
    }
    
+   /**
+    * Add a long string field to the schema, whose values
+    * are stored partly outside their records.
+    * @param fldname the name of the field
+    * @param length the number of chars in the varchar definition
+    */
+   public void addLongStringField(String fldname, int length) {
+      addField(fldname, LONGVARCHAR, length);
+   }
+   
+   /**
+    * Add a dictionary-encoded string field to the schema.
+    * @param fldname the name of the field
+    * @param length the number of chars in the varchar definition
+    */
+   public void addEncodedField(String fldname, int length) {
+      addField(fldname, VARCHAR, length, true);
+   }
+   
    /**
     * Add a field to the schema having the same
     * type and length as the corresponding field
@@ -59,7 +84,7 @@ public class Schema {
    public void add(String fldname, Schema sch) {
       int type   = sch.type(fldname);
       int length = sch.length(fldname);
-      addField(fldname, type, length);
+      addField(fldname, type, length, sch.isEncoded(fldname));
    }
    
    /**
@@ -88,7 +113,18 @@ public class Schema {
     * @return true if the field is in the schema
     */
    public boolean hasField(String fldname) {
-      return fields.contains(fldname);
+      return info.containsKey(fldname);
+   }
+   
+   /**
+    * Return the position of the specified field
+    * in the list of the schema's fields.
+    * @param fldname the name of the field
+    * @return the position of the field, or -1 if it is not in the schema
+    */
+   public int indexOf(String fldname) {
+      FieldInfo fi = info.get(fldname);
+      return (fi == null) ? -1 : fi.index;
    }
    
    /**
@@ -112,11 +148,29 @@ public class Schema {
       return info.get(fldname).length;
    }
    
+   /**
+    * Return true if the specified field is a
+    * dictionary-encoded string field.
+    * @param fldname the name of the field
+    */
+   public boolean isEncoded(String fldname) {
+      return info.get(fldname).encoded;
+   }
+   
+   private void addField(String fldname, int type, int length, boolean encoded) {
+      int index = hasField(fldname) ? indexOf(fldname) : fields.size();
+      fields.add(fldname);
+      info.put(fldname, new FieldInfo(type, length, index, encoded));
+   }
+   
    class FieldInfo {
-      int type, length;
-      public FieldInfo(int type, int length) {
+      int type, length, index;
+      boolean encoded;
+      public FieldInfo(int type, int length, int index, boolean encoded) {
          this.type = type;
          this.length = length;
+         this.index = index;
+         this.encoded = encoded;
       }
    }
 }
@@ -0,0 +1,463 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.file.*;
+import simpledb.query.Constant;
+import simpledb.tx.*;
+
+/**
+ * Store variable-length records in a block, as a slotted page.
+ * The page begins with the number of slots and the start of
+ * the record heap, followed by the slot directory,
+ * which holds an (offset, length) pair for each slot.
+ * Records are allocated from the end of the page,
+ * towards the directory.
+ * A record begins with four bytes per field, holding either
+ * the value of an integer field or the position of a string
+ * within the record; the strings follow, each taking only
+ * the space its value needs.
+ * A page of zeros is a valid empty page.
+ * <p>
+ * The directory entry of an empty slot has offset 0.
+ * A record that grows too large for its page is moved to
+ * another page, and its entry becomes a forwarding stub:
+ * the offset is the negated block number (less one),
+ * and the length is the record's slot in that block.
+ * The record's RID thus stays valid.
+ * The entry of the moved record has a negated length,
+ * so that scans reach it only through its stub.
+ * <p>
+ * A new record is written with all of its values at once
+ * (see {@link TableScan#insert()}), so that it takes just the
+ * space it needs. Its bytes are written without logging,
+ * since undoing the insertion empties its directory entry.
+ * Records move when their page is compacted, so a transaction
+ * that modifies a slotted table locks the whole table exclusively,
+ * and its other changes are logged physically.
+ */
+public class SlottedPage implements RecordBlock {
+   private static final int SLOTCOUNT = 0, HEAPSTART = 4, DIRECTORY = 8;
+   private static final int ENTRYSIZE = 2 * Integer.BYTES;
+   private Transaction tx;
+   private BlockId blk;
+   private Layout layout;
+   private BlockHandle handle;
+   private Map<Integer,BlockHandle> others = new HashMap<>();
+   private int fixedsize;
+
+   // the location of the record most recently looked up
+   private BlockHandle lochandle;
+   private int locoffset, loclength;
+
+   public SlottedPage(Transaction tx, BlockId blk, Layout layout) {
+      this.tx = tx;
+      this.blk = blk;
+      this.layout = layout;
+      handle = tx.pin(blk);
+      fixedsize = Integer.BYTES * layout.schema().fields().size();
+   }
+
+   public int getInt(int slot, String fldname) {
+      locate(slot);
+      return lochandle.getInt(locoffset + layout.offset(fldname));
+   }
+
+   public String getString(int slot, String fldname) {
+      locate(slot);
+      return lochandle.getString(stringPos(fldname));
+   }
+
+   public int getInt(int slot, int col) {
+      locate(slot);
+      return lochandle.getInt(locoffset + layout.offset(col));
+   }
+
+   public String getString(int slot, int col) {
+      locate(slot);
+      return lochandle.getString(locoffset + lochandle.getInt(locoffset + layout.offset(col)));
+   }
+
+   public boolean hasString(int slot, int col, byte[] val) {
+      locate(slot);
+      return lochandle.hasString(locoffset + lochandle.getInt(locoffset + layout.offset(col)), val);
+   }
+
+   /**
+    * Store an integer at the specified field
+    * of the specified slot.
+    * Integers have a fixed size, so the value
+    * is always written in place.
+    */
+   public void setInt(int slot, String fldname, int val) {
+      lock();
+      locate(slot);
+      tx.updateInt(lochandle.block(), locoffset + layout.offset(fldname), val);
+   }
+
+   /**
+    * Store a string at the specified field
+    * of the specified slot.
+    * The string is written in place if it fits in the space
+    * of the old value; otherwise the record is rewritten
+    * elsewhere in its page, or moved to another page.
+    */
+   public void setString(int slot, String fldname, String val) {
+      lock();
+      locate(slot);
+      int strpos = stringPos(fldname);
+      if (Page.maxLength(val.length()) <= locoffset + stringEnd(fldname) - strpos)
+         tx.updateString(lochandle.block(), strpos, val);
+      else {
+         Map<String,Constant> vals = values();
+         vals.put(fldname, new Constant(val));
+         relocate(slot, image(vals));
+      }
+   }
+
+   public void delete(int slot) {
+      lock();
+      int offset = handle.getInt(entry(slot));
+      if (offset < 0) {
+         BlockHandle target = handle(-offset - 1);
+         int tslot = handle.getInt(entry(slot) + Integer.BYTES);
+         tx.updateInt(target.block(), entry(tslot), 0);
+      }
+      tx.updateInt(blk, entry(slot), 0);
+   }
+
+   /**
+    * Return the next slot that holds a record of this page,
+    * either in place or through a forwarding stub.
+    */
+   public int nextAfter(int slot) {
+      int n = handle.getInt(SLOTCOUNT);
+      for (int s=slot+1; s<n; s++) {
+         int offset = handle.getInt(entry(s));
+         if (offset < 0 || (offset > 0 && handle.getInt(entry(s) + Integer.BYTES) > 0))
+            return s;
+      }
+      return -1;
+   }
+
+   /**
+    * Insert a record of zeros and empty strings
+    * in an empty slot after the specified one.
+    * @return the record's slot, or -1 if the page has no room
+    */
+   public int insertAfter(int slot) {
+      return insertAfter(slot, new HashMap<>());
+   }
+
+   /**
+    * Insert a record having the specified values in an empty slot
+    * after the specified one, or in a new slot at the end of the directory.
+    * Fields without a value are zero or empty.
+    * @param slot a slot, or -1 to start at the beginning
+    * @param vals the values of the record's fields
+    * @return the record's slot, or -1 if the page has no room
+    */
+   public int insertAfter(int slot, Map<String,Constant> vals) {
+      lock();
+      int n = handle.getInt(SLOTCOUNT);
+      int newslot = slot + 1;
+      while (newslot < n && handle.getInt(entry(newslot)) != 0)
+         newslot++;
+      byte[] img = image(vals);
+      int offset = allocate(handle, img.length, newslot >= n, -1);
+      if (offset < 0)
+         return -1;
+      tx.setRange(blk, offset, img);
+      setEntry(blk, newslot, offset, img.length);
+      if (newslot >= n)
+         tx.updateInt(blk, SLOTCOUNT, newslot + 1);
+      return newslot;
+   }
+
+   public int loadAfter(Page image, int slot, Map<String,Constant> vals) {
+      int newslot = slot + 1;
+      byte[] img = image(vals);
+      int start = image.getInt(HEAPSTART);
+      if (start == 0)
+         start = tx.blockSize() / Integer.BYTES * Integer.BYTES;
+      if (start - entry(newslot + 1) < img.length)
+         return -1;
+      start -= img.length;
+      image.setRange(start, img);
+      image.setInt(entry(newslot), start);
+      image.setInt(entry(newslot) + Integer.BYTES, img.length);
+      image.setInt(SLOTCOUNT, newslot + 1);
+      image.setInt(HEAPSTART, start);
+      return newslot;
+   }
+
+   /**
+    * Return true if no directory entry is in use;
+    * a record moved here from another page, which scans
+    * pass over, also keeps the page in use.
+    */
+   public boolean isEmpty() {
+      int n = handle.getInt(SLOTCOUNT);
+      for (int s=0; s<n; s++)
+         if (handle.getInt(entry(s)) != 0)
+            return false;
+      return true;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public void close() {
+      for (BlockHandle h : others.values())
+         tx.unpin(h.block());
+      others.clear();
+      tx.unpin(blk);
+   }
+
+   // Private auxiliary methods
+
+   private void lock() {
+      tx.xLockTable(blk.fileName());
+   }
+
+   /**
+    * Find the record of the specified slot,
+    * following its forwarding stub if it has one.
+    */
+   private void locate(int slot) {
+      int offset = handle.getInt(entry(slot));
+      int length = handle.getInt(entry(slot) + Integer.BYTES);
+      if (offset >= 0) {
+         lochandle = handle;
+         locoffset = offset;
+         loclength = length;
+      }
+      else {
+         lochandle = handle(-offset - 1);
+         locoffset = lochandle.getInt(entry(length));
+         loclength = -lochandle.getInt(entry(length) + Integer.BYTES);
+      }
+   }
+
+   private int stringPos(String fldname) {
+      return locoffset + lochandle.getInt(locoffset + layout.offset(fldname));
+   }
+
+   /**
+    * Return the end of the space given to a string field of
+    * the located record, relative to the start of the record.
+    * The strings are stored in schema order, so the space
+    * ends where the next string begins.
+    */
+   private int stringEnd(String fldname) {
+      Schema sch = layout.schema();
+      boolean after = false;
+      for (String f : sch.fields()) {
+         if (after && !layout.storesInt(f))
+            return lochandle.getInt(locoffset + layout.offset(f));
+         if (f.equals(fldname))
+            after = true;
+      }
+      return loclength;
+   }
+
+   /**
+    * Return the values of the located record.
+    */
+   private Map<String,Constant> values() {
+      Schema sch = layout.schema();
+      Map<String,Constant> vals = new HashMap<>();
+      for (String f : sch.fields())
+         if (layout.storesInt(f))
+            vals.put(f, Constant.of(lochandle.getInt(locoffset + layout.offset(f))));
+         else
+            vals.put(f, new Constant(lochandle.getString(stringPos(f))));
+      return vals;
+   }
+
+   /**
+    * Return the bytes of a record having the specified values.
+    * Fields without a value are zero or empty.
+    */
+   private byte[] image(Map<String,Constant> vals) {
+      Schema sch = layout.schema();
+      int length = fixedsize;
+      for (String f : sch.fields())
+         if (!layout.storesInt(f)) {
+            Constant val = vals.get(f);
+            length += Page.maxLength((val == null) ? 0 : val.asString().length());
+         }
+      Page p = new Page(new byte[align(length)]);
+      int pos = fixedsize;
+      for (String f : sch.fields()) {
+         Constant val = vals.get(f);
+         if (layout.storesInt(f))
+            p.setInt(layout.offset(f), (val == null) ? 0 : val.asInt());
+         else {
+            String s = (val == null) ? "" : val.asString();
+            p.setInt(layout.offset(f), pos);
+            p.setString(pos, s);
+            pos += Page.maxLength(s.length());
+         }
+      }
+      return p.getRange(0, align(length));
+   }
+
+   /**
+    * Store the new image of a record that no longer fits in its space.
+    * The record goes, in order of preference: to its home page,
+    * to the page it has already been moved to, to the last page
+    * of the file, or to a new page.
+    */
+   private void relocate(int slot, byte[] img) {
+      int homeoffset = handle.getInt(entry(slot));
+      int tslot = handle.getInt(entry(slot) + Integer.BYTES);
+      boolean forwarded = (homeoffset < 0);
+      BlockHandle oldtarget = forwarded ? handle(-homeoffset - 1) : null;
+
+      int offset = allocate(handle, img.length, false, forwarded ? -1 : slot);
+      if (offset >= 0) {
+         tx.setRange(blk, offset, img);
+         setEntry(blk, slot, offset, img.length);
+         if (forwarded)
+            tx.updateInt(oldtarget.block(), entry(tslot), 0);
+         return;
+      }
+      if (forwarded) {
+         offset = allocate(oldtarget, img.length, false, tslot);
+         if (offset >= 0) {
+            tx.setRange(oldtarget.block(), offset, img);
+            setEntry(oldtarget.block(), tslot, offset, -img.length);
+            return;
+         }
+      }
+
+      String filename = blk.fileName();
+      int last = tx.size(filename) - 1;
+      BlockHandle target = null;
+      int newslot = -1;
+      if (last != blk.number() && (oldtarget == null || last != oldtarget.block().number())) {
+         target = handle(last);
+         newslot = emptyEntry(target);
+         offset = allocate(target, img.length, newslot == target.getInt(SLOTCOUNT), -1);
+      }
+      if (offset < 0) {
+         target = handle(tx.append(filename).number());
+         newslot = 0;
+         offset = allocate(target, img.length, true, -1);
+      }
+      BlockId tblk = target.block();
+      tx.setRange(tblk, offset, img);
+      setEntry(tblk, newslot, offset, -img.length);
+      if (newslot == target.getInt(SLOTCOUNT))
+         tx.updateInt(tblk, SLOTCOUNT, newslot + 1);
+      if (forwarded)
+         tx.updateInt(oldtarget.block(), entry(tslot), 0);
+      setEntry(blk, slot, -(tblk.number() + 1), newslot);
+   }
+
+   /**
+    * Take space for a record from the heap of the specified page,
+    * compacting the page if necessary.
+    * @param h the page
+    * @param length the size of the record
+    * @param newEntry true if a directory entry will be added
+    * @param exclude a slot whose record is being replaced, or -1
+    * @return the offset of the space, or -1 if the page has no room
+    */
+   private int allocate(BlockHandle h, int length, boolean newEntry, int exclude) {
+      int n = h.getInt(SLOTCOUNT) + (newEntry ? 1 : 0);
+      int dirend = entry(n);
+      int start = heapStart(h);
+      if (start - dirend < length) {
+         if (tx.blockSize() - dirend - liveBytes(h, exclude) < length)
+            return -1;
+         start = compact(h, exclude);
+      }
+      start -= length;
+      tx.updateInt(h.block(), HEAPSTART, start);
+      return start;
+   }
+
+   /**
+    * Move the records of the specified page to the end of the page,
+    * so that all of its free space is between the directory and the heap.
+    * The new image of the page is built in memory, and each
+    * integer that differs from the old image is a logged update.
+    * @return the new start of the heap
+    */
+   private int compact(BlockHandle h, int exclude) {
+      int n = h.getInt(SLOTCOUNT);
+      Page image = new Page(new byte[tx.blockSize()]);
+      image.setInt(SLOTCOUNT, n);
+      int start = tx.blockSize() / Integer.BYTES * Integer.BYTES;
+      for (int i=0; i<n; i++) {
+         int offset = h.getInt(entry(i));
+         int length = h.getInt(entry(i) + Integer.BYTES);
+         if (offset > 0 && i != exclude) {
+            int size = Math.abs(length);
+            start -= size;
+            for (int pos=0; pos<size; pos+=Integer.BYTES)
+               image.setInt(start + pos, h.getInt(offset + pos));
+            offset = start;
+         }
+         image.setInt(entry(i), offset);
+         image.setInt(entry(i) + Integer.BYTES, length);
+      }
+      image.setInt(HEAPSTART, start);
+      for (int pos=0; pos+Integer.BYTES<=tx.blockSize(); pos+=Integer.BYTES) {
+         int val = image.getInt(pos);
+         if (h.getInt(pos) != val)
+            tx.updateInt(h.block(), pos, val);
+      }
+      return start;
+   }
+
+   private int liveBytes(BlockHandle h, int exclude) {
+      int n = h.getInt(SLOTCOUNT);
+      int total = 0;
+      for (int i=0; i<n; i++)
+         if (i != exclude && h.getInt(entry(i)) > 0)
+            total += Math.abs(h.getInt(entry(i) + Integer.BYTES));
+      return total;
+   }
+
+   private int emptyEntry(BlockHandle h) {
+      int n = h.getInt(SLOTCOUNT);
+      int slot = 0;
+      while (slot < n && h.getInt(entry(slot)) != 0)
+         slot++;
+      return slot;
+   }
+
+   private void setEntry(BlockId b, int slot, int offset, int length) {
+      tx.updateInt(b, entry(slot), offset);
+      tx.updateInt(b, entry(slot) + Integer.BYTES, length);
+   }
+
+   private int heapStart(BlockHandle h) {
+      int start = h.getInt(HEAPSTART);
+      return (start == 0) ? tx.blockSize() / Integer.BYTES * Integer.BYTES : start;
+   }
+
+   /**
+    * Return a handle on another block of the table,
+    * pinning it on first use.
+    */
+   private BlockHandle handle(int blknum) {
+      BlockHandle h = others.get(blknum);
+      if (h == null) {
+         h = tx.pin(new BlockId(blk.fileName(), blknum));
+         others.put(blknum, h);
+      }
+      return h;
+   }
+
+   private static int entry(int slot) {
+      return DIRECTORY + slot * ENTRYSIZE;
+   }
+
+   private static int align(int length) {
+      return (length + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+   }
+}
@@ -0,0 +1,149 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import static simpledb.test.Check.check;
+
+public class SlottedPageTest {
+   private static SimpleDB db;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("slottedpagetest");
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 100);
+      sch.addStringField("C", 20);
+      Layout fixed = new Layout(sch, Layout.BITMAP);
+      Layout slotted = new Layout(sch, Layout.SLOTTED);
+
+      // short values take much less room in slotted pages
+      Transaction tx = db.newTx();
+      for (Layout layout : new Layout[] {fixed, slotted}) {
+         String tblname = "T" + layout.format();
+         TableScan ts = new TableScan(tx, tblname, layout);
+         for (int i=0; i<100; i++) {
+            ts.insert();
+            ts.setInt("A", i);
+            ts.setString("B", "rec"+i);
+            ts.setString("C", "c"+i);
+         }
+         ts.close();
+      }
+      tx.commit();
+      tx = db.newTx();
+      int fixedblocks = tx.size("T1.tbl"), slottedblocks = tx.size("T2.tbl");
+      tx.commit();
+      System.out.println("blocks for 100 records: BITMAP " + fixedblocks + ", SLOTTED " + slottedblocks);
+      check(slottedblocks * 3 < fixedblocks, "slotted pages hold more short records");
+      Map<RID,String> before = contents(slotted);
+      check(before.size() == 100 && before.containsValue("99 rec99 c99"), "records read back");
+
+      // growing the strings moves records to other pages, but their RIDs stay valid
+      tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T2", slotted);
+      while (ts.next())
+         if (ts.getInt("A") % 2 == 0)
+            ts.setString("B", longString(ts.getInt("A")));
+      ts.close();
+      tx.commit();
+      Map<RID,String> after = contents(slotted);
+      check(after.keySet().equals(before.keySet()), "no record gained, lost or renumbered");
+      boolean grown = true;
+      for (Map.Entry<RID,String> e : after.entrySet()) {
+         int a = Integer.parseInt(e.getValue().split(" ")[0]);
+         String b = (a % 2 == 0) ? longString(a) : "rec"+a;
+         grown = grown && e.getValue().equals(a + " " + b + " c" + a);
+      }
+      check(grown, "grown records read back");
+      tx = db.newTx();
+      System.out.println("blocks after growing: " + tx.size("T2.tbl"));
+      ts = new TableScan(tx, "T2", slotted);
+      boolean found = true;
+      for (RID rid : before.keySet()) {
+         ts.moveToRid(rid);
+         found = found && after.get(rid).equals(ts.getInt("A") + " " + ts.getString("B") + " " + ts.getString("C"));
+      }
+      ts.close();
+      tx.commit();
+      check(found, "moved records are found by RID");
+
+      // shrinking, deleting, inserting and growing are all undone by a rollback
+      tx = db.newTx();
+      ts = new TableScan(tx, "T2", slotted);
+      while (ts.next()) {
+         int a = ts.getInt("A");
+         if (a % 3 == 0)
+            ts.delete();
+         else if (a % 2 == 0)
+            ts.setString("B", "short");
+         else
+            ts.setString("C", longString(a).substring(0, 20));
+      }
+      for (int i=0; i<50; i++) {
+         ts.insert();
+         ts.setInt("A", 1000+i);
+         ts.setString("B", longString(i));
+      }
+      ts.close();
+      tx.rollback();
+      check(contents(slotted).equals(after), "rollback restores the table");
+
+      // the page format can be chosen in SQL
+      tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table S(A int, B varchar(50)) using slotted", tx);
+      for (int i=0; i<20; i++)
+         planner.executeUpdate("insert into S(A,B) values(" + i + ", 'rec" + i + "')", tx);
+      Layout layout = db.mdMgr().getLayout("s", tx);
+      check(layout.format() == Layout.SLOTTED, "format recorded in the catalog");
+      ts = new TableScan(tx, "s", layout);
+      while (ts.next())
+         if (ts.getInt("a") == 5)
+            ts.setString("b", "updated record value");
+      ts.close();
+      Plan p = planner.createQueryPlan("select B from S where A = 5", tx);
+      Scan s = p.open();
+      check(s.next() && s.getString("b").equals("updated record value"), "slotted table through SQL");
+      s.close();
+      tx.commit();
+
+      // a record wider than a block fails instead of growing the file
+      Schema wide = new Schema();
+      for (int i=0; i<120; i++)
+         wide.addIntField("F" + i);
+      tx = db.newTx();
+      ts = new TableScan(tx, "wide", new Layout(wide, Layout.BITMAP));
+      int wideblocks = tx.size("wide.tbl");
+      boolean failed = false;
+      try {
+         ts.insert();
+      }
+      catch (RuntimeException e) {
+         failed = true;
+      }
+      check(failed && tx.size("wide.tbl") <= wideblocks + 1, "record too large for a block is rejected");
+      tx.rollback();
+      System.out.println("done");
+   }
+
+   private static String longString(int n) {
+      String s = "long value " + n + " ";
+      while (s.length() < 90)
+         s = s + s;
+      return s.substring(0, 90);
+   }
+
+   private static Map<RID,String> contents(Layout layout) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T" + layout.format(), layout);
+      Map<RID,String> result = new HashMap<>();
+      while (ts.next())
+         result.put(ts.getRid(), ts.getInt("A") + " " + ts.getString("B") + " " + ts.getString("C"));
+      ts.close();
+      tx.commit();
+      return result;
+   }
+}
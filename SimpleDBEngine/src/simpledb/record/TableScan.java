@@ -1,26 +1,104 @@
 package simpledb.record;
 
 import static java.sql.Types.INTEGER;
-import simpledb.file.BlockId;
+import java.util.*;
+import simpledb.file.*;
 import simpledb.query.*;
 import simpledb.tx.Transaction;
 
 /**
  * Provides the abstraction of an arbitrarily large array
  * of records.
+ * A sequential scan locks the whole table in shared mode;
+ * positioning by RID locks just that record, and
+ * modifications lock the records they change.
+ * A scan that will modify the records it reads may instead
+ * lock them one by one in exclusive mode, under an intention
+ * lock on the table, so that statements changing different
+ * records of a table do not wait for each other.
+ * Inserts consult the table's free-space map,
+ * so that they go directly to a block with room.
+ * Modifications of a table in the SLOTTED format lock
+ * the whole table instead, since they may move records.
+ * A record inserted into such a table is held in memory
+ * until the scan moves on, or its RID is requested,
+ * so that its page is chosen knowing its size.
+ * Every integer written to a block widens the block's zone in
+ * the table's zone map, and a scan told its predicate
+ * skips the blocks whose zones the predicate excludes.
+ * The values of a dictionary-encoded field are stored as
+ * codes and decoded when read; a scan told its predicate
+ * compares the codes of such fields with the codes of the
+ * constants they must equal, and skips the records that differ.
+ * It likewise tests the terms comparing its other fields with
+ * constants against the values in the page, so that the records
+ * they reject never leave the scan.
+ * The part of a long string value that does not fit in its
+ * record is kept in the table's overflow file, which is read
+ * only when the value is.
+ * Read by batches, the scan copies the fields that its
+ * reader uses from each record straight into the batch.
+ * A scan may be confined to a range of the table's blocks,
+ * so that the workers of a {@link ParallelScan} can share a table.
  * @author sciore
  */
-public class TableScan implements UpdateScan {
+public class TableScan implements UpdateScan, BatchScan {
    private Transaction tx;
    private Layout layout;
-   private RecordPage rp;
+   private RecordBlock rp;
    private String filename;
    private int currentslot;
+   private boolean tableLocked = false;
+   private boolean forUpdate = false, estimating = false;
+   private Predicate pred;
+   private FreeSpaceMap freespace;
+   private ZoneMap zones;
+   private ZoneFilter filter;
+   private StringDictionary dict;
+   private CodeFilter codefilter;
+   private RecordFilter recfilter;
+   private RecordFilter.Slots slots = new RecordFilter.Slots() {
+      public int getInt(int slot, int col) {
+         return rp.getInt(slot, col);
+      }
+
+      public boolean hasString(int slot, int col, byte[] val) {
+         return rp.hasString(slot, col, val);
+      }
+   };
+   private boolean skipcurrent = false;
+   private Map<String,Constant> newrecord;  // a SLOTTED record not yet written
+   private BitSet unset = new BitSet();      // zoned fields of a new record not yet written
+   private List<String> fields;
+   private int[] types;
+   private boolean[] encoded, overflows;
+   private OverflowFile overflow;
+   private Batch batch;
+   private boolean[] wanted;
+   private boolean batchesDone = false;
+   private int first = 0, end = -1;  // the range of blocks read, to the end of the table if end is negative
 
    public TableScan(Transaction tx, String tblname, Layout layout) {
       this.tx = tx;
       this.layout = layout;
       filename = tblname + ".tbl";
+      fields = layout.schema().fields();
+      types = new int[fields.size()];
+      encoded = new boolean[fields.size()];
+      overflows = new boolean[fields.size()];
+      wanted = new boolean[fields.size()];
+      Arrays.fill(wanted, true);
+      for (int i=0; i<types.length; i++) {
+         types[i] = layout.schema().type(fields.get(i));
+         encoded[i] = layout.schema().isEncoded(fields.get(i));
+         overflows[i] = layout.overflows(fields.get(i));
+      }
+      freespace = tx.freeSpaceMap(filename);
+      zones = tx.zoneMap(filename);
+      if (layout.hasEncodedFields())
+         dict = tx.dictionary(filename);
+      if (layout.hasLongFields())
+         overflow = new OverflowFile(tx, tblname);
       if (tx.size(filename) == 0)
          moveToNewBlock();
       else 
@@ -30,53 +108,146 @@ public class TableScan implements UpdateScan {
    // Methods that implement Scan
 
    public void beforeFirst() {
-      moveToBlock(0);
+      batchesDone = false;
+      moveToBlock(first);
+      skipcurrent = (filter != null && !filter.mayMatch(first));
    }
 
    public boolean next() {
-      currentslot = rp.nextAfter(currentslot);
+      finishInsert();
+      lockTable();
+      currentslot = skipcurrent ? -1 : nextMatch(currentslot);
       while (currentslot < 0) {
-         if (atLastBlock())
+         int size = tx.size(filename);
+         if (end >= 0)
+            size = Math.min(size, end);
+         int next = rp.block().number() + 1;
+         if (filter != null)
+            next = filter.nextBlock(next, size);
+         if (next >= size)
             return false;
-         moveToBlock(rp.block().number()+1);
-         currentslot = rp.nextAfter(currentslot);
+         moveToBlock(next);
+         currentslot = nextMatch(currentslot);
       }
       return true;
    }
 
    public int getInt(String fldname) {
-      return rp.getInt(currentslot, fldname);
+      return getInt(indexOf(fldname));
    }
 
    public String getString(String fldname) {
-      return rp.getString(currentslot, fldname);
+      return getString(indexOf(fldname));
    }
 
    public Constant getVal(String fldname) {
-	   
-      if (layout.schema().type(fldname) == INTEGER)
-         return new Constant(getInt(fldname));
+      return getVal(indexOf(fldname));
+   }
+
+   public int indexOf(String fldname) {
+      return layout.schema().indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      if (newrecord != null)
+         return newrecord.getOrDefault(fields.get(col), new Constant(0)).asInt();
+      return rp.getInt(currentslot, col);
+   }
+
+   public String getString(int col) {
+      if (newrecord != null)
+         return newrecord.getOrDefault(fields.get(col), new Constant("")).asString();
+      if (encoded[col])
+         return dict.decode(col, rp.getInt(currentslot, col));
+      if (overflows[col])
+         return overflow.read(rp.getString(currentslot, col));
+      return rp.getString(currentslot, col);
+   }
+
+   public Constant getVal(int col) {
+      if (types[col] == INTEGER)
+         return Constant.of(getInt(col));
       else
-         return new Constant(getString(fldname));
+         return new Constant(getString(col));
    }
 
    public boolean hasField(String fldname) {
-      return layout.schema().hasField(fldname);
+      return indexOf(fldname) >= 0;
    }
 
    public void close() {
+      finishInsert();
       if (rp != null)
-         tx.unpin(rp.block());
+         rp.close();
+   }
+
+   // Methods that implement BatchScan
+
+   public boolean producesBatches() {
+      return true;
+   }
+
+   public void useFields(Collection<String> fldnames) {
+      for (int col=0; col<wanted.length; col++)
+         wanted[col] = fldnames.contains(fields.get(col));
+   }
+
+   /**
+    * Copy the next records into the scan's batch,
+    * until it is full or the table is used up.
+    * The scan is left at the last record copied.
+    * @see simpledb.query.BatchScan#nextBatch()
+    */
+   public Batch nextBatch() {
+      if (batch == null)
+         batch = new Batch(fields, types);
+      int n = 0;
+      while (n < Batch.SIZE && !batchesDone) {
+         if (!next()) {
+            batchesDone = true;
+            break;
+         }
+         for (int col=0; col<types.length; col++) {
+            if (!wanted[col])
+               continue;
+            if (types[col] == INTEGER)
+               batch.ints(col)[n] = rp.getInt(currentslot, col);
+            else
+               batch.strings(col)[n] = getString(col);
+         }
+         n++;
+      }
+      if (n == 0)
+         return null;
+      batch.fill(n);
+      return batch;
    }
 
    // Methods that implement UpdateScan
 
    public void setInt(String fldname, int val) {
-      rp.setInt(currentslot, fldname, val);
+      if (newrecord != null)
+         newrecord.put(fldname, new Constant(val));
+      else {
+         int col = indexOf(fldname);
+         zones.widen(rp.block().number(), col, val);
+         unset.clear(col);
+         rp.setInt(currentslot, fldname, val);
+      }
    }
    
    public void setString(String fldname, String val) {
-      rp.setString(currentslot, fldname, val);
+      int col = indexOf(fldname);
+      if (newrecord != null)
+         newrecord.put(fldname, new Constant(val));
+      else if (encoded[col])
+         rp.setInt(currentslot, fldname, dict.encode(col, val));
+      else if (overflows[col]) {
+         overflow.free(rp.getString(currentslot, col));
+         rp.setString(currentslot, fldname, overflow.write(val));
+      }
+      else
+         rp.setString(currentslot, fldname, val);
    }
 
    public void setVal(String fldname, Constant val) {
@@ -86,50 +257,306 @@ public class TableScan implements UpdateScan {
          setString(fldname, val.asString());
    }
 
+   /**
+    * Insert a new record, in the current block if there is
+    * room after the current slot, and otherwise in the first block
+    * that the free-space map does not list as full.
+    * A block found to be full is marked as such in the map.
+    * In a SLOTTED table, the record is written once
+    * its values are known.
+    * The zones of the fields left unset are widened
+    * to include zero once the scan moves on.
+    * The long string fields of the new record are
+    * emptied, since they may hold the values of a deleted
+    * record that refer to freed blocks of the overflow file.
+    */
    public void insert() {
-      currentslot = rp.insertAfter(currentslot);
-      while (currentslot < 0) {
-         if (atLastBlock()) 
-            moveToNewBlock();
-         else 
-            moveToBlock(rp.block().number()+1);
-         currentslot = rp.insertAfter(currentslot);
+      finishInsert();
+      if (layout.format() == Layout.SLOTTED) {
+         tx.xLockTable(filename);
+         newrecord = new HashMap<>();
+      }
+      else {
+         tx.ixLockTable(filename);
+         findSlot(null);
+         for (int col : zones.columns())
+            unset.set(col);
+         for (int col=0; col<overflows.length; col++)
+            if (overflows[col])
+               rp.setString(currentslot, fields.get(col), "");
       }
    }
 
    public void delete() {
+      finishInsert();
+      for (int col=0; col<overflows.length; col++)
+         if (overflows[col])
+            overflow.free(rp.getString(currentslot, col));
       rp.delete(currentslot);
+      freespace.setFull(rp.block().number(), false);
    }
 
    public void moveToRid(RID rid) {
       close();
       BlockId blk = new BlockId(filename, rid.blockNumber());
-      rp = new RecordPage(tx, blk, layout);
+      tx.sLockRecord(blk, rid.slot());
+      rp = RecordBlock.open(tx, blk, layout);
       currentslot = rid.slot();
+      skipcurrent = false;
    }
 
    public RID getRid() {
+      finishInsert();
       return new RID(rp.block().number(), currentslot);
    }
 
+   /**
+    * Tell the scan the predicate that its records are to satisfy.
+    * The scan then skips the blocks that the table's zone map
+    * shows to hold no such record, and the records whose
+    * encoded fields hold other values than the predicate requires.
+    * Of the other records, those that fail a term comparing
+    * a field with a constant are rejected in the page.
+    * The scan may still return records not satisfying the predicate.
+    * The method is called before the scan is read.
+    * It locks the table at once, so that no zone can change
+    * between its use and the reading of its block, unless the
+    * scan locks its records for update; see {@link #lockForUpdate()}.
+    * @param pred the predicate selecting the scan's records
+    */
+   public void setPredicate(Predicate pred) {
+      this.pred = pred;
+      lockTable();
+      filter = ZoneFilter.create(zones, layout.schema(), pred);
+      codefilter = CodeFilter.create(dict, layout.schema(), pred);
+      recfilter = RecordFilter.create(layout, pred);
+      beforeFirst();
+   }
+
+   /**
+    * Have the scan lock each record it returns in exclusive mode,
+    * under an intention lock on the table, instead of locking the
+    * table in shared mode. The update planners call the method
+    * before reading the records to be modified.
+    * Each record is locked before its values are tested, so that
+    * the test never sees the uncommitted values of another
+    * transaction; the lock on a record that fails the test is
+    * released at once, unless the transaction held one before.
+    * Records that other transactions insert, or whose deletion they
+    * roll back, after the scan has passed their slot are not seen,
+    * since no lock covers the slots the scan finds empty.
+    * A SLOTTED table is locked exclusively as a whole instead,
+    * since its modifications would need such a lock anyway.
+    * The method is called before the scan is read.
+    */
+   public void lockForUpdate() {
+      forUpdate = true;
+   }
+
+   /**
+    * Have the scan take only an intention lock on the table,
+    * and no lock on its records, so that it reads them as they
+    * now are, committed or not. The statistics manager scans
+    * tables this way, since its counts are only estimates, and a
+    * refresh of them must neither wait for the writers of a table,
+    * nor hold them up until the refreshing transaction ends.
+    * The scan still waits for a table being rewritten as a whole.
+    * The method is called before the scan is read.
+    */
+   public void lockForEstimate() {
+      estimating = true;
+   }
+
+   /**
+    * Confine the scan to the specified range of blocks,
+    * and position it before the first record of the range.
+    * The table must hold the first block of the range.
+    * @param first the number of the first block read
+    * @param end the number of the block after the last one read
+    */
+   public void setRange(int first, int end) {
+      this.first = first;
+      this.end = end;
+      beforeFirst();
+   }
+
+   /**
+    * Return a copy of the specified values of a new record in
+    * which the values of the encoded fields are replaced by their
+    * codes, and the values of the long string fields by the strings
+    * that their record holds, writing them to the overflow file.
+    * @param layout the table's layout
+    * @param dict the table's dictionary
+    * @param overflow the table's overflow file
+    * @param vals the values of the record's fields
+    * @return the values to be stored
+    */
+   static Map<String,Constant> storedValues(Layout layout, StringDictionary dict, OverflowFile overflow,
+                                            Map<String,Constant> vals) {
+      Schema sch = layout.schema();
+      Map<String,Constant> result = vals;
+      for (Map.Entry<String,Constant> e : vals.entrySet()) {
+         String fldname = e.getKey();
+         if (!sch.isEncoded(fldname) && !layout.overflows(fldname))
+            continue;
+         if (result == vals)
+            result = new HashMap<>(vals);
+         if (sch.isEncoded(fldname))
+            result.put(fldname, new Constant(dict.encode(sch.indexOf(fldname), e.getValue().asString())));
+         else
+            result.put(fldname, new Constant(overflow.write(e.getValue().asString())));
+      }
+      return result;
+   }
+
    // Private auxiliary methods
 
+   /**
+    * Return the first used slot of the current block after
+    * the specified one whose codes satisfy the code filter
+    * and whose values satisfy the record filter, or -1.
+    */
+   private int nextMatch(int slot) {
+      if (codefilter == null && recfilter == null && !forUpdate)
+         return rp.nextAfter(slot);
+      if (codefilter != null && codefilter.excludesAll())
+         return -1;
+      if (!forUpdate && recfilter != null && rp instanceof RecordPage) {
+         RecordPage page = (RecordPage) rp;
+         slot = page.nextMatch(slot, recfilter);
+         while (slot >= 0 && !codesMatch(slot))
+            slot = page.nextMatch(slot, recfilter);
+         return slot;
+      }
+      slot = rp.nextAfter(slot);
+      while (slot >= 0 && !(forUpdate ? lockIfMatches(slot) : matches(slot)))
+         slot = rp.nextAfter(slot);
+      return slot;
+   }
+
+   /**
+    * Return true if the record in the specified slot
+    * satisfies the code filter and the record filter.
+    */
+   private boolean matches(int slot) {
+      return codesMatch(slot) && (recfilter == null || recfilter.matches(slots, slot));
+   }
+
+   /**
+    * Lock the table, in the mode that the scan's reads need.
+    */
+   private void lockTable() {
+      if (tableLocked)
+         return;
+      if (estimating)
+         tx.isLockTable(filename);
+      else if (!forUpdate)
+         tx.sLockTable(filename);
+      else if (layout.format() == Layout.SLOTTED)
+         tx.xLockTable(filename);
+      else
+         tx.ixLockTable(filename);
+      tableLocked = true;
+   }
+
+   /**
+    * For a scan that locks the records it returns,
+    * XLock the record in the specified slot, and return true
+    * if it is still there and satisfies the filters and the
+    * predicate. Otherwise a lock taken just for the test is released.
+    */
+   private boolean lockIfMatches(int slot) {
+      if (layout.format() == Layout.SLOTTED)
+         return matches(slot);
+      BlockId blk = rp.block();
+      boolean held = tx.hasLockRecord(blk, slot);
+      tx.xLockRecord(blk, slot);
+      currentslot = slot;
+      if (rp.nextAfter(slot - 1) == slot && matches(slot) && (pred == null || pred.isSatisfied(this)))
+         return true;
+      if (!held)
+         tx.unlockRecord(blk, slot);
+      return false;
+   }
+
+   private boolean codesMatch(int slot) {
+      return codefilter == null || codefilter.matches(col -> rp.getInt(slot, col));
+   }
+
+   /**
+    * Position the scan at a newly-claimed slot,
+    * holding the specified values if the table is SLOTTED.
+    * An exception is thrown if the record does not fit
+    * even in an empty block.
+    */
+   private void findSlot(Map<String,Constant> vals) {
+      boolean wholeblock = (currentslot < 0);
+      if (!wholeblock || !freespace.isFull(rp.block().number()))
+         currentslot = claimSlot(vals);
+      while (currentslot < 0) {
+         if (wholeblock)
+            freespace.setFull(rp.block().number(), true);
+         int next = freespace.nextFree(0);
+         boolean appended = (next >= tx.size(filename));
+         if (appended)
+            moveToNewBlock();
+         else
+            moveToBlock(next);
+         wholeblock = true;
+         currentslot = claimSlot(vals);
+         // other inserters may fill a new block of fixed-size slots first,
+         // but the block is ours alone in a SLOTTED table, which is locked
+         if (currentslot < 0 && appended
+               && (vals != null || RecordPage.slotCount(layout, tx.blockSize()) <= 0))
+            throw new RuntimeException("record too large for block in " + filename);
+      }
+   }
+
+   private int claimSlot(Map<String,Constant> vals) {
+      if (vals == null)
+         return rp.insertAfter(currentslot);
+      else
+         return ((SlottedPage) rp).insertAfter(currentslot, vals);
+   }
+
+   /**
+    * Complete the last insert: write the pending record of a
+    * SLOTTED table, if there is one, and widen the zones
+    * of the new record's unset fields.
+    */
+   private void finishInsert() {
+      if (newrecord != null) {
+         Map<String,Constant> vals = newrecord;
+         newrecord = null;
+         findSlot(storedValues(layout, dict, overflow, vals));
+         for (int col : zones.columns()) {
+            Constant val = vals.get(fields.get(col));
+            zones.widen(rp.block().number(), col, (val == null) ? 0 : val.asInt());
+         }
+      }
+      for (int col = unset.nextSetBit(0); col >= 0; col = unset.nextSetBit(col+1))
+         zones.widen(rp.block().number(), col, 0);
+      unset.clear();
+   }
+
    private void moveToBlock(int blknum) {
       close();
       BlockId blk = new BlockId(filename, blknum);
-      rp = new RecordPage(tx, blk, layout);
+      rp = RecordBlock.open(tx, blk, layout);
       currentslot = -1;
+      skipcurrent = false;
+      if (codefilter != null)
+         codefilter.refresh();
    }
 
    private void moveToNewBlock() {
       close();
+      tx.ixLockTable(filename);
       BlockId blk = tx.append(filename);
-      rp = new RecordPage(tx, blk, layout);
-      rp.format();
+      // a zero-filled block is already a formatted page of empty slots,
+      // so other inserters may use it at once
+      rp = RecordBlock.open(tx, blk, layout);
       currentslot = -1;
-   }
-
-   private boolean atLastBlock() {
-      return rp.block().number() == tx.size(filename) - 1;
+      skipcurrent = false;
    }
 }
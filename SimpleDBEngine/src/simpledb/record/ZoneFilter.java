@@ -0,0 +1,77 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.file.ZoneMap;
+import simpledb.query.Predicate;
+
+/**
+ * Decides which blocks of a table a scan for a predicate must read,
+ * using the table's zone map.
+ * A block is skipped if the zone of some field lies outside
+ * the range of values that the predicate allows for that field.
+ */
+class ZoneFilter {
+   private ZoneMap zones;
+   private int[] cols, lo, hi;
+
+   /**
+    * Create a filter for the specified predicate,
+    * or return null if the zone map cannot exclude any block.
+    * @param zones the table's zone map
+    * @param sch the table's schema
+    * @param pred the predicate selecting the records
+    * @return the filter, or null
+    */
+   static ZoneFilter create(ZoneMap zones, Schema sch, Predicate pred) {
+      List<String> fields = sch.fields();
+      List<int[]> bounds = new ArrayList<>();
+      for (int col : zones.columns()) {
+         String fldname = fields.get(col);
+         if (sch.type(fldname) != INTEGER)
+            continue;
+         int[] range = pred.intRange(fldname);
+         if (range[0] != Integer.MIN_VALUE || range[1] != Integer.MAX_VALUE)
+            bounds.add(new int[] {col, range[0], range[1]});
+      }
+      return bounds.isEmpty() ? null : new ZoneFilter(zones, bounds);
+   }
+
+   private ZoneFilter(ZoneMap zones, List<int[]> bounds) {
+      this.zones = zones;
+      int n = bounds.size();
+      cols = new int[n];
+      lo = new int[n];
+      hi = new int[n];
+      for (int i=0; i<n; i++) {
+         cols[i] = bounds.get(i)[0];
+         lo[i] = bounds.get(i)[1];
+         hi[i] = bounds.get(i)[2];
+      }
+   }
+
+   /**
+    * Return true if the specified block may hold
+    * a record satisfying the predicate.
+    * @param blknum the block number
+    */
+   boolean mayMatch(int blknum) {
+      for (int i=0; i<cols.length; i++)
+         if (!zones.mayHold(blknum, cols[i], lo[i], hi[i]))
+            return false;
+      return true;
+   }
+
+   /**
+    * Return the number of the first block at or after the specified one
+    * that may hold a record satisfying the predicate.
+    * @param blknum the block to start from
+    * @param size the number of blocks in the table
+    * @return a block number, or the size if no later block can match
+    */
+   int nextBlock(int blknum, int size) {
+      while (blknum < size && !mayMatch(blknum))
+         blknum++;
+      return blknum;
+   }
+}
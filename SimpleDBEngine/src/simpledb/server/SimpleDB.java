@@ -72,6 +72,14 @@ public class SimpleDB {
    public Transaction newTx() {
       return new Transaction(fm, lm, bm);
    }
+
+   /**
+    * Create a read-only transaction, which reads
+    * a snapshot of the database without locking.
+    */
+   public Transaction newReadOnlyTx() {
+      return new Transaction(fm, lm, bm, true);
+   }
    
    public MetadataMgr mdMgr() {
       return mdm;
@@ -0,0 +1,23 @@
+package simpledb.test;
+
+/**
+ * The check shared by the test programs.
+ * Each check prints its description once it holds,
+ * and a failed one ends the program with an exception,
+ * so that a failing test exits with a non-zero status.
+ */
+public class Check {
+   private Check() {}
+
+   /**
+    * Print the description if the condition holds,
+    * and throw an exception naming it otherwise.
+    * @param ok the condition
+    * @param msg the description of the condition
+    */
+   public static void check(boolean ok, String msg) {
+      if (!ok)
+         throw new RuntimeException("failed: " + msg);
+      System.out.println("ok: " + msg);
+   }
+}
@@ -0,0 +1,135 @@
+package simpledb.tx;
+
+import java.util.function.ToIntFunction;
+import simpledb.buffer.Buffer;
+import simpledb.file.*;
+
+/**
+ * A transaction's handle on a block that it has pinned.
+ * The handle caches the buffer holding the block,
+ * and remembers whether the transaction has already
+ * obtained the lock needed to read it, so that repeated
+ * reads of the block (such as a record page testing
+ * each of its slot flags) need no lock or buffer lookups.
+ * The handle is valid until the block is unpinned.
+ */
+public class BlockHandle {
+   private Transaction tx;
+   private BlockId blk;
+   private Buffer buff;
+   private boolean locked = false;
+   private Page snapshot;
+   private int snapshotWrites;
+
+   BlockHandle(Transaction tx, BlockId blk, Buffer buff) {
+      this.tx = tx;
+      this.blk = blk;
+      this.buff = buff;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   /**
+    * Return the integer value stored at the
+    * specified offset of the block.
+    * @param offset the byte offset within the block
+    * @return the integer stored at that offset
+    */
+   public int getInt(int offset) {
+      if (tx.isReadOnly())
+         return snapshotPage().getInt(offset);
+      lock();
+      synchronized (buff) {
+         return buff.contents().getInt(offset);
+      }
+   }
+
+   /**
+    * Return the string value stored at the
+    * specified offset of the block.
+    * @param offset the byte offset within the block
+    * @return the string stored at that offset
+    */
+   public String getString(int offset) {
+      if (tx.isReadOnly())
+         return snapshotPage().getString(offset);
+      lock();
+      synchronized (buff) {
+         return buff.contents().getString(offset);
+      }
+   }
+
+   /**
+    * Return true if the string stored at the
+    * specified offset of the block has the specified bytes.
+    * The string is compared in place, without being read.
+    * @param offset the byte offset within the block
+    * @param b the bytes of a string
+    * @return true if the stored string has those bytes
+    */
+   public boolean hasString(int offset, byte[] b) {
+      if (tx.isReadOnly())
+         return snapshotPage().hasString(offset, b);
+      lock();
+      synchronized (buff) {
+         return buff.contents().hasString(offset, b);
+      }
+   }
+
+   /**
+    * Return a copy of the specified range of bytes of the block,
+    * read under a single latch.
+    * @param offset the byte offset within the block
+    * @param length the number of bytes
+    * @return the bytes of that range
+    */
+   public byte[] getRange(int offset, int length) {
+      if (tx.isReadOnly())
+         return snapshotPage().getRange(offset, length);
+      lock();
+      synchronized (buff) {
+         return buff.contents().getRange(offset, length);
+      }
+   }
+
+   /**
+    * Apply the specified search to the contents of the block,
+    * read under a single latch, and return its result.
+    * A search through many values of the block, such as
+    * a test of each of its records, thus needs one latch
+    * rather than one for each value it reads.
+    * @param search a function reading the page of the block
+    * @return the result of the search
+    */
+   public int search(ToIntFunction<Page> search) {
+      if (tx.isReadOnly())
+         return search.applyAsInt(snapshotPage());
+      lock();
+      synchronized (buff) {
+         return search.applyAsInt(buff.contents());
+      }
+   }
+
+   private void lock() {
+      if (!locked) {
+         tx.sLock(blk);
+         locked = true;
+      }
+   }
+
+   /**
+    * Return the transaction's snapshot of the block.
+    * The page is fetched again only if the transaction
+    * has written something since it was last fetched.
+    */
+   private Page snapshotPage() {
+      int writes = tx.snapshotWrites();
+      if (snapshot == null || writes != snapshotWrites) {
+         snapshot = tx.snapshotPage(blk);
+         snapshotWrites = writes;
+      }
+      return snapshot;
+   }
+}
@@ -6,6 +6,10 @@ import simpledb.buffer.*;
 
 /**
  * Manage the transaction's currently-pinned buffers. 
+ * The workers of a parallel scan pin blocks for the same
+ * transaction, so the list is updated under its monitor;
+ * the buffer manager is called outside of it, since a pin may wait
+ * for a buffer that another worker is about to unpin.
  * @author Edward Sciore
  */
 class BufferList {
@@ -24,7 +28,7 @@ class BufferList {
     * @param blk a reference to the disk block
     * @return the buffer pinned to that block
     */
-   Buffer getBuffer(BlockId blk) {
+   synchronized Buffer getBuffer(BlockId blk) {
       return buffers.get(blk);
    }
    
@@ -34,8 +38,10 @@ class BufferList {
     */
    void pin(BlockId blk) {
       Buffer buff = bm.pin(blk);
-      buffers.put(blk, buff);
-      pins.add(blk);
+      synchronized (this) {
+         buffers.put(blk, buff);
+         pins.add(blk);
+      }
    }
    
    /**
@@ -43,22 +49,28 @@ class BufferList {
     * @param blk a reference to the disk block
     */
    void unpin(BlockId blk) {
-      Buffer buff = buffers.get(blk);
+      Buffer buff;
+      synchronized (this) {
+         buff = buffers.get(blk);
+         pins.remove(blk);
+         if (!pins.contains(blk))
+            buffers.remove(blk);
+      }
       bm.unpin(buff);
-      pins.remove(blk);
-      if (!pins.contains(blk))
-         buffers.remove(blk);
    }
    
    /**
     * Unpin any buffers still pinned by this transaction.
     */
    void unpinAll() {
-      for (BlockId blk : pins) {
-         Buffer buff = buffers.get(blk);
-         bm.unpin(buff);
+      List<Buffer> unpinned = new ArrayList<>();
+      synchronized (this) {
+         for (BlockId blk : pins)
+            unpinned.add(buffers.get(blk));
+         buffers.clear();
+         pins.clear();
       }
-      buffers.clear();
-      pins.clear();
+      for (Buffer buff : unpinned)
+         bm.unpin(buff);
    }
 }
\ No newline at end of file
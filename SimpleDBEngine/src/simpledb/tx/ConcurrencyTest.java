@@ -4,6 +4,7 @@ import simpledb.buffer.BufferMgr;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 import simpledb.server.SimpleDB;
+import simpledb.tx.concurrency.LockAbortException;
 
 public class ConcurrencyTest {
    private static FileMgr fm;
@@ -23,8 +24,8 @@ public class ConcurrencyTest {
 
    static class A implements Runnable { 
       public void run() {
+         Transaction txA = new Transaction(fm, lm, bm);
          try {
-            Transaction txA = new Transaction(fm, lm, bm);
             BlockId blk1 = new BlockId("testfile", 1);
             BlockId blk2 = new BlockId("testfile", 2);
             txA.pin(blk1);
@@ -40,14 +41,18 @@ public class ConcurrencyTest {
             System.out.println("Tx A: commit");
             
          }
+         catch(LockAbortException e) {
+            System.out.println("Tx A: aborted as deadlock victim");
+            txA.rollback();
+         }
          catch(InterruptedException e) {};
       }
    }
 
    static class B implements Runnable {
       public void run() {
+         Transaction txB = new Transaction(fm, lm, bm);
          try {
-            Transaction txB = new Transaction(fm, lm, bm);
             BlockId blk1 = new BlockId("testfile", 1);
             BlockId blk2 = new BlockId("testfile", 2);
             txB.pin(blk1);
@@ -62,14 +67,18 @@ public class ConcurrencyTest {
             txB.commit();
             System.out.println("Tx B: commit");
          }
+         catch(LockAbortException e) {
+            System.out.println("Tx B: aborted as deadlock victim");
+            txB.rollback();
+         }
          catch(InterruptedException e) {};
       }
    }
 
    static class C implements Runnable {
       public void run() {
+         Transaction txC = new Transaction(fm, lm, bm);
          try {
-            Transaction txC = new Transaction(fm, lm, bm);
             BlockId blk1 = new BlockId("testfile", 1);
             BlockId blk2 = new BlockId("testfile", 2);
             txC.pin(blk1);
@@ -85,6 +94,10 @@ public class ConcurrencyTest {
             txC.commit();
             System.out.println("Tx C: commit");
          }
+         catch(LockAbortException e) {
+            System.out.println("Tx C: aborted as deadlock victim");
+            txC.rollback();
+         }
          catch(InterruptedException e) {};
       }
    }
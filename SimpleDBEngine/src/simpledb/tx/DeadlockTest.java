@@ -0,0 +1,65 @@
+package simpledb.tx;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.server.SimpleDB;
+import simpledb.tx.concurrency.LockAbortException;
+
+public class DeadlockTest {
+   private static FileMgr fm;
+   private static LogMgr lm;
+   private static BufferMgr bm;
+
+   public static void main(String[] args) throws Exception {
+      //initialize the database system
+      SimpleDB db = new SimpleDB("deadlocktest", 400, 8);
+      fm = db.fileMgr();
+      lm = db.logMgr();
+      bm = db.bufferMgr();
+      Transaction txA = new Transaction(fm, lm, bm);
+      Transaction txB = new Transaction(fm, lm, bm);
+      long start = System.currentTimeMillis();
+      Thread a = new Thread(new Worker("A", txA, 1, 2));
+      Thread b = new Thread(new Worker("B", txB, 2, 1));
+      a.start(); b.start();
+      a.join(); b.join();
+      long elapsed = System.currentTimeMillis() - start;
+      System.out.println("deadlock resolved after " + elapsed + " ms");
+      System.out.println("lock wait times: A " + txA.lockWaitTime()
+            + " ms, B " + txB.lockWaitTime() + " ms");
+   }
+
+   static class Worker implements Runnable {
+      private String name;
+      private Transaction tx;
+      private BlockId first, second;
+
+      Worker(String name, Transaction tx, int first, int second) {
+         this.name = name;
+         this.tx = tx;
+         this.first = new BlockId("testfile", first);
+         this.second = new BlockId("testfile", second);
+      }
+
+      public void run() {
+         try {
+            tx.pin(first);
+            tx.pin(second);
+            System.out.println("Tx " + name + ": request xlock " + first.number());
+            tx.setInt(first, 0, 0, false);
+            System.out.println("Tx " + name + ": receive xlock " + first.number());
+            Thread.sleep(500);
+            System.out.println("Tx " + name + ": request xlock " + second.number());
+            tx.setInt(second, 0, 0, false);
+            System.out.println("Tx " + name + ": receive xlock " + second.number());
+            tx.commit();
+         }
+         catch(LockAbortException e) {
+            System.out.println("Tx " + name + ": aborted as deadlock victim");
+            tx.rollback();
+         }
+         catch(InterruptedException e) {};
+      }
+   }
+}
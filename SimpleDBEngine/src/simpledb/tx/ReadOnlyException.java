@@ -0,0 +1,13 @@
+package simpledb.tx;
+
+/**
+ * A runtime exception indicating that a read-only
+ * transaction tried to change a file other than
+ * that of one of its temporary tables.
+ */
+@SuppressWarnings("serial")
+public class ReadOnlyException extends RuntimeException {
+   public ReadOnlyException(String filename) {
+      super("read-only transaction cannot modify " + filename);
+   }
+}
@@ -0,0 +1,183 @@
+package simpledb.tx;
+
+import java.util.Iterator;
+import simpledb.log.LogMgr;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import simpledb.record.*;
+import simpledb.server.SimpleDB;
+import static simpledb.test.Check.check;
+
+public class RecordLockTest {
+   private static SimpleDB db;
+   private static Layout layout;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("recordlocktest");
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      RID[] rids = new RID[4];
+      for (int i=0; i<rids.length; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec"+i);
+         rids[i] = ts.getRid();
+      }
+      ts.close();
+      tx.commit();
+
+      // two transactions update different records of the same block
+      Transaction tx1 = db.newTx();
+      update(tx1, rids[0], 100);
+      Thread t = new Thread(() -> {
+         Transaction tx2 = db.newTx();
+         update(tx2, rids[1], 200);
+         tx2.commit();
+      });
+      t.start();
+      t.join(5000);
+      check(!t.isAlive(), "writers of different records do not block");
+
+      // a scan of the table waits for the writer's intention lock
+      Thread scanner = new Thread(() -> {
+         Transaction tx3 = db.newTx();
+         TableScan s = new TableScan(tx3, "T", layout);
+         int sum = 0;
+         while (s.next())
+            sum += s.getInt("A");
+         s.close();
+         tx3.commit();
+         System.out.println("scan sum " + sum);
+      });
+      scanner.start();
+      scanner.join(1000);
+      check(scanner.isAlive(), "a table scan waits for an uncommitted writer");
+      tx1.commit();
+      scanner.join(5000);
+      check(!scanner.isAlive(), "the scan proceeds after the commit");
+
+      // a planned update tests each record only once it holds its lock,
+      // so it waits for the records that another update has changed
+      Planner planner = db.planner();
+      tx = db.newTx();
+      planner.executeUpdate("create table U(a int, b varchar(9))", tx);
+      for (int i=0; i<100; i++)
+         planner.executeUpdate("insert into U(a, b) values(" + i + ", 'rec" + i + "')", tx);
+      tx.commit();
+      tx1 = db.newTx();
+      check(planner.executeUpdate("update U set b = 'one' where a = 1", tx1) == 1, "first update");
+      boolean[] updated = {false};
+      Thread other = new Thread(() -> {
+         Transaction tx2 = db.newTx();
+         updated[0] = planner.executeUpdate("update U set b = 'two' where a = 2", tx2) == 1;
+         planner.executeUpdate("delete from U where a = 3", tx2);
+         tx2.commit();
+      });
+      other.start();
+      other.join(1000);
+      check(other.isAlive(), "the second update waits for the record the first changed");
+      check(planner.executeUpdate("update U set b = 'three' where a = 3", tx1) == 1, "the first update goes on");
+      tx1.commit();
+      other.join(5000);
+      check(!other.isAlive() && updated[0], "the second update proceeds after the commit");
+      tx = db.newTx();
+      Scan s = planner.createQueryPlan("select b from U where a < 4", tx).open();
+      String found = "";
+      while (s.next())
+         found += s.getString("b") + " ";
+      s.close();
+      tx.commit();
+      check(found.equals("rec0 one two "), "both updates kept");
+
+      // an update whose predicate the uncommitted values of
+      // another transaction fail still sees the rolled-back record
+      tx = db.newTx();
+      planner.executeUpdate("create table V(id int, grp int, name varchar(9))", tx);
+      for (int i=0; i<20; i++)
+         planner.executeUpdate("insert into V(id, grp, name) values(" + i + ", 0, 'a')", tx);
+      tx.commit();
+      tx1 = db.newTx();
+      planner.executeUpdate("update V set grp = 99 where id = 5", tx1);
+      int[] renamed = {0};
+      other = new Thread(() -> {
+         Transaction tx2 = db.newTx();
+         renamed[0] = planner.executeUpdate("update V set name = 'zz' where grp = 0", tx2);
+         tx2.commit();
+      });
+      other.start();
+      other.join(1000);
+      check(other.isAlive(), "the update waits for the changed record");
+      tx1.rollback();
+      other.join(5000);
+      check(!other.isAlive() && renamed[0] == 20, "every record updated once the change rolls back");
+      tx = db.newTx();
+      s = planner.createQueryPlan("select name from V where id = 5", tx).open();
+      check(s.next() && s.getString("name").equals("zz"), "no update lost");
+      s.close();
+      tx.commit();
+
+      // a statistics refresh that waits for a table lock holds up no other planning
+      tx = db.newTx();
+      planner.executeUpdate("create table W(A int) using slotted", tx);
+      planner.executeUpdate("insert into W(A) values(1)", tx);
+      tx.commit();
+      tx1 = db.newTx();
+      planner.executeUpdate("insert into W(A) values(2)", tx1);
+      Thread refresher = new Thread(() -> {
+         Transaction tx2 = db.newTx();
+         Layout wl = db.mdMgr().getLayout("w", tx2);
+         // one of these calls refreshes the statistics, scanning W
+         for (int i=0; i<=100; i++)
+            db.mdMgr().getStatInfo("w", wl, tx2);
+         tx2.commit();
+      });
+      refresher.start();
+      refresher.join(1000);
+      check(refresher.isAlive(), "the refresh waits for the table's writer");
+      Thread planning = new Thread(() -> {
+         Transaction tx3 = db.newTx();
+         planner.createQueryPlan("select name from V where id = 5", tx3);
+         tx3.commit();
+      });
+      planning.start();
+      planning.join(5000);
+      check(!planning.isAlive(), "other transactions still get statistics");
+      tx1.commit();
+      refresher.join(5000);
+      check(!refresher.isAlive(), "the refresh completes after the commit");
+
+      // writers of different records append to and flush the log at the same time
+      LogMgr lm = db.logMgr();
+      int before = 0;
+      for (Iterator<byte[]> iter = lm.iterator(); iter.hasNext(); iter.next())
+         before++;
+      Thread[] loggers = new Thread[4];
+      for (int k=0; k<loggers.length; k++) {
+         byte[] rec = new byte[20 + 7*k];
+         loggers[k] = new Thread(() -> {
+            for (int i=0; i<2000; i++)
+               lm.flush(lm.append(rec));
+         });
+         loggers[k].start();
+      }
+      for (Thread logger : loggers)
+         logger.join();
+      int after = 0;
+      for (Iterator<byte[]> iter = lm.iterator(); iter.hasNext(); iter.next())
+         after++;
+      check(after == before + 8000, "concurrent flushes keep the log intact");
+      System.out.println("done");
+   }
+
+   private static void update(Transaction tx, RID rid, int val) {
+      TableScan ts = new TableScan(tx, "T", layout);
+      ts.moveToRid(rid);
+      ts.setInt("A", val);
+      ts.close();
+   }
+}
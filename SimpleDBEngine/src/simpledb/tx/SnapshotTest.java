@@ -0,0 +1,169 @@
+package simpledb.tx;
+
+import simpledb.file.BlockId;
+import simpledb.record.*;
+import simpledb.plan.Planner;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import static simpledb.test.Check.check;
+
+public class SnapshotTest {
+   private static SimpleDB db;
+   private static Layout layout;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("snapshottest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      layout = new Layout(sch);
+
+      Transaction tx1 = db.newTx();
+      TableScan ts = new TableScan(tx1, "T", layout);
+      for (int i=0; i<30; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec"+i);
+      }
+      ts.close();
+      tx1.commit();
+
+      // a writer modifies every record and holds its XLocks
+      Transaction reader1 = db.newReadOnlyTx();
+      Transaction tx2 = db.newTx();
+      ts = new TableScan(tx2, "T", layout);
+      while (ts.next()) {
+         int a = ts.getInt("A");
+         if (a % 3 == 0)
+            ts.delete();
+         else
+            ts.setString("B", "upd"+a);
+      }
+      for (int i=30; i<40; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "new"+i);
+      }
+      ts.close();
+
+      // the reader does not block, and sees the committed state
+      check(sum(reader1, "rec") == 435, "snapshot ignores uncommitted changes");
+      tx2.commit();
+      check(sum(reader1, "rec") == 435, "snapshot ignores later commits");
+      reader1.commit();
+
+      Transaction reader2 = db.newReadOnlyTx();
+      check(sum(reader2, "") == 300 + 345, "new snapshot sees committed changes");
+      reader2.commit();
+
+      // with no snapshot open, a bulk write keeps no old versions
+      Transaction tx3 = db.newTx();
+      ts = new TableScan(tx3, "T", layout);
+      while (ts.next())
+         ts.setString("B", "bulk"+ts.getInt("A"));
+      ts.close();
+      boolean kept = false;
+      for (int b=0; b<tx3.size("T.tbl"); b++)
+         kept = kept || tx3.hasVersions(new BlockId("T.tbl", b));
+      check(!kept, "no versions kept without readers");
+
+      // a snapshot does not wait for a writer whose changes were not kept,
+      // but undoes them with the before-images in the writer's log records
+      Transaction reader3 = db.newReadOnlyTx();
+      check(count(reader3, "bulk") == 0 && sum(reader3, "") == 300 + 345, "snapshot undoes the unrecorded changes");
+      tx3.commit();
+      check(count(reader3, "bulk") == 0, "snapshot ignores the writer's commit");
+      Transaction reader4 = db.newReadOnlyTx();
+      check(sum(reader4, "bulk") == 300 + 345, "new snapshot sees the writer's changes");
+
+      // once a snapshot is open, writers keep the old versions again
+      Transaction tx4 = db.newTx();
+      ts = new TableScan(tx4, "T", layout);
+      while (ts.next())
+         ts.setString("B", "late"+ts.getInt("A"));
+      ts.close();
+      check(tx4.hasVersions(new BlockId("T.tbl", 0)), "versions kept for the reader");
+      check(sum(reader4, "bulk") == 300 + 345, "snapshot ignores the later writer");
+      tx4.commit();
+      reader3.commit();
+      reader4.commit();
+
+      // an unrecorded writer that inserts and deletes, then rolls back
+      Transaction tx5 = db.newTx();
+      ts = new TableScan(tx5, "T", layout);
+      while (ts.next())
+         if (ts.getInt("A") >= 30)
+            ts.delete();
+         else
+            ts.setString("B", "gone"+ts.getInt("A"));
+      for (int i=40; i<45; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "gone"+i);
+      }
+      ts.close();
+      Transaction reader5 = db.newReadOnlyTx();
+      check(sum(reader5, "late") == 300 + 345, "snapshot undoes inserts and deletes");
+      tx5.rollback();
+      check(sum(reader5, "late") == 300 + 345, "snapshot unaffected by the rollback");
+      reader5.commit();
+
+      // a read-only transaction cannot change a table through the planner,
+      // but may still sort into temporary tables
+      SimpleDB sqldb = new SimpleDB("snapshotsqltest");
+      Planner planner = sqldb.planner();
+      Transaction tx6 = sqldb.newTx();
+      planner.executeUpdate("create table U(A int)", tx6);
+      for (int i=0; i<5; i++)
+         planner.executeUpdate("insert into U(A) values(" + i + ")", tx6);
+      tx6.commit();
+      String[] updates = {"update U set A = 7", "insert into U(A) values(9)",
+                          "delete from U", "create table V(A int)"};
+      for (String cmd : updates) {
+         Transaction reader6 = sqldb.newReadOnlyTx();
+         boolean rejected = false;
+         try {
+            planner.executeUpdate(cmd, reader6);
+         }
+         catch (ReadOnlyException e) {
+            rejected = true;
+         }
+         reader6.rollback();
+         check(rejected, "read-only transaction rejects: " + cmd);
+      }
+      Transaction reader7 = sqldb.newReadOnlyTx();
+      Scan s = planner.createQueryPlan("select A from U order by A desc", reader7).open();
+      int first = s.next() ? s.getInt("a") : -1, rows = 1;
+      while (s.next())
+         rows++;
+      s.close();
+      reader7.commit();
+      check(first == 4 && rows == 5, "read-only transaction sorts the unchanged table");
+      System.out.println("done");
+   }
+
+   // sum the A values, checking that each B value has the expected prefix
+   private static int sum(Transaction tx, String prefix) {
+      TableScan ts = new TableScan(tx, "T", layout);
+      int sum = 0;
+      while (ts.next()) {
+         int a = ts.getInt("A");
+         if (!ts.getString("B").startsWith(prefix))
+            return -1;
+         sum += a;
+      }
+      ts.close();
+      return sum;
+   }
+
+   // count the records whose B value has the specified prefix
+   private static int count(Transaction tx, String prefix) {
+      TableScan ts = new TableScan(tx, "T", layout);
+      int count = 0;
+      while (ts.next())
+         if (ts.getString("B").startsWith(prefix))
+            count++;
+      ts.close();
+      return count;
+   }
+}
@@ -1,10 +1,11 @@
 package simpledb.tx;
 
+import java.util.*;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 import simpledb.buffer.*;
 import simpledb.tx.recovery.*;
-import simpledb.tx.concurrency.ConcurrencyMgr;
+import simpledb.tx.concurrency.*;
 
 /**
  * Provide transaction management for clients,
@@ -14,13 +15,18 @@ import simpledb.tx.concurrency.ConcurrencyMgr;
  */
 public class Transaction {
    private static int nextTxNum = 0;
-   private static final int END_OF_FILE = -1;
+   private static final int SNAPSHOT_PAGES = 32;
+   private static VersionMgr versionMgr = new VersionMgr();
    private RecoveryMgr    recoveryMgr;
    private ConcurrencyMgr concurMgr;
    private BufferMgr bm;
    private FileMgr fm;
    private int txnum;
    private BufferList mybuffers;
+   private boolean readOnly, undoing = false;
+   private int snapshot, snapshotWrites = 0;
+   private Map<BlockId,Page> snapshotPages;
+   private Set<String> tempTables = Collections.synchronizedSet(new HashSet<>());
    
    /**
     * Create a new transaction and its associated 
@@ -35,25 +41,57 @@ public class Transaction {
     * is called first.
     */
    public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm) {
+      this(fm, lm, bm, false);
+   }
+
+   /**
+    * Create a new transaction, which may be read-only.
+    * A read-only transaction reads a snapshot of the database
+    * as of the time it began, without taking any locks;
+    * see {@link simpledb.tx.concurrency.VersionMgr}.
+    * It may still write to its own temporary tables,
+    * but any attempt to change another file throws a
+    * {@link ReadOnlyException}, since the change would be
+    * made without locks and hidden from other snapshots.
+    * @param readOnly true if the transaction will not modify the database
+    */
+   public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm, boolean readOnly) {
       this.fm = fm;
       this.bm = bm;
+      this.readOnly = readOnly;
       txnum       = nextTxNumber();
       recoveryMgr = new RecoveryMgr(this, txnum, lm, bm);
-      concurMgr   = new ConcurrencyMgr();
+      concurMgr   = new ConcurrencyMgr(txnum);
       mybuffers = new BufferList(bm);
+      if (readOnly) {
+         snapshot = versionMgr.beginSnapshot(recoveryMgr::beforeImages);
+         snapshotPages = new LinkedHashMap<BlockId,Page>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<BlockId,Page> e) {
+               return size() > SNAPSHOT_PAGES;
+            }
+         };
+      }
    }
    
    /**
     * Commit the current transaction.
-    * Flush all modified buffers (and their log records),
+    * Flush the changed zones of the zone maps,
+    * flush all modified buffers (and their log records),
     * write and flush a commit record to the log,
-    * release all locks, and unpin any pinned buffers.
+    * release all locks, unpin any pinned buffers,
+    * and delete the transaction's temporary tables.
     */
    public void commit() {
+      if (!readOnly)
+         fm.flushZoneMaps();
       recoveryMgr.commit();
+      versionMgr.commit(txnum);
+      if (readOnly)
+         versionMgr.endSnapshot(snapshot);
       System.out.println("transaction " + txnum + " committed");
       concurMgr.release();
       mybuffers.unpinAll();
+      deleteTempTables();
    }
    
    /**
@@ -61,13 +99,19 @@ public class Transaction {
     * Undo any modified values,
     * flush those buffers,
     * write and flush a rollback record to the log,
-    * release all locks, and unpin any pinned buffers.
+    * release all locks, unpin any pinned buffers,
+    * and delete the transaction's temporary tables.
     */
    public void rollback() {
+      undoing = true;
       recoveryMgr.rollback();
+      versionMgr.rollback(txnum);
+      if (readOnly)
+         versionMgr.endSnapshot(snapshot);
       System.out.println("transaction " + txnum + " rolled back");
       concurMgr.release();
       mybuffers.unpinAll();
+      deleteTempTables();
    }
    
    /**
@@ -80,16 +124,22 @@ public class Transaction {
     */
    public void recover() {
       bm.flushAll(txnum);
+      undoing = true;
       recoveryMgr.recover();
+      undoing = false;
    }
    
    /**
     * Pin the specified block.
     * The transaction manages the buffer for the client.
+    * The returned handle can be used to read the block
+    * for as long as it remains pinned.
     * @param blk a reference to the disk block
+    * @return a handle on the pinned block
     */
-   public void pin(BlockId blk) {
+   public BlockHandle pin(BlockId blk) {
       mybuffers.pin(blk);
+      return new BlockHandle(this, blk, mybuffers.getBuffer(blk));
    }
    
    /**
@@ -106,15 +156,22 @@ public class Transaction {
     * Return the integer value stored at the
     * specified offset of the specified block.
     * The method first obtains an SLock on the block,
-    * then it calls the buffer to retrieve the value.
+    * then it calls the buffer to retrieve the value
+    * while holding the buffer's latch.
+    * A read-only transaction instead reads the value
+    * from its snapshot of the block.
     * @param blk a reference to a disk block
     * @param offset the byte offset within the block
     * @return the integer stored at that offset
     */
    public int getInt(BlockId blk, int offset) {
+      if (readOnly)
+         return snapshotPage(blk).getInt(offset);
       concurMgr.sLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getInt(offset);
+      synchronized (buff) {
+         return buff.contents().getInt(offset);
+      }
    }
    
    /**
@@ -127,9 +184,13 @@ public class Transaction {
     * @return the string stored at that offset
     */
    public String getString(BlockId blk, int offset) {
+      if (readOnly)
+         return snapshotPage(blk).getString(offset);
       concurMgr.sLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getString(offset);
+      synchronized (buff) {
+         return buff.contents().getString(offset);
+      }
    }
    
    /**
@@ -146,14 +207,18 @@ public class Transaction {
     * @param val the value to be stored
     */
    public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
+      checkWritable(blk.fileName());
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setInt(buff, offset, val);
-      Page p = buff.contents();
-      p.setInt(offset, val);
-      buff.setModified(txnum, lsn);
+      synchronized (buff) {
+         int lsn = -1;
+         if (okToLog)
+            lsn = recoveryMgr.setInt(buff, offset, val);
+         saveVersion(buff, offset, Integer.BYTES);
+         Page p = buff.contents();
+         p.setInt(offset, val);
+         buff.setModified(txnum, lsn);
+      }
    }
    
    /**
@@ -170,44 +235,402 @@ public class Transaction {
     * @param val the value to be stored
     */
    public void setString(BlockId blk, int offset, String val, boolean okToLog) {
+      checkWritable(blk.fileName());
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setString(buff, offset, val);
-      Page p = buff.contents();
-      p.setString(offset, val);
-      buff.setModified(txnum, lsn);
+      synchronized (buff) {
+         int lsn = -1;
+         if (okToLog)
+            lsn = recoveryMgr.setString(buff, offset, val);
+         saveVersion(buff, offset, Page.maxLength(val.length()));
+         Page p = buff.contents();
+         p.setString(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Store raw bytes at the specified offset of the specified block,
+    * without logging.
+    * The method is used to fill space that was free,
+    * and that becomes unreachable again if the transaction
+    * rolls back the (logged) change that allocated it.
+    * @param blk a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param b the bytes to be stored
+    */
+   public void setRange(BlockId blk, int offset, byte[] b) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         saveVersion(buff, offset, b.length);
+         buff.contents().setRange(offset, b);
+         buff.setModified(txnum, -1);
+      }
+   }
+
+   /**
+    * Overwrite the whole of the specified block
+    * with the specified page image, for a bulk load.
+    * Instead of the old contents, just the block is logged,
+    * as a LOAD record; undoing the load empties the block.
+    * The block must therefore be empty, as a newly-appended
+    * block is, and the caller should hold an XLock on the table,
+    * so that no other transaction uses the block meanwhile.
+    * @param blk a reference to the disk block
+    * @param image the new contents of the block
+    */
+   public void loadBlock(BlockId blk, Page image) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         int lsn = recoveryMgr.loadBlock(buff);
+         saveVersion(buff, 0, fm.blockSize());
+         buff.contents().setRange(0, image.getRange(0, fm.blockSize()));
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Mark the specified record slot as in use,
+    * by setting its flag bit in the word at the specified offset.
+    * Instead of an update of the flag, the change is logged
+    * as a single record-level INSERT record.
+    * Since other transactions may be changing other bits
+    * of the same word, the bit is set while holding the buffer's latch.
+    * The method returns true if the fields of the new record
+    * may be written without logging; that is the case unless
+    * this transaction previously deleted the slot's record.
+    * @param blk a reference to the disk block
+    * @param slot the slot being claimed
+    * @param offset the byte offset of the word holding the slot's flag
+    * @param bit the position of the flag within the word
+    * @return true if the record's fields need not be logged
+    */
+   public boolean insertSlot(BlockId blk, int slot, int offset, int bit) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         int lsn = recoveryMgr.insertSlot(buff, slot, offset, bit);
+         changeBit(buff, offset, bit, true);
+         buff.setModified(txnum, lsn);
+      }
+      return !recoveryMgr.emptiedSlot(blk, slot);
+   }
+
+   /**
+    * Mark the specified record slot as empty,
+    * by clearing its flag bit in the word at the specified offset.
+    * The change is logged as a single record-level DELETE record;
+    * the record's field values are left in place.
+    * @param blk a reference to the disk block
+    * @param slot the slot being emptied
+    * @param offset the byte offset of the word holding the slot's flag
+    * @param bit the position of the flag within the word
+    */
+   public void deleteSlot(BlockId blk, int slot, int offset, int bit) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         int lsn = recoveryMgr.deleteSlot(buff, slot, offset, bit);
+         changeBit(buff, offset, bit, false);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Set or clear a slot's flag bit without logging.
+    * This method is used to undo an insertion or deletion,
+    * and leaves the other bits of the word unchanged.
+    * @param blk a reference to the disk block
+    * @param offset the byte offset of the word holding the flag
+    * @param bit the position of the flag within the word
+    * @param used true if the slot is to be marked as in use
+    */
+   public void setSlotBit(BlockId blk, int offset, int bit, boolean used) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         changeBit(buff, offset, bit, used);
+         buff.setModified(txnum, -1);
+      }
+   }
+
+   /**
+    * Store an integer in a field of an existing record.
+    * The method behaves like setInt, except that the
+    * old value is logged as a compact UPDATE record.
+    * @param blk a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param val the value to be stored
+    */
+   public void updateInt(BlockId blk, int offset, int val) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         int lsn = recoveryMgr.updateInt(buff, offset);
+         saveVersion(buff, offset, Integer.BYTES);
+         buff.contents().setInt(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Store a string in a field of an existing record.
+    * The method behaves like setString, except that the
+    * old value is logged as a compact UPDATE record.
+    * @param blk a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param val the value to be stored
+    */
+   public void updateString(BlockId blk, int offset, String val) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         int lsn = recoveryMgr.updateString(buff, offset);
+         saveVersion(buff, offset, Page.maxLength(val.length()));
+         buff.contents().setString(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Lock the entire table stored in the specified file
+    * in shared mode, so that it can be scanned
+    * without locking its blocks or records.
+    * @param filename the name of the table file
+    */
+   public void sLockTable(String filename) {
+      if (!readOnly)
+         concurMgr.sLockTable(filename);
+   }
+
+   /**
+    * Announce that the table stored in the specified file
+    * will be read, by taking an intention lock in shared mode.
+    * @param filename the name of the table file
+    */
+   public void isLockTable(String filename) {
+      if (!readOnly)
+         concurMgr.isLockTable(filename);
+   }
+
+   /**
+    * Announce that records of the table stored in the
+    * specified file will be modified, by taking an intention lock.
+    * @param filename the name of the table file
+    */
+   public void ixLockTable(String filename) {
+      if (!readOnly)
+         concurMgr.ixLockTable(filename);
+   }
+
+   /**
+    * Lock the entire table stored in the specified file
+    * in exclusive mode.
+    * @param filename the name of the table file
+    */
+   public void xLockTable(String filename) {
+      if (!readOnly)
+         concurMgr.xLockTable(filename);
+   }
+
+   /**
+    * Lock the record in the specified slot of the block,
+    * in shared mode.
+    * @param blk a reference to the disk block
+    * @param slot the record's slot
+    */
+   public void sLockRecord(BlockId blk, int slot) {
+      if (!readOnly)
+         concurMgr.sLockRecord(blk, slot);
+   }
+
+   /**
+    * Lock the record in the specified slot of the block,
+    * in exclusive mode.
+    * @param blk a reference to the disk block
+    * @param slot the record's slot
+    */
+   public void xLockRecord(BlockId blk, int slot) {
+      if (!readOnly)
+         concurMgr.xLockRecord(blk, slot);
+   }
+
+   /**
+    * Lock the record in the specified slot of the block
+    * in exclusive mode, unless that would mean waiting.
+    * @param blk a reference to the disk block
+    * @param slot the record's slot
+    * @return true if the record is now locked
+    */
+   public boolean tryXLockRecord(BlockId blk, int slot) {
+      return readOnly || concurMgr.tryXLockRecord(blk, slot);
+   }
+
+   /**
+    * Return true if this transaction has locked the record
+    * in the specified slot of the block in exclusive mode.
+    * @param blk a reference to the disk block
+    * @param slot the record's slot
+    * @return true if the record is locked by this transaction
+    */
+   public boolean hasXLockRecord(BlockId blk, int slot) {
+      return !readOnly && concurMgr.hasXLockRecord(blk, slot);
+   }
+
+   /**
+    * Return true if this transaction has locked the record
+    * in the specified slot of the block, in any mode.
+    * @param blk a reference to the disk block
+    * @param slot the record's slot
+    * @return true if the record is locked by this transaction
+    */
+   public boolean hasLockRecord(BlockId blk, int slot) {
+      return !readOnly && concurMgr.hasLockRecord(blk, slot);
+   }
+
+   /**
+    * Release this transaction's lock on the record in the
+    * specified slot of the block, before the transaction ends.
+    * Only a lock that the transaction has used neither to read
+    * nor to change the record may be released this way.
+    * @param blk a reference to the disk block
+    * @param slot the record's slot
+    */
+   public void unlockRecord(BlockId blk, int slot) {
+      if (!readOnly)
+         concurMgr.unlockRecord(blk, slot);
    }
 
    /**
     * Return the number of blocks in the specified file.
-    * This method first obtains an SLock on the 
-    * "end of the file", before asking the file manager
-    * to return the file size.
+    * No lock is taken: the size of a file only grows, and
+    * protection against phantoms comes from the table locks
+    * (a scan's SLock on a table conflicts with an inserter's IXLock)
+    * and from the locks on index blocks.
     * @param filename the name of the file
     * @return the number of blocks in the file
     */
    public int size(String filename) {
-      BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-      concurMgr.sLock(dummyblk);
       return fm.length(filename);
    }
    
    /**
     * Append a new block to the end of the specified file
     * and returns a reference to it.
-    * This method first obtains an XLock on the
-    * "end of the file", before performing the append.
+    * The file manager's latch makes the extension atomic,
+    * and is held only while the block is written,
+    * so concurrent transactions can extend the same file.
+    * The new block is filled with zeros.
     * @param filename the name of the file
     * @return a reference to the newly-created disk block
     */
    public BlockId append(String filename) {
-      BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-      concurMgr.xLock(dummyblk);
+      checkWritable(filename);
+      noteTemp(filename);
       return fm.append(filename);
    }
    
+   /**
+    * Remove the blocks at the end of the specified file,
+    * starting with the specified block.
+    * The blocks must be empty as of the last commit, and
+    * the caller should hold an XLock on their table, so that
+    * no other transaction has uncommitted changes there.
+    * The removal is not logged, since a rollback
+    * has nothing to restore; and a buffer still holding
+    * a removed block is clean, and holds a valid empty page
+    * should the block be appended again.
+    * Blocks whose earlier contents a snapshot may still need
+    * are kept, and the file is cut after the last of them.
+    * The free-space map then shows the removed blocks as free,
+    * as a newly-appended block would be.
+    * @param filename the name of the file
+    * @param blknum the first block to remove
+    * @return the new number of blocks in the file
+    */
+   public int truncate(String filename, int blknum) {
+      checkWritable(filename);
+      int size = fm.length(filename);
+      for (int b=blknum; b<size; b++)
+         if (versionMgr.hasVersions(new BlockId(filename, b)))
+            blknum = b + 1;
+      if (blknum < size) {
+         fm.truncate(filename, blknum);
+         for (int b=blknum; b<size; b++)
+            fm.freeSpaceMap(filename).setFull(b, false);
+      }
+      return Math.min(blknum, size);
+   }
+
+   /**
+    * Return the time this transaction has spent waiting for locks.
+    * @return the total lock wait time in milliseconds
+    */
+   public long lockWaitTime() {
+      return concurMgr.lockWaitTime();
+   }
+
+   /**
+    * Return true if this transaction reads from a snapshot.
+    */
+   public boolean isReadOnly() {
+      return readOnly;
+   }
+
+   /**
+    * Return the free-space map of the specified file.
+    * The map is a hint shared by all transactions,
+    * and is not subject to locking or recovery.
+    * @param filename the name of the file
+    * @return the file's free-space map
+    */
+   public FreeSpaceMap freeSpaceMap(String filename) {
+      noteTemp(filename);
+      return fm.freeSpaceMap(filename);
+   }
+
+   /**
+    * Return the zone map of the specified file.
+    * Like the free-space map, it is shared by all transactions,
+    * and is not subject to locking or recovery.
+    * @param filename the name of the file
+    * @return the file's zone map
+    */
+   public ZoneMap zoneMap(String filename) {
+      noteTemp(filename);
+      return fm.zoneMap(filename);
+   }
+
+   /**
+    * Return the dictionary of the encoded fields of the specified file.
+    * A code, once given, never changes, so the dictionary
+    * is not subject to locking or recovery.
+    * @param filename the name of the file
+    * @return the file's dictionary
+    */
+   public StringDictionary dictionary(String filename) {
+      noteTemp(filename);
+      return fm.dictionary(filename);
+   }
+
+   /**
+    * Return true if some snapshot may still need
+    * an earlier version of the specified block.
+    * @param blk a reference to the disk block
+    */
+   public boolean hasVersions(BlockId blk) {
+      return versionMgr.hasVersions(blk);
+   }
+
    public int blockSize() {
       return fm.blockSize();
    }
@@ -216,6 +639,108 @@ public class Transaction {
       return bm.available();
    }
    
+   /**
+    * Save the old contents of a region that is about to be modified,
+    * for the benefit of read-only transactions.
+    * The caller holds the buffer's latch.
+    * Undo operations save nothing: they restore the bytes
+    * that the version manager already has.
+    */
+   private void saveVersion(Buffer buff, int offset, int length) {
+      if (!undoing)
+         versionMgr.record(txnum, buff.block(), buff.contents(), offset, length);
+      if (readOnly) {
+         snapshotPages.remove(buff.block());
+         snapshotWrites++;
+      }
+   }
+
+   /**
+    * Throw an exception if this transaction is read-only
+    * and the specified file is not a temporary table's.
+    */
+   private void checkWritable(String filename) {
+      if (readOnly && !filename.startsWith("temp"))
+         throw new ReadOnlyException(filename);
+   }
+
+   /**
+    * Remember the table of the specified file if it is temporary,
+    * so that its files are deleted when the transaction ends.
+    */
+   private void noteTemp(String filename) {
+      if (filename.startsWith("temp")) {
+         int pos = filename.indexOf('.');
+         tempTables.add(pos < 0 ? filename : filename.substring(0, pos));
+      }
+   }
+
+   /**
+    * Delete the files of the temporary tables used by this transaction,
+    * together with the file manager's maps of them.
+    * The transaction's buffers have been flushed, so no
+    * buffer will write a block of the deleted files back.
+    */
+   private void deleteTempTables() {
+      synchronized (tempTables) {
+         for (String tblname : tempTables)
+            fm.deleteTable(tblname);
+         tempTables.clear();
+      }
+   }
+
+   /**
+    * Change a single bit of the word at the specified offset,
+    * saving its old value for the benefit of read-only transactions.
+    * The caller holds the buffer's latch.
+    */
+   private void changeBit(Buffer buff, int offset, int bit, boolean val) {
+      Page p = buff.contents();
+      int word = p.getInt(offset);
+      if (!undoing)
+         versionMgr.recordBit(txnum, buff.block(), offset, bit, (word & (1 << bit)) != 0);
+      if (readOnly) {
+         snapshotPages.remove(buff.block());
+         snapshotWrites++;
+      }
+      p.setInt(offset, val ? word | (1 << bit) : word & ~(1 << bit));
+   }
+
+   /**
+    * Obtain an SLock on the block, for a block handle.
+    */
+   void sLock(BlockId blk) {
+      concurMgr.sLock(blk);
+   }
+
+   /**
+    * Return the number of writes made by this read-only transaction,
+    * so that block handles can tell when a cached snapshot page is stale.
+    */
+   int snapshotWrites() {
+      return snapshotWrites;
+   }
+
+   /**
+    * Return the contents of the block as of this transaction's snapshot.
+    * The page is reconstructed from a copy of the current buffer,
+    * and cached; the cache needs no invalidation,
+    * because the snapshot never changes.
+    * The cache is shared by the workers of a parallel scan.
+    */
+   synchronized Page snapshotPage(BlockId blk) {
+      Page p = snapshotPages.get(blk);
+      if (p == null) {
+         Buffer buff = mybuffers.getBuffer(blk);
+         synchronized (buff) {
+            p = buff.contents().copy();
+            versionMgr.reconstruct(blk, p, snapshot, txnum);
+         }
+         snapshotPages.put(blk, p);
+      }
+      return p;
+   }
+
    private static synchronized int nextTxNumber() {
       nextTxNum++;
       return nextTxNum;
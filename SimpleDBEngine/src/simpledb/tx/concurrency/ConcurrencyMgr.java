@@ -1,7 +1,11 @@
 package simpledb.tx.concurrency;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import simpledb.file.BlockId;
+import static simpledb.tx.concurrency.LockTable.*;
 
 /**
  * The concurrency manager for the transaction.
@@ -9,6 +13,23 @@ import simpledb.file.BlockId;
  * The concurrency manager keeps track of which locks the 
  * transaction currently has, and interacts with the
  * global lock table as needed. 
+ * <p>
+ * Table files are locked at the table or record level:
+ * a scan locks the whole table in S mode, while access to
+ * individual records takes an intention lock on the table
+ * followed by a lock on each record.
+ * Once a transaction holds a lock on a table,
+ * its block locks on that file are skipped;
+ * physical consistency of the blocks is then
+ * the job of the buffer latches.
+ * Other files, such as index files, are locked block by block.
+ * <p>
+ * The workers of a parallel scan read blocks for the same transaction,
+ * so the locks held are kept in concurrent maps, and a thread
+ * that finds the lock it needs already held goes on at once.
+ * The lock table expects at most one request of a transaction
+ * at a time, so the threads that do need a new lock take their
+ * turns; the lock is recorded once the lock table has granted it.
  * @author Edward Sciore
  */
 public class ConcurrencyMgr {
@@ -18,19 +39,30 @@ public class ConcurrencyMgr {
     * all transactions share the same table.
     */
    private static LockTable locktbl = new LockTable();
-   private Map<BlockId,String> locks  = new HashMap<BlockId,String>();
+   private Map<Object,Integer> locks = new ConcurrentHashMap<Object,Integer>();
+   private Set<String> tables = ConcurrentHashMap.newKeySet();
+   private ReentrantLock requesting = new ReentrantLock();
+   private int txnum;
+   private LongAdder waitTime = new LongAdder();
+
+   /**
+    * Create a concurrency manager for the specified transaction.
+    * @param txnum the id of the transaction
+    */
+   public ConcurrencyMgr(int txnum) {
+      this.txnum = txnum;
+   }
 
    /**
     * Obtain an SLock on the block, if necessary.
     * The method will ask the lock table for an SLock
-    * if the transaction currently has no locks on that block.
+    * if the transaction currently has no locks on that block,
+    * or on the table it belongs to.
     * @param blk a reference to the disk block
     */
    public void sLock(BlockId blk) {
-      if (locks.get(blk) == null) {
-         locktbl.sLock(blk);
-         locks.put(blk, "S");
-      }
+      if (!isTableLocked(blk))
+         lock(blk, S);
    }
 
    /**
@@ -41,10 +73,140 @@ public class ConcurrencyMgr {
     * @param blk a reference to the disk block
     */
    public void xLock(BlockId blk) {
-      if (!hasXLock(blk)) {
-         sLock(blk);
-         locktbl.xLock(blk);
-         locks.put(blk, "X");
+      if (!isTableLocked(blk)) {
+         lock(blk, S);
+         lock(blk, X);
+      }
+   }
+
+   /**
+    * Obtain an SLock on the entire table stored in the specified file,
+    * so that it can be scanned without further locking.
+    * @param filename the name of the table file
+    */
+   public void sLockTable(String filename) {
+      lockTable(filename, S);
+   }
+
+   /**
+    * Obtain an ISLock on the table stored in the specified file,
+    * announcing that its records will be read.
+    * @param filename the name of the table file
+    */
+   public void isLockTable(String filename) {
+      lockTable(filename, IS);
+   }
+
+   /**
+    * Obtain an IXLock on the table stored in the specified file,
+    * announcing that records of the table will be XLocked.
+    * @param filename the name of the table file
+    */
+   public void ixLockTable(String filename) {
+      lockTable(filename, IX);
+   }
+
+   /**
+    * Obtain an XLock on the entire table stored in the specified file,
+    * for an operation that rewrites the table as a whole.
+    * @param filename the name of the table file
+    */
+   public void xLockTable(String filename) {
+      lockTable(filename, X);
+   }
+
+   /**
+    * Obtain an SLock on the record at the specified slot,
+    * after an ISLock on its table.
+    * No record lock is needed if the table is already SLocked.
+    * @param blk the block containing the record
+    * @param slot the record's slot
+    */
+   public void sLockRecord(BlockId blk, int slot) {
+      int tblmode = lockTable(blk.fileName(), IS);
+      if (tblmode == IS || tblmode == IX)
+         lock(new RecordKey(blk, slot), S);
+   }
+
+   /**
+    * Obtain an XLock on the record at the specified slot,
+    * after an IXLock on its table.
+    * @param blk the block containing the record
+    * @param slot the record's slot
+    */
+   public void xLockRecord(BlockId blk, int slot) {
+      int tblmode = lockTable(blk.fileName(), IX);
+      if (tblmode != X)
+         lock(new RecordKey(blk, slot), X);
+   }
+
+   /**
+    * Obtain an XLock on the record at the specified slot,
+    * provided that no other transaction holds a lock on it.
+    * The method is used when looking for an empty slot, so that
+    * a slot emptied by an uncommitted transaction is passed over
+    * instead of waited for.
+    * @param blk the block containing the record
+    * @param slot the record's slot
+    * @return true if the lock was obtained
+    */
+   public boolean tryXLockRecord(BlockId blk, int slot) {
+      int tblmode = lockTable(blk.fileName(), IX);
+      if (tblmode == X)
+         return true;
+      RecordKey key = new RecordKey(blk, slot);
+      Integer held = locks.get(key);
+      if (held != null && held == X)
+         return true;
+      requesting.lock();
+      try {
+         if (!locktbl.tryLock(key, txnum, X))
+            return false;
+         locks.merge(key, X, LockTable::supremum);
+         return true;
+      }
+      finally {
+         requesting.unlock();
+      }
+   }
+
+   /**
+    * Return true if the transaction itself holds an XLock
+    * on the record at the specified slot.
+    * @param blk the block containing the record
+    * @param slot the record's slot
+    */
+   public boolean hasXLockRecord(BlockId blk, int slot) {
+      Integer held = locks.get(new RecordKey(blk, slot));
+      return held != null && held == X;
+   }
+
+   /**
+    * Return true if the transaction holds a lock
+    * on the record at the specified slot, in any mode.
+    * @param blk the block containing the record
+    * @param slot the record's slot
+    */
+   public boolean hasLockRecord(BlockId blk, int slot) {
+      return locks.containsKey(new RecordKey(blk, slot));
+   }
+
+   /**
+    * Release the lock on the record at the specified slot.
+    * A scan releases the lock it took to test a record that
+    * it then passes over, having neither read nor changed it.
+    * @param blk the block containing the record
+    * @param slot the record's slot
+    */
+   public void unlockRecord(BlockId blk, int slot) {
+      RecordKey key = new RecordKey(blk, slot);
+      requesting.lock();
+      try {
+         if (locks.remove(key) != null)
+            locktbl.unlock(key, txnum);
+      }
+      finally {
+         requesting.unlock();
       }
    }
 
@@ -53,13 +215,62 @@ public class ConcurrencyMgr {
     * unlock each one.
     */
    public void release() {
-      for (BlockId blk : locks.keySet()) 
-         locktbl.unlock(blk);
+      for (Object key : locks.keySet())
+         locktbl.unlock(key, txnum);
       locks.clear();
+      tables.clear();
    }
 
-   private boolean hasXLock(BlockId blk) {
-      String locktype = locks.get(blk);
-      return locktype != null && locktype.equals("X");
+   /**
+    * Return the total time that the transaction has spent
+    * waiting for the locks it has obtained.
+    * @return the wait time in milliseconds
+    */
+   public long lockWaitTime() {
+      return TimeUnit.NANOSECONDS.toMillis(waitTime.sum());
+   }
+
+   /**
+    * Return true if the block belongs to a table that this
+    * transaction has locked, so that it needs no block lock.
+    */
+   private boolean isTableLocked(BlockId blk) {
+      return tables.contains(blk.fileName());
+   }
+
+   /**
+    * Lock the table in a mode covering the specified one,
+    * and return the mode now held.
+    */
+   private int lockTable(String filename, int mode) {
+      int newmode = lock(filename, mode);
+      tables.add(filename);
+      return newmode;
+   }
+
+   /**
+    * Obtain a lock on the specified object in a mode covering
+    * the specified one, unless the transaction already has it,
+    * and return the mode now held.
+    * The lock is looked up again once it is this thread's turn
+    * to ask the lock table, since another thread of the transaction
+    * may have obtained it meanwhile.
+    */
+   private int lock(Object key, int mode) {
+      Integer held = locks.get(key);
+      if (held != null && supremum(held, mode) == held)
+         return held;
+      requesting.lock();
+      try {
+         held = locks.get(key);
+         if (held != null && supremum(held, mode) == held)
+            return held;
+         int newmode = (held == null) ? mode : supremum(held, mode);
+         waitTime.add(locktbl.lock(key, txnum, newmode));
+         return locks.merge(key, newmode, LockTable::supremum);
+      }
+      finally {
+         requesting.unlock();
+      }
    }
 }
@@ -1,103 +1,356 @@
 package simpledb.tx.concurrency;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
 import simpledb.file.BlockId;
 
 /**
- * The lock table, which provides methods to lock and unlock blocks.
- * If a transaction requests a lock that causes a conflict with an
- * existing lock, then that transaction is placed on a wait list.
- * There is only one wait list for all blocks.
- * When the last lock on a block is unlocked, then all transactions
- * are removed from the wait list and rescheduled.
- * If one of those transactions discovers that the lock it is waiting for
- * is still locked, it will place itself back on the wait list.
+ * The lock table, which provides methods to lock and unlock
+ * blocks, tables and records.
+ * A lock is identified by an object having value equality:
+ * a BlockId for a block, the file name for a table,
+ * and a RecordKey for a record.
+ * Besides shared (S) and exclusive (X) locks, the table supports
+ * the intention modes IS, IX and SIX, which a transaction takes
+ * on a table before it locks individual records of the table.
+ * A transaction that requests a lock it already holds in a
+ * different mode is granted the weakest mode covering both.
+ * <p>
+ * The table is split into shards, each protected by its own latch,
+ * so that transactions locking unrelated objects do not contend.
+ * Each lock has a FIFO queue of waiting requests.
+ * A request is granted when it is compatible with the current holders
+ * and no earlier request is still waiting; a lock conversion
+ * goes to the front of the queue.
+ * A waiting conversion holds back every new request, even one
+ * compatible with the current holders, so that a steady stream of
+ * readers cannot keep the converting transaction waiting forever.
+ * Each waiting request has its own condition, so that
+ * releasing a lock wakes only the requests it allows to proceed.
+ * <p>
+ * Waiting requests are recorded in a waits-for graph.
+ * A transaction checks the graph for a deadlock when it starts
+ * to wait, and periodically while it waits; the youngest
+ * transaction on a cycle is aborted with a LockAbortException.
+ * There is no limit on how long a request may wait otherwise.
+ * Latches are always acquired in the order shard, then graph.
  * @author Edward Sciore
  */
 class LockTable {
-   private static final long MAX_TIME = 10000; // 10 seconds
-   
-   private Map<BlockId,Integer> locks = new HashMap<BlockId,Integer>();
-   
+   static final int IS = 1, IX = 2, S = 3, SIX = 4, X = 5;
+   private static final boolean[][] COMPATIBLE = {
+         //        -     IS     IX     S      SIX    X
+         /* -   */ {true, true,  true,  true,  true,  true},
+         /* IS  */ {true, true,  true,  true,  true,  false},
+         /* IX  */ {true, true,  true,  false, false, false},
+         /* S   */ {true, true,  false, true,  false, false},
+         /* SIX */ {true, true,  false, false, false, false},
+         /* X   */ {true, false, false, false, false, false}};
+   private static final long DETECTION_INTERVAL = 1000; // 1 second
+   private static final int NUM_SHARDS = 64;
+
+   private Shard[] shards = new Shard[NUM_SHARDS];
+   private WaitsForGraph graph = new WaitsForGraph();
+   private Map<Integer,Request> waiting = new ConcurrentHashMap<>();
+
+   LockTable() {
+      for (int i=0; i<NUM_SHARDS; i++)
+         shards[i] = new Shard();
+   }
+
+   /**
+    * Return the weakest lock mode that covers both specified modes.
+    */
+   static int supremum(int m1, int m2) {
+      if (m1 == m2 || m2 == IS)
+         return m1;
+      if (m1 == IS)
+         return m2;
+      if (m1 == X || m2 == X)
+         return X;
+      return SIX;  // any two of IX, S and SIX
+   }
+
    /**
-    * Grant an SLock on the specified block.
-    * If an XLock exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the lock is released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
+    * Grant an SLock on the specified block to the specified transaction.
     * @param blk a reference to the disk block
+    * @param txnum the id of the requesting transaction
+    * @return the time spent waiting for the lock, in nanoseconds
     */
-   public synchronized void sLock(BlockId blk) {
+   long sLock(BlockId blk, int txnum) {
+      return lock(blk, txnum, S);
+   }
+
+   /**
+    * Grant an XLock on the specified block to the specified transaction.
+    * @param blk a reference to the disk block
+    * @param txnum the id of the requesting transaction
+    * @return the time spent waiting for the lock, in nanoseconds
+    */
+   long xLock(BlockId blk, int txnum) {
+      return lock(blk, txnum, X);
+   }
+
+   /**
+    * Grant a lock in the specified mode to the specified transaction.
+    * If the transaction already holds the lock, the request
+    * is a conversion to the supremum of the two modes.
+    * If the request conflicts with the current holders, or if other
+    * requests are already waiting, then it joins the lock's wait queue.
+    * @param key the object being locked
+    * @param txnum the id of the requesting transaction
+    * @param mode the requested mode
+    * @return the time spent waiting for the lock, in nanoseconds
+    */
+   long lock(Object key, int txnum, int mode) {
+      Shard shard = shardFor(key);
+      shard.latch.lock();
       try {
-         long timestamp = System.currentTimeMillis();
-         while (hasXlock(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasXlock(blk))
-            throw new LockAbortException();
-         int val = getLockVal(blk);  // will not be negative
-         locks.put(blk, val+1);
+         Lock lock = shard.locks.computeIfAbsent(key, k -> new Lock());
+         Request req = lock.newRequest(txnum, mode);
+         if (lock.canGrantNow(req)) {
+            lock.grant(req);
+            return 0;
+         }
+         return await(shard, key, lock, req);
       }
-      catch(InterruptedException e) {
-         throw new LockAbortException();
+      finally {
+         shard.latch.unlock();
       }
    }
-   
+
    /**
-    * Grant an XLock on the specified block.
-    * If a lock of any type exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the locks are released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * Grant a lock in the specified mode, but only if
+    * it can be granted without waiting.
+    * @param key the object being locked
+    * @param txnum the id of the requesting transaction
+    * @param mode the requested mode
+    * @return true if the lock was granted
+    */
+   boolean tryLock(Object key, int txnum, int mode) {
+      Shard shard = shardFor(key);
+      shard.latch.lock();
+      try {
+         Lock lock = shard.locks.computeIfAbsent(key, k -> new Lock());
+         Request req = lock.newRequest(txnum, mode);
+         if (lock.canGrantNow(req)) {
+            lock.grant(req);
+            return true;
+         }
+         if (lock.isUnused())
+            shard.locks.remove(key);
+         return false;
+      }
+      finally {
+         shard.latch.unlock();
+      }
+   }
+
+   /**
+    * Release the specified transaction's lock on the specified object,
+    * and grant the waiting requests that can now proceed.
+    * @param key the locked object
+    * @param txnum the id of the transaction releasing the lock
+    */
+   void unlock(Object key, int txnum) {
+      Shard shard = shardFor(key);
+      shard.latch.lock();
+      try {
+         Lock lock = shard.locks.get(key);
+         if (lock == null)
+            return;
+         lock.holders.remove(txnum);
+         lock.grantWaiters(graph);
+         if (lock.isUnused())
+            shard.locks.remove(key);
+      }
+      finally {
+         shard.latch.unlock();
+      }
+   }
+
+   /**
+    * Queue the request and wait until it is granted,
+    * checking for deadlocks along the way.
+    * The shard latch is held on entry and on exit.
     */
-   synchronized void xLock(BlockId blk) {
+   private long await(Shard shard, Object key, Lock lock, Request req) {
+      long start = System.nanoTime();
+      req.shard = shard;
+      req.ready = shard.latch.newCondition();
+      if (req.upgrade)
+         lock.queue.addFirst(req);
+      else
+         lock.queue.addLast(req);
+      waiting.put(req.txnum, req);
+      lock.grantWaiters(graph);
+      int signalled = 0;  // the victim told to abort since this request last waited
       try {
-         long timestamp = System.currentTimeMillis();
-         while (hasOtherSLocks(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasOtherSLocks(blk))
-            throw new LockAbortException();
-         locks.put(blk, -1);
+         while (!req.granted) {
+            int victim = req.aborted ? req.txnum : graph.findVictim(req.txnum);
+            if (victim == req.txnum) {
+               lock.queue.remove(req);
+               lock.grantWaiters(graph);
+               if (lock.isUnused())
+                  shard.locks.remove(key);
+               throw new LockAbortException();
+            }
+            else if (victim != 0 && victim != signalled) {
+               shard.latch.unlock();
+               try {
+                  abortWaiter(victim);
+               }
+               finally {
+                  shard.latch.lock();
+               }
+               signalled = victim;
+            }
+            else {
+               // the victim stays in the graph until it has left its own wait,
+               // so it is not signalled again before the next check
+               req.ready.await(DETECTION_INTERVAL, TimeUnit.MILLISECONDS);
+               signalled = 0;
+            }
+         }
+         return System.nanoTime() - start;
       }
       catch(InterruptedException e) {
+         lock.queue.remove(req);
+         lock.grantWaiters(graph);
+         if (lock.isUnused())
+            shard.locks.remove(key);
          throw new LockAbortException();
       }
+      finally {
+         waiting.remove(req.txnum);
+         graph.remove(req.txnum);
+      }
    }
-   
+
    /**
-    * Release a lock on the specified block.
-    * If this lock is the last lock on that block,
-    * then the waiting transactions are notified.
-    * @param blk a reference to the disk block
+    * Tell the specified waiting transaction that it has been
+    * chosen as a deadlock victim.
+    * The caller must not hold a shard latch.
     */
-   synchronized void unlock(BlockId blk) {
-      int val = getLockVal(blk);
-      if (val > 1)
-         locks.put(blk, val-1);
-      else {
-         locks.remove(blk);
-         notifyAll();
+   private void abortWaiter(int txnum) {
+      Request req = waiting.get(txnum);
+      if (req == null)
+         return;
+      req.shard.latch.lock();
+      try {
+         if (!req.granted) {
+            req.aborted = true;
+            req.ready.signal();
+         }
+      }
+      finally {
+         req.shard.latch.unlock();
       }
    }
-   
-   private boolean hasXlock(BlockId blk) {
-      return getLockVal(blk) < 0;
+
+   private Shard shardFor(Object key) {
+      return shards[Math.floorMod(key.hashCode(), NUM_SHARDS)];
    }
-   
-   private boolean hasOtherSLocks(BlockId blk) {
-      return getLockVal(blk) > 1;
+
+   private static class Shard {
+      ReentrantLock latch = new ReentrantLock();
+      Map<Object,Lock> locks = new HashMap<>();
    }
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
+
+   /**
+    * The state of a single lock:
+    * the mode held by each holding transaction,
+    * and the queue of waiting requests.
+    */
+   private static class Lock {
+      Map<Integer,Integer> holders = new HashMap<>();
+      Deque<Request> queue = new ArrayDeque<>();
+
+      Request newRequest(int txnum, int mode) {
+         Integer held = holders.get(txnum);
+         if (held == null)
+            return new Request(txnum, mode, false);
+         else
+            return new Request(txnum, supremum(held, mode), true);
+      }
+
+      boolean isCompatible(Request req) {
+         for (Map.Entry<Integer,Integer> e : holders.entrySet())
+            if (e.getKey() != req.txnum && !COMPATIBLE[e.getValue()][req.mode])
+               return false;
+         return true;
+      }
+
+      /**
+       * Return true if a newly-arrived request can be
+       * granted without waiting behind the queue.
+       */
+      boolean canGrantNow(Request req) {
+         if (!isCompatible(req))
+            return false;
+         if (req.upgrade)
+            return true;  // conversions go ahead of the queue
+         return queue.isEmpty();
+      }
+
+      void grant(Request req) {
+         holders.put(req.txnum, req.mode);
+         req.granted = true;
+      }
+
+      /**
+       * Grant the requests at the head of the queue,
+       * in order, for as long as they are compatible,
+       * and then bring the edges of the remaining
+       * requests up to date.
+       */
+      void grantWaiters(WaitsForGraph graph) {
+         while (!queue.isEmpty() && isCompatible(queue.peekFirst())) {
+            Request req = queue.pollFirst();
+            grant(req);
+            graph.remove(req.txnum);
+            req.ready.signal();
+         }
+         updateWaits(graph);
+      }
+
+      /**
+       * Record in the graph whom each queued request waits for:
+       * the conflicting holders, and the conflicting
+       * requests queued ahead of it.
+       */
+      void updateWaits(WaitsForGraph graph) {
+         List<Request> ahead = new ArrayList<>();
+         for (Request req : queue) {
+            Set<Integer> blockers = new HashSet<>();
+            for (Map.Entry<Integer,Integer> e : holders.entrySet())
+               if (e.getKey() != req.txnum && !COMPATIBLE[e.getValue()][req.mode])
+                  blockers.add(e.getKey());
+            for (Request r : ahead)
+               if (r.txnum != req.txnum && !COMPATIBLE[r.mode][req.mode])
+                  blockers.add(r.txnum);
+            graph.setWaits(req.txnum, blockers);
+            ahead.add(req);
+         }
+      }
+
+      boolean isUnused() {
+         return holders.isEmpty() && queue.isEmpty();
+      }
    }
-   
-   private int getLockVal(BlockId blk) {
-      Integer ival = locks.get(blk);
-      return (ival == null) ? 0 : ival.intValue();
+
+   private static class Request {
+      int txnum, mode;
+      boolean upgrade;
+      boolean granted = false, aborted = false;
+      Shard shard;
+      Condition ready;
+
+      Request(int txnum, int mode, boolean upgrade) {
+         this.txnum = txnum;
+         this.mode = mode;
+         this.upgrade = upgrade;
+      }
    }
 }
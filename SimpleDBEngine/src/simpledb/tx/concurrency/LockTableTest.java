@@ -0,0 +1,55 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import simpledb.file.BlockId;
+import static simpledb.test.Check.check;
+
+public class LockTableTest {
+   public static void main(String[] args) throws Exception {
+      LockTable locktbl = new LockTable();
+      BlockId blk = new BlockId("locktabletest", 0);
+      List<String> granted = Collections.synchronizedList(new ArrayList<>());
+
+      // transactions 1 and 2 share the block, and 1 asks for an exclusive lock
+      locktbl.sLock(blk, 1);
+      locktbl.sLock(blk, 2);
+      Thread upgrader = new Thread(() -> {
+         locktbl.xLock(blk, 1);
+         granted.add("upgrade");
+      });
+      upgrader.start();
+      waitUntilBlocked(upgrader);
+
+      // a new reader waits behind the queued upgrade
+      check(!locktbl.tryLock(blk, 3, LockTable.S) && !locktbl.tryLock(blk, 3, LockTable.IS),
+            "new readers not granted past a queued upgrade");
+      Thread reader = new Thread(() -> {
+         locktbl.sLock(blk, 3);
+         granted.add("reader");
+      });
+      reader.start();
+      waitUntilBlocked(reader);
+      check(granted.isEmpty(), "reader waits");
+
+      // the upgrade goes first once the other holder leaves
+      locktbl.unlock(blk, 2);
+      upgrader.join();
+      check(granted.equals(Arrays.asList("upgrade")) && reader.isAlive(), "upgrade granted before the reader");
+      locktbl.unlock(blk, 1);
+      reader.join();
+      check(granted.equals(Arrays.asList("upgrade", "reader")), "reader granted after the upgrade");
+      locktbl.unlock(blk, 3);
+
+      // without a queued upgrade, a compatible reader does not wait
+      locktbl.sLock(blk, 4);
+      check(locktbl.tryLock(blk, 5, LockTable.S), "reader granted beside a reader");
+      locktbl.unlock(blk, 4);
+      locktbl.unlock(blk, 5);
+      System.out.println("done");
+   }
+
+   private static void waitUntilBlocked(Thread t) throws InterruptedException {
+      while (t.getState() != Thread.State.WAITING && t.getState() != Thread.State.TIMED_WAITING)
+         Thread.sleep(1);
+   }
+}
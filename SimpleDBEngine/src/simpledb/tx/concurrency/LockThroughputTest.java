@@ -0,0 +1,59 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import simpledb.file.BlockId;
+
+/**
+ * A microbenchmark for the lock table.
+ * Each thread repeatedly runs a short "transaction" that
+ * locks a few random blocks in ascending order (so that
+ * there are no deadlocks), mostly in shared mode,
+ * and then releases them.
+ * The program prints the lock throughput for an increasing
+ * number of threads.
+ */
+public class LockThroughputTest {
+   private static final int NUM_BLOCKS = 1000, LOCKS_PER_TX = 4;
+   private static final int TX_PER_THREAD = 50000;
+   private static AtomicInteger nextTxNum = new AtomicInteger(0);
+
+   public static void main(String[] args) throws Exception {
+      for (int nthreads=1; nthreads<=16; nthreads*=2) {
+         LockTable locktbl = new LockTable();
+         Thread[] threads = new Thread[nthreads];
+         for (int i=0; i<nthreads; i++)
+            threads[i] = new Thread(() -> runTransactions(locktbl));
+         long start = System.nanoTime();
+         for (Thread t : threads)
+            t.start();
+         for (Thread t : threads)
+            t.join();
+         long elapsed = System.nanoTime() - start;
+         long nlocks = (long) nthreads * TX_PER_THREAD * LOCKS_PER_TX;
+         System.out.println(nthreads + " threads: "
+               + (nlocks * 1000000000L / elapsed) + " locks/sec");
+      }
+   }
+
+   private static void runTransactions(LockTable locktbl) {
+      Random rand = new Random();
+      for (int i=0; i<TX_PER_THREAD; i++) {
+         int txnum = nextTxNum.incrementAndGet();
+         SortedSet<Integer> blknums = new TreeSet<>();
+         while (blknums.size() < LOCKS_PER_TX)
+            blknums.add(rand.nextInt(NUM_BLOCKS));
+         List<BlockId> blks = new ArrayList<>();
+         for (int n : blknums) {
+            BlockId blk = new BlockId("benchfile", n);
+            if (rand.nextInt(10) == 0)
+               locktbl.xLock(blk, txnum);
+            else
+               locktbl.sLock(blk, txnum);
+            blks.add(blk);
+         }
+         for (BlockId blk : blks)
+            locktbl.unlock(blk, txnum);
+      }
+   }
+}
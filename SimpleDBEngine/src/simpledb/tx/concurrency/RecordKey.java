@@ -0,0 +1,32 @@
+package simpledb.tx.concurrency;
+
+import simpledb.file.BlockId;
+
+/**
+ * The identifier of a record lock:
+ * a block together with a slot number in that block.
+ */
+class RecordKey {
+   private BlockId blk;
+   private int slot;
+
+   RecordKey(BlockId blk, int slot) {
+      this.blk = blk;
+      this.slot = slot;
+   }
+
+   public boolean equals(Object obj) {
+      if (!(obj instanceof RecordKey))
+         return false;
+      RecordKey k = (RecordKey) obj;
+      return blk.equals(k.blk) && slot == k.slot;
+   }
+
+   public int hashCode() {
+      return 31 * blk.hashCode() + slot;
+   }
+
+   public String toString() {
+      return "[" + blk + ", slot " + slot + "]";
+   }
+}
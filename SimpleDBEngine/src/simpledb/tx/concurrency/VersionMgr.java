@@ -0,0 +1,446 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.*;
+import simpledb.file.*;
+
+/**
+ * The version manager, which lets read-only transactions
+ * see a consistent snapshot of the database without locking.
+ * Before a transaction modifies a region of a page, it gives
+ * the region's old bytes to the version manager.
+ * These before-images are kept in memory, chained per block
+ * in the order they were made, until no snapshot can need them.
+ * <p>
+ * Each committing writer gets a commit timestamp,
+ * and each snapshot remembers the timestamp current when it began.
+ * To read a block as of its snapshot, a reader copies the current page
+ * and then applies, newest first, the before-images of the writers
+ * that had not committed when the snapshot began.
+ * The caller must hold the buffer's latch while recording a
+ * before-image and modifying the page, and while copying it.
+ * <p>
+ * While no snapshot is open, nothing is recorded; the writer is
+ * only noted as having unrecorded changes. A snapshot that begins
+ * does not wait for such writers: it reads the before-images of
+ * their changes from their log records instead, and puts them at the
+ * front of the chains, as the oldest ones.
+ * Once a snapshot has begun, writers record
+ * their changes. Each block has its own chain, locked on its own,
+ * so that writers of different blocks do not contend; and a writer
+ * records a region of a block only once, since its first
+ * before-image of the region is the one a snapshot needs.
+ */
+public class VersionMgr {
+   private int clock = 0;
+   private Map<BlockId,Chain> versions = new ConcurrentHashMap<>();
+   private Map<Integer,Writer> writers = new ConcurrentHashMap<>();
+   private Deque<Writer> committed = new ArrayDeque<>();
+   private SortedMap<Integer,Integer> snapshots = new TreeMap<>();
+   private AtomicInteger tracking = new AtomicInteger();  // the snapshots open or beginning
+   private Set<Integer> unrecorded = ConcurrentHashMap.newKeySet();  // the writers with unrecorded changes
+
+   /**
+    * Save the old contents of a region that the specified
+    * transaction is about to overwrite,
+    * unless no snapshot can need them.
+    * @param txnum the modifying transaction
+    * @param blk the modified block
+    * @param p the page, before the modification
+    * @param offset the start of the region
+    * @param length the size of the region
+    */
+   public void record(int txnum, BlockId blk, Page p, int offset, int length) {
+      if (skip(txnum))
+         return;
+      Writer w = writerFor(txnum, blk);
+      while (!chainFor(blk).add(w, offset, length, () -> new Version(w, offset, p.getRange(offset, length))))
+         ;
+   }
+
+   /**
+    * Save the old value of a single bit that the specified
+    * transaction is about to change,
+    * unless no snapshot can need it.
+    * Bits of the same word (such as the slot flags of a page's
+    * occupancy bitmap) may be changed by several transactions at
+    * once, so their old values are kept bit by bit;
+    * restoring the whole word would also undo the others' changes.
+    * @param txnum the modifying transaction
+    * @param blk the modified block
+    * @param offset the offset of the word containing the bit
+    * @param bit the position of the bit within the word
+    * @param before the value of the bit, before the modification
+    */
+   public void recordBit(int txnum, BlockId blk, int offset, int bit, boolean before) {
+      if (skip(txnum))
+         return;
+      Writer w = writerFor(txnum, blk);
+      while (!chainFor(blk).addBit(w, offset, bit, () -> new Version(w, offset, bit, before)))
+         ;
+   }
+
+   /**
+    * Start a snapshot, which sees the effect of
+    * every transaction committed so far.
+    * The changes of the writers that did not record them are
+    * undone with the before-images that the specified log reader
+    * finds in their log records; a writer that rolls back
+    * meanwhile waits until they have been read, and so does a
+    * snapshot that begins meanwhile.
+    * @param log reads the log records of the specified writers
+    * @return the snapshot's timestamp
+    */
+   public int beginSnapshot(BiConsumer<Collection<Integer>,BeforeImages> log) {
+      tracking.incrementAndGet();
+      int ts;
+      Map<Integer,Writer> pending = new HashMap<>();
+      List<Writer> loading = new ArrayList<>();
+      synchronized (this) {
+         snapshots.merge(clock, 1, Integer::sum);
+         ts = clock;
+         for (Writer w : writers.values())
+            if (w.isLoading())
+               loading.add(w);
+         for (int txnum : unrecorded) {
+            Writer w = writers.computeIfAbsent(txnum, Writer::new);
+            synchronized (w) {
+               w.loading++;
+            }
+            pending.put(txnum, w);
+         }
+         unrecorded.removeAll(pending.keySet());
+      }
+      if (!pending.isEmpty()) {
+         try {
+            loadBeforeImages(pending, log);
+         }
+         finally {
+            for (Writer w : pending.values())
+               synchronized (w) {
+                  w.loading--;
+                  w.notifyAll();
+               }
+         }
+      }
+      for (Writer w : loading)
+         w.awaitLoaded();
+      return ts;
+   }
+
+   /**
+    * End the specified snapshot, and discard the
+    * before-images that no snapshot needs any more.
+    * @param ts the snapshot's timestamp
+    */
+   public synchronized void endSnapshot(int ts) {
+      if (snapshots.merge(ts, -1, Integer::sum) == 0)
+         snapshots.remove(ts);
+      tracking.decrementAndGet();
+      prune();
+   }
+
+   /**
+    * Mark the specified transaction's changes as committed.
+    * @param txnum the committing transaction
+    */
+   public synchronized void commit(int txnum) {
+      unrecorded.remove(txnum);
+      Writer w = writers.remove(txnum);
+      if (w == null)
+         return;
+      clock++;
+      w.commitTs = clock;
+      committed.addLast(w);
+      prune();
+   }
+
+   /**
+    * Discard the before-images of the specified transaction,
+    * whose changes have been undone.
+    * @param txnum the rolled-back transaction
+    */
+   public void rollback(int txnum) {
+      Writer w;
+      synchronized (this) {
+         unrecorded.remove(txnum);
+         w = writers.remove(txnum);
+      }
+      if (w == null)
+         return;
+      w.awaitLoaded();
+      discard(w);
+   }
+
+   /**
+    * Return true if some snapshot may still need
+    * an earlier version of the specified block.
+    * @param blk the block
+    */
+   public boolean hasVersions(BlockId blk) {
+      return versions.containsKey(blk);
+   }
+
+   /**
+    * Return the contents of a page as of the specified snapshot.
+    * The argument must be a private copy of the current page,
+    * which is modified in place.
+    * The changes of the reading transaction itself are kept.
+    * @param blk the block
+    * @param p a copy of the block's current contents
+    * @param ts the snapshot's timestamp
+    * @param txnum the reading transaction
+    */
+   public void reconstruct(BlockId blk, Page p, int ts, int txnum) {
+      Chain chain = versions.get(blk);
+      if (chain == null)
+         return;
+      synchronized (chain) {
+         List<Version> list = chain.list;
+         for (int i=list.size()-1; i>=0; i--) {
+            Version v = list.get(i);
+            if (v.writer.txnum != txnum && !v.writer.isVisibleTo(ts))
+               v.restore(p);
+         }
+      }
+   }
+
+   /**
+    * Return true if the change that the specified transaction is about
+    * to make need not be recorded, because no snapshot is open;
+    * the transaction is then noted as having unrecorded changes.
+    * The transaction is noted before the second look at the snapshots,
+    * so that a snapshot beginning meanwhile either is seen,
+    * or sees the transaction and reads its log records.
+    */
+   private boolean skip(int txnum) {
+      if (tracking.get() > 0)
+         return false;
+      unrecorded.add(txnum);
+      return tracking.get() == 0;
+   }
+
+   /**
+    * Put the before-images found in the log records of the specified
+    * writers at the front of the chains of their blocks.
+    * The log is read newest first, so each image goes in front
+    * of those found before it.
+    */
+   private void loadBeforeImages(Map<Integer,Writer> pending, BiConsumer<Collection<Integer>,BeforeImages> log) {
+      Map<BlockId,LinkedList<Version>> found = new HashMap<>();
+      log.accept(pending.keySet(), new BeforeImages() {
+         public void range(int txnum, BlockId blk, int offset, byte[] before) {
+            found.computeIfAbsent(blk, b -> new LinkedList<>()).addFirst(new Version(pending.get(txnum), offset, before));
+         }
+
+         public void bit(int txnum, BlockId blk, int offset, int bit, boolean before) {
+            found.computeIfAbsent(blk, b -> new LinkedList<>()).addFirst(new Version(pending.get(txnum), offset, bit, before));
+         }
+      });
+      for (Map.Entry<BlockId,LinkedList<Version>> e : found.entrySet()) {
+         BlockId blk = e.getKey();
+         for (Version v : e.getValue())
+            synchronized (v.writer) {
+               v.writer.blocks.add(blk);
+            }
+         while (!chainFor(blk).addOldest(e.getValue()))
+            ;
+      }
+   }
+
+   private Writer writerFor(int txnum, BlockId blk) {
+      Writer w = writers.computeIfAbsent(txnum, Writer::new);
+      synchronized (w) {
+         w.blocks.add(blk);
+      }
+      return w;
+   }
+
+   private Chain chainFor(BlockId blk) {
+      return versions.computeIfAbsent(blk, b -> new Chain());
+   }
+
+   /**
+    * Drop the before-images of the committed writers
+    * that every current snapshot can see.
+    */
+   private void prune() {
+      int oldest = snapshots.isEmpty() ? clock : snapshots.firstKey();
+      while (!committed.isEmpty() && committed.peekFirst().commitTs <= oldest)
+         discard(committed.pollFirst());
+   }
+
+   private void discard(Writer w) {
+      List<BlockId> blocks;
+      synchronized (w) {
+         blocks = new ArrayList<>(w.blocks);
+      }
+      for (BlockId blk : blocks) {
+         Chain chain = versions.get(blk);
+         if (chain == null)
+            continue;
+         synchronized (chain) {
+            chain.list.removeIf(v -> v.writer == w);
+            if (chain.list.isEmpty()) {
+               chain.dropped = true;
+               versions.remove(blk, chain);
+            }
+         }
+      }
+   }
+
+   /**
+    * The receiver of the before-images that a reader of the log
+    * finds in the log records of writers that did not record them.
+    */
+   public interface BeforeImages {
+      /**
+       * Receive the old contents of a region of a block.
+       * @param txnum the writer
+       * @param blk the block
+       * @param offset the start of the region
+       * @param before the old contents
+       */
+      void range(int txnum, BlockId blk, int offset, byte[] before);
+
+      /**
+       * Receive the old value of a bit of a block.
+       * @param txnum the writer
+       * @param blk the block
+       * @param offset the offset of the word containing the bit
+       * @param bit the position of the bit within the word
+       * @param before the old value of the bit
+       */
+      void bit(int txnum, BlockId blk, int offset, int bit, boolean before);
+
+      /**
+       * Receive the old value of an integer.
+       */
+      default void intValue(int txnum, BlockId blk, int offset, int val) {
+         byte[] b = new byte[Integer.BYTES];
+         new Page(b).setInt(0, val);
+         range(txnum, blk, offset, b);
+      }
+
+      /**
+       * Receive the old value of a string.
+       */
+      default void stringValue(int txnum, BlockId blk, int offset, String val) {
+         byte[] b = new byte[Page.maxLength(val.length())];
+         new Page(b).setString(0, val);
+         range(txnum, blk, offset, b);
+      }
+   }
+
+   /**
+    * The before-images of a block, in the order they were made.
+    * A chain that has become empty is dropped from the map,
+    * and a writer that still finds it must look the block up again.
+    */
+   private static class Chain {
+      List<Version> list = new ArrayList<>();
+      boolean dropped = false;
+
+      /**
+       * Add the writer's before-image of a region, unless an earlier
+       * one of the writer covers it; return false if the chain was dropped.
+       */
+      synchronized boolean add(Writer w, int offset, int length, Supplier<Version> image) {
+         if (dropped)
+            return false;
+         for (Version v : list)
+            if (v.writer == w && v.bit < 0 && v.offset <= offset && offset + length <= v.offset + v.before.length)
+               return true;
+         list.add(image.get());
+         return true;
+      }
+
+      /**
+       * Add before-images older than every one in the chain, in the
+       * order they were made; return false if the chain was dropped.
+       */
+      synchronized boolean addOldest(List<Version> images) {
+         if (dropped)
+            return false;
+         list.addAll(0, images);
+         return true;
+      }
+
+      /**
+       * Add the writer's old value of a bit, unless
+       * it already has one; return false if the chain was dropped.
+       */
+      synchronized boolean addBit(Writer w, int offset, int bit, Supplier<Version> image) {
+         if (dropped)
+            return false;
+         for (Version v : list)
+            if (v.writer == w && v.offset == offset && v.bit == bit)
+               return true;
+         list.add(image.get());
+         return true;
+      }
+   }
+
+   private static class Writer {
+      int txnum;
+      volatile int commitTs = 0;  // 0 while the writer is active
+      Set<BlockId> blocks = new HashSet<>();
+      int loading = 0;  // the snapshots reading its log records
+
+      Writer(int txnum) {
+         this.txnum = txnum;
+      }
+
+      synchronized boolean isLoading() {
+         return loading > 0;
+      }
+
+      /**
+       * Wait until no snapshot is reading the writer's log records.
+       */
+      synchronized void awaitLoaded() {
+         while (loading > 0) {
+            try {
+               wait();
+            }
+            catch (InterruptedException e) {}
+         }
+      }
+
+      boolean isVisibleTo(int ts) {
+         return commitTs > 0 && commitTs <= ts;
+      }
+   }
+
+   private static class Version {
+      Writer writer;
+      int offset;
+      byte[] before;
+      int bit = -1;  // -1 for a byte range
+      boolean bitBefore;
+
+      Version(Writer writer, int offset, byte[] before) {
+         this.writer = writer;
+         this.offset = offset;
+         this.before = before;
+      }
+
+      Version(Writer writer, int offset, int bit, boolean bitBefore) {
+         this.writer = writer;
+         this.offset = offset;
+         this.bit = bit;
+         this.bitBefore = bitBefore;
+      }
+
+      void restore(Page p) {
+         if (bit < 0)
+            p.setRange(offset, before);
+         else if (bitBefore)
+            p.setInt(offset, p.getInt(offset) | (1 << bit));
+         else
+            p.setInt(offset, p.getInt(offset) & ~(1 << bit));
+      }
+   }
+}
@@ -0,0 +1,68 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+
+/**
+ * The waits-for graph of the lock table.
+ * There is an edge from transaction T1 to transaction T2
+ * if T1 is waiting for a lock that T2 holds (or has requested
+ * ahead of T1) in a conflicting mode.
+ * A cycle in the graph is a deadlock; it is broken by
+ * aborting the youngest transaction on the cycle,
+ * that is, the one having the highest transaction number.
+ */
+class WaitsForGraph {
+   private Map<Integer,Set<Integer>> edges = new HashMap<>();
+
+   /**
+    * Record that the specified transaction is waiting for
+    * the specified transactions, replacing its previous edges.
+    * @param txnum the waiting transaction
+    * @param blockers the transactions it waits for
+    */
+   synchronized void setWaits(int txnum, Set<Integer> blockers) {
+      edges.put(txnum, blockers);
+   }
+
+   /**
+    * Remove the outgoing edges of the specified transaction,
+    * which is no longer waiting.
+    * @param txnum the transaction
+    */
+   synchronized void remove(int txnum) {
+      edges.remove(txnum);
+   }
+
+   /**
+    * Look for a cycle reachable from the specified transaction,
+    * and return the youngest transaction on it.
+    * @param txnum the transaction where the search starts
+    * @return the victim's id, or 0 if there is no deadlock
+    */
+   synchronized int findVictim(int txnum) {
+      List<Integer> path = new ArrayList<>();
+      Set<Integer> done = new HashSet<>();
+      return search(txnum, path, done);
+   }
+
+   private int search(int txnum, List<Integer> path, Set<Integer> done) {
+      int pos = path.indexOf(txnum);
+      if (pos >= 0) {
+         int victim = 0;
+         for (int t : path.subList(pos, path.size()))
+            victim = Math.max(victim, t);
+         return victim;
+      }
+      if (done.contains(txnum))
+         return 0;
+      path.add(txnum);
+      for (int next : edges.getOrDefault(txnum, Collections.emptySet())) {
+         int victim = search(next, path, done);
+         if (victim != 0)
+            return victim;
+      }
+      path.remove(path.size() - 1);
+      done.add(txnum);
+      return 0;
+   }
+}
@@ -0,0 +1,90 @@
+package simpledb.tx.recovery;
+
+import java.nio.charset.*;
+import java.util.Arrays;
+
+/**
+ * A byte array holding the body of a compact log record.
+ * The first four bytes hold the record's operator as an
+ * ordinary integer, so that {@link LogRecord#createLogRecord(byte[])}
+ * can read it from a page.  The remaining values are
+ * variable-length: integers are zigzag-encoded seven bits
+ * per byte, and strings are a length followed by their characters.
+ * A typical record therefore needs a few bytes per value
+ * instead of the four (or 4+n) bytes of a page encoding.
+ */
+class CompactPage {
+   private static final Charset CHARSET = StandardCharsets.US_ASCII;
+   private byte[] bytes;
+   private int pos;
+
+   /**
+    * Create an empty compact record having the specified operator.
+    * @param op the log record type
+    */
+   CompactPage(int op) {
+      bytes = new byte[32];
+      for (int i=0; i<Integer.BYTES; i++)
+         bytes[i] = (byte) (op >>> (24 - 8*i));
+      pos = Integer.BYTES;
+   }
+
+   /**
+    * Open the specified log record for reading,
+    * positioned just after its operator.
+    * @param bytes the bytes of the log record
+    */
+   CompactPage(byte[] bytes) {
+      this.bytes = bytes;
+      pos = Integer.BYTES;
+   }
+
+   int getInt() {
+      int n = 0, shift = 0;
+      byte b;
+      do {
+         b = bytes[pos++];
+         n |= (b & 0x7f) << shift;
+         shift += 7;
+      } while (b < 0);
+      return (n >>> 1) ^ -(n & 1);
+   }
+
+   String getString() {
+      int len = getInt();
+      String s = new String(bytes, pos, len, CHARSET);
+      pos += len;
+      return s;
+   }
+
+   void setInt(int val) {
+      int n = (val << 1) ^ (val >> 31);
+      ensure(5);
+      while ((n & ~0x7f) != 0) {
+         bytes[pos++] = (byte) ((n & 0x7f) | 0x80);
+         n >>>= 7;
+      }
+      bytes[pos++] = (byte) n;
+   }
+
+   void setString(String val) {
+      byte[] b = val.getBytes(CHARSET);
+      setInt(b.length);
+      ensure(b.length);
+      System.arraycopy(b, 0, bytes, pos, b.length);
+      pos += b.length;
+   }
+
+   /**
+    * Return the encoded record, trimmed to its length.
+    * @return the bytes to be appended to the log
+    */
+   byte[] contents() {
+      return Arrays.copyOf(bytes, pos);
+   }
+
+   private void ensure(int n) {
+      if (pos + n > bytes.length)
+         bytes = Arrays.copyOf(bytes, Math.max(2*bytes.length, pos+n));
+   }
+}
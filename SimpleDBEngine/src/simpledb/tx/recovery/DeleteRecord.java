@@ -0,0 +1,80 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.VersionMgr;
+
+/**
+ * The DELETE log record, written when a transaction
+ * empties a record slot.
+ * The record identifies the slot and the position of
+ * its flag bit, which is the only thing the operation changes.
+ * The field values of the deleted record stay in the page
+ * (the slot remains locked until the transaction completes),
+ * so undoing the deletion only needs to restore the flag.
+ */
+public class DeleteRecord implements LogRecord {
+   private int txnum, slot, offset, bit;
+   private BlockId blk;
+
+   /**
+    * Create a new delete log record.
+    * @param bytes the bytes of the compact log record
+    */
+   public DeleteRecord(byte[] bytes) {
+      CompactPage p = new CompactPage(bytes);
+      txnum = p.getInt();
+      String filename = p.getString();
+      int blknum = p.getInt();
+      blk = new BlockId(filename, blknum);
+      slot = p.getInt();
+      offset = p.getInt();
+      bit = p.getInt();
+   }
+
+   public int op() {
+      return DELETE_REC;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public String toString() {
+      return "<DELETE " + txnum + " " + blk + " " + slot + ">";
+   }
+
+   /**
+    * Return the slot to its previous (in use) state.
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.setSlotBit(blk, offset, bit, true); // don't log the undo!
+      tx.unpin(blk);
+   }
+
+   public void saveBeforeImage(Transaction tx, VersionMgr.BeforeImages images) {
+      images.bit(txnum, blk, offset, bit, true);
+   }
+
+   /**
+    * A static method to write a delete record to the log.
+    * This log record contains the DELETE_REC operator,
+    * followed by the transaction id, the filename and number
+    * of the block, the slot number, and the offset and
+    * position of its flag bit.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int slot, int offset, int bit) {
+      CompactPage p = new CompactPage(DELETE_REC);
+      p.setInt(txnum);
+      p.setString(blk.fileName());
+      p.setInt(blk.number());
+      p.setInt(slot);
+      p.setInt(offset);
+      p.setInt(bit);
+      return lm.append(p.contents());
+   }
+}
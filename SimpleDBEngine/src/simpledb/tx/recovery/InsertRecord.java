@@ -0,0 +1,80 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.VersionMgr;
+
+/**
+ * The INSERT log record, written when a transaction
+ * claims an empty record slot.
+ * The record identifies the slot and the position of
+ * its flag bit, which is the only thing the operation changes.
+ * The field values of the new record are not logged:
+ * undoing the insertion restores the flag, which makes
+ * those values unreachable.
+ */
+public class InsertRecord implements LogRecord {
+   private int txnum, slot, offset, bit;
+   private BlockId blk;
+
+   /**
+    * Create a new insert log record.
+    * @param bytes the bytes of the compact log record
+    */
+   public InsertRecord(byte[] bytes) {
+      CompactPage p = new CompactPage(bytes);
+      txnum = p.getInt();
+      String filename = p.getString();
+      int blknum = p.getInt();
+      blk = new BlockId(filename, blknum);
+      slot = p.getInt();
+      offset = p.getInt();
+      bit = p.getInt();
+   }
+
+   public int op() {
+      return INSERT_REC;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public String toString() {
+      return "<INSERT " + txnum + " " + blk + " " + slot + ">";
+   }
+
+   /**
+    * Return the slot to its previous (empty) state.
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.setSlotBit(blk, offset, bit, false); // don't log the undo!
+      tx.unpin(blk);
+   }
+
+   public void saveBeforeImage(Transaction tx, VersionMgr.BeforeImages images) {
+      images.bit(txnum, blk, offset, bit, false);
+   }
+
+   /**
+    * A static method to write an insert record to the log.
+    * This log record contains the INSERT_REC operator,
+    * followed by the transaction id, the filename and number
+    * of the block, the slot number, and the offset and
+    * position of its flag bit.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int slot, int offset, int bit) {
+      CompactPage p = new CompactPage(INSERT_REC);
+      p.setInt(txnum);
+      p.setString(blk.fileName());
+      p.setInt(blk.number());
+      p.setInt(slot);
+      p.setInt(offset);
+      p.setInt(bit);
+      return lm.append(p.contents());
+   }
+}
@@ -0,0 +1,73 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.VersionMgr;
+
+/**
+ * The LOAD log record, written when a bulk load
+ * fills a newly-appended block with a complete page image.
+ * Neither the records of the page nor their values are logged:
+ * the block was empty before the load, so undoing the
+ * load just empties it again.
+ */
+public class LoadRecord implements LogRecord {
+   private int txnum;
+   private BlockId blk;
+
+   /**
+    * Create a new load log record.
+    * @param bytes the bytes of the compact log record
+    */
+   public LoadRecord(byte[] bytes) {
+      CompactPage p = new CompactPage(bytes);
+      txnum = p.getInt();
+      String filename = p.getString();
+      int blknum = p.getInt();
+      blk = new BlockId(filename, blknum);
+   }
+
+   public int op() {
+      return LOAD_BLK;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public String toString() {
+      return "<LOAD " + txnum + " " + blk + ">";
+   }
+
+   /**
+    * Return the block to its previous (empty) state,
+    * and tell the free-space map that it has room.
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.setRange(blk, 0, new byte[tx.blockSize()]); // don't log the undo!
+      tx.unpin(blk);
+      tx.freeSpaceMap(blk.fileName()).setFull(blk.number(), false);
+   }
+
+   public void saveBeforeImage(Transaction tx, VersionMgr.BeforeImages images) {
+      images.range(txnum, blk, 0, new byte[tx.blockSize()]);
+   }
+
+   /**
+    * A static method to write a load record to the log.
+    * This log record contains the LOAD_BLK operator,
+    * followed by the transaction id and the filename
+    * and number of the block.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk) {
+      CompactPage p = new CompactPage(LOAD_BLK);
+      p.setInt(txnum);
+      p.setString(blk.fileName());
+      p.setInt(blk.number());
+      return lm.append(p.contents());
+   }
+}
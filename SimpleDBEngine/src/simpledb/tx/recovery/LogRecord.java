@@ -2,6 +2,7 @@ package simpledb.tx.recovery;
 
 import simpledb.file.Page;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.VersionMgr;
 
 /**
  * The interface implemented by each type of log record.
@@ -10,7 +11,9 @@ import simpledb.tx.Transaction;
 public interface LogRecord {
    static final int CHECKPOINT = 0, START = 1,
          COMMIT = 2, ROLLBACK  = 3,
-         SETINT = 4, SETSTRING = 5;
+         SETINT = 4, SETSTRING = 5,
+         INSERT_REC = 6, DELETE_REC = 7, UPDATE_REC = 8,
+         LOAD_BLK = 9;
 
    /**
     * Returns the log record's type. 
@@ -28,11 +31,23 @@ public interface LogRecord {
    /**
     * Undoes the operation encoded by this log record.
     * The only log record types for which this method
-    * does anything interesting are SETINT and SETSTRING.
+    * does anything interesting are SETINT, SETSTRING,
+    * the record-level INSERT_REC, DELETE_REC and UPDATE_REC,
+    * and the page-level LOAD_BLK.
     * @param txnum the id of the transaction that is performing the undo.
     */
    void undo(Transaction tx);
 
+   /**
+    * Give the version manager the contents that the operation
+    * encoded by this log record overwrote, which undo() would restore,
+    * so that a snapshot can see the block without the change.
+    * The method does nothing for the types that undo() ignores.
+    * @param tx the transaction reading the log
+    * @param images the receiver of the before-images
+    */
+   default void saveBeforeImage(Transaction tx, VersionMgr.BeforeImages images) {}
+
    /**
     * Interpret the bytes returned by the log iterator.
     * @param bytes
@@ -53,6 +68,14 @@ public interface LogRecord {
          return new SetIntRecord(p);
       case SETSTRING: 
          return new SetStringRecord(p);
+      case INSERT_REC:
+         return new InsertRecord(bytes);
+      case DELETE_REC:
+         return new DeleteRecord(bytes);
+      case UPDATE_REC:
+         return new UpdateRecord(bytes);
+      case LOAD_BLK:
+         return new LoadRecord(bytes);
       default:
          return null;
       }
@@ -0,0 +1,104 @@
+package simpledb.tx.recovery;
+
+import java.util.Iterator;
+import simpledb.server.SimpleDB;
+import simpledb.log.LogMgr;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+import static simpledb.test.Check.check;
+
+public class LogRecordTest {
+   private static SimpleDB db;
+   private static Layout layout;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("logrecordtest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      layout = new Layout(sch);
+
+      // inserts: one log record per row, and rollback empties the table
+      LogMgr lm = db.logMgr();
+      int before = countLogRecords(lm);
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<20; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec"+i);
+      }
+      ts.close();
+      lm.flush(Integer.MAX_VALUE);
+      int logged = countLogRecords(lm) - before - 1;  // less the START record
+      System.out.println("20 inserts wrote " + logged + " log records");
+      check(logged == 20, "one log record per insert");
+      tx.rollback();
+      check(count() == 0, "rollback of inserts");
+
+      // deletes and updates are undone, including a slot reused in the same tx
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<20; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec"+i);
+      }
+      ts.close();
+      tx.commit();
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      while (ts.next()) {
+         int a = ts.getInt("A");
+         if (a % 2 == 0)
+            ts.delete();
+         else
+            ts.setString("B", "upd"+a);
+      }
+      ts.beforeFirst();
+      for (int i=0; i<5; i++) {
+         ts.insert();
+         ts.setInt("A", -1);
+         ts.setString("B", "new");
+      }
+      ts.close();
+      tx.rollback();
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      int n = 0, sum = 0;
+      boolean unchanged = true;
+      while (ts.next()) {
+         n++;
+         sum += ts.getInt("A");
+         unchanged = unchanged && ts.getString("B").equals("rec"+ts.getInt("A"));
+      }
+      ts.close();
+      tx.commit();
+      check(n == 20 && sum == 190, "rollback of deletes");
+      check(unchanged, "rollback of updates");
+      System.out.println("done");
+   }
+
+   private static int countLogRecords(LogMgr lm) {
+      int n = 0;
+      Iterator<byte[]> iter = lm.iterator();
+      while (iter.hasNext()) {
+         iter.next();
+         n++;
+      }
+      return n;
+   }
+
+   private static int count() {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      int n = 0;
+      while (ts.next())
+         n++;
+      ts.close();
+      tx.commit();
+      return n;
+   }
+}
@@ -5,6 +5,7 @@ import simpledb.file.*;
 import simpledb.log.*;
 import simpledb.buffer.*;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.VersionMgr;
 import static simpledb.tx.recovery.LogRecord.*;
 
 /**
@@ -16,6 +17,7 @@ public class RecoveryMgr {
    private BufferMgr bm;
    private Transaction tx;
    private int txnum;
+   private Map<BlockId,BitSet> emptied = new HashMap<>();
 
    /**
     * Create a recovery manager for the specified transaction.
@@ -83,6 +85,97 @@ public class RecoveryMgr {
       return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
    }
 
+   /**
+    * Write an insert record to the log and return its lsn.
+    * @param buff the buffer containing the page
+    * @param slot the slot being claimed
+    * @param offset the offset of the word holding the slot's flag
+    * @param bit the position of the flag within the word
+    */
+   public int insertSlot(Buffer buff, int slot, int offset, int bit) {
+      BlockId blk = buff.block();
+      return InsertRecord.writeToLog(lm, txnum, blk, slot, offset, bit);
+   }
+
+   /**
+    * Return true if this transaction emptied the specified slot.
+    * The previous contents of such a slot must survive a rollback,
+    * since undoing the deletion brings the old record back.
+    * @param blk the block containing the slot
+    * @param slot the slot number
+    */
+   public boolean emptiedSlot(BlockId blk, int slot) {
+      BitSet slots = emptied.get(blk);
+      return slots != null && slots.get(slot);
+   }
+
+   /**
+    * Write a delete record to the log and return its lsn.
+    * @param buff the buffer containing the page
+    * @param slot the slot being emptied
+    * @param offset the offset of the word holding the slot's flag
+    * @param bit the position of the flag within the word
+    */
+   public int deleteSlot(Buffer buff, int slot, int offset, int bit) {
+      BlockId blk = buff.block();
+      emptied.computeIfAbsent(blk, b -> new BitSet()).set(slot);
+      return DeleteRecord.writeToLog(lm, txnum, blk, slot, offset, bit);
+   }
+
+   /**
+    * Write a load record to the log and return its lsn.
+    * @param buff the buffer containing the loaded block
+    */
+   public int loadBlock(Buffer buff) {
+      return LoadRecord.writeToLog(lm, txnum, buff.block());
+   }
+
+   /**
+    * Write an update record for an integer field
+    * to the log and return its lsn.
+    * @param buff the buffer containing the page
+    * @param offset the offset of the field in the page
+    */
+   public int updateInt(Buffer buff, int offset) {
+      int oldval = buff.contents().getInt(offset);
+      return UpdateRecord.writeToLog(lm, txnum, buff.block(), offset, oldval);
+   }
+
+   /**
+    * Write an update record for a string field
+    * to the log and return its lsn.
+    * @param buff the buffer containing the page
+    * @param offset the offset of the field in the page
+    */
+   public int updateString(Buffer buff, int offset) {
+      String oldval = buff.contents().getString(offset);
+      return UpdateRecord.writeToLog(lm, txnum, buff.block(), offset, oldval);
+   }
+
+   /**
+    * Give the version manager the before-images held by the
+    * log records of the specified transactions, which have not
+    * ended, reading the log backwards from its end until
+    * the START record of each.
+    * @param txnums the transactions
+    * @param images the receiver of the before-images
+    */
+   public void beforeImages(Collection<Integer> txnums, VersionMgr.BeforeImages images) {
+      Set<Integer> pending = new HashSet<>(txnums);
+      Iterator<byte[]> iter = lm.iterator();
+      while (!pending.isEmpty() && iter.hasNext()) {
+         LogRecord rec = LogRecord.createLogRecord(iter.next());
+         if (rec.op() == CHECKPOINT)
+            return;
+         if (!pending.contains(rec.txNumber()))
+            continue;
+         if (rec.op() == START)
+            pending.remove(rec.txNumber());
+         else
+            rec.saveBeforeImage(tx, images);
+      }
+   }
+
    /**
     * Rollback the transaction, by iterating
     * through the log records until it finds 
@@ -3,6 +3,7 @@ package simpledb.tx.recovery;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.VersionMgr;
 
 public class SetIntRecord implements LogRecord {
    private int txnum, offset, val;
@@ -51,6 +52,10 @@ public class SetIntRecord implements LogRecord {
       tx.unpin(blk);
    }
 
+   public void saveBeforeImage(Transaction tx, VersionMgr.BeforeImages images) {
+      images.intValue(txnum, blk, offset, val);
+   }
+
    /**
     * A static method to write a setInt record to the log.
     * This log record contains the SETINT operator,
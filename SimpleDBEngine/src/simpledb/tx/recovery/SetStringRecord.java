@@ -3,6 +3,7 @@ package simpledb.tx.recovery;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.VersionMgr;
 
 public class SetStringRecord implements LogRecord {
    private int txnum, offset;
@@ -52,6 +53,10 @@ public class SetStringRecord implements LogRecord {
       tx.unpin(blk);
    }
 
+   public void saveBeforeImage(Transaction tx, VersionMgr.BeforeImages images) {
+      images.stringValue(txnum, blk, offset, val);
+   }
+
    /**
     * A static method to write a setInt record to the log.
     * This log record contains the SETINT operator,
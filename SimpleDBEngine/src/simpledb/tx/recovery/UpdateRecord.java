@@ -0,0 +1,101 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.VersionMgr;
+
+/**
+ * The UPDATE log record, written when a transaction
+ * modifies a field of an existing record.
+ * It holds the previous value of the field, which
+ * may be either an integer or a string.
+ */
+public class UpdateRecord implements LogRecord {
+   private static final int INTVAL = 0, STRINGVAL = 1;
+   private int txnum, offset;
+   private BlockId blk;
+   private Object val;
+
+   /**
+    * Create a new update log record.
+    * @param bytes the bytes of the compact log record
+    */
+   public UpdateRecord(byte[] bytes) {
+      CompactPage p = new CompactPage(bytes);
+      txnum = p.getInt();
+      String filename = p.getString();
+      int blknum = p.getInt();
+      blk = new BlockId(filename, blknum);
+      offset = p.getInt();
+      if (p.getInt() == INTVAL)
+         val = p.getInt();
+      else
+         val = p.getString();
+   }
+
+   public int op() {
+      return UPDATE_REC;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public String toString() {
+      return "<UPDATE " + txnum + " " + blk + " " + offset + " " + val + ">";
+   }
+
+   /**
+    * Replace the field value with the value saved in the log record.
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      if (val instanceof Integer)
+         tx.setInt(blk, offset, (Integer) val, false); // don't log the undo!
+      else
+         tx.setString(blk, offset, (String) val, false);
+      tx.unpin(blk);
+   }
+
+   public void saveBeforeImage(Transaction tx, VersionMgr.BeforeImages images) {
+      if (val instanceof Integer)
+         images.intValue(txnum, blk, offset, (Integer) val);
+      else
+         images.stringValue(txnum, blk, offset, (String) val);
+   }
+
+   /**
+    * A static method to write an update record for an integer field.
+    * This log record contains the UPDATE_REC operator,
+    * followed by the transaction id, the filename and number
+    * of the block, the offset of the field, and its previous value.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
+      CompactPage p = header(txnum, blk, offset, INTVAL);
+      p.setInt(val);
+      return lm.append(p.contents());
+   }
+
+   /**
+    * A static method to write an update record for a string field.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
+      CompactPage p = header(txnum, blk, offset, STRINGVAL);
+      p.setString(val);
+      return lm.append(p.contents());
+   }
+
+   private static CompactPage header(int txnum, BlockId blk, int offset, int type) {
+      CompactPage p = new CompactPage(UPDATE_REC);
+      p.setInt(txnum);
+      p.setString(blk.fileName());
+      p.setInt(blk.number());
+      p.setInt(offset);
+      p.setInt(type);
+      return p;
+   }
+}